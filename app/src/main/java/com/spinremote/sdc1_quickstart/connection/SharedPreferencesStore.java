@@ -0,0 +1,31 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * {@link KnownDeviceRegistry.Store} keeping the addresses in {@link SharedPreferences}; changes are
+ * written asynchronously.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class SharedPreferencesStore implements KnownDeviceRegistry.Store {
+    private static final String PREFERENCES_NAME = "known_sdc1s";
+    private static final String KEY_ADDRESSES = "addresses";
+
+    private final SharedPreferences preferences;
+
+    public SharedPreferencesStore(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String load() {
+        return preferences.getString(KEY_ADDRESSES, "");
+    }
+
+    @Override
+    public void save(String addresses) {
+        preferences.edit().putString(KEY_ADDRESSES, addresses).apply();
+    }
+}
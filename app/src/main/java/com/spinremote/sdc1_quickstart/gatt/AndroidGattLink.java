@@ -0,0 +1,183 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+
+import java.util.UUID;
+
+/**
+ * {@link GattLink} over a {@link BluetoothGatt} connection.
+ *
+ * The services, characteristics and descriptors are resolved once into {@link Sdc1GattHandles},
+ * after the Bluetooth Services are discovered, so no operation searches the {@link BluetoothGatt}
+ * by UUID.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(18)
+final class AndroidGattLink implements GattLink {
+    private final String address;
+    private final GattLink.Callback callback;
+    private BluetoothGatt gatt;
+
+    /**
+     * The handles of the discovered services, replaced as a whole when services are discovered
+     */
+    private volatile Sdc1GattHandles handles = Sdc1GattHandles.NONE;
+
+    /**
+     * The {@link BluetoothGattCallback} passing everything on to the {@link GattLink.Callback}
+     */
+    private final BluetoothGattCallback bluetoothGattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            super.onConnectionStateChange(gatt, status, newState);
+
+            callback.onConnectionStateChange(AndroidGattLink.this, status, newState == BluetoothProfile.STATE_CONNECTED);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            super.onServicesDiscovered(gatt, status);
+
+            // Resolve all services, characteristics and descriptors once
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                handles = Sdc1GattHandles.resolve(gatt);
+            }
+
+            callback.onServicesDiscovered(AndroidGattLink.this, status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            super.onCharacteristicWrite(gatt, characteristic, status);
+
+            callback.onCharacteristicWrite(AndroidGattLink.this, characteristic.getUuid(), characteristic.getValue(), status);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            super.onCharacteristicRead(gatt, characteristic, status);
+
+            callback.onCharacteristicRead(AndroidGattLink.this, characteristic.getUuid(), characteristic.getValue(), status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            super.onDescriptorWrite(gatt, descriptor, status);
+
+            callback.onDescriptorWrite(AndroidGattLink.this, descriptor.getCharacteristic().getUuid(), descriptor.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            super.onCharacteristicChanged(gatt, characteristic);
+
+            callback.onCharacteristicChanged(AndroidGattLink.this, characteristic.getUuid(), characteristic.getValue());
+        }
+    };
+
+    AndroidGattLink(String address, GattLink.Callback callback) {
+        this.address = address;
+        this.callback = callback;
+    }
+
+    /**
+     * Starts connecting, the callbacks may arrive before this returns.
+     *
+     * @return whether connecting was started
+     */
+    synchronized boolean connect(Context context, BluetoothDevice device, boolean autoConnect) {
+        gatt = device.connectGatt(context, autoConnect, bluetoothGattCallback);
+
+        return gatt != null;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public synchronized boolean discoverServices() {
+        return gatt != null && gatt.discoverServices();
+    }
+
+    @Override
+    public boolean hasService(UUID service) {
+        return handles.hasService(service);
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID characteristic) {
+        return handles.getCharacteristic(characteristic) != null;
+    }
+
+    @Override
+    public boolean hasDescriptor(UUID characteristic, UUID descriptor) {
+        return handles.getDescriptor(characteristic, descriptor) != null;
+    }
+
+    @Override
+    public synchronized boolean writeCharacteristic(UUID characteristic, byte[] value) {
+        final BluetoothGattCharacteristic resolved = handles.getCharacteristic(characteristic);
+        if (gatt == null || resolved == null) {
+            return false;
+        }
+
+        resolved.setValue(value);
+
+        return gatt.writeCharacteristic(resolved);
+    }
+
+    @Override
+    public synchronized boolean readCharacteristic(UUID characteristic) {
+        final BluetoothGattCharacteristic resolved = handles.getCharacteristic(characteristic);
+
+        return gatt != null && resolved != null && gatt.readCharacteristic(resolved);
+    }
+
+    @Override
+    public synchronized boolean setCharacteristicNotification(UUID characteristic, boolean enable) {
+        final BluetoothGattCharacteristic resolved = handles.getCharacteristic(characteristic);
+
+        return gatt != null && resolved != null && gatt.setCharacteristicNotification(resolved, enable);
+    }
+
+    @Override
+    public synchronized boolean writeDescriptor(UUID characteristic, UUID descriptor, byte[] value) {
+        final BluetoothGattDescriptor resolvedDescriptor = handles.getDescriptor(characteristic, descriptor);
+        if (gatt == null || resolvedDescriptor == null) {
+            return false;
+        }
+
+        resolvedDescriptor.setValue(value);
+
+        return gatt.writeDescriptor(resolvedDescriptor);
+    }
+
+    @Override
+    public synchronized boolean requestConnectionPriority(int connectionPriority) {
+        // Only available from API 21 (Lollipop)
+        return gatt != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && gatt.requestConnectionPriority(connectionPriority);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (gatt != null) {
+            gatt.close();
+            gatt = null;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.scan.Sdc1ScanConfiguration;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.List;
+
+/**
+ * {@link GattTransport} using the Bluetooth LE APIs of Android: scanning with a
+ * {@link BluetoothLeScanner} (filtered on {@link Sdc1Uuids#DISCOVERY_UUID}) and connecting with
+ * {@link android.bluetooth.BluetoothDevice#connectGatt(Context, boolean, android.bluetooth.BluetoothGattCallback)}.
+ * The clock is {@link SystemClock#elapsedRealtimeNanos()}, the clock of the scan result
+ * timestamps, and delayed tasks run on the main thread or on the {@link Looper} given, e.g. of a
+ * dedicated {@link android.os.HandlerThread}.
+ *
+ * Note that up to API 26 Android always calls back scan results on the main thread and GATT
+ * events on a Bluetooth binder thread, whichever thread scanning or connecting was started on.
+ * The scan results are therefore passed on to the {@link ScanListener} on the {@link Looper} of
+ * the delayed tasks, so what the listener does (e.g. connecting) stays off a busy main thread.
+ *
+ * Batch scans are held back by the Bluetooth controller if it supports batching; otherwise every
+ * result is reported right away, at the duty cycle of the low power scan mode.
+ *
+ * Scanning requires Bluetooth to be enabled and the location permission to be granted, which is
+ * up to the caller.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(21)
+public final class AndroidGattTransport implements GattTransport {
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Sdc1ScanConfiguration scanConfiguration;
+    /**
+     * {@link Handler} running the delayed tasks
+     */
+    private final Handler handler;
+
+    private List<ScanFilter> scanFilters;
+    private ScanSettings scanSettings;
+    /**
+     * Listener of the current scan, null if not scanning
+     */
+    private ScanListener scanListener;
+
+    /**
+     * {@link ScanCallback} we'll pass to the
+     * {@link BluetoothLeScanner#startScan(List, ScanSettings, ScanCallback)} method to get notified
+     * whenever we find a SPIN remote SDC-1 (other BLE devices are dropped by the scan filter)
+     */
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            super.onScanResult(callbackType, result);
+
+            final ScanListener listener = getScanListener();
+            if (listener != null) {
+                postScanResults(listener, new String[]{result.getDevice().getAddress()},
+                        new int[]{result.getRssi()}, new long[]{result.getTimestampNanos()}
+                );
+            }
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            super.onBatchScanResults(results);
+
+            final ScanListener listener = getScanListener();
+            if (listener != null && !results.isEmpty()) {
+                // Copy what the listener needs out of the results, handled on the other thread
+                final String[] addresses = new String[results.size()];
+                final int[] rssis = new int[results.size()];
+                final long[] timestamps = new long[results.size()];
+                for (int i = 0; i < results.size(); i++) {
+                    final ScanResult result = results.get(i);
+                    addresses[i] = result.getDevice().getAddress();
+                    rssis[i] = result.getRssi();
+                    timestamps[i] = result.getTimestampNanos();
+                }
+                postScanResults(listener, addresses, rssis, timestamps);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            super.onScanFailed(errorCode);
+
+            final ScanListener listener = getScanListener();
+            if (listener != null) {
+                final int error = errorCode;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (getScanListener() == listener) {
+                            listener.onScanFailed(error);
+                        }
+                    }
+                });
+            }
+        }
+    };
+
+    /**
+     * Creates a transport running the delayed tasks on the main thread.
+     *
+     * @param scanConfiguration how to scan for remotes
+     */
+    public AndroidGattTransport(Context context, BluetoothAdapter bluetoothAdapter, Sdc1ScanConfiguration scanConfiguration) {
+        this(context, bluetoothAdapter, scanConfiguration, Looper.getMainLooper());
+    }
+
+    /**
+     * @param scanConfiguration how to scan for remotes
+     * @param looper            runs the delayed tasks
+     */
+    public AndroidGattTransport(Context context, BluetoothAdapter bluetoothAdapter, Sdc1ScanConfiguration scanConfiguration,
+                                Looper looper) {
+        this.context = context.getApplicationContext();
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.scanConfiguration = scanConfiguration;
+        handler = new Handler(looper);
+    }
+
+    @Override
+    public synchronized boolean startScan(ScanListener listener) {
+        if (scanSettings == null) {
+            scanSettings = scanConfiguration.buildSettings();
+        }
+
+        return startScan(listener, scanSettings);
+    }
+
+    @Override
+    public synchronized boolean startBatchScan(ScanListener listener, long reportDelayMillis) {
+        return startScan(listener, scanConfiguration.buildBatchSettings(
+                bluetoothAdapter.isOffloadedScanBatchingSupported() ? reportDelayMillis : 0
+        ));
+    }
+
+    @Override
+    public synchronized void flushScanResults() {
+        final BluetoothLeScanner scanner = bluetoothAdapter.isEnabled() ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        if (scanListener != null && scanner != null) {
+            scanner.flushPendingScanResults(scanCallback);
+        }
+    }
+
+    @Override
+    public synchronized void stopScan() {
+        if (scanListener == null) {
+            return;
+        }
+        scanListener = null;
+
+        final BluetoothLeScanner scanner = bluetoothAdapter.isEnabled() ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        if (scanner != null) {
+            scanner.stopScan(scanCallback);
+        }
+    }
+
+    @Override
+    public int getScanMode() {
+        return scanConfiguration.getScanMode();
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+        final AndroidGattLink link = new AndroidGattLink(address, callback);
+
+        return link.connect(context, bluetoothAdapter.getRemoteDevice(address), autoConnect) ? link : null;
+    }
+
+    @Override
+    public long nowNanos() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+
+    @Override
+    public String toString() {
+        return scanConfiguration.toString();
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private boolean startScan(ScanListener listener, ScanSettings settings) {
+        // Check if Bluetooth is enabled, the scanner is null (or will crash) if disabled
+        final BluetoothLeScanner scanner = bluetoothAdapter.isEnabled() ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        if (scanner == null) {
+            return false;
+        }
+
+        if (scanListener != null) {
+            scanner.stopScan(scanCallback);
+        }
+        if (scanFilters == null) {
+            scanFilters = scanConfiguration.buildFilters(new ParcelUuid(Sdc1Uuids.DISCOVERY_UUID));
+        }
+
+        scanListener = listener;
+        scanner.startScan(scanFilters, settings, scanCallback);
+
+        return true;
+    }
+
+    private synchronized ScanListener getScanListener() {
+        return scanListener;
+    }
+
+    /**
+     * Passes scan results on to the listener on the {@link Looper} of the delayed tasks, unless
+     * its scan was stopped or replaced by then.
+     */
+    private void postScanResults(final ScanListener listener, final String[] addresses, final int[] rssis,
+                                 final long[] timestamps) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < addresses.length; i++) {
+                    if (getScanListener() != listener) {
+                        return;
+                    }
+                    listener.onScanResult(addresses[i], rssis[i], timestamps[i]);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,103 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The Bluetooth Services, Characteristics and descriptors of a single connection, resolved once
+ * after the services are discovered. Looking them up on the {@link BluetoothGatt} by UUID is a
+ * linear search through all services, characteristics and descriptors, so every operation and
+ * notification uses these handles instead.
+ *
+ * Immutable: a new discovery resolves a new instance, which replaces the old one as a whole. That
+ * the SPIN Service is complete is checked at discovery time, with
+ * {@link MissingHandleException#check(com.spinremote.sdc1_quickstart.transport.GattLink)}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(18)
+final class Sdc1GattHandles {
+    /**
+     * Handles of a connection whose services are not discovered yet
+     */
+    static final Sdc1GattHandles NONE = new Sdc1GattHandles(
+            Collections.<UUID>emptySet(),
+            Collections.<UUID, BluetoothGattCharacteristic>emptyMap(),
+            Collections.<UUID, Map<UUID, BluetoothGattDescriptor>>emptyMap()
+    );
+
+    private final Set<UUID> services;
+    private final Map<UUID, BluetoothGattCharacteristic> characteristics;
+    /**
+     * Descriptors by characteristic, then by descriptor
+     */
+    private final Map<UUID, Map<UUID, BluetoothGattDescriptor>> descriptors;
+
+    private Sdc1GattHandles(Set<UUID> services, Map<UUID, BluetoothGattCharacteristic> characteristics,
+                            Map<UUID, Map<UUID, BluetoothGattDescriptor>> descriptors) {
+        this.services = services;
+        this.characteristics = characteristics;
+        this.descriptors = descriptors;
+    }
+
+    /**
+     * Resolves the handles, must be called after the Bluetooth Services have been discovered.
+     *
+     * @param gatt the connection
+     * @return the handles of the connection
+     */
+    static Sdc1GattHandles resolve(BluetoothGatt gatt) {
+        final HashSet<UUID> services = new HashSet<>();
+        final HashMap<UUID, BluetoothGattCharacteristic> characteristics = new HashMap<>();
+        final HashMap<UUID, Map<UUID, BluetoothGattDescriptor>> descriptors = new HashMap<>();
+
+        for (BluetoothGattService service : gatt.getServices()) {
+            services.add(service.getUuid());
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                characteristics.put(characteristic.getUuid(), characteristic);
+
+                final HashMap<UUID, BluetoothGattDescriptor> characteristicDescriptors = new HashMap<>();
+                for (BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
+                    characteristicDescriptors.put(descriptor.getUuid(), descriptor);
+                }
+                descriptors.put(characteristic.getUuid(), Collections.unmodifiableMap(characteristicDescriptors));
+            }
+        }
+
+        return new Sdc1GattHandles(
+                Collections.unmodifiableSet(services),
+                Collections.unmodifiableMap(characteristics),
+                Collections.unmodifiableMap(descriptors)
+        );
+    }
+
+    boolean hasService(UUID service) {
+        return services.contains(service);
+    }
+
+    /**
+     * @return the characteristic, null if not discovered
+     */
+    BluetoothGattCharacteristic getCharacteristic(UUID characteristic) {
+        return characteristics.get(characteristic);
+    }
+
+    /**
+     * @return the descriptor of the characteristic, null if not discovered
+     */
+    BluetoothGattDescriptor getDescriptor(UUID characteristic, UUID descriptor) {
+        final Map<UUID, BluetoothGattDescriptor> characteristicDescriptors = descriptors.get(characteristic);
+
+        return characteristicDescriptors == null ? null : characteristicDescriptors.get(descriptor);
+    }
+}
@@ -0,0 +1,111 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import android.annotation.TargetApi;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.ParcelUuid;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of how to scan for SPIN remote SDC-1s. The discovery UUID is matched by a
+ * {@link ScanFilter}, so the Bluetooth controller (or, without hardware filtering, the Bluetooth
+ * stack) drops all other advertisements before they wake up our process.
+ *
+ * The scan mode is one of {@link ScanSettings#SCAN_MODE_LOW_LATENCY},
+ * {@link ScanSettings#SCAN_MODE_BALANCED}, {@link ScanSettings#SCAN_MODE_LOW_POWER} or
+ * {@link ScanSettings#SCAN_MODE_OPPORTUNISTIC}; the match mode is one of
+ * {@link ScanSettings#MATCH_MODE_AGGRESSIVE} or {@link ScanSettings#MATCH_MODE_STICKY}. Settings
+ * that are not supported by the running version of Android are left at their defaults.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(21)
+public final class Sdc1ScanConfiguration {
+    /**
+     * Scan mode used when not configured, finds SDC-1s the fastest
+     */
+    public static final Sdc1ScanConfiguration DEFAULT = new Sdc1ScanConfiguration(
+            ScanSettings.SCAN_MODE_LOW_LATENCY,
+            ScanSettings.MATCH_MODE_AGGRESSIVE
+    );
+
+    private final int scanMode;
+    private final int matchMode;
+
+    /**
+     * @param scanMode  one of the SCAN_MODE_ constants of {@link ScanSettings}
+     * @param matchMode one of the MATCH_MODE_ constants of {@link ScanSettings}
+     */
+    public Sdc1ScanConfiguration(int scanMode, int matchMode) {
+        if (scanMode < ScanSettings.SCAN_MODE_OPPORTUNISTIC || scanMode > ScanSettings.SCAN_MODE_LOW_LATENCY) {
+            throw new IllegalArgumentException("invalid scan mode " + scanMode);
+        }
+        if (matchMode != ScanSettings.MATCH_MODE_AGGRESSIVE && matchMode != ScanSettings.MATCH_MODE_STICKY) {
+            throw new IllegalArgumentException("invalid match mode " + matchMode);
+        }
+
+        this.scanMode = scanMode;
+        this.matchMode = matchMode;
+    }
+
+    public int getScanMode() {
+        return scanMode;
+    }
+
+    public int getMatchMode() {
+        return matchMode;
+    }
+
+    /**
+     * @param discoveryUuid the service UUID advertised by SPIN remote SDC-1s
+     * @return the filters to pass to {@code BluetoothLeScanner#startScan(List, ScanSettings, ScanCallback)}
+     */
+    public List<ScanFilter> buildFilters(ParcelUuid discoveryUuid) {
+        return Collections.singletonList(new ScanFilter.Builder().setServiceUuid(discoveryUuid).build());
+    }
+
+    /**
+     * @return the settings to pass to {@code BluetoothLeScanner#startScan(List, ScanSettings, ScanCallback)}
+     */
+    public ScanSettings buildSettings() {
+        final ScanSettings.Builder builder = new ScanSettings.Builder();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            builder.setScanMode(scanMode);
+            builder.setMatchMode(matchMode);
+        } else {
+            // Opportunistic scanning is only available on Android Marshmallow (6.0) and higher,
+            // the closest older mode is low power
+            builder.setScanMode(Math.max(scanMode, ScanSettings.SCAN_MODE_LOW_POWER));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @param reportDelayMillis maximum time a result is held back, 0 if the Bluetooth controller
+     *                          does not support batching (see
+     *                          {@link android.bluetooth.BluetoothAdapter#isOffloadedScanBatchingSupported()})
+     * @return the low power settings of a batch scan, with the match mode of this configuration
+     */
+    public ScanSettings buildBatchSettings(long reportDelayMillis) {
+        final ScanSettings.Builder builder = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER)
+                .setReportDelay(reportDelayMillis);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            builder.setMatchMode(matchMode);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return ScanLatencyStats.scanModeName(scanMode)
+                + (matchMode == ScanSettings.MATCH_MODE_AGGRESSIVE ? "/aggressive" : "/sticky");
+    }
+}
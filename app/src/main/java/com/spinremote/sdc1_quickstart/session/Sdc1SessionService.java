@@ -0,0 +1,557 @@
+package com.spinremote.sdc1_quickstart.session;
+
+import android.annotation.TargetApi;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.spinremote.sdc1_quickstart.R;
+import com.spinremote.sdc1_quickstart.bridge.ActionBridge;
+import com.spinremote.sdc1_quickstart.connection.ConnectionProfileStats;
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.connection.Sdc1Connection;
+import com.spinremote.sdc1_quickstart.connection.Sdc1ConnectionManager;
+import com.spinremote.sdc1_quickstart.connection.SharedPreferencesStore;
+import com.spinremote.sdc1_quickstart.gatt.AndroidGattTransport;
+import com.spinremote.sdc1_quickstart.journal.ActionJournal;
+import com.spinremote.sdc1_quickstart.journal.ActionJournalRecorder;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.scan.PresenceEscalator;
+import com.spinremote.sdc1_quickstart.scan.PresenceMonitor;
+import com.spinremote.sdc1_quickstart.scan.Sdc1ScanConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hosts the session with the SPIN remote SDC-1s: a {@link Sdc1ConnectionManager} scanning for and
+ * connecting to the remotes, and an {@link ActionJournal} recording their actions. The session
+ * outlives the Activities showing it, so rotating the screen or switching apps doesn't cost a
+ * rescan, reconnect, service discovery and setup, and actions keep flowing in the background.
+ *
+ * The session is started with {@link #startService(Intent)} (with the EXTRA_ settings of this
+ * class) and runs as a foreground service until stopped with {@link #ACTION_STOP}, e.g. from its
+ * notification. Starting it again while running has no effect. Activities bind to the service and
+ * {@link LocalBinder#attach(Sdc1ConnectionManager.Listener)} a listener while visible; a listener
+ * that attaches is first passed the latest device, RSSI and action, so it shows the live session
+ * right away.
+ *
+ * Started with {@link #EXTRA_PRESENCE_MONITOR}, the session first only runs a
+ * {@link PresenceMonitor}, scanning in short batched windows, and escalates to the connection
+ * manager (scanning at full speed and connecting) only while a remote is around: once it has no
+ * connection left, the session goes back to monitoring (see {@link PresenceEscalator}).
+ *
+ * Started with {@link #EXTRA_BRIDGE_PORT}, the session also streams the actions to other
+ * processes on the device through an {@link ActionBridge}.
+ *
+ * Scanning (including handling the scan results, which Android reports on the main thread),
+ * connecting and all delayed Bluetooth work (reconnects, profile switches) runs on a dedicated
+ * {@link HandlerThread}, so a busy main thread never delays it.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(21)
+public final class Sdc1SessionService extends Service {
+    private static final String TAG = "Sdc1SessionService";
+
+    /**
+     * Action of the {@link Intent} stopping the session
+     */
+    public static final String ACTION_STOP = "com.spinremote.sdc1_quickstart.action.STOP_SESSION";
+    /**
+     * Optional int extra selecting the scan mode, one of the SCAN_MODE_ constants of
+     * {@link ScanSettings}
+     */
+    public static final String EXTRA_SCAN_MODE = "scan_mode";
+    /**
+     * Optional int extra selecting the match mode, one of the MATCH_MODE_ constants of
+     * {@link ScanSettings}
+     */
+    public static final String EXTRA_MATCH_MODE = "match_mode";
+    /**
+     * Optional int extra selecting the number of SPIN remote SDC-1s to keep connected at the same
+     * time, 1 by default
+     */
+    public static final String EXTRA_TARGET_CONNECTIONS = "target_connections";
+    /**
+     * Optional int extra selecting the maximum number of connection attempts running at the same
+     * time, 1 by default
+     */
+    public static final String EXTRA_MAX_CONCURRENT_CONNECTS = "max_concurrent_connects";
+    /**
+     * Optional boolean extra selecting whether SPIN remote SDC-1s we have been connected to
+     * before are reconnected using auto connect, false by default
+     */
+    public static final String EXTRA_AUTO_CONNECT = "auto_connect";
+    /**
+     * Optional long extra selecting how long to collect advertisements before connecting to the
+     * strongest SPIN remote SDC-1 found, in milliseconds; 0 to connect to the first one found
+     */
+    public static final String EXTRA_SELECTION_WINDOW_MILLIS = "selection_window_millis";
+    /**
+     * Optional boolean extra selecting whether the session waits for a SPIN remote SDC-1 to
+     * arrive, using a {@link PresenceMonitor}, before scanning at full speed and connecting; false
+     * by default
+     */
+    public static final String EXTRA_PRESENCE_MONITOR = "presence_monitor";
+    /**
+     * Optional int extra selecting the local port an {@link ActionBridge} streams the actions on,
+     * e.g. {@link ActionBridge#DEFAULT_PORT}; -1 (the default) for no bridge
+     */
+    public static final String EXTRA_BRIDGE_PORT = "bridge_port";
+    /**
+     * Name of the file the {@link Sdc1LatencyRecorder} is dumped to
+     */
+    public static final String LATENCY_FILE_NAME = "sdc1_latency.txt";
+    /**
+     * Name of the file the {@link ConnectionProfileStats} are dumped to
+     */
+    public static final String PROFILES_FILE_NAME = "sdc1_profiles.txt";
+    /**
+     * Name of the directory the {@link ActionJournal} is written to
+     */
+    public static final String JOURNAL_DIRECTORY_NAME = "action_journal";
+
+    /**
+     * Id of the notification of the foreground service
+     */
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Binder returned to the Activities binding to this service, only usable within this process
+     */
+    public final class LocalBinder extends Binder {
+        /**
+         * Attaches a listener, which is first passed the latest device, RSSI and action (if any),
+         * then all events until detached. The latest action is passed with timestamp 0, as it
+         * was not just received.
+         */
+        public void attach(Sdc1ConnectionManager.Listener listener) {
+            Sdc1SessionService.this.attach(listener);
+        }
+
+        public void detach(Sdc1ConnectionManager.Listener listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * @return the connection manager of the session, configured by the first Intent the
+         * service was bound or started with, null if Bluetooth is not available
+         */
+        public Sdc1ConnectionManager getConnectionManager() {
+            return connectionManager;
+        }
+    }
+
+    private final LocalBinder binder = new LocalBinder();
+
+    /**
+     * Listeners of the attached Activities
+     */
+    private final CopyOnWriteArrayList<Sdc1ConnectionManager.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Thread running all Bluetooth work, and its {@link Handler}
+     */
+    private HandlerThread sessionThread;
+    private Handler sessionHandler;
+
+    /**
+     * {@link Sdc1ConnectionManager} scanning for and connecting to the SPIN remote SDC-1s, created
+     * by the first start, null until then or if Bluetooth is not available
+     */
+    private volatile Sdc1ConnectionManager connectionManager;
+    /**
+     * {@link PresenceEscalator} switching between a {@link PresenceMonitor} and the
+     * {@link #connectionManager}, sharing its transport, created with it
+     */
+    private volatile PresenceEscalator presenceEscalator;
+    /**
+     * Whether the session waits for a remote to arrive before connecting, as configured by the
+     * first start
+     */
+    private volatile boolean presenceMonitorEnabled;
+    /**
+     * Records the actions of the {@link #connectionManager} while the session runs, null if not
+     * recording. Only used on the session thread.
+     */
+    private ActionJournalRecorder actionJournalRecorder;
+    /**
+     * Streams the actions of the {@link #connectionManager} to other processes while the session
+     * runs, null if not streaming. Only used on the session thread.
+     */
+    private ActionBridge actionBridge;
+    /**
+     * Whether the session is running, only used on the main thread
+     */
+    private boolean running;
+
+    // Latest values passed to the listeners, replayed to a listener that attaches
+    private final Object latestLock = new Object();
+    private String latestAddress;
+    private int latestRssi;
+    private boolean latestRssiKnown;
+    private int latestAction;
+    private long latestActionNanos;
+
+    /**
+     * The {@link Sdc1ConnectionManager.Listener} of the session, remembering the latest values and
+     * passing all events on to the attached listeners
+     */
+    private final Sdc1ConnectionManager.Listener connectionManagerListener = new Sdc1ConnectionManager.Listener() {
+        @Override
+        public void onDeviceFound(String address, int rssi) {
+            synchronized (latestLock) {
+                latestAddress = address;
+                latestRssi = rssi;
+                latestRssiKnown = true;
+            }
+
+            for (Sdc1ConnectionManager.Listener listener : listeners) {
+                listener.onDeviceFound(address, rssi);
+            }
+        }
+
+        @Override
+        public void onConnectionStateChanged(String address, int state) {
+            if (state == Sdc1Connection.STATE_FAILED || state == Sdc1Connection.STATE_CLOSED) {
+                synchronized (latestLock) {
+                    if (address.equals(latestAddress)) {
+                        latestAddress = null;
+                    }
+                }
+            }
+
+            final PresenceEscalator presenceEscalator = Sdc1SessionService.this.presenceEscalator;
+            if (presenceEscalator != null) {
+                // Goes back to monitoring once no remote is connected anymore
+                presenceEscalator.onConnectionStateChanged(address, state);
+            }
+
+            for (Sdc1ConnectionManager.Listener listener : listeners) {
+                listener.onConnectionStateChanged(address, state);
+            }
+        }
+
+        @Override
+        public void onAction(String address, int action, long timestampNanos) {
+            synchronized (latestLock) {
+                latestAddress = address;
+                latestAction = action;
+                latestActionNanos = timestampNanos;
+            }
+
+            for (Sdc1ConnectionManager.Listener listener : listeners) {
+                listener.onAction(address, action, timestampNanos);
+            }
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Bluetooth callbacks are latency sensitive, so run above the priority of background work
+        sessionThread = new HandlerThread("Sdc1Session", Process.THREAD_PRIORITY_FOREGROUND);
+        sessionThread.start();
+        sessionHandler = new Handler(sessionThread.getLooper());
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            // Destroyed once the last Activity unbinds
+            stopSession();
+            stopSelf();
+        } else if (intent != null) {
+            startSession(intent);
+        } // else: not restarted after being killed, see below
+
+        // Only Activities start the session, after checking Bluetooth is enabled and the
+        // permissions are granted, so don't restart it without them
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        // Bound with the same settings as started, so the connection manager can be used right away
+        createConnectionManager(intent);
+
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        stopSession();
+        // Runs the session thread until the stop is done
+        sessionThread.quitSafely();
+    }
+
+    private void attach(Sdc1ConnectionManager.Listener listener) {
+        final String address;
+        final int rssi;
+        final boolean rssiKnown;
+        final int action;
+        final long actionNanos;
+        synchronized (latestLock) {
+            address = latestAddress;
+            rssi = latestRssi;
+            rssiKnown = latestRssiKnown;
+            action = latestAction;
+            actionNanos = latestActionNanos;
+        }
+
+        // Replay the latest values before attaching, a newer event may arrive in between but is
+        // passed on afterwards
+        if (address != null && rssiKnown) {
+            listener.onDeviceFound(address, rssi);
+        }
+        if (address != null && actionNanos != 0) {
+            listener.onAction(address, action, 0);
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the session, if not running. Must be called on the main thread.
+     */
+    private void startSession(Intent intent) {
+        if (running) {
+            return;
+        }
+
+        if (!createConnectionManager(intent)) {
+            stopSelf();
+
+            return;
+        }
+
+        running = true;
+        startForeground(NOTIFICATION_ID, buildNotification());
+
+        final Sdc1ConnectionManager connectionManager = this.connectionManager;
+        final int bridgePort = intent.getIntExtra(EXTRA_BRIDGE_PORT, -1);
+        sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                startJournal(connectionManager);
+                if (bridgePort >= 0) {
+                    startBridge(connectionManager, bridgePort);
+                }
+
+                if (presenceMonitorEnabled) {
+                    // Wait for a remote to arrive, only waking up for the scan windows, and go
+                    // back to waiting once no remote is connected anymore
+                    presenceEscalator.start();
+                } else {
+                    // Start scanning and connecting, until the target number of SPIN remote
+                    // SDC-1s is connected
+                    connectionManager.start();
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the connection manager, if not created yet, using the scan and connection settings of
+     * the Intent if given.
+     *
+     * @return whether there is a connection manager, false if Bluetooth is not available
+     */
+    private boolean createConnectionManager(Intent intent) {
+        if (connectionManager != null) {
+            return true;
+        }
+
+        // Get the BluetoothManager so we can get the BluetoothAdapter
+        final BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
+        final BluetoothAdapter bluetoothAdapter = bluetoothManager.getAdapter();
+        if (bluetoothAdapter == null) {
+            Log.w(TAG, "Bluetooth is not available");
+
+            return false;
+        }
+
+        final Sdc1ScanConfiguration scanConfiguration = new Sdc1ScanConfiguration(
+                intent.getIntExtra(EXTRA_SCAN_MODE, Sdc1ScanConfiguration.DEFAULT.getScanMode()),
+                intent.getIntExtra(EXTRA_MATCH_MODE, Sdc1ScanConfiguration.DEFAULT.getMatchMode())
+        );
+        final AndroidGattTransport transport
+                = new AndroidGattTransport(this, bluetoothAdapter, scanConfiguration, sessionThread.getLooper());
+        final KnownDeviceRegistry knownDeviceRegistry = new KnownDeviceRegistry(new SharedPreferencesStore(this));
+        final Sdc1ConnectionManager connectionManager
+                = new Sdc1ConnectionManager(transport, knownDeviceRegistry, connectionManagerListener);
+        connectionManager.setTargetConnectionCount(intent.getIntExtra(EXTRA_TARGET_CONNECTIONS, 1));
+        connectionManager.setMaxConcurrentConnects(intent.getIntExtra(EXTRA_MAX_CONCURRENT_CONNECTS, 1));
+        connectionManager.setAutoConnect(intent.getBooleanExtra(EXTRA_AUTO_CONNECT, false));
+        connectionManager.setSelectionWindowMillis(intent.getLongExtra(EXTRA_SELECTION_WINDOW_MILLIS,
+                Sdc1ConnectionManager.DEFAULT_SELECTION_WINDOW_MILLIS
+        ));
+        presenceEscalator = new PresenceEscalator(transport, knownDeviceRegistry, connectionManager);
+        presenceMonitorEnabled = intent.getBooleanExtra(EXTRA_PRESENCE_MONITOR, false);
+        this.connectionManager = connectionManager;
+
+        return true;
+    }
+
+    /**
+     * Stops the session, if running. Must be called on the main thread.
+     */
+    private void stopSession() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        final Sdc1ConnectionManager connectionManager = this.connectionManager;
+        sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                presenceEscalator.stop();
+
+                // Stop scanning for SPIN remote SDC-1s and close all connections, cleaning up any
+                // resources
+                connectionManager.stop();
+                dumpLatencies(connectionManager.getLatencyRecorder(), connectionManager.getProfileStats());
+
+                stopJournal();
+                stopBridge();
+            }
+        });
+
+        stopForeground(true);
+    }
+
+    private Notification buildNotification() {
+        final PendingIntent stopIntent = PendingIntent.getService(
+                this,
+                0,
+                new Intent(this, Sdc1SessionService.class).setAction(ACTION_STOP),
+                PendingIntent.FLAG_UPDATE_CURRENT
+        );
+
+        // Builds the stop action as a Notification.Action where available (API 20+)
+        return new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.session_notification_text))
+                .setOngoing(true)
+                .addAction(0, getString(R.string.session_notification_stop), stopIntent)
+                .build();
+    }
+
+    /**
+     * Must be called on the session thread.
+     */
+    private void startJournal(Sdc1ConnectionManager connectionManager) {
+        final File directory = new File(getFilesDir(), JOURNAL_DIRECTORY_NAME);
+        try {
+            actionJournalRecorder = new ActionJournalRecorder(
+                    connectionManager.getActionEventBus(),
+                    new ActionJournal(directory)
+            );
+            actionJournalRecorder.start();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open the action journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Must be called on the session thread.
+     */
+    private void stopJournal() {
+        if (actionJournalRecorder == null) {
+            return;
+        }
+
+        try {
+            actionJournalRecorder.stop();
+            Log.i(TAG, "Journaled " + actionJournalRecorder.getJournal().getAppendedCount() + " actions, dropped "
+                    + actionJournalRecorder.getDroppedCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        actionJournalRecorder = null;
+    }
+
+    /**
+     * Must be called on the session thread.
+     */
+    private void startBridge(Sdc1ConnectionManager connectionManager, int port) {
+        actionBridge = new ActionBridge(
+                connectionManager.getActionEventBus(),
+                connectionManager.getDeviceTable(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                ActionBridge.DEFAULT_CLIENT_BUFFER_FRAMES
+        );
+        try {
+            actionBridge.start();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not start the action bridge on port " + port, e);
+            actionBridge = null;
+        }
+    }
+
+    /**
+     * Must be called on the session thread.
+     */
+    private void stopBridge() {
+        if (actionBridge == null) {
+            return;
+        }
+
+        for (ActionBridge.ClientStats stats : actionBridge.getClientStats()) {
+            Log.i(TAG, "Bridged to " + stats);
+        }
+        try {
+            actionBridge.stop();
+            Log.i(TAG, "Bridge dropped " + actionBridge.getBusDroppedCount() + " actions");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        actionBridge = null;
+    }
+
+    private void dumpLatencies(Sdc1LatencyRecorder latencyRecorder, ConnectionProfileStats profileStats) {
+        // The external files directory is null if the storage is unavailable
+        final File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            return;
+        }
+
+        final String header = Build.MANUFACTURER + " " + Build.MODEL + ", Android " + Build.VERSION.RELEASE;
+        final File file = new File(directory, LATENCY_FILE_NAME);
+        try {
+            latencyRecorder.dumpToFile(file, header);
+            Log.i(TAG, "Latencies written to " + file);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write latencies to " + file, e);
+        }
+
+        final File profilesFile = new File(directory, PROFILES_FILE_NAME);
+        try {
+            profileStats.dumpToFile(profilesFile, header);
+            Log.i(TAG, "Connection profiles written to " + profilesFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write connection profiles to " + profilesFile, e);
+        }
+    }
+}
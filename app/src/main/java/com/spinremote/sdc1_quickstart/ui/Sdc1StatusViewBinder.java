@@ -0,0 +1,189 @@
+package com.spinremote.sdc1_quickstart.ui;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import com.spinremote.sdc1_quickstart.R;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the address, last action and last RSSI of a SPIN remote SDC-1 in three TextViews, no
+ * matter how fast actions and advertisements arrive.
+ *
+ * The setters may be called from any thread and only store the latest values in primitive fields;
+ * the TextViews are updated at most once per display frame by a {@link Choreographer} frame
+ * callback, which is only posted when something changed. All action and RSSI texts are formatted
+ * once up front, so an update allocates nothing. Actions not defined by the Action Characteristic
+ * are not shown, they are counted by
+ * {@link com.spinremote.sdc1_quickstart.dispatch.ActionDispatcher#getUnknownCount()}.
+ *
+ * If a {@link Sdc1LatencyRecorder} is set, the time from receiving an action to rendering it is
+ * recorded as {@link Sdc1LatencyRecorder#STEP_ACTION_DELIVERY}, for every action that is rendered
+ * (actions replaced by a newer one before the next frame are not, nor actions shown again with
+ * timestamp 0).
+ *
+ * Must be created on the UI thread.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@TargetApi(16)
+public final class Sdc1StatusViewBinder implements Choreographer.FrameCallback {
+    /**
+     * Range of RSSI values we preformat, values outside are clamped
+     */
+    private static final int MIN_RSSI = -127;
+    private static final int MAX_RSSI = 20;
+    /**
+     * Value of {@link #action} and {@link #rssi} when there is nothing to show
+     */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final TextView deviceAddressTextView;
+    private final TextView actionTextView;
+    private final TextView rssiTextView;
+
+    /**
+     * Text to show for every action (index in array equals action), null for unknown ones
+     */
+    private final String[] actionTexts = new String[Sdc1Codec.ACTION_COUNT];
+    /**
+     * Text to show for every RSSI, index in array equals RSSI - {@link #MIN_RSSI}
+     */
+    private final String[] rssiTexts = new String[MAX_RSSI - MIN_RSSI + 1];
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    /**
+     * Whether a frame callback has been posted and has not run yet
+     */
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+
+    // Latest values, written by any thread
+    private volatile String address;
+    private volatile int action = NONE;
+    private volatile int rssi = NONE;
+    private volatile long actionNanos;
+
+    // Values currently shown, only used on the UI thread
+    private String shownAddress;
+    private int shownAction = NONE;
+    private int shownRssi = NONE;
+    private long shownActionNanos;
+
+    private volatile Sdc1LatencyRecorder latencyRecorder;
+
+    /**
+     * @param resources          used to format all texts up front
+     * @param actionDescriptions descriptions of each action (index in array equals action)
+     */
+    public Sdc1StatusViewBinder(Resources resources, String[] actionDescriptions,
+                                TextView deviceAddressTextView, TextView actionTextView, TextView rssiTextView) {
+        this.deviceAddressTextView = deviceAddressTextView;
+        this.actionTextView = actionTextView;
+        this.rssiTextView = rssiTextView;
+
+        // We format the Strings using each known action and the action description for that action
+        for (int action = 0; action < actionTexts.length; action++) {
+            if (Sdc1Codec.isKnownAction(action) && action < actionDescriptions.length) {
+                actionTexts[action] = resources.getString(R.string.action, action, actionDescriptions[action]);
+            }
+        }
+        for (int rssi = MIN_RSSI; rssi <= MAX_RSSI; rssi++) {
+            rssiTexts[rssi - MIN_RSSI] = resources.getString(R.string.rssi, rssi);
+        }
+    }
+
+    /**
+     * @param latencyRecorder records the delivery latency of the actions, none if null
+     */
+    public void setLatencyRecorder(Sdc1LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    /**
+     * Shows a found SPIN remote SDC-1 and its RSSI.
+     */
+    public void setDevice(String address, int rssi) {
+        this.address = address;
+        this.rssi = rssi;
+        scheduleFrame();
+    }
+
+    /**
+     * Shows an action and the SPIN remote SDC-1 it came from.
+     *
+     * @param action         uint8 action
+     * @param timestampNanos SystemClock.elapsedRealtimeNanos() at which the action was received,
+     *                       0 if it was received earlier on (e.g. shown again after a rotation)
+     */
+    public void setAction(String address, int action, long timestampNanos) {
+        if (actionTexts[action & 0xFF] == null) {
+            // Not defined by the Action Characteristic, the ActionDispatcher counts these
+            return;
+        }
+
+        this.address = address;
+        this.actionNanos = timestampNanos;
+        this.action = action & 0xFF;
+        scheduleFrame();
+    }
+
+    /**
+     * Stops showing the address, if it's the one currently shown.
+     */
+    public void clearAddress(String address) {
+        if (address.equals(this.address)) {
+            this.address = null;
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Renders the latest values, on the UI thread.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Clear the flag first, so values set while rendering schedule the next frame
+        frameScheduled.set(false);
+
+        final String address = this.address;
+        if (address == null ? shownAddress != null : !address.equals(shownAddress)) {
+            deviceAddressTextView.setText(address == null ? "" : address);
+            shownAddress = address;
+        }
+
+        final int action = this.action;
+        final long actionNanos = this.actionNanos;
+        if (action != shownAction) {
+            actionTextView.setText(actionTexts[action]);
+            shownAction = action;
+        }
+        // The same action again still counts as a delivery
+        final Sdc1LatencyRecorder latencyRecorder = this.latencyRecorder;
+        if (actionNanos != shownActionNanos && actionNanos != 0 && latencyRecorder != null) {
+            latencyRecorder.record(
+                    Sdc1LatencyRecorder.STEP_ACTION_DELIVERY,
+                    actionNanos,
+                    SystemClock.elapsedRealtimeNanos()
+            );
+        }
+        shownActionNanos = actionNanos;
+
+        final int rssi = this.rssi;
+        if (rssi != shownRssi) {
+            rssiTextView.setText(rssiTexts[Math.max(MIN_RSSI, Math.min(MAX_RSSI, rssi)) - MIN_RSSI]);
+            shownRssi = rssi;
+        }
+    }
+}
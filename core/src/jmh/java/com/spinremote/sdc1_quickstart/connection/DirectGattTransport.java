@@ -0,0 +1,205 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.UUID;
+
+/**
+ * {@link GattTransport} with a single {@link GattLink} that completes its operations only when
+ * {@link #completeNext()} is called, on the calling thread. Unlike the simulated transport there
+ * are no threads, latencies or allocations, so a benchmark measures only the state machine of
+ * {@link Sdc1Connection}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+final class DirectGattTransport implements GattTransport, GattLink {
+    private static final int PENDING_NONE = 0;
+    private static final int PENDING_CONNECT = 1;
+    private static final int PENDING_DISCOVER = 2;
+    private static final int PENDING_WRITE_CHARACTERISTIC = 3;
+    private static final int PENDING_READ_CHARACTERISTIC = 4;
+    private static final int PENDING_WRITE_DESCRIPTOR = 5;
+
+    private final String address;
+    private GattLink.Callback callback;
+
+    /**
+     * The outstanding operation, one of the PENDING_ constants
+     */
+    private int pending;
+    private UUID pendingCharacteristic;
+    private UUID pendingDescriptor;
+    /**
+     * Value of the outstanding write, not copied: the queue keeps it until the write completed
+     */
+    private byte[] pendingValue;
+
+    private final byte[] notificationValue = new byte[1];
+
+    DirectGattTransport(String address) {
+        this.address = address;
+    }
+
+    /**
+     * Completes the outstanding operation successfully.
+     *
+     * @return whether there was one
+     */
+    boolean completeNext() {
+        final int completing = pending;
+        pending = PENDING_NONE;
+
+        switch (completing) {
+            case PENDING_CONNECT:
+                callback.onConnectionStateChange(this, STATUS_SUCCESS, true);
+                return true;
+            case PENDING_DISCOVER:
+                callback.onServicesDiscovered(this, STATUS_SUCCESS);
+                return true;
+            case PENDING_WRITE_CHARACTERISTIC:
+                callback.onCharacteristicWrite(this, pendingCharacteristic, pendingValue, STATUS_SUCCESS);
+                return true;
+            case PENDING_READ_CHARACTERISTIC:
+                callback.onCharacteristicRead(this, pendingCharacteristic, notificationValue, STATUS_SUCCESS);
+                return true;
+            case PENDING_WRITE_DESCRIPTOR:
+                callback.onDescriptorWrite(this, pendingCharacteristic, pendingDescriptor, STATUS_SUCCESS);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Completes operations until there are none left.
+     */
+    void completeAll() {
+        while (completeNext()) {
+            // Each completion may start the next operation
+        }
+    }
+
+    /**
+     * Notifies an action on the Action Characteristic.
+     */
+    void notifyAction(int action) {
+        notificationValue[0] = (byte) action;
+        callback.onCharacteristicChanged(this, Sdc1Uuids.ACTION_CHARACTERISTIC_UUID, notificationValue);
+    }
+
+    @Override
+    public boolean startScan(ScanListener listener) {
+        return false;
+    }
+
+    @Override
+    public boolean startBatchScan(ScanListener listener, long reportDelayMillis) {
+        return false;
+    }
+
+    @Override
+    public void flushScanResults() {
+    }
+
+    @Override
+    public void stopScan() {
+    }
+
+    @Override
+    public int getScanMode() {
+        return 0;
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+        this.callback = callback;
+        pending = PENDING_CONNECT;
+
+        return this;
+    }
+
+    @Override
+    public long nowNanos() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return start(PENDING_DISCOVER, null, null, null);
+    }
+
+    @Override
+    public boolean hasService(UUID service) {
+        return Sdc1Uuids.SPIN_SERVICE_UUID.equals(service);
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID characteristic) {
+        return Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID.equals(characteristic)
+                || Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic);
+    }
+
+    @Override
+    public boolean hasDescriptor(UUID characteristic, UUID descriptor) {
+        return Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)
+                && Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID.equals(descriptor);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID characteristic, byte[] value) {
+        return start(PENDING_WRITE_CHARACTERISTIC, characteristic, null, value);
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID characteristic) {
+        return start(PENDING_READ_CHARACTERISTIC, characteristic, null, null);
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID characteristic, boolean enable) {
+        return true;
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID characteristic, UUID descriptor, byte[] value) {
+        return start(PENDING_WRITE_DESCRIPTOR, characteristic, descriptor, value);
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int connectionPriority) {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        pending = PENDING_NONE;
+    }
+
+    private boolean start(int operation, UUID characteristic, UUID descriptor, byte[] value) {
+        if (pending != PENDING_NONE) {
+            return false;
+        }
+
+        pending = operation;
+        pendingCharacteristic = characteristic;
+        pendingDescriptor = descriptor;
+        pendingValue = value;
+
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the {@link Sdc1Connection} state machine against a
+ * {@link DirectGattTransport}: a full connect, set up and close, a received action and an LED
+ * color change on a ready connection. Only the full setup should allocate (the connection and
+ * its queue); the steady state benchmarks should not.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Sdc1ConnectionBenchmark {
+    private static final String ADDRESS = "F0:00:00:00:00:01";
+
+    private final Sdc1LatencyRecorder latencyRecorder = new Sdc1LatencyRecorder();
+    private final DirectGattTransport transport = new DirectGattTransport(ADDRESS);
+
+    /**
+     * Sum of the actions received, so the callback has an effect
+     */
+    private long actionSum;
+    private final Sdc1Connection.Callback callback = new Sdc1Connection.Callback() {
+        @Override
+        public void onStateChanged(Sdc1Connection connection, int state) {
+        }
+
+        @Override
+        public void onAction(Sdc1Connection connection, int action, long timestampNanos) {
+            actionSum += action;
+        }
+    };
+
+    /**
+     * Connection kept ready for the steady state benchmarks
+     */
+    private Sdc1Connection readyConnection;
+    private DirectGattTransport readyTransport;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        readyTransport = new DirectGattTransport(ADDRESS);
+        readyConnection = new Sdc1Connection(readyTransport, ADDRESS, latencyRecorder, callback);
+        readyConnection.connect(false);
+        readyTransport.completeAll();
+        if (readyConnection.getState() != Sdc1Connection.STATE_READY) {
+            throw new IllegalStateException("Not ready: " + readyConnection.getState());
+        }
+    }
+
+    @Benchmark
+    public int connectSetUpAndClose() {
+        final Sdc1Connection connection = new Sdc1Connection(transport, ADDRESS, latencyRecorder, callback);
+        connection.connect(false);
+        transport.completeAll();
+        final int state = connection.getState();
+        connection.close();
+
+        return state;
+    }
+
+    @Benchmark
+    public long receiveAction() {
+        readyTransport.notifyAction(next++ & 0x0F);
+
+        return actionSum;
+    }
+
+    @Benchmark
+    public int setLedColor() {
+        final int color = next++;
+        readyConnection.setLedColor(color & 0xFF, (color >> 8) & 0xFF, 0);
+        readyTransport.completeAll();
+
+        return readyConnection.getState();
+    }
+}
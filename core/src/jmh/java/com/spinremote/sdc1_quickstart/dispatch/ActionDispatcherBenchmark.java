@@ -0,0 +1,65 @@
+package com.spinremote.sdc1_quickstart.dispatch;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of dispatching actions through an {@link ActionDispatcher}, for every
+ * uint8 action of two remotes (one with mappings of its own), with every known action mapped.
+ * Dispatching should not allocate (gc.alloc.rate.norm of 0 B/op).
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActionDispatcherBenchmark {
+    private final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+    private final ActionDispatcher dispatcher = new ActionDispatcher(deviceTable);
+
+    private Blackhole blackhole;
+    private int next;
+
+    private final ActionEventHandler handler = new ActionEventHandler() {
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            blackhole.consume(action);
+        }
+    };
+
+    public ActionDispatcherBenchmark() {
+        deviceTable.indexOf("F0:00:00:00:00:01");
+        final ActionMapping mapping = new ActionMapping();
+        for (int action = 0; action < Sdc1Codec.ACTION_COUNT; action++) {
+            if (Sdc1Codec.isKnownAction(action)) {
+                mapping.map(action, handler);
+                mapping.mapForDevice("F0:00:00:00:00:02", action, handler);
+            }
+        }
+        dispatcher.setMapping(mapping);
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        final int event = next++;
+        dispatcher.onActionEvent((event >> 8) & 1, event & 0xFF, event);
+    }
+}
@@ -0,0 +1,154 @@
+package com.spinremote.sdc1_quickstart.event;
+
+import com.spinremote.sdc1_quickstart.gesture.GestureStreamProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of dispatching actions through the {@link ActionEventBus}: publishing
+ * and polling on one thread, publishing and polling concurrently (one Bluetooth thread, one
+ * consumer), and polling into a {@link GestureStreamProcessor}. None of them should allocate.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActionEventBusBenchmark {
+    private static final int DEVICE_COUNT = 4;
+    /**
+     * Actions published round robin: rotations, swipes, presses and scrolls
+     */
+    private static final int[] ACTIONS = {0, 1, 6, 7, 10, 14, 20, 21};
+
+    /**
+     * Handler passing the events on to the {@link Blackhole}, set per invocation
+     */
+    private static final class ConsumingHandler implements ActionEventHandler {
+        Blackhole blackhole;
+
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            blackhole.consume(action);
+        }
+    }
+
+    /**
+     * Bus and subscriber shared by the publishing and the polling thread of the concurrent group
+     */
+    @State(Scope.Group)
+    public static class Concurrent {
+        private ActionEventBus bus;
+        private ActionEventBus.Subscriber subscriber;
+        private final ConsumingHandler consumingHandler = new ConsumingHandler();
+        private int next;
+
+        @Setup
+        public void setUp() {
+            bus = new ActionEventBus(1024);
+            subscriber = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST);
+        }
+
+        @TearDown
+        public void tearDown() {
+            subscriber.close();
+        }
+    }
+
+    private ActionEventBus bus;
+    private ActionEventBus.Subscriber subscriber;
+    private GestureStreamProcessor gestureStreamProcessor;
+    private int next;
+
+    private final ConsumingHandler consumingHandler = new ConsumingHandler();
+
+    @Setup
+    public void setUp() {
+        bus = new ActionEventBus(1024);
+        subscriber = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST);
+        gestureStreamProcessor = new GestureStreamProcessor(new GestureStreamProcessor.Listener() {
+            @Override
+            public void onScrollVelocity(int deviceIndex, float ticksPerSecond, long timestampNanos) {
+            }
+
+            @Override
+            public void onRotate(int deviceIndex, int action, int repetitions, long timestampNanos) {
+            }
+
+            @Override
+            public void onPress(int deviceIndex, int direction, int repetitions, long timestampNanos) {
+            }
+
+            @Override
+            public void onLongPress(int deviceIndex, int direction, long timestampNanos) {
+            }
+
+            @Override
+            public void onAction(int deviceIndex, int action, long timestampNanos) {
+            }
+        }, DEVICE_COUNT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriber.close();
+    }
+
+    @Benchmark
+    public int publishAndPoll(Blackhole blackhole) {
+        next = publishNext(bus, next);
+        consumingHandler.blackhole = blackhole;
+
+        return subscriber.poll(consumingHandler, 1);
+    }
+
+    @Benchmark
+    public int publishAndPollIntoGestures() {
+        next = publishNext(bus, next);
+
+        return subscriber.poll(gestureStreamProcessor, 1);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public void publish(Concurrent concurrent) {
+        concurrent.next = publishNext(concurrent.bus, concurrent.next);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public int poll(Concurrent concurrent, Blackhole blackhole) {
+        concurrent.consumingHandler.blackhole = blackhole;
+
+        return concurrent.subscriber.poll(concurrent.consumingHandler, 16);
+    }
+
+    /**
+     * Publishes the event with the number, returning the number of the next one
+     */
+    private static int publishNext(ActionEventBus bus, int event) {
+        bus.publish(event % DEVICE_COUNT, ACTIONS[event & (ACTIONS.length - 1)], System.nanoTime());
+
+        return event + 1;
+    }
+}
@@ -0,0 +1,93 @@
+package com.spinremote.sdc1_quickstart.journal;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of appending to an {@link ActionJournal} (including the roll overs) and
+ * of scanning it with an {@link ActionJournalReader}, per record.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActionJournalBenchmark {
+    /**
+     * Records in the journal that is scanned
+     */
+    private static final int SCAN_RECORDS = 1000000;
+
+    private File directory;
+    private ActionJournal journal;
+    private int next;
+
+    private long actionSum;
+    private final ActionEventHandler summingHandler = new ActionEventHandler() {
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            actionSum += action;
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        // Retention of 16 segments, so appending doesn't fill the disk
+        journal = new ActionJournal(directory, ActionJournal.DEFAULT_SEGMENT_RECORDS,
+                16 * ActionJournal.segmentSize(ActionJournal.DEFAULT_SEGMENT_RECORDS));
+        for (int i = 0; i < SCAN_RECORDS; i++) {
+            journal.append(i & 3, i & 0xFF, i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.close();
+        for (File segment : ActionJournal.listSegments(directory)) {
+            segment.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        final int record = next++;
+        journal.append(record & 3, record & 0xFF, record);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCAN_RECORDS)
+    public long scan() throws IOException {
+        final ActionJournalReader reader = new ActionJournalReader(directory);
+        while (reader.read(summingHandler, Integer.MAX_VALUE) > 0) {
+            // Read until the end
+        }
+        reader.close();
+
+        return actionSum;
+    }
+}
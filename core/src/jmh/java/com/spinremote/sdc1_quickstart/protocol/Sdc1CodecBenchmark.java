@@ -0,0 +1,81 @@
+package com.spinremote.sdc1_quickstart.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of encoding the commands and decoding the actions of {@link Sdc1Codec}.
+ * None of them should allocate (gc.alloc.rate.norm of 0 B/op).
+ *
+ * The inputs vary between invocations, so the JIT can't fold the results into constants.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Sdc1CodecBenchmark {
+    /**
+     * Number of different inputs, a power of two so the next one is picked with a mask
+     */
+    private static final int INPUT_COUNT = 256;
+
+    private final Sdc1Codec codec = new Sdc1Codec();
+    private final byte[] frame = new byte[Sdc1Codec.MAX_COMMAND_LENGTH];
+    /**
+     * Action notification values, every possible uint8 action
+     */
+    private final byte[][] actionValues = new byte[INPUT_COUNT][];
+    /**
+     * Commands of every Command Id, including unknown ones
+     */
+    private final byte[][] commands = new byte[INPUT_COUNT][];
+
+    private int next;
+
+    public Sdc1CodecBenchmark() {
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            actionValues[i] = new byte[]{(byte) i};
+            commands[i] = new byte[]{(byte) i, 0x01};
+        }
+    }
+
+    @Benchmark
+    public byte[] setLedColor() {
+        final int color = next++;
+
+        return codec.setLedColor(color & 0xFF, (color >> 8) & 0xFF, (color >> 16) & 0xFF);
+    }
+
+    @Benchmark
+    public int encodeSetLedColor() {
+        return Sdc1Codec.encodeSetLedColor(frame, 0, next++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public int encodeForceActionNotification() {
+        return Sdc1Codec.encodeForceActionNotification(frame, 0, (next++ & 1) == 0);
+    }
+
+    @Benchmark
+    public int decodeAction() {
+        return Sdc1Codec.decodeAction(actionValues[next++ & (INPUT_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public int decodeCommandId() {
+        return Sdc1Codec.decodeCommandId(commands[next++ & (INPUT_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,487 @@
+package com.spinremote.sdc1_quickstart.bridge;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventBus;
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Streams the actions published on an {@link ActionEventBus} to other processes over a local TCP
+ * socket, as fixed-size {@link BridgeFrame}s: e.g. a media player service, a native renderer or a
+ * desktop companion through {@code adb forward tcp:47310 tcp:47310}. Clients only read; anything
+ * they send is ignored.
+ *
+ * A single thread runs a non-blocking NIO loop: it polls the bus, appends a frame per action to
+ * the buffer of every client and writes each buffer with one write per batch, so a burst of
+ * actions costs a client a few writes instead of one per action. When there is nothing to do, it
+ * blocks on the sockets until the next action is published wakes it up, so an idle bridge never
+ * wakes up on a timer.
+ *
+ * Every client has a bounded buffer, and the kernel buffer of its socket is kept small, so a
+ * client that does not keep up is not served stale actions from a long queue: once its buffer is
+ * full, new actions are dropped for that client only and counted (the gap shows in the sequence
+ * of its next frame). Other clients, and the Bluetooth callbacks publishing on the bus, never
+ * wait for it.
+ *
+ * Runs on plain Java, so it can be tested on the JVM without Bluetooth. On Android it needs the
+ * INTERNET permission, even though it only binds to the loopback address.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionBridge {
+    private static final Logger LOGGER = Logger.getLogger("ActionBridge");
+
+    public static final int DEFAULT_PORT = 47310;
+    /**
+     * Default number of frames buffered per client
+     */
+    public static final int DEFAULT_CLIENT_BUFFER_FRAMES = 256;
+    /**
+     * Maximum number of actions taken from the bus per poll
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Snapshot of the counters of a client
+     */
+    public static final class ClientStats {
+        private final SocketAddress remoteAddress;
+        private final long sentFrameCount;
+        private final long droppedFrameCount;
+
+        ClientStats(SocketAddress remoteAddress, long sentFrameCount, long droppedFrameCount) {
+            this.remoteAddress = remoteAddress;
+            this.sentFrameCount = sentFrameCount;
+            this.droppedFrameCount = droppedFrameCount;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        /**
+         * @return number of frames written to the socket
+         */
+        public long getSentFrameCount() {
+            return sentFrameCount;
+        }
+
+        /**
+         * @return number of actions dropped because the buffer of the client was full
+         */
+        public long getDroppedFrameCount() {
+            return droppedFrameCount;
+        }
+
+        @Override
+        public String toString() {
+            return remoteAddress + ": sent " + sentFrameCount + ", dropped " + droppedFrameCount;
+        }
+    }
+
+    /**
+     * A connected client, only used on the bridge thread except for its counters
+     */
+    private static final class Client {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final SocketAddress remoteAddress;
+        /**
+         * Frames not written yet, in fill mode (position is the end of the frames)
+         */
+        final ByteBuffer buffer;
+        /**
+         * Device indexes the client was sent a device frame for
+         */
+        final BitSet announced = new BitSet();
+        int sequence;
+        /**
+         * Number of bytes written to the socket, which a frame may span several writes of
+         */
+        long sentByteCount;
+        volatile long sentFrameCount;
+        volatile long droppedFrameCount;
+
+        Client(SocketChannel channel, SelectionKey key, int bufferFrames) {
+            this.channel = channel;
+            this.key = key;
+            remoteAddress = channel.socket().getRemoteSocketAddress();
+            buffer = ByteBuffer.allocateDirect(bufferFrames * BridgeFrame.SIZE);
+        }
+    }
+
+    private final ActionEventBus actionEventBus;
+    private final Sdc1DeviceTable deviceTable;
+    private final InetSocketAddress bindAddress;
+    private final int clientBufferFrames;
+
+    /**
+     * The batch of actions polled from the bus, only used on the bridge thread
+     */
+    private final int[] batchDeviceIndexes = new int[BATCH_SIZE];
+    private final int[] batchActions = new int[BATCH_SIZE];
+    private final long[] batchTimestamps = new long[BATCH_SIZE];
+    private int batchSize;
+    private final ActionEventHandler batchHandler = new ActionEventHandler() {
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            batchDeviceIndexes[batchSize] = deviceIndex;
+            batchActions[batchSize] = action;
+            batchTimestamps[batchSize] = timestampNanos;
+            batchSize++;
+        }
+    };
+
+    /**
+     * Current clients, replaced by a copy when one connects or disconnects
+     */
+    private volatile Client[] clients = new Client[0];
+
+    private ActionEventBus.Subscriber subscriber;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Creates a bridge on {@link #DEFAULT_PORT} of the loopback address.
+     *
+     * @param actionEventBus the bus to stream the actions of
+     * @param deviceTable    the addresses of the device indexes on the bus
+     */
+    public ActionBridge(ActionEventBus actionEventBus, Sdc1DeviceTable deviceTable) {
+        this(actionEventBus, deviceTable, new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT),
+                DEFAULT_CLIENT_BUFFER_FRAMES
+        );
+    }
+
+    /**
+     * @param actionEventBus     the bus to stream the actions of
+     * @param deviceTable        the addresses of the device indexes on the bus
+     * @param bindAddress        address to listen on, port 0 for any free port
+     * @param clientBufferFrames number of frames buffered per client before dropping
+     */
+    public ActionBridge(ActionEventBus actionEventBus, Sdc1DeviceTable deviceTable, InetSocketAddress bindAddress,
+                        int clientBufferFrames) {
+        if (clientBufferFrames < 2) {
+            // Room for a device frame and its first action
+            throw new IllegalArgumentException("clientBufferFrames < 2");
+        }
+
+        this.actionEventBus = actionEventBus;
+        this.deviceTable = deviceTable;
+        this.bindAddress = bindAddress;
+        this.clientBufferFrames = clientBufferFrames;
+    }
+
+    /**
+     * Starts listening and streaming the actions published from now on.
+     *
+     * @throws IOException if the address can't be bound, e.g. the port is in use
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(bindAddress);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close(serverChannel);
+            selector.close();
+            throw e;
+        }
+
+        final Selector selector = this.selector;
+        subscriber = actionEventBus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST, new Runnable() {
+            @Override
+            public void run() {
+                selector.wakeup();
+            }
+        });
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "ActionBridge");
+        thread.setDaemon(true);
+        thread.start();
+
+        LOGGER.info("Listening on " + serverChannel.socket().getLocalSocketAddress());
+    }
+
+    /**
+     * Stops the thread and disconnects all clients.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        thread.join();
+        thread = null;
+
+        // The thread is gone, so the sockets can be closed from here
+        for (Client client : clients) {
+            close(client.channel);
+        }
+        clients = new Client[0];
+        close(serverChannel);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warning("Could not close the selector: " + e);
+        }
+        subscriber.close();
+    }
+
+    /**
+     * @return the port listened on, -1 if not started
+     */
+    public synchronized int getLocalPort() {
+        return thread == null ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clients.length;
+    }
+
+    /**
+     * @return the counters of the connected clients
+     */
+    public List<ClientStats> getClientStats() {
+        final Client[] clients = this.clients;
+        final ArrayList<ClientStats> stats = new ArrayList<>(clients.length);
+        for (Client client : clients) {
+            stats.add(new ClientStats(client.remoteAddress, client.sentFrameCount, client.droppedFrameCount));
+        }
+
+        return stats;
+    }
+
+    /**
+     * @return number of actions not streamed to any client because the bridge itself fell more
+     * than the capacity of the bus behind
+     */
+    public long getBusDroppedCount() {
+        final ActionEventBus.Subscriber subscriber;
+        synchronized (this) {
+            subscriber = this.subscriber;
+        }
+
+        return subscriber == null ? 0 : subscriber.getDroppedCount();
+    }
+
+    private void loop() {
+        while (running) {
+            batchSize = 0;
+            subscriber.poll(batchHandler, BATCH_SIZE);
+            if (batchSize > 0) {
+                for (Client client : clients) {
+                    append(client);
+                    write(client);
+                }
+            }
+
+            try {
+                // Don't wait while more actions may be waiting on the bus; otherwise wait until
+                // woken up by the next publish (or by stop())
+                if (batchSize < BATCH_SIZE && subscriber.prepareToBlock() && running) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Select failed: " + e);
+                break;
+            }
+
+            final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                final SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else {
+                    final Client client = (Client) key.attachment();
+                    if (key.isReadable()) {
+                        read(client);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(client);
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            // Keep the actions queued here, where they are counted when dropped, instead of in
+            // the kernel
+            channel.socket().setSendBufferSize(clientBufferFrames * BridgeFrame.SIZE);
+            final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            final Client client = new Client(channel, key, clientBufferFrames);
+            key.attach(client);
+
+            final Client[] current = clients;
+            final Client[] updated = new Client[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = client;
+            clients = updated;
+
+            LOGGER.info("Client connected: " + client.remoteAddress);
+        } catch (IOException e) {
+            LOGGER.warning("Could not accept a client: " + e);
+            close(channel);
+        }
+    }
+
+    /**
+     * Appends the batch to the buffer of the client, dropping what does not fit.
+     */
+    private void append(Client client) {
+        final ByteBuffer buffer = client.buffer;
+        long droppedCount = 0;
+
+        for (int i = 0; i < batchSize; i++) {
+            final int deviceIndex = batchDeviceIndexes[i];
+            final int sequence = client.sequence++;
+            final boolean announced = client.announced.get(deviceIndex);
+            final int size = announced ? BridgeFrame.SIZE : 2 * BridgeFrame.SIZE;
+
+            if (buffer.remaining() < size) {
+                droppedCount++;
+                continue;
+            }
+
+            if (!announced) {
+                BridgeFrame.putDevice(buffer, deviceIndex, deviceTable.getAddress(deviceIndex));
+                client.announced.set(deviceIndex);
+            }
+            BridgeFrame.putAction(buffer, deviceIndex, batchActions[i], sequence, batchTimestamps[i]);
+        }
+
+        if (droppedCount > 0) {
+            client.droppedFrameCount += droppedCount;
+        }
+    }
+
+    /**
+     * Writes as much of the buffer of the client as the socket takes, and waits for the socket to
+     * become writable if it did not take everything.
+     */
+    private void write(Client client) {
+        final ByteBuffer buffer = client.buffer;
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        final int written;
+        try {
+            written = client.channel.write(buffer);
+        } catch (IOException e) {
+            disconnect(client);
+
+            return;
+        }
+        buffer.compact();
+
+        // Frames are only counted once written completely
+        client.sentByteCount += written;
+        client.sentFrameCount = client.sentByteCount / BridgeFrame.SIZE;
+        client.key.interestOps(buffer.position() > 0
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ
+        );
+    }
+
+    /**
+     * Discards what the client sent, disconnecting it once it closed the socket.
+     */
+    private void read(Client client) {
+        final ByteBuffer discard = ByteBuffer.allocate(64);
+        try {
+            while (true) {
+                final int read = client.channel.read(discard);
+                if (read < 0) {
+                    disconnect(client);
+
+                    return;
+                } else if (read == 0) {
+                    return;
+                }
+                discard.clear();
+            }
+        } catch (IOException e) {
+            disconnect(client);
+        }
+    }
+
+    private void disconnect(Client client) {
+        client.key.cancel();
+        close(client.channel);
+
+        final Client[] current = clients;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == client) {
+                final Client[] updated = new Client[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                clients = updated;
+                break;
+            }
+        }
+
+        LOGGER.info("Client disconnected: " + client.remoteAddress + ", sent " + client.sentFrameCount
+                + ", dropped " + client.droppedFrameCount);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.warning("Could not close " + closeable + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.spinremote.sdc1_quickstart.bridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed-size binary frames an {@link ActionBridge} streams to its clients. Every frame is
+ * {@link #SIZE} bytes, big-endian, so a client can read them with a single fixed-size read and no
+ * parsing state:
+ *
+ *      offset  size  action frame                       device frame
+ *      0       2     device index (uint16)              device index (uint16)
+ *      2       1     {@link #TYPE_ACTION}               {@link #TYPE_DEVICE}
+ *      3       1     action (uint8)                     0
+ *      4       4     sequence (uint32)                  Bluetooth address (6 bytes)
+ *      8       8     timestamp (int64, nanoseconds)     (address), 0
+ *
+ * Before the first action of a SPIN remote SDC-1, a client is sent a device frame with its
+ * address, so the device index of the action frames can be mapped to the remote. The sequence
+ * counts the actions offered to the client, including the ones dropped because it fell behind,
+ * so a gap in the sequence is the number of actions it missed. The timestamp is the time the
+ * action was received, on the monotonic clock of the transport (SystemClock.elapsedRealtimeNanos()
+ * on Android), which is shared by all processes of the device.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class BridgeFrame {
+    public static final int SIZE = 16;
+
+    public static final int TYPE_ACTION = 0;
+    public static final int TYPE_DEVICE = 1;
+
+    /**
+     * Length of a Bluetooth address in bytes
+     */
+    public static final int ADDRESS_LENGTH = 6;
+
+    private BridgeFrame() {
+    }
+
+    /**
+     * Puts an action frame at the position of the buffer, advancing it by {@link #SIZE}.
+     */
+    public static void putAction(ByteBuffer buffer, int deviceIndex, int action, int sequence, long timestampNanos) {
+        buffer.putShort((short) deviceIndex);
+        buffer.put((byte) TYPE_ACTION);
+        buffer.put((byte) action);
+        buffer.putInt(sequence);
+        buffer.putLong(timestampNanos);
+    }
+
+    /**
+     * Puts a device frame at the position of the buffer, advancing it by {@link #SIZE}.
+     *
+     * @param address Bluetooth address, e.g. "F0:00:00:00:00:01"; all zeros if not valid
+     */
+    public static void putDevice(ByteBuffer buffer, int deviceIndex, String address) {
+        buffer.putShort((short) deviceIndex);
+        buffer.put((byte) TYPE_DEVICE);
+        buffer.put((byte) 0);
+
+        final boolean valid = address != null && address.length() == 3 * ADDRESS_LENGTH - 1;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            buffer.put(valid ? (byte) parseHexByte(address, 3 * i) : 0);
+        }
+        buffer.putShort((short) 0);
+        buffer.putInt(0);
+    }
+
+    /**
+     * @param offset offset of the frame in the buffer
+     */
+    public static int getDeviceIndex(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    /**
+     * @return {@link #TYPE_ACTION} or {@link #TYPE_DEVICE}
+     */
+    public static int getType(ByteBuffer buffer, int offset) {
+        return buffer.get(offset + 2) & 0xFF;
+    }
+
+    public static int getAction(ByteBuffer buffer, int offset) {
+        return buffer.get(offset + 3) & 0xFF;
+    }
+
+    /**
+     * @return the sequence as a uint32
+     */
+    public static long getSequence(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+    }
+
+    public static long getTimestampNanos(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + 8);
+    }
+
+    /**
+     * @return the address of a device frame, e.g. "F0:00:00:00:00:01"
+     */
+    public static String getAddress(ByteBuffer buffer, int offset) {
+        final StringBuilder address = new StringBuilder(3 * ADDRESS_LENGTH - 1);
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            if (i > 0) {
+                address.append(':');
+            }
+            final int b = buffer.get(offset + 4 + i) & 0xFF;
+            address.append(Character.toUpperCase(Character.forDigit(b >> 4, 16)));
+            address.append(Character.toUpperCase(Character.forDigit(b & 0x0F, 16)));
+        }
+
+        return address.toString();
+    }
+
+    /**
+     * @return the byte of the two hex digits at the index, 0 if not hex
+     */
+    private static int parseHexByte(String address, int index) {
+        final int high = Character.digit(address.charAt(index), 16);
+        final int low = Character.digit(address.charAt(index + 1), 16);
+
+        return high < 0 || low < 0 ? 0 : high << 4 | low;
+    }
+}
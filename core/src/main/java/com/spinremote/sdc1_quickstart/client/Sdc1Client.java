@@ -0,0 +1,798 @@
+package com.spinremote.sdc1_quickstart.client;
+
+import com.spinremote.sdc1_quickstart.gatt.MissingHandleException;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous client of a single SPIN remote SDC-1. Every operation returns an
+ * {@link Sdc1Future}, so the steps of setting up can be chained (see
+ * {@link #connectAndSetUp(boolean)}) instead of being hand-written in the GATT callbacks, and each
+ * one can be waited for, listened to or cancelled on its own.
+ *
+ * Every operation has a deadline: connecting {@link #DEFAULT_CONNECT_TIMEOUT_MILLIS} and each
+ * other operation {@link #DEFAULT_OPERATION_TIMEOUT_MILLIS} after it was started (see
+ * {@link #setTimeouts(long, long)}); a connection with auto connect has no deadline, as it waits
+ * for the remote on purpose. A watchdog fails the operation whose deadline has passed with a
+ * {@link TimeoutException}. Only the outstanding operation has a deadline, the queued ones wait
+ * behind it; as one that was sent and never called back leaves the GATT client stuck (only one
+ * operation can be outstanding), the watchdog then recovers by closing the link, failing all
+ * queued operations and notifying the {@link Listener}, which can connect again right away. So a
+ * queued operation waits at most for the deadlines of the operations ahead of it, which bounds the
+ * time to reach the ready state, or to fail, however the remote or the Bluetooth stack
+ * misbehaves.
+ *
+ * Operations are started one at a time, in the order they were called. Cancelling an operation
+ * that is still queued removes it; one that was already sent cannot be taken back, but its future
+ * is cancelled right away. Other failures are reported as a {@link Sdc1ClientException}, or a
+ * {@link MissingHandleException} by {@link #discover()}.
+ *
+ * All methods are thread-safe; futures complete and listeners are called on the threads of the
+ * transport, never while holding a lock of the client.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1Client {
+    private static final Logger LOGGER = Logger.getLogger("Sdc1Client");
+
+    /**
+     * Notified about the actions and the link, on a thread of the transport
+     */
+    public interface Listener {
+        /**
+         * @param timestampNanos time at which the action was received, on the clock of the
+         *                       {@link GattTransport}
+         */
+        void onAction(Sdc1Client client, int action, long timestampNanos);
+
+        /**
+         * Called when the connected link was lost or closed by the watchdog. All operations have
+         * failed by then; connect again to recover.
+         *
+         * @param cause a {@link TimeoutException} if closed by the watchdog, a
+         *              {@link Sdc1ClientException} if disconnected
+         */
+        void onDisconnected(Sdc1Client client, Exception cause);
+    }
+
+    /**
+     * Notified about the notifications of characteristics other than the Action Characteristic,
+     * e.g. the battery level, on a thread of the transport
+     */
+    public interface NotificationListener {
+        /**
+         * @param value the value notified, only valid during the call
+         */
+        void onNotification(Sdc1Client client, UUID characteristic, byte[] value);
+    }
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_OPERATION_TIMEOUT_MILLIS = 2000;
+
+    private static final int TYPE_DISCOVER = 1;
+    private static final int TYPE_WRITE_COMMAND = 2;
+    private static final int TYPE_ENABLE_NOTIFICATION = 3;
+    private static final int TYPE_READ = 4;
+
+    /**
+     * Value of the client characteristic configuration descriptor enabling notifications, equal to
+     * {@code BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE}
+     */
+    private static final byte[] ENABLE_NOTIFICATION_VALUE = {0x01, 0x00};
+
+    /**
+     * A queued or outstanding operation, completing with a result of type T
+     */
+    private static final class Operation<T> {
+        final int type;
+        /**
+         * Characteristic to read or enable the notification of, the Command Characteristic for
+         * commands
+         */
+        final UUID characteristic;
+        /**
+         * Command to write, null for the other types
+         */
+        final byte[] command;
+        final Sdc1Future<T> future = new Sdc1Future<>();
+        final long timeoutNanos;
+        /**
+         * Deadline, on the clock of the transport, once started
+         */
+        long deadlineNanos;
+        boolean started;
+        /**
+         * What the operation failed with once removed, null if it succeeded
+         */
+        Exception failure;
+        /**
+         * Value to complete the future with, once succeeded
+         */
+        T result;
+
+        Operation(int type, UUID characteristic, byte[] command, long timeoutNanos) {
+            this.type = type;
+            this.characteristic = characteristic;
+            this.command = command;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        /**
+         * Completes the future. Must be called without holding the lock of the client.
+         */
+        void finish() {
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.fail(failure);
+            }
+        }
+    }
+
+    private final GattTransport transport;
+    private final String address;
+    private final Listener listener;
+
+    /**
+     * {@link Sdc1Codec} encoding the commands, copied when queued
+     */
+    private final Sdc1Codec codec = new Sdc1Codec();
+
+    private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private long operationTimeoutMillis = DEFAULT_OPERATION_TIMEOUT_MILLIS;
+
+    /**
+     * Link while connecting or connected, null otherwise
+     */
+    private GattLink link;
+    private boolean connected;
+    /**
+     * Future of the connection attempt in progress, null if none
+     */
+    private Sdc1Future<Void> connectFuture;
+    /**
+     * Deadline of {@link #connectFuture}, on the clock of the transport, or Long.MAX_VALUE if none
+     */
+    private long connectDeadlineNanos;
+    /**
+     * Operations in order, the first one is outstanding once started
+     */
+    private final ArrayDeque<Operation<?>> operations = new ArrayDeque<>();
+    /**
+     * Notified about the other notifications, null if none
+     */
+    private volatile NotificationListener notificationListener;
+
+    /**
+     * Time the watchdog runs next, Long.MAX_VALUE if not scheduled
+     */
+    private long watchdogNanos = Long.MAX_VALUE;
+    private long timeoutCount;
+    private long recoveryCount;
+    private long ledColorFailureCount;
+
+    /**
+     * Counts and logs the failures of setting the LED color while setting up, which nobody waits
+     * for
+     */
+    private final Sdc1Future.Listener<Void> setUpLedColorListener = new Sdc1Future.Listener<Void>() {
+        @Override
+        public void onDone(Sdc1Future<Void> future) {
+            final Throwable failure = future.getFailure();
+            if (failure == null) {
+                return;
+            }
+
+            synchronized (Sdc1Client.this) {
+                ledColorFailureCount++;
+            }
+            LOGGER.warning(address + ": setting the LED color failed: " + failure);
+        }
+    };
+
+    /**
+     * Fails the operations whose deadline has passed
+     */
+    private final Runnable watchdog = new Runnable() {
+        @Override
+        public void run() {
+            checkDeadlines();
+        }
+    };
+
+    /**
+     * The {@link GattLink.Callback} completing the operations
+     */
+    private final GattLink.Callback linkCallback = new GattLink.Callback() {
+        @Override
+        public void onConnectionStateChange(GattLink link, int status, boolean connected) {
+            if (status == GattLink.STATUS_SUCCESS && connected) {
+                onConnected(link);
+            } else {
+                onDisconnected(link, status);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(GattLink link, int status) {
+            onOperationDone(link, TYPE_DISCOVER, null, null, status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(GattLink link, UUID characteristic, byte[] value, int status) {
+            onOperationDone(link, TYPE_WRITE_COMMAND, characteristic, null, status);
+        }
+
+        @Override
+        public void onCharacteristicRead(GattLink link, UUID characteristic, byte[] value, int status) {
+            onOperationDone(link, TYPE_READ, characteristic, value, status);
+        }
+
+        @Override
+        public void onDescriptorWrite(GattLink link, UUID characteristic, UUID descriptor, int status) {
+            onOperationDone(link, TYPE_ENABLE_NOTIFICATION, characteristic, null, status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(GattLink link, UUID characteristic, byte[] value) {
+            if (!Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)) {
+                final NotificationListener notificationListener = Sdc1Client.this.notificationListener;
+                if (notificationListener != null) {
+                    notificationListener.onNotification(Sdc1Client.this, characteristic, value);
+                }
+
+                return;
+            }
+
+            final int action = Sdc1Codec.decodeAction(value);
+            if (action != Sdc1Codec.ACTION_NONE) {
+                listener.onAction(Sdc1Client.this, action, transport.nowNanos());
+            }
+        }
+    };
+
+    /**
+     * @param transport used to connect
+     * @param address   address of the SPIN remote SDC-1 to connect to
+     * @param listener  notified about the actions and the link
+     */
+    public Sdc1Client(GattTransport transport, String address, Listener listener) {
+        this.transport = transport;
+        this.address = address;
+        this.listener = listener;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the current time, in nanoseconds on the clock of the {@link GattTransport}
+     */
+    long nowNanos() {
+        return transport.nowNanos();
+    }
+
+    /**
+     * @param connectTimeoutMillis   deadline of a direct connection attempt,
+     *                               {@link #DEFAULT_CONNECT_TIMEOUT_MILLIS} if not set
+     * @param operationTimeoutMillis deadline of every other operation from the moment it is sent,
+     *                               {@link #DEFAULT_OPERATION_TIMEOUT_MILLIS} if not set
+     */
+    public synchronized void setTimeouts(long connectTimeoutMillis, long operationTimeoutMillis) {
+        if (connectTimeoutMillis <= 0 || operationTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeouts must be > 0");
+        }
+
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.operationTimeoutMillis = operationTimeoutMillis;
+    }
+
+    /**
+     * @param notificationListener notified about the notifications of characteristics other than
+     *                             the Action Characteristic, null for none
+     */
+    public void setNotificationListener(NotificationListener notificationListener) {
+        this.notificationListener = notificationListener;
+    }
+
+    /**
+     * Connects, runs service discovery and sets up the remote: enables and forces the action
+     * notification and sets the LED color to red, in that order so actions can arrive as soon as
+     * possible (see {@link com.spinremote.sdc1_quickstart.connection.SetupPlan#FAST}).
+     *
+     * @param autoConnect see {@link #connect(boolean)}
+     * @return the future of the chain up to forcing the action notification, cancel it to stop at
+     * the current step; the LED color is set after it, its failures are counted by
+     * {@link #getLedColorFailureCount()}
+     */
+    public Sdc1Future<Void> connectAndSetUp(boolean autoConnect) {
+        return connect(autoConnect).then(new Sdc1Future.Continuation<Void, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Void value) {
+                return discover();
+            }
+        }).then(new Sdc1Future.Continuation<Void, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Void value) {
+                return enableActions();
+            }
+        }).then(new Sdc1Future.Continuation<Void, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Void value) {
+                final Sdc1Future<Void> forced = forceActionNotification(true);
+                // Queued behind it, off the critical path
+                setLedColor(0xFF, 0x00, 0x00).addListener(setUpLedColorListener);
+
+                return forced;
+            }
+        });
+    }
+
+    /**
+     * Connects to the remote. Cancelling the future stops connecting.
+     *
+     * @param autoConnect false to connect directly (with a deadline), true to let Android connect
+     *                    as soon as the remote becomes available (without a deadline)
+     * @return the future of the connection, failed if already connected or connecting
+     */
+    public Sdc1Future<Void> connect(boolean autoConnect) {
+        final Sdc1Future<Void> future = new Sdc1Future<>();
+        synchronized (this) {
+            if (link != null) {
+                return Sdc1Future.failed(new IllegalStateException("Already connected or connecting"));
+            }
+
+            connectFuture = future;
+            connectDeadlineNanos = autoConnect
+                    ? Long.MAX_VALUE
+                    : transport.nowNanos() + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+            link = transport.connect(address, autoConnect, linkCallback);
+            if (link == null) {
+                connectFuture = null;
+                future.fail(new Sdc1ClientException(Sdc1ClientException.REASON_NOT_STARTED, 0, "Could not connect"));
+
+                return future;
+            }
+            scheduleWatchdog(connectDeadlineNanos);
+        }
+
+        future.addListener(new Sdc1Future.Listener<Void>() {
+            @Override
+            public void onDone(Sdc1Future<Void> future) {
+                if (future.isCancelled()) {
+                    onConnectCancelled(future);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Discovers the services and checks the SPIN Service is complete, failing with a
+     * {@link MissingHandleException} if not.
+     */
+    public Sdc1Future<Void> discover() {
+        return enqueue(new Operation<Void>(TYPE_DISCOVER, null, null, operationTimeoutNanos()));
+    }
+
+    /**
+     * Overrides the LED color.
+     *
+     * @param red   red color component (0 - 255)
+     * @param green green color component (0 - 255)
+     * @param blue  blue color component (0 - 255)
+     */
+    public Sdc1Future<Void> setLedColor(int red, int green, int blue) {
+        final byte[] command;
+        synchronized (codec) {
+            command = codec.setLedColor(red, green, blue).clone();
+        }
+
+        return writeCommand(command);
+    }
+
+    /**
+     * Enables the action notification, locally and on the remote.
+     */
+    public Sdc1Future<Void> enableActions() {
+        return enableNotification(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID);
+    }
+
+    /**
+     * Enables the notification of a characteristic, locally and on the remote. The notifications
+     * of other characteristics than the Action Characteristic go to the
+     * {@link NotificationListener}.
+     */
+    public Sdc1Future<Void> enableNotification(UUID characteristic) {
+        return enqueue(new Operation<Void>(TYPE_ENABLE_NOTIFICATION, characteristic, null, operationTimeoutNanos()));
+    }
+
+    /**
+     * Reads a characteristic, e.g. one of the Device Information Service. See {@link Sdc1ReadCache}
+     * to avoid reading the same value over and over.
+     *
+     * @return the future of the value read
+     */
+    public Sdc1Future<byte[]> read(UUID characteristic) {
+        return enqueue(new Operation<byte[]>(TYPE_READ, characteristic, null, operationTimeoutNanos()));
+    }
+
+    /**
+     * @param force whether the remote sends all actions, instead of only those its active
+     *              profile does not handle itself
+     */
+    public Sdc1Future<Void> forceActionNotification(boolean force) {
+        final byte[] command;
+        synchronized (codec) {
+            command = codec.forceActionNotification(force).clone();
+        }
+
+        return writeCommand(command);
+    }
+
+    /**
+     * Cancels the LED override, so the LED shows the color of the active profile again.
+     */
+    public Sdc1Future<Void> cancelLedOverride() {
+        final byte[] command;
+        synchronized (codec) {
+            command = codec.cancelLedOverride().clone();
+        }
+
+        return writeCommand(command);
+    }
+
+    private Sdc1Future<Void> writeCommand(byte[] command) {
+        return enqueue(new Operation<Void>(TYPE_WRITE_COMMAND, Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID, command,
+                operationTimeoutNanos()
+        ));
+    }
+
+    /**
+     * Closes the link, failing all operations. The client can connect again afterwards.
+     */
+    public void close() {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        final Sdc1Future<Void> connecting;
+        synchronized (this) {
+            connecting = connectFuture;
+            release(new Sdc1ClientException(Sdc1ClientException.REASON_DISCONNECTED, 0, "Closed"), done);
+        }
+
+        finish(done, connecting, new Sdc1ClientException(Sdc1ClientException.REASON_DISCONNECTED, 0, "Closed"));
+    }
+
+    /**
+     * @return whether connected, false while connecting
+     */
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return number of operations failed by the watchdog
+     */
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return number of times the watchdog closed the link because an operation was stuck
+     */
+    public synchronized long getRecoveryCount() {
+        return recoveryCount;
+    }
+
+    /**
+     * @return number of times setting the LED color failed while setting up, e.g. because the
+     * link was lost right after the action notification was forced
+     */
+    public synchronized long getLedColorFailureCount() {
+        return ledColorFailureCount;
+    }
+
+    private <T> Sdc1Future<T> enqueue(final Operation<T> operation) {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        synchronized (this) {
+            if (!connected) {
+                return Sdc1Future.failed(new Sdc1ClientException(Sdc1ClientException.REASON_DISCONNECTED, 0, "Not connected"));
+            }
+
+            operations.add(operation);
+            startNext(done);
+        }
+        finish(done, null, null);
+
+        operation.future.addListener(new Sdc1Future.Listener<T>() {
+            @Override
+            public void onDone(Sdc1Future<T> future) {
+                if (future.isCancelled()) {
+                    onOperationCancelled(operation);
+                }
+            }
+        });
+
+        return operation.future;
+    }
+
+    private void onConnected(GattLink link) {
+        final Sdc1Future<Void> future;
+        synchronized (this) {
+            if (link != this.link || connected) {
+                return;
+            }
+
+            connected = true;
+            connectDeadlineNanos = Long.MAX_VALUE;
+            future = connectFuture;
+            connectFuture = null;
+        }
+
+        future.complete(null);
+    }
+
+    private void onDisconnected(GattLink link, int status) {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        final Sdc1Future<Void> connecting;
+        final boolean wasConnected;
+        final Sdc1ClientException cause = new Sdc1ClientException(Sdc1ClientException.REASON_DISCONNECTED, status,
+                "Disconnected, status " + status
+        );
+        synchronized (this) {
+            if (link != this.link) {
+                return;
+            }
+
+            connecting = connectFuture;
+            wasConnected = connected;
+            release(cause, done);
+        }
+
+        finish(done, connecting, cause);
+        if (wasConnected) {
+            listener.onDisconnected(this, cause);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onOperationDone(GattLink link, int type, UUID characteristic, byte[] value, int status) {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        synchronized (this) {
+            final Operation<?> operation = operations.peek();
+            if (link != this.link || operation == null || !operation.started || operation.type != type
+                    || (characteristic != null && !characteristic.equals(operation.characteristic))) {
+                // Late callback of an operation the watchdog gave up on
+                return;
+            }
+            operations.poll();
+
+            if (status != GattLink.STATUS_SUCCESS) {
+                operation.failure = new Sdc1ClientException(Sdc1ClientException.REASON_STATUS, status,
+                        "Operation failed, status " + status
+                );
+            } else if (type == TYPE_DISCOVER) {
+                try {
+                    MissingHandleException.check(link);
+                } catch (MissingHandleException e) {
+                    operation.failure = e;
+                }
+            } else if (type == TYPE_READ) {
+                // The value is only valid during the callback
+                ((Operation<byte[]>) operation).result = value.clone();
+            }
+            done.add(operation);
+
+            startNext(done);
+        }
+
+        finish(done, null, null);
+    }
+
+    private void onConnectCancelled(Sdc1Future<Void> future) {
+        synchronized (this) {
+            if (future != connectFuture) {
+                return;
+            }
+
+            connectFuture = null;
+            release(null, new ArrayList<Operation<?>>());
+        }
+    }
+
+    private void onOperationCancelled(Operation<?> operation) {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        synchronized (this) {
+            // An outstanding operation is only removed once it completes or times out, the link
+            // accepts no other operation before that anyway
+            if (!operation.started) {
+                operations.remove(operation);
+            }
+            startNext(done);
+        }
+
+        finish(done, null, null);
+    }
+
+    private void checkDeadlines() {
+        final ArrayList<Operation<?>> done = new ArrayList<>();
+        Sdc1Future<Void> connecting = null;
+        TimeoutException recoveryCause = null;
+        boolean wasConnected = false;
+        synchronized (this) {
+            watchdogNanos = Long.MAX_VALUE;
+            final long nowNanos = transport.nowNanos();
+
+            if (connectFuture != null && nowNanos - connectDeadlineNanos >= 0) {
+                timeoutCount++;
+                connecting = connectFuture;
+                recoveryCause = new TimeoutException("Not connected within " + connectTimeoutMillis + " ms");
+                release(recoveryCause, done);
+            }
+
+            final Iterator<Operation<?>> iterator = operations.iterator();
+            while (recoveryCause == null && iterator.hasNext()) {
+                final Operation<?> operation = iterator.next();
+                if (!operation.started || nowNanos - operation.deadlineNanos < 0) {
+                    continue;
+                }
+
+                // The link will not accept another operation until this one calls back, which it
+                // may never do: start over with a new link
+                timeoutCount++;
+                recoveryCount++;
+                LOGGER.warning(address + ": operation " + operation.type + " stuck, closing the link");
+                iterator.remove();
+                operation.failure = new TimeoutException("No response within " + operationTimeoutMillis + " ms");
+                done.add(operation);
+
+                wasConnected = connected;
+                recoveryCause = (TimeoutException) operation.failure;
+                release(new Sdc1ClientException(Sdc1ClientException.REASON_DISCONNECTED, 0,
+                        "Link closed after a stuck operation"
+                ), done);
+            }
+
+            rescheduleWatchdog();
+        }
+
+        finish(done, connecting, recoveryCause);
+        if (wasConnected) {
+            listener.onDisconnected(this, recoveryCause);
+        }
+    }
+
+    /**
+     * Starts the first operation, unless it is outstanding already; operations the link refuses
+     * to start are failed. Must be called while holding the lock.
+     */
+    private void startNext(ArrayList<Operation<?>> done) {
+        while (connected && !operations.isEmpty() && !operations.peek().started) {
+            final Operation<?> operation = operations.peek();
+            if (operation.future.isDone()) {
+                // Cancelled while queued
+                operations.poll();
+                continue;
+            }
+
+            final boolean started;
+            switch (operation.type) {
+                case TYPE_DISCOVER:
+                    started = link.discoverServices();
+                    break;
+                case TYPE_WRITE_COMMAND:
+                    started = link.writeCharacteristic(operation.characteristic, operation.command);
+                    break;
+                case TYPE_ENABLE_NOTIFICATION:
+                    started = link.setCharacteristicNotification(operation.characteristic, true)
+                            && link.writeDescriptor(
+                                    operation.characteristic,
+                                    Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID,
+                                    ENABLE_NOTIFICATION_VALUE
+                            );
+                    break;
+                case TYPE_READ:
+                    started = link.readCharacteristic(operation.characteristic);
+                    break;
+                default:
+                    started = false;
+                    break;
+            }
+
+            if (started) {
+                operation.started = true;
+                operation.deadlineNanos = transport.nowNanos() + operation.timeoutNanos;
+                scheduleWatchdog(operation.deadlineNanos);
+            } else {
+                operations.poll();
+                operation.failure = new Sdc1ClientException(Sdc1ClientException.REASON_NOT_STARTED, 0,
+                        "Operation " + operation.type + " not started"
+                );
+                done.add(operation);
+            }
+        }
+    }
+
+    /**
+     * Closes the link and removes all operations, failing them with the cause. Must be called
+     * while holding the lock; the futures are completed by {@link #finish}.
+     */
+    private void release(Exception cause, ArrayList<Operation<?>> done) {
+        if (link != null) {
+            link.close();
+            link = null;
+        }
+        connected = false;
+        connectFuture = null;
+        connectDeadlineNanos = Long.MAX_VALUE;
+
+        while (!operations.isEmpty()) {
+            final Operation<?> operation = operations.poll();
+            operation.failure = cause;
+            done.add(operation);
+        }
+    }
+
+    /**
+     * Completes the futures of the removed operations and fails the connection attempt, if any.
+     * Must be called without holding the lock.
+     */
+    private static void finish(ArrayList<Operation<?>> done, Sdc1Future<Void> connecting, Exception connectFailure) {
+        if (connecting != null) {
+            connecting.fail(connectFailure);
+        }
+        for (Operation<?> operation : done) {
+            operation.finish();
+        }
+    }
+
+    /**
+     * Makes sure the watchdog runs at the deadline. Must be called while holding the lock.
+     */
+    private void scheduleWatchdog(long deadlineNanos) {
+        // Long.MAX_VALUE means none, not a time: subtracting it overflows on a negative clock
+        if (deadlineNanos == Long.MAX_VALUE
+                || (watchdogNanos != Long.MAX_VALUE && deadlineNanos - watchdogNanos >= 0)) {
+            return;
+        }
+
+        transport.removeCallbacks(watchdog);
+        watchdogNanos = deadlineNanos;
+        // Round up, running early would only reschedule
+        final long delayNanos = Math.max(0, deadlineNanos - transport.nowNanos());
+        transport.postDelayed(watchdog, (delayNanos + 999999) / 1000000);
+    }
+
+    /**
+     * Schedules the watchdog at the earliest deadline left, if any. Must be called while holding
+     * the lock.
+     */
+    private void rescheduleWatchdog() {
+        long earliestNanos = Long.MAX_VALUE;
+        if (connectFuture != null && connectDeadlineNanos != Long.MAX_VALUE) {
+            earliestNanos = connectDeadlineNanos;
+        }
+        for (Operation<?> operation : operations) {
+            if (operation.started && (earliestNanos == Long.MAX_VALUE || operation.deadlineNanos - earliestNanos < 0)) {
+                earliestNanos = operation.deadlineNanos;
+            }
+        }
+
+        scheduleWatchdog(earliestNanos);
+    }
+
+    private synchronized long operationTimeoutNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(operationTimeoutMillis);
+    }
+}
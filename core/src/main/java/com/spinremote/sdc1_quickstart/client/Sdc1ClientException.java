@@ -0,0 +1,48 @@
+package com.spinremote.sdc1_quickstart.client;
+
+/**
+ * Failure of an {@link Sdc1Client} operation other than a deadline passing (which fails it with a
+ * {@link java.util.concurrent.TimeoutException}) or missing handles (a
+ * {@link com.spinremote.sdc1_quickstart.gatt.MissingHandleException}).
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1ClientException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The remote reported a failure status
+     */
+    public static final int REASON_STATUS = 1;
+    /**
+     * The link refused to start the operation
+     */
+    public static final int REASON_NOT_STARTED = 2;
+    /**
+     * Not connected, or disconnected before the operation completed
+     */
+    public static final int REASON_DISCONNECTED = 3;
+
+    private final int reason;
+    private final int status;
+
+    Sdc1ClientException(int reason, int status, String message) {
+        super(message);
+        this.reason = reason;
+        this.status = status;
+    }
+
+    /**
+     * @return why the operation failed, one of the REASON_ constants of this class
+     */
+    public int getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the GATT status reported, only meaningful for {@link #REASON_STATUS}
+     */
+    public int getStatus() {
+        return status;
+    }
+}
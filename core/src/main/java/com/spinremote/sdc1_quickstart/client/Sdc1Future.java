@@ -0,0 +1,312 @@
+package com.spinremote.sdc1_quickstart.client;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous {@link Sdc1Client} operation: completed with a value, failed with an
+ * exception, or cancelled. Besides blocking with {@link #get()}, listeners can be added and
+ * operations chained with {@link #then(Continuation)}, without blocking any thread (the standard
+ * {@code CompletableFuture} needs Java 8 and API 24).
+ *
+ * Listeners run on the thread completing the future (a thread of the transport), or right away on
+ * the calling thread if it is already done. All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1Future<T> implements Future<T> {
+    /**
+     * Notified once the future is done
+     */
+    public interface Listener<T> {
+        void onDone(Sdc1Future<T> future);
+    }
+
+    /**
+     * Next step of a chain, started with the value of the previous step
+     */
+    public interface Continuation<T, U> {
+        /**
+         * @return the future of the next step, not null
+         * @throws Exception to fail the chain
+         */
+        Sdc1Future<U> then(T value) throws Exception;
+    }
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private int state = PENDING;
+    private T value;
+    private Throwable failure;
+    /**
+     * Listeners to notify once done, null once notified
+     */
+    private ArrayList<Listener<T>> listeners = new ArrayList<>();
+
+    /**
+     * @return a future already completed with the value
+     */
+    public static <T> Sdc1Future<T> completed(T value) {
+        final Sdc1Future<T> future = new Sdc1Future<>();
+        future.complete(value);
+
+        return future;
+    }
+
+    /**
+     * @return a future already failed with the exception
+     */
+    public static <T> Sdc1Future<T> failed(Throwable failure) {
+        final Sdc1Future<T> future = new Sdc1Future<>();
+        future.fail(failure);
+
+        return future;
+    }
+
+    /**
+     * @return whether the future was completed, false if it was already done
+     */
+    public boolean complete(T value) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = COMPLETED;
+            this.value = value;
+        }
+
+        notifyListeners();
+
+        return true;
+    }
+
+    /**
+     * @return whether the future was failed, false if it was already done
+     */
+    public boolean fail(Throwable failure) {
+        if (failure == null) {
+            throw new IllegalArgumentException("failure == null");
+        }
+
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = FAILED;
+            this.failure = failure;
+        }
+
+        notifyListeners();
+
+        return true;
+    }
+
+    /**
+     * Cancels the future, if not done yet. An operation that has already been sent to the remote
+     * cannot be taken back, but nothing waits for it anymore.
+     *
+     * @param mayInterruptIfRunning ignored, operations are never run on a thread of their own
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = CANCELLED;
+        }
+
+        notifyListeners();
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    /**
+     * @return the exception the future failed with, null if not failed
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        while (state == PENDING) {
+            final long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+
+        return getResult();
+    }
+
+    /**
+     * Adds a listener, notified right away if already done.
+     */
+    public void addListener(Listener<T> listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+
+                return;
+            }
+        }
+
+        listener.onDone(this);
+    }
+
+    /**
+     * Chains the next step: once this future completes, the continuation is started with its
+     * value. A failure or cancellation of any step fails or cancels the returned future, and
+     * cancelling the returned future cancels the step in progress.
+     *
+     * @return the future of the result of the whole chain
+     */
+    public <U> Sdc1Future<U> then(final Continuation<? super T, U> continuation) {
+        final Sdc1Future<U> next = new Sdc1Future<>();
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onDone(Sdc1Future<T> future) {
+                final int state;
+                final T value;
+                final Throwable failure;
+                synchronized (future) {
+                    state = future.state;
+                    value = future.value;
+                    failure = future.failure;
+                }
+
+                if (state == CANCELLED) {
+                    next.cancel(false);
+
+                    return;
+                } else if (state == FAILED) {
+                    next.fail(failure);
+
+                    return;
+                } else if (next.isDone()) {
+                    // Cancelled meanwhile
+                    return;
+                }
+
+                final Sdc1Future<U> step;
+                try {
+                    step = continuation.then(value);
+                } catch (Exception e) {
+                    next.fail(e);
+
+                    return;
+                }
+                if (step == null) {
+                    next.fail(new NullPointerException("Continuation " + continuation + " returned null"));
+
+                    return;
+                }
+
+                next.follow(step);
+            }
+        });
+
+        // Cancelling the chain cancels this step, if still running
+        next.addListener(new Listener<U>() {
+            @Override
+            public void onDone(Sdc1Future<U> future) {
+                if (future.isCancelled()) {
+                    cancel(false);
+                }
+            }
+        });
+
+        return next;
+    }
+
+    /**
+     * Completes this future like the step does, and cancels the step when this one is cancelled.
+     */
+    private void follow(final Sdc1Future<T> step) {
+        step.addListener(new Listener<T>() {
+            @Override
+            public void onDone(Sdc1Future<T> future) {
+                final int state;
+                final T value;
+                final Throwable failure;
+                synchronized (future) {
+                    state = future.state;
+                    value = future.value;
+                    failure = future.failure;
+                }
+
+                if (state == COMPLETED) {
+                    complete(value);
+                } else if (state == FAILED) {
+                    fail(failure);
+                } else {
+                    cancel(false);
+                }
+            }
+        });
+        addListener(new Listener<T>() {
+            @Override
+            public void onDone(Sdc1Future<T> future) {
+                if (future.isCancelled()) {
+                    step.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Must be called while holding the lock, once done.
+     */
+    private T getResult() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw new CancellationException();
+        } else if (state == FAILED) {
+            throw new ExecutionException(failure);
+        }
+
+        return value;
+    }
+
+    private void notifyListeners() {
+        final ArrayList<Listener<T>> listeners;
+        synchronized (this) {
+            notifyAll();
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+
+        for (Listener<T> listener : listeners) {
+            listener.onDone(this);
+        }
+    }
+}
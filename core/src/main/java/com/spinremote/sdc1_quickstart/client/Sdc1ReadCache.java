@@ -0,0 +1,401 @@
+package com.spinremote.sdc1_quickstart.client;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typed, cached reads of the characteristics of a SPIN remote SDC-1 besides the SPIN Service: the
+ * Device Information Service and the battery level of the Battery Service. Every read takes the
+ * single operation slot of the link for a round trip, so a dashboard polling these values would
+ * delay the commands and starve itself; the cache answers from memory while a value is fresh.
+ *
+ * Each {@link Field} has a time to live: the Device Information never changes while connected so
+ * it is read once, the battery level is read again after {@link #BATTERY_LEVEL_TTL_MILLIS}.
+ * Concurrent gets of a value that is not cached share a single read. Once subscribed to with
+ * {@link #subscribe(Field)}, every notification of a field replaces its cached value, so a
+ * notifying field never has to be read again at all.
+ *
+ * Set the cache as the {@link Sdc1Client.NotificationListener} of its client, and
+ * {@link #clear()} it when the client disconnects (the remote may have changed, e.g. its
+ * firmware). The active profile is not part of the SPIN remote Bluetooth Smart Services
+ * specification (v1.0), so it can't be read.
+ *
+ * All methods are thread-safe; the futures complete on a thread of the transport, or right away
+ * on a hit.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1ReadCache implements Sdc1Client.NotificationListener {
+    /**
+     * Decodes the value of a characteristic
+     */
+    public interface Decoder<T> {
+        /**
+         * @throws IllegalArgumentException if the value is invalid
+         */
+        T decode(byte[] value);
+    }
+
+    /**
+     * A characteristic that can be read, with its type and default time to live
+     */
+    public static final class Field<T> {
+        private final String name;
+        private final UUID characteristic;
+        private final long ttlMillis;
+        private final Decoder<T> decoder;
+
+        /**
+         * @param ttlMillis time a value read stays fresh, Long.MAX_VALUE to never read it again
+         */
+        public Field(String name, UUID characteristic, long ttlMillis, Decoder<T> decoder) {
+            this.name = name;
+            this.characteristic = characteristic;
+            this.ttlMillis = ttlMillis;
+            this.decoder = decoder;
+        }
+
+        public UUID getCharacteristic() {
+            return characteristic;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Decodes a UTF-8 string, as used by the Device Information Service
+     */
+    public static final Decoder<String> UTF8_STRING = new Decoder<String>() {
+        private final Charset utf8 = Charset.forName("UTF-8");
+
+        @Override
+        public String decode(byte[] value) {
+            return new String(value, utf8);
+        }
+    };
+
+    /**
+     * Decodes a uint8
+     */
+    public static final Decoder<Integer> UINT8 = new Decoder<Integer>() {
+        @Override
+        public Integer decode(byte[] value) {
+            if (value.length != 1) {
+                throw new IllegalArgumentException("Expected 1 byte, got " + value.length);
+            }
+
+            return value[0] & 0xFF;
+        }
+    };
+
+    public static final long BATTERY_LEVEL_TTL_MILLIS = 60000;
+
+    public static final Field<String> MANUFACTURER_NAME = new Field<>("manufacturer_name",
+            Sdc1Uuids.MANUFACTURER_NAME_CHARACTERISTIC_UUID, Long.MAX_VALUE, UTF8_STRING
+    );
+    public static final Field<String> MODEL_NUMBER = new Field<>("model_number",
+            Sdc1Uuids.MODEL_NUMBER_CHARACTERISTIC_UUID, Long.MAX_VALUE, UTF8_STRING
+    );
+    public static final Field<String> SERIAL_NUMBER = new Field<>("serial_number",
+            Sdc1Uuids.SERIAL_NUMBER_CHARACTERISTIC_UUID, Long.MAX_VALUE, UTF8_STRING
+    );
+    public static final Field<String> FIRMWARE_REVISION = new Field<>("firmware_revision",
+            Sdc1Uuids.FIRMWARE_REVISION_CHARACTERISTIC_UUID, Long.MAX_VALUE, UTF8_STRING
+    );
+    public static final Field<String> HARDWARE_REVISION = new Field<>("hardware_revision",
+            Sdc1Uuids.HARDWARE_REVISION_CHARACTERISTIC_UUID, Long.MAX_VALUE, UTF8_STRING
+    );
+    /**
+     * Battery level in percent (0 - 100)
+     */
+    public static final Field<Integer> BATTERY_LEVEL = new Field<>("battery_level",
+            Sdc1Uuids.BATTERY_LEVEL_CHARACTERISTIC_UUID, BATTERY_LEVEL_TTL_MILLIS, UINT8
+    );
+
+    /**
+     * Cached value and read in progress of a field
+     */
+    private static final class Entry<T> {
+        final Field<T> field;
+        T value;
+        boolean cached;
+        /**
+         * Time the value was read or notified, on the clock of the transport of the client
+         */
+        long readNanos;
+        /**
+         * Whether the value is kept fresh by notifications
+         */
+        boolean subscribed;
+        /**
+         * Future of the read in progress, shared by all gets, null if none
+         */
+        Sdc1Future<T> reading;
+        /**
+         * Incremented on every change other than a read completing, so an older read does not
+         * overwrite a newer (e.g. notified) value
+         */
+        int generation;
+
+        Entry(Field<T> field) {
+            this.field = field;
+        }
+    }
+
+    private final Sdc1Client client;
+
+    /**
+     * Entries by characteristic
+     */
+    private final HashMap<UUID, Entry<?>> entries = new HashMap<>();
+
+    private long hitCount;
+    private long readCount;
+    private long sharedCount;
+    private long notifiedCount;
+
+    /**
+     * @param client client to read with, set this cache as its {@link Sdc1Client.NotificationListener}
+     */
+    public Sdc1ReadCache(Sdc1Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Gets the value of a field, from the cache if fresh, otherwise by reading it (or joining the
+     * read in progress). Cancelling the future does not cancel a shared read.
+     */
+    public <T> Sdc1Future<T> get(final Field<T> field) {
+        final Entry<T> entry;
+        final Sdc1Future<T> reading;
+        final int generation;
+        synchronized (this) {
+            entry = getEntry(field);
+            if (entry.cached && (entry.subscribed || isFresh(entry, client.nowNanos()))) {
+                hitCount++;
+
+                return Sdc1Future.completed(entry.value);
+            }
+
+            if (entry.reading != null) {
+                sharedCount++;
+
+                return share(entry.reading);
+            }
+
+            readCount++;
+            reading = new Sdc1Future<>();
+            entry.reading = reading;
+            generation = entry.generation;
+        }
+
+        client.read(field.characteristic).addListener(new Sdc1Future.Listener<byte[]>() {
+            @Override
+            public void onDone(Sdc1Future<byte[]> future) {
+                onRead(entry, generation, reading, future);
+            }
+        });
+
+        return share(reading);
+    }
+
+    /**
+     * Enables the notification of a field, after which every notification replaces its value and
+     * it is no longer read on expiry.
+     *
+     * @return the future of enabling the notification
+     */
+    public <T> Sdc1Future<Void> subscribe(final Field<T> field) {
+        synchronized (this) {
+            getEntry(field);
+        }
+
+        final Sdc1Future<Void> enabled = client.enableNotification(field.characteristic);
+        enabled.addListener(new Sdc1Future.Listener<Void>() {
+            @Override
+            public void onDone(Sdc1Future<Void> future) {
+                if (!future.isCancelled() && future.getFailure() == null) {
+                    synchronized (Sdc1ReadCache.this) {
+                        getEntry(field).subscribed = true;
+                    }
+                }
+            }
+        });
+
+        return enabled;
+    }
+
+    /**
+     * Drops the cached value of a field, so the next get reads it.
+     */
+    public synchronized void invalidate(Field<?> field) {
+        final Entry<?> entry = entries.get(field.characteristic);
+        if (entry != null) {
+            entry.cached = false;
+            entry.value = null;
+            entry.generation++;
+        }
+    }
+
+    /**
+     * Drops all cached values and subscriptions, e.g. once disconnected.
+     */
+    public synchronized void clear() {
+        for (Entry<?> entry : entries.values()) {
+            entry.cached = false;
+            entry.value = null;
+            entry.subscribed = false;
+            entry.generation++;
+        }
+    }
+
+    /**
+     * @return number of gets answered from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of reads made
+     */
+    public synchronized long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return number of gets that joined a read in progress
+     */
+    public synchronized long getSharedCount() {
+        return sharedCount;
+    }
+
+    /**
+     * @return number of notifications that replaced a cached value
+     */
+    public synchronized long getNotifiedCount() {
+        return notifiedCount;
+    }
+
+    @Override
+    public void onNotification(Sdc1Client client, UUID characteristic, byte[] value) {
+        final Entry<?> entry;
+        synchronized (this) {
+            entry = entries.get(characteristic);
+            if (entry == null) {
+                return;
+            }
+            notifiedCount++;
+        }
+
+        onNotification(entry, value);
+    }
+
+    private <T> void onNotification(Entry<T> entry, byte[] value) {
+        T decoded = null;
+        boolean valid = true;
+        try {
+            decoded = entry.field.decoder.decode(value);
+        } catch (IllegalArgumentException e) {
+            valid = false;
+        }
+
+        synchronized (this) {
+            entry.generation++;
+            entry.cached = valid;
+            entry.value = decoded;
+            entry.readNanos = client.nowNanos();
+        }
+    }
+
+    private <T> void onRead(Entry<T> entry, int generation, Sdc1Future<T> reading, Sdc1Future<byte[]> read) {
+        T value = null;
+        Throwable failure = read.isCancelled() ? null : read.getFailure();
+        if (!read.isCancelled() && failure == null) {
+            try {
+                value = entry.field.decoder.decode(getValue(read));
+            } catch (IllegalArgumentException e) {
+                failure = e;
+            }
+        }
+
+        synchronized (this) {
+            entry.reading = null;
+            if (!read.isCancelled() && failure == null && entry.generation == generation) {
+                entry.cached = true;
+                entry.value = value;
+                entry.readNanos = client.nowNanos();
+            }
+        }
+
+        if (read.isCancelled()) {
+            reading.cancel(false);
+        } else if (failure != null) {
+            reading.fail(failure);
+        } else {
+            reading.complete(value);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getEntry(Field<T> field) {
+        Entry<T> entry = (Entry<T>) entries.get(field.characteristic);
+        if (entry == null) {
+            entry = new Entry<>(field);
+            entries.put(field.characteristic, entry);
+        }
+
+        return entry;
+    }
+
+    private static boolean isFresh(Entry<?> entry, long nowNanos) {
+        return entry.field.ttlMillis == Long.MAX_VALUE
+                || nowNanos - entry.readNanos < TimeUnit.MILLISECONDS.toNanos(entry.field.ttlMillis);
+    }
+
+    /**
+     * @return a future completing like the shared one, whose cancellation only affects itself
+     */
+    private static <T> Sdc1Future<T> share(final Sdc1Future<T> shared) {
+        final Sdc1Future<T> future = new Sdc1Future<>();
+        shared.addListener(new Sdc1Future.Listener<T>() {
+            @Override
+            public void onDone(Sdc1Future<T> done) {
+                if (done.isCancelled()) {
+                    future.cancel(false);
+                } else if (done.getFailure() != null) {
+                    future.fail(done.getFailure());
+                } else {
+                    future.complete(getValue(done));
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * @return the value of a completed future
+     */
+    private static <T> T getValue(Sdc1Future<T> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Not completed", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+
+/**
+ * Trade-off between latency and power a {@link Sdc1Connection} is run with, applied by
+ * requesting a connection priority: the remote and the phone then negotiate a connection
+ * interval, i.e. how often they exchange packets.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public enum ConnectionProfile {
+    /**
+     * Shortest connection interval (typically 11.25 - 15 ms), while setting up and while actions
+     * are flowing
+     */
+    INTERACTIVE(GattLink.CONNECTION_PRIORITY_HIGH),
+    /**
+     * Android's default connection interval (typically 30 - 50 ms)
+     */
+    BALANCED(GattLink.CONNECTION_PRIORITY_BALANCED),
+    /**
+     * Longest connection interval (typically 100 - 125 ms), while the remote has not been used
+     * for a while
+     */
+    IDLE(GattLink.CONNECTION_PRIORITY_LOW_POWER);
+
+    private final int connectionPriority;
+
+    ConnectionProfile(int connectionPriority) {
+        this.connectionPriority = connectionPriority;
+    }
+
+    /**
+     * @return one of the CONNECTION_PRIORITY_ constants of {@link GattLink}
+     */
+    public int getConnectionPriority() {
+        return connectionPriority;
+    }
+}
@@ -0,0 +1,150 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.latency.LatencyHistogram;
+import com.spinremote.sdc1_quickstart.latency.LatencyReports;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measured performance of each {@link ConnectionProfile}, of all connections: the round trip of
+ * every GATT write, the number of actions received, the number of times connections switched to
+ * the profile and the total time spent in it.
+ *
+ * Android does not report the negotiated connection interval (nor when a notification was sent
+ * by the remote), so both are estimated from the write round trips: a write is sent at the next
+ * connection event and acknowledged at the one after, so it takes one to two connection
+ * intervals depending on when it was started, and the shortest round trip approaches one
+ * interval as more writes complete. A notification waits for the next connection event, on
+ * average half an interval.
+ *
+ * Recording is lock-free and does not allocate, so it can be done from any thread.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ConnectionProfileStats implements LatencyReports.Table {
+    private static final ConnectionProfile[] PROFILES = ConnectionProfile.values();
+
+    /**
+     * Per profile (ordinal)
+     */
+    private final LatencyHistogram[] writeRoundTrips = new LatencyHistogram[PROFILES.length];
+    private final AtomicLongArray actionCounts = new AtomicLongArray(PROFILES.length);
+    private final AtomicLongArray switchCounts = new AtomicLongArray(PROFILES.length);
+    private final AtomicLongArray timeNanos = new AtomicLongArray(PROFILES.length);
+
+    public ConnectionProfileStats() {
+        for (int i = 0; i < writeRoundTrips.length; i++) {
+            writeRoundTrips[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the time from starting a GATT write to its completion.
+     */
+    public void recordWriteRoundTrip(ConnectionProfile profile, long roundTripNanos) {
+        writeRoundTrips[profile.ordinal()].record(roundTripNanos);
+    }
+
+    public void recordAction(ConnectionProfile profile) {
+        actionCounts.incrementAndGet(profile.ordinal());
+    }
+
+    /**
+     * Records that a connection switched to the profile.
+     */
+    public void recordSwitch(ConnectionProfile profile) {
+        switchCounts.incrementAndGet(profile.ordinal());
+    }
+
+    /**
+     * Records the time a connection spent in the profile.
+     */
+    public void recordTime(ConnectionProfile profile, long nanos) {
+        timeNanos.addAndGet(profile.ordinal(), nanos);
+    }
+
+    public LatencyHistogram getWriteRoundTrips(ConnectionProfile profile) {
+        return writeRoundTrips[profile.ordinal()];
+    }
+
+    public long getActionCount(ConnectionProfile profile) {
+        return actionCounts.get(profile.ordinal());
+    }
+
+    public long getSwitchCount(ConnectionProfile profile) {
+        return switchCounts.get(profile.ordinal());
+    }
+
+    /**
+     * @return total time connections spent in the profile, up to their last switch (or close)
+     */
+    public long getTimeNanos(ConnectionProfile profile) {
+        return timeNanos.get(profile.ordinal());
+    }
+
+    /**
+     * @return estimated connection interval: the shortest write round trip (within the 6.25%
+     * resolution of the histogram), 0 if no write completed in the profile
+     */
+    public long getEstimatedConnectionIntervalNanos(ConnectionProfile profile) {
+        return writeRoundTrips[profile.ordinal()].getPercentileNanos(0);
+    }
+
+    /**
+     * @return estimated mean time from the remote sending a notification to its arrival: half a
+     * connection interval, 0 if no write completed in the profile
+     */
+    public long getEstimatedNotificationLatencyNanos(ConnectionProfile profile) {
+        return getEstimatedConnectionIntervalNanos(profile) / 2;
+    }
+
+    public void reset() {
+        for (int i = 0; i < PROFILES.length; i++) {
+            writeRoundTrips[i].reset();
+            actionCounts.set(i, 0);
+            switchCounts.set(i, 0);
+            timeNanos.set(i, 0);
+        }
+    }
+
+    /**
+     * Writes a table with a line per profile: name, switches, time (seconds), actions, writes,
+     * estimated connection interval, estimated notification latency and the write round trip
+     * mean, p50 and p99, all latencies in milliseconds.
+     */
+    @Override
+    public void dump(Writer writer) throws IOException {
+        writer.write("profile switches time_s actions writes interval_ms notification_ms write_mean_ms write_p50_ms write_p99_ms\n");
+        for (ConnectionProfile profile : PROFILES) {
+            final LatencyHistogram histogram = getWriteRoundTrips(profile);
+            writer.write(String.format(
+                    Locale.US,
+                    "%s %d %.3f %d %d %.3f %.3f %.3f %.3f %.3f\n",
+                    profile.name().toLowerCase(Locale.US),
+                    getSwitchCount(profile),
+                    getTimeNanos(profile) / 1e9,
+                    getActionCount(profile),
+                    histogram.getCount(),
+                    getEstimatedConnectionIntervalNanos(profile) / 1e6,
+                    getEstimatedNotificationLatencyNanos(profile) / 1e6,
+                    histogram.getMeanNanos() / 1e6,
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(99) / 1e6
+            ));
+        }
+    }
+
+    /**
+     * Writes the {@link #dump(Writer)} table to a file, see
+     * {@link LatencyReports#dumpToFile(LatencyReports.Table, File, String)}.
+     *
+     * @param header first line of the file, none if null
+     */
+    public void dumpToFile(File file, String header) throws IOException {
+        LatencyReports.dumpToFile(this, file, header);
+    }
+}
@@ -0,0 +1,224 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Switches the {@link ConnectionProfile} of a single {@link Sdc1Connection} on activity:
+ *
+ *      connected --> {@link ConnectionProfile#INTERACTIVE}, so setting up is fast
+ *      no action for the interactive timeout --> {@link ConnectionProfile#BALANCED}
+ *      no action for the idle timeout --> {@link ConnectionProfile#IDLE}
+ *      action --> {@link ConnectionProfile#INTERACTIVE}
+ *
+ * The timeouts are only checked when they may have passed, by a single task on the transport, so
+ * a stream of actions costs no more than a timestamp per action. Every switch and the time spent
+ * in each profile is recorded in the {@link ConnectionProfileStats}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+final class ConnectionProfileSwitcher {
+    /**
+     * Time without actions after which a connection drops from interactive to balanced by default
+     */
+    static final long DEFAULT_INTERACTIVE_TIMEOUT_MILLIS = 2000;
+    /**
+     * Time without actions after which a connection drops to idle by default
+     */
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+    /**
+     * Time after a switch in which the previous connection interval may still be in use: the
+     * phone picks the connection event at which the new one takes effect
+     */
+    static final long CONNECTION_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final GattTransport transport;
+    private final Sdc1Connection connection;
+    private final ConnectionProfileStats stats;
+
+    private long interactiveTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INTERACTIVE_TIMEOUT_MILLIS);
+    private long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    /**
+     * Profile in use, Android's default until connected, and the time it was switched to
+     */
+    private ConnectionProfile profile = ConnectionProfile.BALANCED;
+    private long profileStartNanos;
+    /**
+     * Profile set by {@link #setFixedProfile(ConnectionProfile)}, null to switch automatically
+     */
+    private ConnectionProfile fixedProfile;
+    /**
+     * Whether connected and not closed, i.e. the profile can be applied
+     */
+    private boolean active;
+    /**
+     * Whether set up, i.e. the timeouts are running
+     */
+    private boolean ready;
+    /**
+     * Time of the last action, or of becoming ready
+     */
+    private long lastActivityNanos;
+    private boolean timeoutScheduled;
+
+    private final Runnable checkTimeout = new Runnable() {
+        @Override
+        public void run() {
+            checkTimeout();
+        }
+    };
+
+    ConnectionProfileSwitcher(GattTransport transport, Sdc1Connection connection, ConnectionProfileStats stats) {
+        this.transport = transport;
+        this.connection = connection;
+        this.stats = stats;
+    }
+
+    synchronized void setTimeouts(long interactiveTimeoutMillis, long idleTimeoutMillis) {
+        if (interactiveTimeoutMillis < 0 || idleTimeoutMillis < interactiveTimeoutMillis) {
+            throw new IllegalArgumentException("Invalid timeouts: " + interactiveTimeoutMillis + ", " + idleTimeoutMillis);
+        }
+        interactiveTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(interactiveTimeoutMillis);
+        idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    synchronized ConnectionProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @param startNanos time an operation was started
+     * @return the profile in use if its connection interval was in effect since the operation was
+     * started, null if the profile switched too shortly before (or after) that
+     */
+    synchronized ConnectionProfile getProfileSince(long startNanos) {
+        return active && startNanos - profileStartNanos >= CONNECTION_UPDATE_NANOS ? profile : null;
+    }
+
+    /**
+     * @param fixedProfile profile to stay in, null to switch automatically again
+     */
+    synchronized void setFixedProfile(ConnectionProfile fixedProfile) {
+        this.fixedProfile = fixedProfile;
+        if (!active) {
+            return;
+        }
+
+        transport.removeCallbacks(checkTimeout);
+        timeoutScheduled = false;
+        if (fixedProfile != null) {
+            switchTo(fixedProfile);
+        } else if (ready) {
+            // Continue from the current profile as if there was activity just now
+            lastActivityNanos = transport.nowNanos();
+            scheduleTimeout(0);
+        }
+    }
+
+    /**
+     * Must be called when the link is connected.
+     */
+    synchronized void onConnected() {
+        if (active) {
+            return;
+        }
+        active = true;
+        profileStartNanos = transport.nowNanos();
+
+        switchTo(fixedProfile != null ? fixedProfile : ConnectionProfile.INTERACTIVE);
+    }
+
+    /**
+     * Must be called when the connection is set up, starts the timeouts.
+     */
+    synchronized void onReady() {
+        if (!active || ready) {
+            return;
+        }
+        ready = true;
+        lastActivityNanos = transport.nowNanos();
+
+        if (fixedProfile == null) {
+            scheduleTimeout(interactiveTimeoutNanos);
+        }
+    }
+
+    /**
+     * Must be called for every action received.
+     */
+    synchronized void onAction(long timestampNanos) {
+        stats.recordAction(profile);
+        lastActivityNanos = timestampNanos;
+        if (!active || !ready || fixedProfile != null) {
+            return;
+        }
+
+        if (profile != ConnectionProfile.INTERACTIVE) {
+            switchTo(ConnectionProfile.INTERACTIVE);
+            transport.removeCallbacks(checkTimeout);
+            scheduleTimeout(interactiveTimeoutNanos);
+        } else if (!timeoutScheduled) {
+            scheduleTimeout(interactiveTimeoutNanos);
+        } // else: the pending check is due within the interactive timeout and reschedules itself
+    }
+
+    /**
+     * Stops switching and records the time spent in the current profile.
+     */
+    synchronized void close() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        transport.removeCallbacks(checkTimeout);
+        timeoutScheduled = false;
+
+        stats.recordTime(profile, transport.nowNanos() - profileStartNanos);
+    }
+
+    private synchronized void checkTimeout() {
+        timeoutScheduled = false;
+        if (!active || fixedProfile != null) {
+            return;
+        }
+
+        final long idleNanos = transport.nowNanos() - lastActivityNanos;
+        if (idleNanos >= idleTimeoutNanos) {
+            switchTo(ConnectionProfile.IDLE);
+        } else if (idleNanos >= interactiveTimeoutNanos) {
+            switchTo(ConnectionProfile.BALANCED);
+            scheduleTimeout(idleTimeoutNanos - idleNanos);
+        } else {
+            scheduleTimeout(interactiveTimeoutNanos - idleNanos);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void scheduleTimeout(long delayNanos) {
+        timeoutScheduled = true;
+        // Rounded up, so the timeout has always passed when checked
+        transport.postDelayed(checkTimeout, (delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void switchTo(ConnectionProfile next) {
+        if (next == profile) {
+            return;
+        }
+
+        final long nowNanos = transport.nowNanos();
+        stats.recordTime(profile, nowNanos - profileStartNanos);
+        profile = next;
+        profileStartNanos = nowNanos;
+        stats.recordSwitch(next);
+
+        // The link does not call back, so requesting while holding the lock is fine
+        connection.requestConnectionPriority(next.getConnectionPriority());
+    }
+}
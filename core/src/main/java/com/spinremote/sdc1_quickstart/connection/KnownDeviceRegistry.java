@@ -0,0 +1,122 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persisted list of the addresses of SPIN remote SDC-1s we have been connected to, most recently
+ * connected first. Knowing the address lets us reconnect with
+ * {@code BluetoothAdapter#getRemoteDevice(String)} directly instead of scanning first.
+ *
+ * The list is bounded to {@link #MAX_DEVICES} and persisted in a {@link Store} (e.g. a
+ * {@link SharedPreferencesStore}) as a single comma-separated String. All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class KnownDeviceRegistry {
+    /**
+     * Maximum number of addresses remembered, the least recently connected is forgotten first
+     */
+    public static final int MAX_DEVICES = 16;
+
+    /**
+     * Persists the addresses
+     */
+    public interface Store {
+        /**
+         * @return the stored addresses, empty if none
+         */
+        String load();
+
+        /**
+         * Stores the addresses, may be done asynchronously.
+         */
+        void save(String addresses);
+    }
+
+    /**
+     * {@link Store} keeping the addresses in memory only, e.g. for tests
+     */
+    public static final class MemoryStore implements Store {
+        private volatile String addresses = "";
+
+        @Override
+        public String load() {
+            return addresses;
+        }
+
+        @Override
+        public void save(String addresses) {
+            this.addresses = addresses;
+        }
+    }
+
+    private static final String SEPARATOR = ",";
+
+    private final Store store;
+    /**
+     * In-memory copy of the persisted addresses, most recently connected first
+     */
+    private final ArrayList<String> addresses = new ArrayList<>();
+
+    public KnownDeviceRegistry(Store store) {
+        this.store = store;
+
+        final String stored = store.load();
+        for (String address : stored.split(SEPARATOR)) {
+            if (!address.isEmpty()) {
+                addresses.add(address);
+            }
+        }
+    }
+
+    /**
+     * @return the known addresses, most recently connected first
+     */
+    public synchronized List<String> getAddresses() {
+        return new ArrayList<>(addresses);
+    }
+
+    public synchronized boolean isKnown(String address) {
+        return addresses.contains(address);
+    }
+
+    /**
+     * Remembers the address as the most recently connected.
+     */
+    public synchronized void remember(String address) {
+        if (!addresses.isEmpty() && addresses.get(0).equals(address)) {
+            // Already the most recent, nothing changes
+            return;
+        }
+
+        addresses.remove(address);
+        addresses.add(0, address);
+        while (addresses.size() > MAX_DEVICES) {
+            addresses.remove(addresses.size() - 1);
+        }
+
+        save();
+    }
+
+    /**
+     * Forgets the address, e.g. when it turned out not to be a SPIN remote SDC-1.
+     */
+    public synchronized void forget(String address) {
+        if (addresses.remove(address)) {
+            save();
+        }
+    }
+
+    private void save() {
+        final StringBuilder builder = new StringBuilder();
+        for (String address : addresses) {
+            if (builder.length() > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(address);
+        }
+
+        store.save(builder.toString());
+    }
+}
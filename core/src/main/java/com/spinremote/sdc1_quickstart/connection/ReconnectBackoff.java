@@ -0,0 +1,52 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import java.util.Random;
+
+/**
+ * Jittered exponential backoff for reconnecting to a SPIN remote SDC-1. The n-th consecutive
+ * failure waits between half and all of {@code min(max, base * 2^(n - 1))}, so remotes that drop
+ * at the same time (e.g. when walking out of range together) don't all retry at the same moment.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ReconnectBackoff {
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    /**
+     * @param baseDelayMillis delay after the first failure (before jitter)
+     * @param maxDelayMillis  maximum delay (before jitter)
+     * @param random          source of the jitter
+     */
+    public ReconnectBackoff(long baseDelayMillis, long maxDelayMillis, Random random) {
+        if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("invalid delays " + baseDelayMillis + ", " + maxDelayMillis);
+        }
+
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * @param failureCount number of consecutive failures, at least 1
+     * @return the delay before the next attempt in milliseconds
+     */
+    public long getDelayMillis(int failureCount) {
+        // Double the delay for every failure, stopping at the maximum (and before overflowing)
+        long delay = baseDelayMillis;
+        for (int i = 1; i < failureCount && delay < maxDelayMillis; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, maxDelayMillis);
+
+        final long half = delay / 2;
+        final long jitter;
+        synchronized (random) {
+            jitter = (long) (random.nextDouble() * (delay - half + 1));
+        }
+
+        return half + jitter;
+    }
+}
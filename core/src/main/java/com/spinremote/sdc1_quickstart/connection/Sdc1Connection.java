@@ -0,0 +1,830 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.gatt.GattOperationQueue;
+import com.spinremote.sdc1_quickstart.gatt.MissingHandleException;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * A connection to a single SPIN remote SDC-1, with an explicit state machine:
+ *
+ *      {@link #STATE_IDLE} --connect(boolean)--> {@link #STATE_CONNECTING}
+ *      --connected--> {@link #STATE_DISCOVERING_SERVICES}
+ *      --services discovered--> {@link #STATE_SETTING_UP}
+ *      --action notification forced--> {@link #STATE_READY}
+ *
+ * Any failure moves the connection to {@link #STATE_FAILED} and {@link #close()} moves it to
+ * {@link #STATE_CLOSED}; both are final, a new connection has to be made to try again.
+ *
+ * A watchdog bounds each state before ready: a direct connection attempt fails after
+ * {@link #CONNECT_TIMEOUT_MILLIS}, discovering the services after {@link #DISCOVERY_TIMEOUT_MILLIS}
+ * and setting up after {@link #SETUP_TIMEOUT_MILLIS}, with a {@link TimeoutException} as the
+ * failure cause. A response the Bluetooth stack never delivers would otherwise leave the
+ * connection stuck forever, instead of failing so it can be retried.
+ *
+ * Setting up follows a {@link SetupPlan} (see {@link #setSetupPlan(SetupPlan)}), by default
+ * {@link SetupPlan#FAST}:
+ *      1. Enable the action notification
+ *      2. Wait for the action notification to be enabled
+ *      3. Force the action notification
+ *      4. Wait for the action notification to be forced, ready
+ *      5. Set LED color to red (0xFF0000), unless the app already set a color when ready
+ *
+ * The connection is made through a {@link GattTransport}, so it runs against a real remote on
+ * Android or a simulated one on the JVM. All reads and writes go through a
+ * {@link GattOperationQueue}, so commands written while a previous operation is still in progress
+ * are queued (and coalesced) instead of failing.
+ *
+ * The duration (or failure) of connecting, discovering the services, each setup write, the time
+ * to ready and the time to the first action is recorded in a {@link Sdc1LatencyRecorder}.
+ *
+ * While connected, the connection switches between {@link ConnectionProfile}s on activity:
+ * interactive while setting up and while actions are flowing, balanced and then idle after
+ * timeouts without actions (see {@link #setProfileTimeouts(long, long)}). The round trip of every
+ * write is recorded per profile in a {@link ConnectionProfileStats}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1Connection {
+    private static final Logger LOGGER = Logger.getLogger("Sdc1Connection");
+
+    /**
+     * Notified about the state and actions of a connection, on a thread of the transport (a
+     * Bluetooth binder thread on Android)
+     */
+    public interface Callback {
+        void onStateChanged(Sdc1Connection connection, int state);
+
+        /**
+         * @param timestampNanos time at which the action was received, on the clock of the
+         *                       {@link GattTransport}
+         */
+        void onAction(Sdc1Connection connection, int action, long timestampNanos);
+    }
+
+    /**
+     * Notified when a command written once {@link #STATE_READY} (e.g. by
+     * {@link #setLedColor(int, int, int)}) has been written, on a thread of the transport
+     */
+    public interface CommandListener {
+        /**
+         * @param commandId Command Id of the command, e.g. {@link Sdc1Codec#COMMAND_SET_LED_COLOR}
+         */
+        void onCommandWritten(Sdc1Connection connection, int commandId);
+    }
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_DISCOVERING_SERVICES = 2;
+    public static final int STATE_SETTING_UP = 3;
+    public static final int STATE_READY = 4;
+    public static final int STATE_FAILED = 5;
+    public static final int STATE_CLOSED = 6;
+
+    /**
+     * Time a direct connection attempt may take, connecting with auto connect is not bounded
+     */
+    public static final long CONNECT_TIMEOUT_MILLIS = 10000;
+    /**
+     * Time discovering the services may take
+     */
+    public static final long DISCOVERY_TIMEOUT_MILLIS = 5000;
+    /**
+     * Time setting up may take, from the services being discovered to {@link #STATE_READY}
+     */
+    public static final long SETUP_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Value of the client characteristic configuration descriptor enabling notifications, equal to
+     * {@code BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE}
+     */
+    private static final byte[] ENABLE_NOTIFICATION_VALUE = {0x01, 0x00};
+
+    /**
+     * Value of {@link #pendingStep} when no recorded step is in progress
+     */
+    private static final int NO_STEP = -1;
+
+    private final GattTransport transport;
+    private final String address;
+    private final Callback callback;
+    private final Sdc1LatencyRecorder latencyRecorder;
+    private final ConnectionProfileStats profileStats;
+    private final ConnectionProfileSwitcher profileSwitcher;
+
+    /**
+     * {@link Sdc1Codec} owning the command frames we write to the Command Characteristic, so no
+     * new arrays are allocated per command
+     */
+    private final Sdc1Codec codec = new Sdc1Codec();
+
+    /**
+     * Current state, only changed while holding the lock on this connection
+     */
+    private volatile int state = STATE_IDLE;
+    /**
+     * {@link GattLink} of this connection, null until {@link #connect(boolean)}
+     */
+    private volatile GattLink link;
+    /**
+     * {@link GattOperationQueue} serializing the operations on {@link #link}
+     */
+    private GattOperationQueue gattOperationQueue;
+    /**
+     * Whether the SPIN Service and its Characteristics have been discovered
+     */
+    private volatile boolean handlesResolved;
+    /**
+     * Why this connection failed, null if it did not fail or there is no specific reason
+     */
+    private volatile Exception failureCause;
+
+    /**
+     * Time connectGatt() was called, 0 before {@link #connect(boolean)}
+     */
+    private volatile long connectGattNanos;
+    /**
+     * {@link Sdc1LatencyRecorder} step in progress and the time it started
+     */
+    private volatile int pendingStep = NO_STEP;
+    private volatile long pendingStepStartNanos;
+    /**
+     * Whether the first action has been received
+     */
+    private volatile boolean firstActionReceived;
+    /**
+     * Notified about the commands written once ready, null if none
+     */
+    private volatile CommandListener commandListener;
+    /**
+     * Steps to set up, only changed before {@link #connect(boolean)}
+     */
+    private volatile SetupPlan setupPlan = SetupPlan.FAST;
+    /**
+     * Whether the LED color was set once ready, so the deferred setup color is not needed
+     */
+    private volatile boolean ledColorSet;
+    /**
+     * Index of the remote in the device table of the owner, only changed before
+     * {@link #connect(boolean)}
+     */
+    private volatile int deviceIndex = -1;
+
+    /**
+     * State the {@link #watchdog} is scheduled for, only used while holding the lock
+     */
+    private int watchedState = STATE_IDLE;
+    /**
+     * Fails the connection if it is still in the {@link #watchedState}
+     */
+    private final Runnable watchdog = new Runnable() {
+        @Override
+        public void run() {
+            final int stuckState;
+            synchronized (Sdc1Connection.this) {
+                if (state != watchedState) {
+                    return;
+                }
+
+                stuckState = watchedState;
+                failureCause = new TimeoutException("Stuck in state " + stuckState);
+            }
+
+            LOGGER.warning(getAddress() + ": stuck in state " + stuckState + ", failing");
+            onStep(false);
+        }
+    };
+
+    /**
+     * The {@link GattLink.Callback} we will use to get actions from the SPIN remote SDC-1.
+     */
+    private final GattLink.Callback linkCallback = new GattLink.Callback() {
+        /**
+         * Callback indicating when GATT client has connected/disconnected to/from a remote
+         * GATT server.
+         *
+         * @param link      GATT client
+         * @param status    Status of the connect or disconnect operation.
+         *                  {@link GattLink#STATUS_SUCCESS} if the operation succeeds.
+         * @param connected Whether the link is now connected
+         */
+        @Override
+        public void onConnectionStateChange(GattLink link, int status, boolean connected) {
+            // boolean indicating whether or not the next step is successful, default is false
+            boolean success = false;
+
+            // Start Service discovery if we're now connected
+            if (status == GattLink.STATUS_SUCCESS) {
+                if (connected) {
+                    completeStep(Sdc1LatencyRecorder.STEP_CONNECT);
+                    if (moveTo(STATE_CONNECTING, STATE_DISCOVERING_SERVICES)) {
+                        // Set up with the shortest connection interval
+                        profileSwitcher.onConnected();
+                        startStep(Sdc1LatencyRecorder.STEP_DISCOVER_SERVICES);
+                        success = link.discoverServices();
+                    }
+                } // else: not connected, continue
+            } // else: not successful
+
+            onStep(success);
+        }
+
+        /**
+         * Callback invoked when the list of remote services, characteristics and descriptors
+         * for the remote device have been updated, ie new services have been discovered.
+         *
+         * @param link   GATT client invoked {@link GattLink#discoverServices}
+         * @param status {@link GattLink#STATUS_SUCCESS} if the remote device
+         */
+        @Override
+        public void onServicesDiscovered(GattLink link, int status) {
+            // boolean indicating whether or not the next step is successful, default is false
+            boolean success = false;
+
+            // Check if Service discovery was successful, check the handles we need once and set
+            // the LED color to red if it was
+            if (status == GattLink.STATUS_SUCCESS) {
+                completeStep(Sdc1LatencyRecorder.STEP_DISCOVER_SERVICES);
+
+                try {
+                    MissingHandleException.check(link);
+                    handlesResolved = true;
+                } catch (MissingHandleException e) {
+                    LOGGER.warning(getAddress() + ": " + e.getMessage());
+                    failureCause = e;
+                }
+
+                if (handlesResolved && moveTo(STATE_DISCOVERING_SERVICES, STATE_SETTING_UP)) {
+                    final SetupPlan setupPlan = Sdc1Connection.this.setupPlan;
+                    if (setupPlan.getLedColor() != SetupPlan.NO_LED_COLOR && !setupPlan.isLedColorDeferred()) {
+                        // Set the value to 0x09RRGGBB (set LED color, red, green, blue)
+                        startStep(Sdc1LatencyRecorder.STEP_LED_WRITE);
+                        writeLedColor(setupPlan.getLedColor());
+
+                        success = true;
+                    } else {
+                        success = enableActionNotification();
+                    }
+                }
+            }
+
+            onStep(success);
+        }
+
+        /**
+         * Callback indicating the result of a characteristic write operation.
+         *
+         * @param link           GATT client invoked {@link GattLink#writeCharacteristic}
+         * @param characteristic Characteristic that was written to the associated
+         *                       remote device.
+         * @param value          The value that was written
+         * @param status         The result of the write operation
+         *                       {@link GattLink#STATUS_SUCCESS} if the operation succeeds.
+         */
+        @Override
+        public void onCharacteristicWrite(GattLink link, UUID characteristic, byte[] value, int status) {
+            // boolean indicating whether or not the next step is successful, default is false
+            boolean success = false;
+
+            // Check if writing was successful and check what it was that we have written so we can
+            // determine the next step
+            if (status == GattLink.STATUS_SUCCESS) {
+                // Decode the command first, the queue may reuse the value once completed
+                final int commandId = Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID.equals(characteristic)
+                        ? Sdc1Codec.decodeCommandId(value)
+                        : -1;
+
+                // The write is done, so the next queued operation can be started
+                recordWriteRoundTrip(gattOperationQueue.onOperationCompleted());
+
+                if (state == STATE_SETTING_UP && commandId == Sdc1Codec.COMMAND_SET_LED_COLOR) {
+                    // The LED color is set, enable the action notification
+                    completeStep(Sdc1LatencyRecorder.STEP_LED_WRITE);
+                    success = enableActionNotification();
+                } else if (state == STATE_SETTING_UP && commandId == Sdc1Codec.COMMAND_FORCE_ACTION_NOTIFICATION) {
+                    // The action notification is forced, so we're done setting up
+                    success = onSetUp();
+                } else {
+                    // There's no next step, set success to true
+                    success = true;
+                    if (commandId == Sdc1Codec.COMMAND_SET_LED_COLOR) {
+                        // The deferred LED color of the setup plan, if that's the step in progress
+                        completeStep(Sdc1LatencyRecorder.STEP_LED_WRITE);
+                    }
+
+                    final CommandListener commandListener = Sdc1Connection.this.commandListener;
+                    if (commandId != -1 && commandListener != null) {
+                        commandListener.onCommandWritten(Sdc1Connection.this, commandId);
+                    }
+                }
+            }
+
+            onStep(success);
+        }
+
+        /**
+         * Callback reporting the result of a characteristic read operation.
+         *
+         * @param link           GATT client invoked {@link GattLink#readCharacteristic}
+         * @param characteristic Characteristic that was read from the associated remote device.
+         * @param value          The value that was read
+         * @param status         {@link GattLink#STATUS_SUCCESS} if the read operation was
+         *                       completed successfully.
+         */
+        @Override
+        public void onCharacteristicRead(GattLink link, UUID characteristic, byte[] value, int status) {
+            // No reads are part of the steps, but the next queued operation can be started
+            if (status == GattLink.STATUS_SUCCESS) {
+                gattOperationQueue.onOperationCompleted();
+            }
+
+            onStep(status == GattLink.STATUS_SUCCESS);
+        }
+
+        /**
+         * Callback triggered as a result of a remote characteristic notification.
+         *
+         * @param link           GATT client the characteristic is associated with
+         * @param characteristic Characteristic that has been updated as a result
+         * @param value          The new value of the characteristic
+         */
+        @Override
+        public void onCharacteristicChanged(GattLink link, UUID characteristic, byte[] value) {
+            // Get the action from the data and pass it on, with the time we received it
+            if (!handlesResolved || !Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)) {
+                return;
+            }
+            final int action = Sdc1Codec.decodeAction(value); // uint8 (byte0), offset 0
+            if (action != Sdc1Codec.ACTION_NONE) {
+                final long timestampNanos = transport.nowNanos();
+                if (!firstActionReceived) {
+                    firstActionReceived = true;
+                    latencyRecorder.record(Sdc1LatencyRecorder.STEP_FIRST_ACTION, connectGattNanos, timestampNanos);
+                }
+                profileSwitcher.onAction(timestampNanos);
+
+                callback.onAction(Sdc1Connection.this, action, timestampNanos);
+            }
+        }
+
+        /**
+         * Callback indicating the result of a descriptor write operation.
+         *
+         * @param link           GATT client invoked {@link GattLink#writeDescriptor}
+         * @param characteristic Characteristic of the descriptor
+         * @param descriptor     Descriptor that was written to the associated remote device.
+         * @param status         The result of the write operation
+         *                       {@link GattLink#STATUS_SUCCESS} if the operation succeeds.
+         */
+        @Override
+        public void onDescriptorWrite(GattLink link, UUID characteristic, UUID descriptor, int status) {
+            // boolean indicating whether or not the next step is successful, default is false
+            boolean success = false;
+
+            // Check if writing descriptor was successful and force the action notification if it
+            // was and the setup plan wants to
+            if (status == GattLink.STATUS_SUCCESS) {
+                // The write is done, so the next queued operation can be started
+                recordWriteRoundTrip(gattOperationQueue.onOperationCompleted());
+                completeStep(Sdc1LatencyRecorder.STEP_CCCD_WRITE);
+
+                if (setupPlan.isActionNotificationForced()) {
+                    // Set the value to 0x0801 (force action notification, true)
+                    gattOperationQueue.writeCommand(Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID,
+                            codec.forceActionNotification(true)
+                    );
+
+                    success = true;
+                } else {
+                    success = onSetUp();
+                }
+            }
+
+            onStep(success);
+        }
+    };
+
+    /**
+     * {@link GattOperationQueue.Callback} handling an operation the link refused to start like a
+     * failed step
+     */
+    private final GattOperationQueue.Callback gattOperationQueueCallback = new GattOperationQueue.Callback() {
+        @Override
+        public void onOperationFailed(GattLink link, int type, UUID characteristic) {
+            onStep(false);
+        }
+    };
+
+    /**
+     * @param transport       used to connect
+     * @param address         address of the SPIN remote SDC-1 to connect to
+     * @param latencyRecorder records the duration of the connection steps
+     * @param callback        notified about the state and actions of this connection
+     */
+    public Sdc1Connection(GattTransport transport, String address, Sdc1LatencyRecorder latencyRecorder,
+                          Callback callback) {
+        this(transport, address, latencyRecorder, new ConnectionProfileStats(), callback);
+    }
+
+    /**
+     * @param transport       used to connect
+     * @param address         address of the SPIN remote SDC-1 to connect to
+     * @param latencyRecorder records the duration of the connection steps
+     * @param profileStats    records the performance of each {@link ConnectionProfile}
+     * @param callback        notified about the state and actions of this connection
+     */
+    public Sdc1Connection(GattTransport transport, String address, Sdc1LatencyRecorder latencyRecorder,
+                          ConnectionProfileStats profileStats, Callback callback) {
+        this.transport = transport;
+        this.address = address;
+        this.latencyRecorder = latencyRecorder;
+        this.profileStats = profileStats;
+        this.callback = callback;
+        profileSwitcher = new ConnectionProfileSwitcher(transport, this, profileStats);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return index of the remote as set by {@link #setDeviceIndex(int)}, -1 if not set
+     */
+    public int getDeviceIndex() {
+        return deviceIndex;
+    }
+
+    /**
+     * @return one of the STATE_ constants of this class
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * @return why this connection failed (e.g. a {@link MissingHandleException}), null if it did
+     * not fail or there is no specific reason
+     */
+    public Exception getFailureCause() {
+        return failureCause;
+    }
+
+    /**
+     * Starts connecting, only allowed in {@link #STATE_IDLE}. Does nothing once closed, so a
+     * connection closed by another thread just before it is connected stays closed.
+     *
+     * @param autoConnect false to directly connect (fails after a timeout when the remote is not
+     *                    in range), true to let Android connect as soon as the remote becomes
+     *                    available (never times out, but typically takes longer)
+     */
+    public void connect(boolean autoConnect) {
+        final boolean connecting;
+        synchronized (this) {
+            if (state == STATE_CLOSED) {
+                return;
+            }
+            if (state != STATE_IDLE) {
+                throw new IllegalStateException("connect() called in state " + state);
+            }
+
+            // The callbacks may arrive before connect() returns, but they wait for this lock
+            // before moving the state, so the queue exists by then
+            state = STATE_CONNECTING;
+            if (!autoConnect) {
+                watch(STATE_CONNECTING, CONNECT_TIMEOUT_MILLIS);
+            }
+            startStep(Sdc1LatencyRecorder.STEP_CONNECT);
+            connectGattNanos = pendingStepStartNanos;
+            link = transport.connect(address, autoConnect, linkCallback);
+            connecting = link != null;
+            if (connecting) {
+                gattOperationQueue = new GattOperationQueue(link, transport, gattOperationQueueCallback);
+            }
+        }
+
+        callback.onStateChanged(this, STATE_CONNECTING);
+
+        if (!connecting) {
+            onStep(false);
+        }
+    }
+
+    /**
+     * Overrides the LED color, only has effect once {@link #STATE_READY}.
+     *
+     * @param red   red color component (0 - 255)
+     * @param green green color component (0 - 255)
+     * @param blue  blue color component (0 - 255)
+     * @return whether the color is written, false if not ready
+     */
+    public boolean setLedColor(int red, int green, int blue) {
+        if (state != STATE_READY) {
+            return false;
+        }
+
+        ledColorSet = true;
+        writeLedColor((red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF));
+
+        return true;
+    }
+
+    /**
+     * Cancels the LED override, so the LED shows the color of the active profile again. Only has
+     * effect once {@link #STATE_READY}.
+     *
+     * @return whether the override is cancelled, false if not ready
+     */
+    public boolean cancelLedOverride() {
+        if (state != STATE_READY) {
+            return false;
+        }
+
+        // Set the value to 0x07 (cancel LED override)
+        gattOperationQueue.writeCommand(Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID, codec.cancelLedOverride());
+
+        return true;
+    }
+
+    /**
+     * @return the profile in use, {@link ConnectionProfile#BALANCED} (Android's default) until
+     * connected
+     */
+    public ConnectionProfile getProfile() {
+        return profileSwitcher.getProfile();
+    }
+
+    /**
+     * Stays in a profile instead of switching on activity, e.g. interactive while the user is
+     * playing a game.
+     *
+     * @param profile profile to stay in, null to switch on activity again
+     */
+    public void setFixedProfile(ConnectionProfile profile) {
+        profileSwitcher.setFixedProfile(profile);
+    }
+
+    /**
+     * @param interactiveTimeoutMillis time without actions after which the connection drops from
+     *                                 interactive to balanced, 2 seconds if not set
+     * @param idleTimeoutMillis        time without actions after which the connection drops to
+     *                                 idle, 30 seconds if not set
+     */
+    public void setProfileTimeouts(long interactiveTimeoutMillis, long idleTimeoutMillis) {
+        profileSwitcher.setTimeouts(interactiveTimeoutMillis, idleTimeoutMillis);
+    }
+
+    /**
+     * @param setupPlan steps to set up, {@link SetupPlan#FAST} if not set; only has effect before
+     *                  {@link #connect(boolean)}
+     */
+    public void setSetupPlan(SetupPlan setupPlan) {
+        this.setupPlan = setupPlan;
+    }
+
+    /**
+     * @param deviceIndex index of the remote in the device table of the owner, so events can be
+     *                    tagged without looking up the address; only set before
+     *                    {@link #connect(boolean)}
+     */
+    public void setDeviceIndex(int deviceIndex) {
+        this.deviceIndex = deviceIndex;
+    }
+
+    /**
+     * @param commandListener notified about the commands written once ready, null for none
+     */
+    public void setCommandListener(CommandListener commandListener) {
+        this.commandListener = commandListener;
+    }
+
+    /**
+     * Closes the connection, cleaning up any resources.
+     */
+    public void close() {
+        final boolean cancelLedOverride;
+        synchronized (this) {
+            if (state == STATE_CLOSED || state == STATE_FAILED) {
+                return;
+            }
+
+            cancelLedOverride = handlesResolved;
+            state = STATE_CLOSED;
+        }
+
+        // Closed, so nothing else uses the queue and the link anymore; don't hold the lock while
+        // using them, both take locks of their own
+        if (cancelLedOverride) {
+            /* Here we first cancel the LED override of SPIN remote SDC-1, so that it can again
+             * manage its own LED color based on the active profile.
+             *
+             * Note that this code is only meant to demonstrate how to cancel the LED override.
+             * The SPIN remote SDC-1 will automatically return to the active profile LED color
+             * when the connection is closed.
+             */
+            // Set the value to 0x07 (cancel LED override)
+            gattOperationQueue.writeCommand(Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID, codec.cancelLedOverride());
+        }
+        release();
+
+        callback.onStateChanged(this, STATE_CLOSED);
+    }
+
+    /**
+     * Will handle cleaning up resources and failing the connection if the step was not successful
+     *
+     * @param success boolean indicating whether or not step was successful
+     */
+    private void onStep(boolean success) {
+        if (success) {
+            return;
+        }
+
+        final boolean wasReady;
+        synchronized (this) {
+            if (state == STATE_CLOSED || state == STATE_FAILED) {
+                return;
+            }
+
+            wasReady = state == STATE_READY;
+            state = STATE_FAILED;
+        }
+
+        // Failed, so nothing else uses the queue and the link anymore; release them outside the
+        // lock, like close()
+        release();
+
+        // Record which step failed, and that no action will arrive if none did
+        final int failedStep = pendingStep;
+        if (failedStep != NO_STEP) {
+            pendingStep = NO_STEP;
+            latencyRecorder.recordFailure(failedStep);
+        }
+        if (connectGattNanos != 0 && !wasReady) {
+            latencyRecorder.recordFailure(Sdc1LatencyRecorder.STEP_CONNECT_TO_READY);
+        }
+        if (connectGattNanos != 0 && !firstActionReceived) {
+            latencyRecorder.recordFailure(Sdc1LatencyRecorder.STEP_FIRST_ACTION);
+        }
+
+        callback.onStateChanged(this, STATE_FAILED);
+    }
+
+    /**
+     * Moves from one state to the next and notifies the {@link Callback}, if still in the
+     * expected state (it may have been closed in the meantime).
+     *
+     * @return whether the state was moved
+     */
+    private boolean moveTo(int expected, int next) {
+        synchronized (this) {
+            if (state != expected) {
+                return false;
+            }
+
+            state = next;
+            if (next == STATE_DISCOVERING_SERVICES) {
+                watch(next, DISCOVERY_TIMEOUT_MILLIS);
+            } else if (next == STATE_SETTING_UP) {
+                watch(next, SETUP_TIMEOUT_MILLIS);
+            } else {
+                transport.removeCallbacks(watchdog);
+            }
+        }
+
+        callback.onStateChanged(this, next);
+
+        return true;
+    }
+
+    /**
+     * (Re)schedules the watchdog for a state. Must be called while holding the lock.
+     */
+    private void watch(int watchedState, long timeoutMillis) {
+        transport.removeCallbacks(watchdog);
+        this.watchedState = watchedState;
+        transport.postDelayed(watchdog, timeoutMillis);
+    }
+
+    /**
+     * Starts timing a {@link Sdc1LatencyRecorder} step.
+     */
+    private void startStep(int step) {
+        pendingStepStartNanos = transport.nowNanos();
+        pendingStep = step;
+    }
+
+    /**
+     * Records the duration of a {@link Sdc1LatencyRecorder} step, if it is the one in progress.
+     */
+    private void completeStep(int step) {
+        if (pendingStep == step) {
+            pendingStep = NO_STEP;
+            latencyRecorder.record(step, pendingStepStartNanos, transport.nowNanos());
+        }
+    }
+
+    /**
+     * Enables the action notification, locally and then on the remote.
+     *
+     * @return whether the descriptor write is queued
+     */
+    private boolean enableActionNotification() {
+        if (!link.setCharacteristicNotification(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID, true)) {
+            return false;
+        }
+
+        startStep(Sdc1LatencyRecorder.STEP_CCCD_WRITE);
+        gattOperationQueue.writeDescriptor(
+                Sdc1Uuids.ACTION_CHARACTERISTIC_UUID,
+                Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID,
+                ENABLE_NOTIFICATION_VALUE
+        );
+
+        return true;
+    }
+
+    /**
+     * Moves to {@link #STATE_READY} once the last step before it completed, then starts the
+     * deferred steps of the setup plan.
+     *
+     * @return whether ready
+     */
+    private boolean onSetUp() {
+        if (!moveTo(STATE_SETTING_UP, STATE_READY)) {
+            return false;
+        }
+
+        // Actions can be delivered from now on
+        latencyRecorder.record(Sdc1LatencyRecorder.STEP_CONNECT_TO_READY, connectGattNanos, transport.nowNanos());
+        profileSwitcher.onReady();
+
+        // The app may have set a color of its own when notified of the state, which is not
+        // overwritten
+        final SetupPlan setupPlan = this.setupPlan;
+        if (setupPlan.getLedColor() != SetupPlan.NO_LED_COLOR && setupPlan.isLedColorDeferred() && !ledColorSet) {
+            startStep(Sdc1LatencyRecorder.STEP_LED_WRITE);
+            writeLedColor(setupPlan.getLedColor());
+        }
+
+        return true;
+    }
+
+    /**
+     * @param color LED color (0xRRGGBB)
+     */
+    private void writeLedColor(int color) {
+        // The frame of the codec is copied by the queue, so only one thread at a time may use it
+        synchronized (codec) {
+            gattOperationQueue.writeCommand(Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID,
+                    codec.setLedColor((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF)
+            );
+        }
+    }
+
+    /**
+     * Requests a connection priority from the link, used by the {@link ConnectionProfileSwitcher}.
+     *
+     * @param connectionPriority one of the CONNECTION_PRIORITY_ constants of {@link GattLink}
+     * @return whether the request was sent
+     */
+    boolean requestConnectionPriority(int connectionPriority) {
+        final GattLink link = this.link;
+
+        return link != null && link.requestConnectionPriority(connectionPriority);
+    }
+
+    /**
+     * Records the round trip of a completed write for the profile in use, unless the profile
+     * switched while it was in flight.
+     *
+     * @param roundTripNanos as returned by {@link GattOperationQueue#onOperationCompleted()}
+     */
+    private void recordWriteRoundTrip(long roundTripNanos) {
+        if (roundTripNanos < 0) {
+            return;
+        }
+
+        final ConnectionProfile profile = profileSwitcher.getProfileSince(transport.nowNanos() - roundTripNanos);
+        if (profile != null) {
+            profileStats.recordWriteRoundTrip(profile, roundTripNanos);
+        }
+    }
+
+    private void release() {
+        transport.removeCallbacks(watchdog);
+        profileSwitcher.close();
+        if (gattOperationQueue != null) {
+            gattOperationQueue.close();
+        }
+        if (link != null) {
+            link.close();
+        }
+    }
+}
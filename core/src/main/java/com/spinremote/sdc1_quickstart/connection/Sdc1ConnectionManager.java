@@ -0,0 +1,746 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.dispatch.ActionDispatcher;
+import com.spinremote.sdc1_quickstart.event.ActionEventBus;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.gatt.MissingHandleException;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.scan.ScanLatencyStats;
+import com.spinremote.sdc1_quickstart.scan.ScanTable;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps up to a target number of SPIN remote SDC-1s connected at the same time. Remotes we have
+ * been connected to before are remembered in a {@link KnownDeviceRegistry} and connected to
+ * directly by address, without scanning. While fewer remotes are connected (or being connected
+ * after finding them by scanning) than the target, it scans for SDC-1s. Direct connection
+ * attempts to known remotes don't count, as a known remote may well be absent (and an auto
+ * connect attempt never times out): once the target number is ready, whichever remotes got there
+ * first, all other attempts are closed. Advertisements are collected in a {@link ScanTable}; when
+ * the first new remote is found, the manager waits for a short selection window and then connects
+ * to the strongest remotes seen during it (by smoothed RSSI), most likely the one the user is
+ * holding. Found remotes are queued and connected to, with at most a limited number of connection
+ * attempts running at the same time so the Bluetooth stack isn't overloaded.
+ *
+ * When the connection to a known remote fails or drops, it is reconnected directly after a
+ * jittered exponential {@link ReconnectBackoff}. Only after {@link #MAX_DIRECT_RECONNECTS}
+ * consecutive failures is it connected to when found by scanning; until its backoff has passed
+ * the remote is also ignored when found by scanning, so a remote that keeps failing does not
+ * cause a reconnect storm.
+ *
+ * Each remote has its own {@link Sdc1Connection} (and state machine); all events passed to the
+ * {@link Listener} are tagged with the address of the remote. Actions are also published on an
+ * {@link ActionEventBus}, tagged with the index of the remote in the {@link Sdc1DeviceTable}, so
+ * any number of consumers can read them at their own pace without slowing down the Bluetooth
+ * callbacks, and dispatched to the app commands they are mapped to by an {@link ActionDispatcher}.
+ *
+ * Scanning and connecting is done through a {@link GattTransport}, so the manager runs against
+ * real remotes on Android or simulated ones on the JVM. The manager must be configured before
+ * {@link #start()}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1ConnectionManager {
+    private static final Logger LOGGER = Logger.getLogger("Sdc1ConnectionManager");
+
+    /**
+     * Notified about the remotes, from the threads of the transport: the transport's looper thread
+     * (the session thread in the app) for scanning or a Bluetooth binder thread for connections
+     * on Android. Never called while holding a lock of the manager.
+     */
+    public interface Listener {
+        /**
+         * Called when a SPIN remote SDC-1 is found while scanning and whenever its smoothed RSSI
+         * changes, not for every advertisement.
+         *
+         * @param rssi smoothed RSSI, in dBm
+         */
+        void onDeviceFound(String address, int rssi);
+
+        /**
+         * @param state one of the STATE_ constants of {@link Sdc1Connection}
+         */
+        void onConnectionStateChanged(String address, int state);
+
+        /**
+         * @param timestampNanos time at which the action was received, on the clock of the
+         *                       {@link GattTransport}
+         */
+        void onAction(String address, int action, long timestampNanos);
+    }
+
+    /**
+     * Number of consecutive failed direct reconnects to a known remote after which we fall back
+     * to scanning for it
+     */
+    public static final int MAX_DIRECT_RECONNECTS = 3;
+    /**
+     * Backoff delay after the first failure, doubled for every next failure up to the maximum
+     */
+    public static final long RECONNECT_BASE_DELAY_MILLIS = 250;
+    public static final long RECONNECT_MAX_DELAY_MILLIS = 30000;
+    /**
+     * Number of actions kept on the {@link ActionEventBus} for slow subscribers
+     */
+    public static final int ACTION_EVENT_BUS_CAPACITY = 1024;
+    /**
+     * Number of remotes kept in the {@link ScanTable}
+     */
+    public static final int SCAN_TABLE_CAPACITY = 32;
+    /**
+     * Time to keep collecting advertisements after finding the first new remote, before
+     * connecting to the strongest ones
+     */
+    public static final long DEFAULT_SELECTION_WINDOW_MILLIS = 300;
+
+    private final GattTransport transport;
+    private final Listener listener;
+    private final KnownDeviceRegistry knownDeviceRegistry;
+    private final ReconnectBackoff reconnectBackoff
+            = new ReconnectBackoff(RECONNECT_BASE_DELAY_MILLIS, RECONNECT_MAX_DELAY_MILLIS, new Random());
+    /**
+     * Index of every remote we have seen, used to tag the events on {@link #actionEventBus}
+     */
+    private final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+    private final ActionEventBus actionEventBus = new ActionEventBus(ACTION_EVENT_BUS_CAPACITY);
+    private final ActionDispatcher actionDispatcher = new ActionDispatcher(deviceTable);
+
+    private int targetConnectionCount = 1;
+    private int maxConcurrentConnects = 1;
+    private boolean autoConnect;
+    private long selectionWindowMillis = DEFAULT_SELECTION_WINDOW_MILLIS;
+    private SetupPlan setupPlan = SetupPlan.FAST;
+
+    /**
+     * Time to the first SDC-1 and to the first connection, per scan mode
+     */
+    private final ScanLatencyStats scanLatencyStats = new ScanLatencyStats();
+    /**
+     * Duration of each step from scan result to first action, of all connections
+     */
+    private final Sdc1LatencyRecorder latencyRecorder = new Sdc1LatencyRecorder();
+    /**
+     * Performance of each connection profile, of all connections
+     */
+    private final ConnectionProfileStats profileStats = new ConnectionProfileStats();
+    /**
+     * Smoothed RSSI and advertising rate of the remotes found while scanning
+     */
+    private final ScanTable scanTable = new ScanTable(SCAN_TABLE_CAPACITY, ScanTable.DEFAULT_SMOOTHING);
+
+    /**
+     * All connections that are not failed or closed, by address
+     */
+    private final HashMap<String, Sdc1Connection> connections = new HashMap<>();
+    /**
+     * Connections waiting for a free connection attempt slot, in order of discovery
+     */
+    private final ArrayDeque<Sdc1Connection> pendingConnections = new ArrayDeque<>();
+    /**
+     * Number of consecutive failures, by address
+     */
+    private final HashMap<String, Integer> failureCounts = new HashMap<>();
+    /**
+     * Time (nanos, on the clock of the transport) until which a failed remote is ignored when
+     * found by scanning, by address
+     */
+    private final HashMap<String, Long> retryAfter = new HashMap<>();
+    /**
+     * Reconnect tasks scheduled on the transport by address of the known remote
+     */
+    private final HashMap<String, Runnable> scheduledReconnects = new HashMap<>();
+    /**
+     * Connections made directly to known remotes that are not ready yet, which don't count toward
+     * the target number so other remotes are scanned for meanwhile
+     */
+    private final HashSet<Sdc1Connection> directConnections = new HashSet<>();
+    /**
+     * Connections that are connecting or setting up, each occupying a connection attempt slot
+     */
+    private final HashSet<Sdc1Connection> connectingConnections = new HashSet<>();
+    /**
+     * Timestamp of the scan result of pending connections found by scanning, by address
+     */
+    private final HashMap<String, Long> scanResultNanos = new HashMap<>();
+    /**
+     * Connections found by scanning that are connecting, whose connection ends a
+     * {@link ScanLatencyStats} measurement
+     */
+    private final HashSet<Sdc1Connection> scannedConnections = new HashSet<>();
+
+    private boolean started;
+    private boolean scanning;
+    /**
+     * Start of the running selection window, only valid while {@link #selecting}
+     */
+    private long selectionStartedNanos;
+    private boolean selecting;
+
+    /**
+     * Ends the selection window, connecting to the strongest remotes found
+     */
+    private final Runnable selectTask = new Runnable() {
+        @Override
+        public void run() {
+            onSelectionWindowEnded();
+        }
+    };
+
+    /**
+     * {@link GattTransport.ScanListener} we'll pass to the transport to get notified whenever we
+     * find a SPIN remote SDC-1
+     */
+    private final GattTransport.ScanListener scanListener = new GattTransport.ScanListener() {
+        @Override
+        public void onScanResult(String address, int rssi, long timestampNanos) {
+            scanLatencyStats.onDeviceFound(timestampNanos);
+            // Only pass on what changed, however often the remote advertises
+            if (scanTable.onAdvertisement(address, rssi, timestampNanos)) {
+                listener.onDeviceFound(address, scanTable.getSmoothedRssi(address));
+            }
+
+            onDeviceFound(address, timestampNanos);
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            LOGGER.warning("Scan failed: " + errorCode);
+            synchronized (Sdc1ConnectionManager.this) {
+                scanning = false;
+            }
+        }
+    };
+
+    /**
+     * {@link Sdc1Connection.Callback} of all connections, tagging the events with the address
+     */
+    private final Sdc1Connection.Callback connectionCallback = new Sdc1Connection.Callback() {
+        @Override
+        public void onStateChanged(Sdc1Connection connection, int state) {
+            if (state == Sdc1Connection.STATE_DISCOVERING_SERVICES) {
+                // Record how long it took to get here for the selected scan mode, direct
+                // (re)connects to known remotes didn't scan
+                final boolean scanned;
+                synchronized (Sdc1ConnectionManager.this) {
+                    scanned = scannedConnections.remove(connection);
+                }
+                if (scanned) {
+                    scanLatencyStats.onConnected(transport.nowNanos());
+                }
+            }
+
+            onConnectionStateChanged(connection, state);
+            listener.onConnectionStateChanged(connection.getAddress(), state);
+        }
+
+        @Override
+        public void onAction(Sdc1Connection connection, int action, long timestampNanos) {
+            // Publishing never waits for long, no matter how slow the subscribers are; the index
+            // was assigned when the connection was added, so no lock is taken per action
+            final int deviceIndex = connection.getDeviceIndex();
+            actionEventBus.publish(deviceIndex, action, timestampNanos);
+            actionDispatcher.onActionEvent(deviceIndex, action, timestampNanos);
+            listener.onAction(connection.getAddress(), action, timestampNanos);
+        }
+    };
+
+    /**
+     * @param transport           used to scan for and connect to the remotes
+     * @param knownDeviceRegistry the remotes connected to before
+     * @param listener            notified about the remotes
+     */
+    public Sdc1ConnectionManager(GattTransport transport, KnownDeviceRegistry knownDeviceRegistry, Listener listener) {
+        this.transport = transport;
+        this.knownDeviceRegistry = knownDeviceRegistry;
+        this.listener = listener;
+    }
+
+    /**
+     * @param targetConnectionCount number of remotes to keep connected, 1 if not set
+     */
+    public synchronized void setTargetConnectionCount(int targetConnectionCount) {
+        if (targetConnectionCount < 1) {
+            throw new IllegalArgumentException("targetConnectionCount < 1");
+        }
+        this.targetConnectionCount = targetConnectionCount;
+    }
+
+    /**
+     * @param maxConcurrentConnects maximum number of connection attempts (connecting and setting
+     *                              up) running at the same time, 1 if not set
+     */
+    public synchronized void setMaxConcurrentConnects(int maxConcurrentConnects) {
+        if (maxConcurrentConnects < 1) {
+            throw new IllegalArgumentException("maxConcurrentConnects < 1");
+        }
+        this.maxConcurrentConnects = maxConcurrentConnects;
+    }
+
+    /**
+     * @param autoConnect whether direct connections to known remotes use Android's auto connect,
+     *                    which waits for the remote in the background instead of timing out
+     *                    (without occupying a connection attempt slot), false if not set
+     */
+    public synchronized void setAutoConnect(boolean autoConnect) {
+        this.autoConnect = autoConnect;
+    }
+
+    /**
+     * @param selectionWindowMillis time to keep collecting advertisements after finding the first
+     *                              new remote before connecting to the strongest ones,
+     *                              {@link #DEFAULT_SELECTION_WINDOW_MILLIS} if not set; 0 to
+     *                              connect to the first remote found
+     */
+    public synchronized void setSelectionWindowMillis(long selectionWindowMillis) {
+        if (selectionWindowMillis < 0) {
+            throw new IllegalArgumentException("selectionWindowMillis < 0");
+        }
+        this.selectionWindowMillis = selectionWindowMillis;
+    }
+
+    /**
+     * @param setupPlan steps to set up every new connection, {@link SetupPlan#FAST} if not set
+     */
+    public synchronized void setSetupPlan(SetupPlan setupPlan) {
+        this.setupPlan = setupPlan;
+    }
+
+    /**
+     * Starts connecting to the most recently connected known remotes directly, and scanning for
+     * and connecting to other remotes, until the target number is connected.
+     */
+    public void start() {
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+
+            // Known remotes are connected to by address, without scanning first
+            for (String address : knownDeviceRegistry.getAddresses()) {
+                if (connections.size() >= targetConnectionCount) {
+                    break;
+                }
+
+                directConnections.add(addConnection(address));
+            }
+
+            updateScanning();
+        }
+
+        connectPending();
+    }
+
+    /**
+     * Stops scanning and closes all connections.
+     */
+    public void stop() {
+        final Sdc1Connection[] closing;
+        synchronized (this) {
+            started = false;
+            updateScanning();
+            scanLatencyStats.cancel();
+            if (selecting) {
+                transport.removeCallbacks(selectTask);
+                selecting = false;
+            }
+            scanTable.clear();
+
+            for (Runnable reconnect : scheduledReconnects.values()) {
+                transport.removeCallbacks(reconnect);
+            }
+            scheduledReconnects.clear();
+
+            closing = connections.values().toArray(new Sdc1Connection[connections.size()]);
+            connections.clear();
+            pendingConnections.clear();
+            directConnections.clear();
+            scanResultNanos.clear();
+            scannedConnections.clear();
+            connectingConnections.clear();
+        }
+        LOGGER.info("Scan to connect latency (" + transport + "):\n" + scanLatencyStats);
+
+        // Closing notifies the callback, so do it without holding the lock
+        for (Sdc1Connection connection : closing) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return time to the first SDC-1 and to the first connection found by scanning, per scan mode
+     */
+    public ScanLatencyStats getScanLatencyStats() {
+        return scanLatencyStats;
+    }
+
+    /**
+     * @return the bus all actions of all remotes are published on
+     */
+    public ActionEventBus getActionEventBus() {
+        return actionEventBus;
+    }
+
+    /**
+     * @return the dispatcher the actions of all remotes are passed to as soon as received, set its
+     * mapping to handle them
+     */
+    public ActionDispatcher getActionDispatcher() {
+        return actionDispatcher;
+    }
+
+    /**
+     * @return the recorder of the duration of each step from scan result to first action; the
+     * delivery to the UI is up to the caller to record
+     */
+    public Sdc1LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    /**
+     * @return the write round trips, estimated connection interval and notification latency, and
+     * usage of each {@link ConnectionProfile}, of all connections
+     */
+    public ConnectionProfileStats getProfileStats() {
+        return profileStats;
+    }
+
+    /**
+     * @return the smoothed RSSI and advertising rate of the remotes found while scanning
+     */
+    public ScanTable getScanTable() {
+        return scanTable;
+    }
+
+    /**
+     * @return the table mapping the device indexes of the {@link #getActionEventBus()} events to
+     * addresses
+     */
+    public Sdc1DeviceTable getDeviceTable() {
+        return deviceTable;
+    }
+
+    /**
+     * @return the connection to the remote with the address, or null if not connected (or
+     * connecting)
+     */
+    public synchronized Sdc1Connection getConnection(String address) {
+        return connections.get(address);
+    }
+
+    /**
+     * @return whether no remote is connected, being connected, being selected or waiting for a
+     * reconnect, i.e. the manager is only scanning (or stopped)
+     */
+    public synchronized boolean isIdle() {
+        return connections.isEmpty() && scheduledReconnects.isEmpty() && !selecting;
+    }
+
+    /**
+     * @return number of remotes that are ready
+     */
+    public synchronized int getReadyCount() {
+        int count = 0;
+        for (Sdc1Connection connection : connections.values()) {
+            if (connection.getState() == Sdc1Connection.STATE_READY) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private void onDeviceFound(String address, long timestampNanos) {
+        synchronized (this) {
+            if (selecting || !isConnectable(address)) {
+                return;
+            }
+
+            if (selectionWindowMillis > 0) {
+                // Collect the advertisements of all remotes around for a while, the one found
+                // first is not necessarily the one the user is holding
+                selecting = true;
+                selectionStartedNanos = timestampNanos;
+                transport.postDelayed(selectTask, selectionWindowMillis);
+
+                return;
+            }
+
+            addConnection(address);
+            scanResultNanos.put(address, timestampNanos);
+            updateScanning();
+        }
+
+        connectPending();
+    }
+
+    /**
+     * Connects to the strongest remotes seen during the selection window, as many as needed.
+     */
+    private void onSelectionWindowEnded() {
+        synchronized (this) {
+            if (!selecting) {
+                return;
+            }
+            selecting = false;
+
+            for (String address : scanTable.getCandidates(selectionStartedNanos)) {
+                if (isConnectable(address)) {
+                    // The scan to connect step includes the selection window
+                    addConnection(address);
+                    scanResultNanos.put(address, selectionStartedNanos);
+                }
+            }
+            updateScanning();
+        }
+
+        connectPending();
+    }
+
+    /**
+     * @return whether a remote found by scanning should be connected to. Must be called while
+     * holding the lock.
+     */
+    private boolean isConnectable(String address) {
+        if (!started || connections.containsKey(address) || scheduledReconnects.containsKey(address)
+                || getPlaceCount() >= targetConnectionCount) {
+            return false;
+        }
+
+        // Ignore the remote while its backoff has not passed
+        final Long until = retryAfter.get(address);
+        if (until != null) {
+            if (transport.nowNanos() - until < 0) {
+                return false;
+            }
+            retryAfter.remove(address);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reconnects directly to a known remote, scheduled after a failure.
+     */
+    private void reconnect(String address) {
+        synchronized (this) {
+            if (scheduledReconnects.remove(address) == null || !started || connections.containsKey(address)) {
+                return;
+            }
+
+            directConnections.add(addConnection(address));
+        }
+
+        connectPending();
+    }
+
+    /**
+     * Adds a connection waiting for a connection attempt slot. Must be called while holding the
+     * lock.
+     */
+    private Sdc1Connection addConnection(String address) {
+        final Sdc1Connection connection = new Sdc1Connection(transport, address, latencyRecorder, profileStats,
+                connectionCallback
+        );
+        connection.setSetupPlan(setupPlan);
+        connection.setDeviceIndex(deviceTable.indexOf(address));
+        connections.put(address, connection);
+        pendingConnections.add(connection);
+
+        return connection;
+    }
+
+    private void onConnectionStateChanged(Sdc1Connection connection, int state) {
+        Sdc1Connection[] closing = null;
+        synchronized (this) {
+            if (connections.get(connection.getAddress()) != connection) {
+                // Already removed, e.g. by stop()
+                return;
+            }
+
+            switch (state) {
+                case Sdc1Connection.STATE_READY:
+                    // Remember the remote so we can reconnect to it directly
+                    connectingConnections.remove(connection);
+                    failureCounts.remove(connection.getAddress());
+                    retryAfter.remove(connection.getAddress());
+                    knownDeviceRegistry.remember(connection.getAddress());
+                    directConnections.remove(connection);
+                    closing = onConnectionReady();
+                    updateScanning();
+                    break;
+
+                case Sdc1Connection.STATE_FAILED:
+                    connectingConnections.remove(connection);
+                    pendingConnections.remove(connection);
+                    directConnections.remove(connection);
+                    connections.remove(connection.getAddress());
+                    scanResultNanos.remove(connection.getAddress());
+                    scannedConnections.remove(connection);
+                    onConnectionFailed(connection);
+                    updateScanning();
+                    break;
+
+                case Sdc1Connection.STATE_CLOSED:
+                    connectingConnections.remove(connection);
+                    pendingConnections.remove(connection);
+                    directConnections.remove(connection);
+                    connections.remove(connection.getAddress());
+                    scanResultNanos.remove(connection.getAddress());
+                    scannedConnections.remove(connection);
+                    updateScanning();
+                    break;
+
+                default:
+                    return;
+            }
+        }
+
+        // Closing notifies the callback, so do it without holding the lock
+        if (closing != null) {
+            for (Sdc1Connection surplus : closing) {
+                surplus.close();
+            }
+        }
+
+        connectPending();
+    }
+
+    /**
+     * Once the target number of remotes is ready, cancels the scheduled reconnects and takes the
+     * connections that are not ready out of the queue. Must be called while holding the lock.
+     *
+     * @return the connections to close, once the lock is released; null if none
+     */
+    private Sdc1Connection[] onConnectionReady() {
+        int readyCount = 0;
+        for (Sdc1Connection connection : connections.values()) {
+            if (connection.getState() == Sdc1Connection.STATE_READY) {
+                readyCount++;
+            }
+        }
+        if (readyCount < targetConnectionCount) {
+            return null;
+        }
+
+        for (Runnable reconnect : scheduledReconnects.values()) {
+            transport.removeCallbacks(reconnect);
+        }
+        scheduledReconnects.clear();
+
+        final ArrayList<Sdc1Connection> closing = new ArrayList<>();
+        for (Sdc1Connection connection : connections.values()) {
+            if (connection.getState() != Sdc1Connection.STATE_READY) {
+                closing.add(connection);
+            }
+        }
+        // Their closed state removes them from the other collections
+        pendingConnections.removeAll(closing);
+
+        return closing.isEmpty() ? null : closing.toArray(new Sdc1Connection[closing.size()]);
+    }
+
+    /**
+     * @return number of connections counting toward the target: all but the direct connection
+     * attempts to known remotes. Must be called while holding the lock.
+     */
+    private int getPlaceCount() {
+        return connections.size() - directConnections.size();
+    }
+
+    /**
+     * Schedules a direct reconnect to a failed known remote, or falls back to scanning after too
+     * many consecutive failures. Must be called while holding the lock.
+     */
+    private void onConnectionFailed(Sdc1Connection connection) {
+        final String address = connection.getAddress();
+
+        if (connection.getFailureCause() instanceof MissingHandleException) {
+            // Not a (working) SPIN remote SDC-1, don't try to connect to it directly again
+            knownDeviceRegistry.forget(address);
+        }
+
+        final Integer previousFailures = failureCounts.get(address);
+        final int failures = previousFailures == null ? 1 : previousFailures + 1;
+        failureCounts.put(address, failures);
+
+        final long delayMillis = reconnectBackoff.getDelayMillis(failures);
+        retryAfter.put(address, transport.nowNanos() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+
+        if (started && failures <= MAX_DIRECT_RECONNECTS && knownDeviceRegistry.isKnown(address)) {
+            final Runnable reconnect = new Runnable() {
+                @Override
+                public void run() {
+                    reconnect(address);
+                }
+            };
+            scheduledReconnects.put(address, reconnect);
+            transport.postDelayed(reconnect, delayMillis);
+        } else {
+            LOGGER.info(address + " failed " + failures + " times, falling back to scanning");
+        }
+    }
+
+    /**
+     * Starts connection attempts for pending connections while there are free slots.
+     */
+    private void connectPending() {
+        while (true) {
+            final Sdc1Connection connection;
+            final Long foundNanos;
+            final boolean useAutoConnect;
+            synchronized (this) {
+                if (!started || connectingConnections.size() >= maxConcurrentConnects || pendingConnections.isEmpty()) {
+                    return;
+                }
+
+                connection = pendingConnections.poll();
+                useAutoConnect = autoConnect && knownDeviceRegistry.isKnown(connection.getAddress());
+                if (!useAutoConnect) {
+                    // Auto connect may wait forever, it must not hold a slot other remotes need
+                    connectingConnections.add(connection);
+                }
+                foundNanos = scanResultNanos.remove(connection.getAddress());
+                if (foundNanos != null) {
+                    scannedConnections.add(connection);
+                }
+            }
+
+            // Record how long the connection waited for a slot, if it was found by scanning
+            if (foundNanos != null) {
+                latencyRecorder.record(Sdc1LatencyRecorder.STEP_SCAN_TO_CONNECT, foundNanos, transport.nowNanos());
+            }
+            connection.connect(useAutoConnect);
+        }
+    }
+
+    /**
+     * Starts or stops scanning depending on whether more remotes are needed. Must be called while
+     * holding the lock.
+     */
+    private void updateScanning() {
+        final boolean needed = started && getPlaceCount() < targetConnectionCount;
+        if (needed == scanning) {
+            return;
+        }
+
+        if (needed) {
+            // Fails if e.g. Bluetooth is disabled, we'll try again on the next change
+            scanning = transport.startScan(scanListener);
+            if (scanning) {
+                scanLatencyStats.onScanStarted(transport.getScanMode(), transport.nowNanos());
+            }
+        } else {
+            transport.stopScan();
+            scanning = false;
+        }
+    }
+}
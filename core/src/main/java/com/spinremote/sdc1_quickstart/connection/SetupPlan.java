@@ -0,0 +1,90 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+/**
+ * Which steps a {@link Sdc1Connection} takes to set up a SPIN remote SDC-1 once its services are
+ * discovered, and in which order. Every step is a GATT round trip, and actions can only arrive
+ * once the action notification is enabled (and forced), so the {@link #FAST} plan enables it
+ * first and only overrides the LED color once ready:
+ *
+ *      FAST:   CCCD write --> force write (0x08) --> ready --> LED write (0x09)
+ *      SERIAL: LED write (0x09) --> CCCD write --> force write (0x08) --> ready
+ *
+ * Optional steps are skipped when not needed: the LED color when there is none to set (or the app
+ * already set one once ready), and forcing the action notification when only the actions the
+ * active profile does not handle itself are wanted.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class SetupPlan {
+    /**
+     * LED color of a plan that leaves the LED alone
+     */
+    public static final int NO_LED_COLOR = -1;
+
+    /**
+     * Enables the actions first, then sets the LED color to red
+     */
+    public static final SetupPlan FAST = new SetupPlan(0xFF0000, true, true);
+    /**
+     * Sets the LED color to red first, the order of the original QuickStart app
+     */
+    public static final SetupPlan SERIAL = new SetupPlan(0xFF0000, false, true);
+
+    private final int ledColor;
+    private final boolean ledColorDeferred;
+    private final boolean actionNotificationForced;
+
+    /**
+     * @param ledColor                 LED color to set (0xRRGGBB), {@link #NO_LED_COLOR} for none
+     * @param ledColorDeferred         whether the LED color is set once ready, instead of first
+     * @param actionNotificationForced whether all actions are notified, instead of only those the
+     *                                 active profile does not handle itself
+     */
+    public SetupPlan(int ledColor, boolean ledColorDeferred, boolean actionNotificationForced) {
+        if (ledColor != NO_LED_COLOR && (ledColor & ~0xFFFFFF) != 0) {
+            throw new IllegalArgumentException("invalid LED color " + Integer.toHexString(ledColor));
+        }
+
+        this.ledColor = ledColor;
+        this.ledColorDeferred = ledColorDeferred;
+        this.actionNotificationForced = actionNotificationForced;
+    }
+
+    /**
+     * @return the LED color to set (0xRRGGBB), {@link #NO_LED_COLOR} if none
+     */
+    public int getLedColor() {
+        return ledColor;
+    }
+
+    public boolean isLedColorDeferred() {
+        return ledColorDeferred;
+    }
+
+    public boolean isActionNotificationForced() {
+        return actionNotificationForced;
+    }
+
+    /**
+     * @return number of GATT round trips from connectGatt() to ready
+     */
+    public int getRoundTripsToReady() {
+        // Connect, discover the services and write the descriptor
+        int roundTrips = 3;
+        if (actionNotificationForced) {
+            roundTrips++;
+        }
+        if (ledColor != NO_LED_COLOR && !ledColorDeferred) {
+            roundTrips++;
+        }
+
+        return roundTrips;
+    }
+
+    @Override
+    public String toString() {
+        return "SetupPlan{ledColor=" + (ledColor == NO_LED_COLOR ? "none" : Integer.toHexString(ledColor))
+                + ", ledColorDeferred=" + ledColorDeferred
+                + ", actionNotificationForced=" + actionNotificationForced + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package com.spinremote.sdc1_quickstart.dispatch;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+/**
+ * Compiled {@link ActionMapping}: a dense array of handlers indexed by the uint8 action, plus a
+ * complete array per remote with mappings of its own, indexed by its {@link Sdc1DeviceTable}
+ * index. Looking up a handler is a bounds check and two array loads, without allocating.
+ *
+ * Immutable, so it can be shared between threads and replaced as a whole.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionDispatchTable {
+    /**
+     * Table without any handlers
+     */
+    public static final ActionDispatchTable EMPTY
+            = new ActionDispatchTable(new ActionEventHandler[Sdc1Codec.ACTION_COUNT], new ActionEventHandler[0][]);
+
+    /**
+     * Handlers of the remotes without mappings of their own, by action
+     */
+    private final ActionEventHandler[] handlers;
+    /**
+     * Handlers by device index and action, null for the remotes without mappings of their own
+     */
+    private final ActionEventHandler[][] deviceHandlers;
+
+    ActionDispatchTable(ActionEventHandler[] handlers, ActionEventHandler[][] deviceHandlers) {
+        this.handlers = handlers;
+        this.deviceHandlers = deviceHandlers;
+    }
+
+    /**
+     * @param deviceIndex index of the remote in the {@link Sdc1DeviceTable}
+     * @param action      uint8 action
+     * @return the handler of the action of the remote, null if not mapped
+     */
+    public ActionEventHandler getHandler(int deviceIndex, int action) {
+        ActionEventHandler[] row = deviceIndex >= 0 && deviceIndex < deviceHandlers.length
+                ? deviceHandlers[deviceIndex]
+                : null;
+        if (row == null) {
+            row = handlers;
+        }
+
+        return row[action & 0xFF];
+    }
+}
@@ -0,0 +1,138 @@
+package com.spinremote.sdc1_quickstart.dispatch;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches every action to the handler it is mapped to, through a compiled
+ * {@link ActionDispatchTable}: a single volatile read and an array lookup, no locks and no
+ * allocation.
+ *
+ * The mapping (and the active profile) can be changed at any time from any thread. The new table
+ * is compiled by the changing thread and then swapped in atomically, so actions keep being
+ * dispatched meanwhile: each action is handled by either the old or the new mapping, never by
+ * neither or both.
+ *
+ * Actions without a handler are counted per action instead of handled. Those that are not defined
+ * by the Action Characteristic (see {@link Sdc1Codec#isKnownAction(int)}) are counted as unknown
+ * as well. A handler that throws is counted as failed, the exception does not reach the thread
+ * delivering the actions.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionDispatcher implements ActionEventHandler {
+    private static final Logger LOGGER = Logger.getLogger("ActionDispatcher");
+
+    private final Sdc1DeviceTable deviceTable;
+
+    /**
+     * Table in use, replaced as a whole
+     */
+    private volatile ActionDispatchTable table = ActionDispatchTable.EMPTY;
+    /**
+     * Mapping and profile {@link #table} was compiled from, only used while holding the lock
+     */
+    private ActionMapping mapping;
+    private String profile;
+
+    private final AtomicLongArray unmappedCounts = new AtomicLongArray(Sdc1Codec.ACTION_COUNT);
+    private final AtomicLong unknownCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * @param deviceTable assigns the device indexes of the events and of the remotes mapped by
+     *                    address
+     */
+    public ActionDispatcher(Sdc1DeviceTable deviceTable) {
+        this.deviceTable = deviceTable;
+    }
+
+    @Override
+    public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+        final ActionEventHandler handler = table.getHandler(deviceIndex, action);
+        if (handler == null) {
+            unmappedCounts.incrementAndGet(action & 0xFF);
+            if (!Sdc1Codec.isKnownAction(action)) {
+                unknownCount.incrementAndGet();
+            }
+
+            return;
+        }
+
+        try {
+            handler.onActionEvent(deviceIndex, action, timestampNanos);
+        } catch (RuntimeException e) {
+            // Only log the first failure, the next ones are most likely the same
+            if (failedCount.getAndIncrement() == 0) {
+                LOGGER.warning("Handler of action " + action + " failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Compiles the mapping for the active profile and swaps it in.
+     *
+     * @param mapping the new mapping, null to unmap all actions
+     */
+    public synchronized void setMapping(ActionMapping mapping) {
+        this.mapping = mapping;
+        recompile();
+    }
+
+    /**
+     * Activates a profile, swapping in the mapping compiled for it.
+     *
+     * @param profile the profile, null for none (only mappings of any profile apply)
+     */
+    public synchronized void setProfile(String profile) {
+        this.profile = profile;
+        recompile();
+    }
+
+    public synchronized String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the table in use
+     */
+    public ActionDispatchTable getTable() {
+        return table;
+    }
+
+    /**
+     * @param action uint8 action
+     * @return number of times the action was received without a handler
+     */
+    public long getUnmappedCount(int action) {
+        return unmappedCounts.get(action & 0xFF);
+    }
+
+    /**
+     * @return number of actions without a handler that are not defined by the Action
+     * Characteristic
+     */
+    public long getUnknownCount() {
+        return unknownCount.get();
+    }
+
+    /**
+     * @return number of times a handler threw
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void recompile() {
+        // Writing the volatile field publishes the complete table to the dispatching threads
+        table = mapping != null ? mapping.compile(deviceTable, profile) : ActionDispatchTable.EMPTY;
+    }
+}
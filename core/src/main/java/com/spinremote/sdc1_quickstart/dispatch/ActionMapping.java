@@ -0,0 +1,171 @@
+package com.spinremote.sdc1_quickstart.dispatch;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configurable mapping of actions to the handlers (app commands) they trigger. A mapping can be
+ * limited to a single SPIN remote SDC-1 (by address) and/or to a profile of the app (e.g.
+ * "presentation" or "media"); the most specific mapping of an action wins:
+ *
+ *      1. profile and device
+ *      2. device
+ *      3. profile
+ *      4. any profile and device
+ *
+ * Within the same level, the last mapping added wins. The mapping is compiled into an
+ * {@link ActionDispatchTable} for an {@link ActionDispatcher}; changing it afterwards does not
+ * change the compiled tables. Not thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionMapping {
+    private static final int LEVEL_ANY = 0;
+    private static final int LEVEL_PROFILE = 1;
+    private static final int LEVEL_DEVICE = 2;
+    private static final int LEVEL_PROFILE_AND_DEVICE = 3;
+
+    private static final class Entry {
+        final String profile;
+        final String address;
+        final int action;
+        final ActionEventHandler handler;
+
+        Entry(String profile, String address, int action, ActionEventHandler handler) {
+            this.profile = profile;
+            this.address = address;
+            this.action = action;
+            this.handler = handler;
+        }
+
+        int level() {
+            if (profile != null) {
+                return address != null ? LEVEL_PROFILE_AND_DEVICE : LEVEL_PROFILE;
+            }
+
+            return address != null ? LEVEL_DEVICE : LEVEL_ANY;
+        }
+    }
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+
+    /**
+     * Maps an action of any remote, in any profile.
+     *
+     * @param action uint8 action, e.g. {@link Sdc1Codec#ACTION_TOUCHPAD_SWIPE_UP}
+     */
+    public ActionMapping map(int action, ActionEventHandler handler) {
+        return map(null, null, action, handler);
+    }
+
+    /**
+     * Maps an action of a single remote, in any profile.
+     */
+    public ActionMapping mapForDevice(String address, int action, ActionEventHandler handler) {
+        if (address == null) {
+            throw new IllegalArgumentException("address == null");
+        }
+
+        return map(null, address, action, handler);
+    }
+
+    /**
+     * Maps an action of any remote, in a single profile.
+     */
+    public ActionMapping mapForProfile(String profile, int action, ActionEventHandler handler) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile == null");
+        }
+
+        return map(profile, null, action, handler);
+    }
+
+    /**
+     * @param profile profile the mapping applies in, any if null
+     * @param address address of the remote the mapping applies to, any if null
+     * @param action  uint8 action
+     * @param handler handles the action, must not block (it's called on the thread receiving the
+     *                actions)
+     */
+    public ActionMapping map(String profile, String address, int action, ActionEventHandler handler) {
+        if (action < 0 || action >= Sdc1Codec.ACTION_COUNT) {
+            throw new IllegalArgumentException("action out of range: " + action);
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("handler == null");
+        }
+
+        entries.add(new Entry(profile, address, action, handler));
+
+        return this;
+    }
+
+    /**
+     * @return number of mappings added
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Compiles the mappings that apply in a profile into a table indexed by device index and
+     * action.
+     *
+     * @param deviceTable assigns the device indexes of the remotes mapped by address
+     * @param profile     active profile, null if none (only the mappings of any profile apply)
+     */
+    public ActionDispatchTable compile(Sdc1DeviceTable deviceTable, String profile) {
+        // Mappings of any remote, the less specific ones first so the more specific ones overwrite
+        // them
+        final ActionEventHandler[] handlers = new ActionEventHandler[Sdc1Codec.ACTION_COUNT];
+        apply(handlers, LEVEL_ANY, profile, null);
+        apply(handlers, LEVEL_PROFILE, profile, null);
+
+        // Every remote with a mapping of its own gets a complete copy, so dispatching never needs
+        // to fall back
+        final HashMap<Integer, ActionEventHandler[]> deviceHandlers = new HashMap<>();
+        int deviceCount = 0;
+        for (Entry entry : entries) {
+            if (entry.address == null || !applies(entry, profile)) {
+                continue;
+            }
+
+            final int deviceIndex = deviceTable.indexOf(entry.address);
+            if (!deviceHandlers.containsKey(deviceIndex)) {
+                final ActionEventHandler[] row = handlers.clone();
+                apply(row, LEVEL_DEVICE, profile, entry.address);
+                apply(row, LEVEL_PROFILE_AND_DEVICE, profile, entry.address);
+                deviceHandlers.put(deviceIndex, row);
+                deviceCount = Math.max(deviceCount, deviceIndex + 1);
+            }
+        }
+
+        final ActionEventHandler[][] rows = new ActionEventHandler[deviceCount][];
+        for (Map.Entry<Integer, ActionEventHandler[]> row : deviceHandlers.entrySet()) {
+            rows[row.getKey()] = row.getValue();
+        }
+
+        return new ActionDispatchTable(handlers, rows);
+    }
+
+    /**
+     * Applies the mappings of a level (for the address, or any remote if null) to a row.
+     */
+    private void apply(ActionEventHandler[] row, int level, String profile, String address) {
+        for (Entry entry : entries) {
+            if (entry.level() == level && applies(entry, profile)
+                    && (address == null ? entry.address == null : address.equals(entry.address))) {
+                row[entry.action] = entry.handler;
+            }
+        }
+    }
+
+    private static boolean applies(Entry entry, String profile) {
+        return entry.profile == null || entry.profile.equals(profile);
+    }
+}
@@ -0,0 +1,347 @@
+package com.spinremote.sdc1_quickstart.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free ring buffer of action events (device index, action, timestamp) with any
+ * number of {@link Subscriber}s, each reading at its own pace through its own cursor.
+ *
+ * Publishing never takes a lock and never allocates. Events are normally published from the
+ * Bluetooth binder threads; publishing is safe from several threads at once (one per connection),
+ * a sequence number is claimed atomically per event.
+ *
+ * What happens when a subscriber falls more than the capacity behind depends on its
+ * {@link OverflowPolicy}:
+ *      - {@link OverflowPolicy#DROP_OLDEST}: the publisher overwrites the oldest events and the
+ *        subscriber skips them on its next poll, counting them as dropped. The publisher never
+ *        waits.
+ *      - {@link OverflowPolicy#BLOCK}: the publisher waits for the subscriber to make room, but
+ *        at most the block timeout of the bus, after which it overwrites anyway (and the
+ *        subscriber counts the drops). A slow subscriber can therefore delay, but never stall,
+ *        the Bluetooth callbacks.
+ *
+ * Each slot is guarded by a sequence stamp (a seqlock): the publisher invalidates the stamp,
+ * writes the event and then stamps it with its sequence; a subscriber only accepts an event when
+ * it reads the expected stamp both before and after reading the event.
+ *
+ * A subscriber polling on a thread of its own does not have to poll on a timer: subscribed with
+ * a wake-up, it calls {@link Subscriber#prepareToBlock()} and blocks until the next publish runs
+ * the wake-up (e.g. unparking the thread), so an idle subscriber costs no CPU wakeups at all.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionEventBus {
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        BLOCK
+    }
+
+    /**
+     * Default time a publisher waits for a {@link OverflowPolicy#BLOCK} subscriber
+     */
+    public static final long DEFAULT_BLOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /**
+     * Stamp of a slot that is being written
+     */
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final long blockTimeoutNanos;
+
+    /**
+     * Sequence stamp of each slot, the sequence of the event it holds
+     */
+    private final AtomicLongArray stamps;
+    /**
+     * Event of each slot: timestamp at 2 * index, device index and action packed at 2 * index + 1
+     */
+    private final AtomicLongArray events;
+
+    /**
+     * Next sequence to be claimed by a publisher, so also the number of events ever published
+     */
+    private final AtomicLong nextSequence = new AtomicLong();
+    /**
+     * Number of times a publisher gave up waiting for a {@link OverflowPolicy#BLOCK} subscriber
+     */
+    private final AtomicLong blockTimeoutCount = new AtomicLong();
+
+    /**
+     * Current subscribers, replaced by a copy when one is added or removed
+     */
+    private volatile Subscriber[] subscribers = new Subscriber[0];
+
+    /**
+     * @param capacity number of events kept, rounded up to a power of two
+     */
+    public ActionEventBus(int capacity) {
+        this(capacity, DEFAULT_BLOCK_TIMEOUT_NANOS);
+    }
+
+    /**
+     * @param capacity          number of events kept, rounded up to a power of two
+     * @param blockTimeoutNanos maximum time a publisher waits for a
+     *                          {@link OverflowPolicy#BLOCK} subscriber
+     */
+    public ActionEventBus(int capacity, long blockTimeoutNanos) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+
+        stamps = new AtomicLongArray(this.capacity);
+        events = new AtomicLongArray(this.capacity * 2);
+        for (int i = 0; i < this.capacity; i++) {
+            stamps.set(i, WRITING);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of events ever published
+     */
+    public long getPublishedCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * @return number of times a publisher gave up waiting for a {@link OverflowPolicy#BLOCK}
+     * subscriber
+     */
+    public long getBlockTimeoutCount() {
+        return blockTimeoutCount.get();
+    }
+
+    /**
+     * Adds a subscriber that receives all events published from now on.
+     */
+    public Subscriber subscribe(OverflowPolicy overflowPolicy) {
+        return subscribe(overflowPolicy, null);
+    }
+
+    /**
+     * Adds a subscriber that receives all events published from now on, and can block while
+     * there are none.
+     *
+     * @param wakeUp run by the publisher of the next event once the polling thread is about to
+     *               block (see {@link Subscriber#prepareToBlock()}), e.g. unparking it; must not
+     *               block
+     */
+    public synchronized Subscriber subscribe(OverflowPolicy overflowPolicy, Runnable wakeUp) {
+        final Subscriber subscriber = new Subscriber(overflowPolicy, wakeUp, nextSequence.get());
+
+        final Subscriber[] current = subscribers;
+        final Subscriber[] updated = new Subscriber[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = subscriber;
+        subscribers = updated;
+
+        return subscriber;
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        final Subscriber[] current = subscribers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                final Subscriber[] updated = new Subscriber[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscribers = updated;
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes an action event to all subscribers.
+     *
+     * @param deviceIndex    index of the SPIN remote SDC-1 in the {@link Sdc1DeviceTable}
+     * @param action         uint8 action
+     * @param timestampNanos monotonic time the action was received
+     */
+    public void publish(int deviceIndex, int action, long timestampNanos) {
+        final long sequence = nextSequence.getAndIncrement();
+
+        if (sequence >= capacity) {
+            awaitBlockingSubscribers(sequence);
+        }
+
+        final int index = (int) sequence & mask;
+        stamps.set(index, WRITING);
+        events.set(2 * index, timestampNanos);
+        events.set(2 * index + 1, ((long) deviceIndex << 8) | (action & 0xFF));
+        stamps.set(index, sequence);
+
+        // Only the first event after a subscriber prepared to block pays for waking it up
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.blocking.get() && subscriber.blocking.compareAndSet(true, false)) {
+                subscriber.wakeUp.run();
+            }
+        }
+    }
+
+    /**
+     * Waits, at most the block timeout, until all {@link OverflowPolicy#BLOCK} subscribers have
+     * read the event the sequence is about to overwrite.
+     */
+    private void awaitBlockingSubscribers(long sequence) {
+        final long overwritten = sequence - capacity;
+        long deadline = 0;
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.overflowPolicy != OverflowPolicy.BLOCK) {
+                continue;
+            }
+
+            while (subscriber.cursor <= overwritten && !subscriber.closed) {
+                final long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + blockTimeoutNanos;
+                } else if (now - deadline >= 0) {
+                    blockTimeoutCount.incrementAndGet();
+
+                    return;
+                }
+
+                LockSupport.parkNanos(1000);
+            }
+        }
+    }
+
+    /**
+     * A reader of the {@link ActionEventBus} with its own cursor, to be polled from a single
+     * thread.
+     */
+    public final class Subscriber {
+        private final OverflowPolicy overflowPolicy;
+        private final Runnable wakeUp;
+        /**
+         * Whether the polling thread is (about to be) blocked and must be woken up by the next
+         * publisher
+         */
+        private final AtomicBoolean blocking = new AtomicBoolean();
+        /**
+         * Sequence of the next event to read, written by the polling thread only
+         */
+        private volatile long cursor;
+        private volatile long droppedCount;
+        private volatile boolean closed;
+
+        private Subscriber(OverflowPolicy overflowPolicy, Runnable wakeUp, long cursor) {
+            this.overflowPolicy = overflowPolicy;
+            this.wakeUp = wakeUp;
+            this.cursor = cursor;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        /**
+         * Passes the available events, oldest first, to the handler.
+         *
+         * @param handler   receives the events
+         * @param maxEvents maximum number of events to pass
+         * @return number of events passed
+         */
+        public int poll(ActionEventHandler handler, int maxEvents) {
+            long cursor = this.cursor;
+            int count = 0;
+
+            while (count < maxEvents && !closed) {
+                final int index = (int) cursor & mask;
+                final long stamp = stamps.get(index);
+
+                if (stamp == cursor) {
+                    final long timestampNanos = events.get(2 * index);
+                    final long packed = events.get(2 * index + 1);
+
+                    if (stamps.get(index) == cursor) {
+                        cursor++;
+                        count++;
+                        handler.onActionEvent((int) (packed >>> 8), (int) packed & 0xFF, timestampNanos);
+
+                        continue;
+                    } // else: overwritten while reading
+                } else if (stamp < cursor) {
+                    // Not published yet (or being overwritten, which the next poll will notice)
+                    break;
+                }
+
+                // The event was overwritten, skip to the oldest event that can still be read
+                final long oldest = nextSequence.get() - capacity;
+                if (oldest > cursor) {
+                    droppedCount += oldest - cursor;
+                    cursor = oldest;
+                } else {
+                    // The slot is being rewritten by a publisher that is just ahead of us
+                    droppedCount++;
+                    cursor++;
+                }
+            }
+
+            this.cursor = cursor;
+
+            return count;
+        }
+
+        /**
+         * Announces that the polling thread is about to block until the next event. If this
+         * returns true, the thread may block until the wake-up runs (or any other reason to wake
+         * up); otherwise an event was published in the meantime and it should poll again.
+         *
+         * @throws IllegalStateException if subscribed without a wake-up
+         */
+        public boolean prepareToBlock() {
+            if (wakeUp == null) {
+                throw new IllegalStateException("Subscribed without a wake-up");
+            }
+
+            blocking.set(true);
+            // Read after announcing, so either this sees the event or its publisher sees the
+            // announcement
+            if (nextSequence.get() != cursor) {
+                blocking.set(false);
+
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * @return number of events this subscriber missed because they were overwritten
+         */
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        /**
+         * @return number of published events this subscriber has not read yet
+         */
+        public long getLag() {
+            return Math.max(0, nextSequence.get() - cursor);
+        }
+
+        /**
+         * Stops receiving events, a blocked publisher no longer waits for this subscriber.
+         */
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.spinremote.sdc1_quickstart.event;
+
+/**
+ * Receives action events as primitives, so handling an event allocates nothing.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public interface ActionEventHandler {
+    /**
+     * @param deviceIndex    index of the SPIN remote SDC-1 in the {@link Sdc1DeviceTable}
+     * @param action         uint8 action
+     * @param timestampNanos monotonic time the action was received
+     */
+    void onActionEvent(int deviceIndex, int action, long timestampNanos);
+}
@@ -0,0 +1,58 @@
+package com.spinremote.sdc1_quickstart.event;
+
+import java.util.HashMap;
+
+/**
+ * Assigns a small, stable index to the address of every SPIN remote SDC-1 seen by this process,
+ * so events can refer to a remote with an int instead of a String. Indexes are never reused.
+ * All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1DeviceTable {
+    private final HashMap<String, Integer> indexes = new HashMap<>();
+    /**
+     * Addresses by index, replaced by a larger copy when full so readers never need the lock
+     */
+    private volatile String[] addresses = new String[8];
+    private int size;
+
+    /**
+     * @return the index of the address, assigning the next free one if it has none yet
+     */
+    public synchronized int indexOf(String address) {
+        final Integer index = indexes.get(address);
+        if (index != null) {
+            return index;
+        }
+
+        String[] addresses = this.addresses;
+        if (size == addresses.length) {
+            final String[] grown = new String[size * 2];
+            System.arraycopy(addresses, 0, grown, 0, size);
+            addresses = grown;
+        }
+        addresses[size] = address;
+        // Writing the volatile field publishes the new entry to readers
+        this.addresses = addresses;
+        indexes.put(address, size);
+
+        return size++;
+    }
+
+    /**
+     * @return the address with the index, or null if the index was never assigned
+     */
+    public String getAddress(int index) {
+        final String[] addresses = this.addresses;
+
+        return index >= 0 && index < addresses.length ? addresses[index] : null;
+    }
+
+    /**
+     * @return number of assigned indexes
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
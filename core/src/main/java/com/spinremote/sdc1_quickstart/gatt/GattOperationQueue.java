@@ -0,0 +1,342 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * Serializes the operations on a single {@link GattLink}. Android only allows one outstanding GATT
+ * operation at a time: starting a second one before the callback of the first has arrived makes
+ * {@code BluetoothGatt#writeCharacteristic(BluetoothGattCharacteristic)} and friends return false.
+ * This queue starts the next operation only after the previous one has completed, which the owner
+ * of the {@link GattLink.Callback} reports by calling {@link #onOperationCompleted()}.
+ *
+ * Writes to the Command Characteristic are coalesced: when a command is queued while a command
+ * with the same Command Id is still pending (not yet started), the pending one is dropped and the
+ * new one is queued at the end, so only the newest "set LED color" (0x09) is ever written.
+ *
+ * Values are copied when queued, so callers may reuse their frames (e.g. those of
+ * {@link Sdc1Codec}) immediately. Operation objects are recycled, so a steady stream of commands
+ * does not allocate.
+ *
+ * All methods are thread-safe; the operations are started from the calling thread (enqueue) or
+ * from the Bluetooth binder thread (completion). The {@link Callback} is called from the same
+ * threads, never while holding the lock of the queue, so it may e.g. close the connection.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class GattOperationQueue {
+    /**
+     * Notified about operations that could not be started
+     */
+    public interface Callback {
+        /**
+         * Called when the link refused to start a queued operation (the method on
+         * {@link GattLink} returned false). The queue continues with the next operation.
+         *
+         * @param link           the connection of the queue
+         * @param type           one of the TYPE_ constants of {@link GattOperationQueue}
+         * @param characteristic the characteristic of the operation (of the descriptor, for
+         *                       {@link #TYPE_WRITE_DESCRIPTOR})
+         */
+        void onOperationFailed(GattLink link, int type, UUID characteristic);
+    }
+
+    public static final int TYPE_WRITE_CHARACTERISTIC = 1;
+    public static final int TYPE_READ_CHARACTERISTIC = 2;
+    public static final int TYPE_WRITE_DESCRIPTOR = 3;
+
+    /**
+     * A queued operation, recycled through {@link #pool}
+     */
+    private static final class Operation {
+        int type;
+        UUID characteristic;
+        UUID descriptor;
+        /**
+         * Command Id if this is a coalescable command write, -1 otherwise
+         */
+        int commandId;
+        /**
+         * Exact-size copy of the value to write, reused when the next value has the same length
+         */
+        byte[] value;
+
+        void setValue(byte[] source) {
+            if (value == null || value.length != source.length) {
+                value = new byte[source.length];
+            }
+            System.arraycopy(source, 0, value, 0, source.length);
+        }
+    }
+
+    private final GattLink link;
+    /**
+     * Clock of the round trips, null if they are not timed
+     */
+    private final GattTransport transport;
+    private final Callback callback;
+
+    /**
+     * Operations waiting to be started, in order
+     */
+    private final ArrayDeque<Operation> pending = new ArrayDeque<>();
+    /**
+     * Recycled {@link Operation}s
+     */
+    private final ArrayDeque<Operation> pool = new ArrayDeque<>();
+    /**
+     * Operations the link refused to start, until the {@link Callback} is notified of them
+     */
+    private final ArrayDeque<Operation> refused = new ArrayDeque<>();
+    /**
+     * Operation that has been started and has not completed yet, null if idle
+     */
+    private Operation inFlight;
+    /**
+     * Time (nanos, {@link GattTransport#nowNanos()}) {@link #inFlight} was started
+     */
+    private long inFlightStartNanos;
+
+    /**
+     * Number of command writes that were dropped because a newer one replaced them
+     */
+    private long coalescedCount;
+    private boolean closed;
+
+    /**
+     * Creates a queue that does not time the round trips, {@link #onOperationCompleted()} returns
+     * -1.
+     */
+    public GattOperationQueue(GattLink link, Callback callback) {
+        this(link, null, callback);
+    }
+
+    /**
+     * @param transport the transport of the link, whose clock times the round trips so they can be
+     *                  compared with its other timestamps
+     */
+    public GattOperationQueue(GattLink link, GattTransport transport, Callback callback) {
+        this.link = link;
+        this.transport = transport;
+        this.callback = callback;
+    }
+
+    /**
+     * Queues a write to the Command Characteristic, replacing a pending command with the same
+     * Command Id.
+     *
+     * @param commandCharacteristic the Command Characteristic
+     * @param command               the command, e.g. a frame from {@link Sdc1Codec}
+     */
+    public void writeCommand(UUID commandCharacteristic, byte[] command) {
+        final int commandId = Sdc1Codec.decodeCommandId(command);
+
+        synchronized (this) {
+            // Drop the pending (not yet started) command with the same Command Id, the new one is
+            // queued at the end so it also ends up after any other command queued in between
+            final Iterator<Operation> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                final Operation operation = iterator.next();
+                if (operation.commandId == commandId && operation.characteristic.equals(commandCharacteristic)) {
+                    iterator.remove();
+                    recycle(operation);
+                    coalescedCount++;
+
+                    break;
+                }
+            }
+
+            final Operation operation = obtain(TYPE_WRITE_CHARACTERISTIC, commandCharacteristic, null);
+            operation.commandId = commandId;
+            operation.setValue(command);
+            enqueue(operation);
+        }
+
+        notifyRefused();
+    }
+
+    /**
+     * Queues a write to a characteristic, never coalesced.
+     */
+    public void writeCharacteristic(UUID characteristic, byte[] value) {
+        synchronized (this) {
+            final Operation operation = obtain(TYPE_WRITE_CHARACTERISTIC, characteristic, null);
+            operation.setValue(value);
+            enqueue(operation);
+        }
+
+        notifyRefused();
+    }
+
+    /**
+     * Queues a read of a characteristic.
+     */
+    public void readCharacteristic(UUID characteristic) {
+        synchronized (this) {
+            enqueue(obtain(TYPE_READ_CHARACTERISTIC, characteristic, null));
+        }
+
+        notifyRefused();
+    }
+
+    /**
+     * Queues a write to a descriptor of a characteristic, e.g. {@code ENABLE_NOTIFICATION_VALUE}
+     * to the client characteristic configuration descriptor.
+     */
+    public void writeDescriptor(UUID characteristic, UUID descriptor, byte[] value) {
+        synchronized (this) {
+            final Operation operation = obtain(TYPE_WRITE_DESCRIPTOR, characteristic, descriptor);
+            operation.setValue(value);
+            enqueue(operation);
+        }
+
+        notifyRefused();
+    }
+
+    /**
+     * Must be called from {@code onCharacteristicWrite}, {@code onCharacteristicRead} and
+     * {@code onDescriptorWrite} (regardless of the status) to start the next operation.
+     *
+     * @return time (nanos, on the clock of the transport) from starting the completed operation to
+     * its completion, i.e. its round trip over the air, -1 if no operation was in flight or the
+     * round trips are not timed
+     */
+    public long onOperationCompleted() {
+        long roundTripNanos = -1;
+        synchronized (this) {
+            if (inFlight != null) {
+                if (transport != null) {
+                    roundTripNanos = transport.nowNanos() - inFlightStartNanos;
+                }
+                recycle(inFlight);
+                inFlight = null;
+            }
+
+            startNext();
+        }
+
+        notifyRefused();
+
+        return roundTripNanos;
+    }
+
+    /**
+     * Drops all pending operations, to be called when the connection is closed. Operations queued
+     * afterwards are ignored.
+     */
+    public synchronized void close() {
+        closed = true;
+
+        while (!pending.isEmpty()) {
+            recycle(pending.poll());
+        }
+    }
+
+    /**
+     * @return number of operations waiting to be started
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return number of command writes dropped in favour of a newer command with the same Id
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    private void enqueue(Operation operation) {
+        if (closed) {
+            recycle(operation);
+
+            return;
+        }
+
+        pending.add(operation);
+
+        if (inFlight == null) {
+            startNext();
+        }
+    }
+
+    private void startNext() {
+        // Start pending operations until one is accepted by the link or there are none left
+        while (inFlight == null && !closed && !pending.isEmpty()) {
+            final Operation operation = pending.poll();
+
+            final long startNanos = transport != null ? transport.nowNanos() : 0;
+            final boolean started;
+            switch (operation.type) {
+                case TYPE_WRITE_CHARACTERISTIC:
+                    started = link.writeCharacteristic(operation.characteristic, operation.value);
+                    break;
+                case TYPE_READ_CHARACTERISTIC:
+                    started = link.readCharacteristic(operation.characteristic);
+                    break;
+                case TYPE_WRITE_DESCRIPTOR:
+                    started = link.writeDescriptor(operation.characteristic, operation.descriptor, operation.value);
+                    break;
+                default:
+                    started = false;
+                    break;
+            }
+
+            if (started) {
+                inFlight = operation;
+                inFlightStartNanos = startNanos;
+            } else {
+                // Reported once the lock is released, see notifyRefused()
+                refused.add(operation);
+            }
+        }
+    }
+
+    /**
+     * Notifies the {@link Callback} of the operations the link refused, in order. Must be called
+     * without holding the lock, after every call of {@link #startNext()}.
+     */
+    private void notifyRefused() {
+        while (true) {
+            final int type;
+            final UUID characteristic;
+            synchronized (this) {
+                final Operation operation = refused.poll();
+                if (operation == null) {
+                    return;
+                }
+
+                type = operation.type;
+                characteristic = operation.characteristic;
+                recycle(operation);
+            }
+
+            callback.onOperationFailed(link, type, characteristic);
+        }
+    }
+
+    private Operation obtain(int type, UUID characteristic, UUID descriptor) {
+        Operation operation = pool.poll();
+        if (operation == null) {
+            operation = new Operation();
+        }
+
+        operation.type = type;
+        operation.characteristic = characteristic;
+        operation.descriptor = descriptor;
+        operation.commandId = -1;
+
+        return operation;
+    }
+
+    private void recycle(Operation operation) {
+        operation.characteristic = null;
+        operation.descriptor = null;
+        pool.add(operation);
+    }
+}
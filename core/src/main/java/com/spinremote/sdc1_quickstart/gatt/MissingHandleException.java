@@ -0,0 +1,61 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+
+/**
+ * Thrown when the remote device lacks part of the SPIN Service, e.g. because it is not a SPIN
+ * remote SDC-1 or runs unexpected firmware.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class MissingHandleException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MISSING_SPIN_SERVICE = 1;
+    public static final int MISSING_COMMAND_CHARACTERISTIC = 2;
+    public static final int MISSING_ACTION_CHARACTERISTIC = 3;
+    public static final int MISSING_CLIENT_CHARACTERISTIC_CONFIG = 4;
+
+    private final int missing;
+
+    MissingHandleException(int missing, String message) {
+        super(message);
+        this.missing = missing;
+    }
+
+    /**
+     * @return which handle is missing, one of the MISSING_ constants of this class
+     */
+    public int getMissing() {
+        return missing;
+    }
+
+    /**
+     * Checks that the SPIN Service, its Characteristics and the descriptor to enable the action
+     * notification were discovered.
+     *
+     * @param link the connection, after the Bluetooth Services have been discovered
+     * @throws MissingHandleException if any of them is not found
+     */
+    public static void check(GattLink link) throws MissingHandleException {
+        // Check if the SPIN Service is found
+        if (!link.hasService(Sdc1Uuids.SPIN_SERVICE_UUID)) {
+            throw new MissingHandleException(MISSING_SPIN_SERVICE, "SPIN Service not found");
+        }
+
+        // Check if the Command and Action Characteristics are found
+        if (!link.hasCharacteristic(Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID)) {
+            throw new MissingHandleException(MISSING_COMMAND_CHARACTERISTIC, "Command Characteristic not found");
+        }
+        if (!link.hasCharacteristic(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID)) {
+            throw new MissingHandleException(MISSING_ACTION_CHARACTERISTIC, "Action Characteristic not found");
+        }
+
+        // Check if the descriptor to enable the action notification is found
+        if (!link.hasDescriptor(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID, Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID)) {
+            throw new MissingHandleException(MISSING_CLIENT_CHARACTERISTIC_CONFIG,
+                    "Client characteristic configuration descriptor of the Action Characteristic not found");
+        }
+    }
+}
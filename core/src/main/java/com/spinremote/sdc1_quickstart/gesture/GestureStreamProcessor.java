@@ -0,0 +1,303 @@
+package com.spinremote.sdc1_quickstart.gesture;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives higher-level gestures from the raw actions of one or more SPIN remote SDC-1s, as the
+ * actions come in:
+ *      - the scroll velocity (ticks per second, clockwise positive) over a sliding window of the
+ *        touchpad scroll actions, updated on every tick and reset to 0 once scrolling stops
+ *      - the number of times in a row the same rotate action was performed
+ *      - the number of times in a row the touchpad was pressed in the same direction (e.g. a
+ *        double press), reported separately from long presses
+ * All other actions are passed on as they are.
+ *
+ * Every event is handled in constant time and without allocating: all state lives in fixed-size
+ * arrays allocated up front, for a fixed number of devices.
+ *
+ * The latency budget is the longest a gesture may be held back to be classified. A press is only
+ * reported once no repeated press followed within the budget; a larger budget recognizes slower
+ * repeated presses, a smaller one reports single presses sooner (0 reports every press at once).
+ * Time only moves on with the events, so call {@link #advanceTo(long)} regularly (e.g. once per
+ * frame) to report held back presses and stopped scrolling when no more events come in.
+ *
+ * Not thread-safe, all methods must be called from the same thread, e.g. the one polling an
+ * {@link com.spinremote.sdc1_quickstart.event.ActionEventBus.Subscriber}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class GestureStreamProcessor implements ActionEventHandler {
+    /**
+     * Receives the gestures, from the thread calling the processor
+     */
+    public interface Listener {
+        /**
+         * @param ticksPerSecond scroll velocity, positive when scrolling clockwise, 0 when stopped
+         */
+        void onScrollVelocity(int deviceIndex, float ticksPerSecond, long timestampNanos);
+
+        /**
+         * @param action      one of the ACTION_ROTATE_ constants of {@link Sdc1Codec}
+         * @param repetitions number of times in a row this rotate action was performed, 1 for the
+         *                    first
+         */
+        void onRotate(int deviceIndex, int action, int repetitions, long timestampNanos);
+
+        /**
+         * @param direction   one of the DIRECTION_ constants of this class
+         * @param repetitions number of presses in a row in this direction, e.g. 2 for a double press
+         */
+        void onPress(int deviceIndex, int direction, int repetitions, long timestampNanos);
+
+        /**
+         * @param direction one of the DIRECTION_ constants of this class
+         */
+        void onLongPress(int deviceIndex, int direction, long timestampNanos);
+
+        /**
+         * Called for all actions that are not part of a gesture, e.g. swipes.
+         */
+        void onAction(int deviceIndex, int action, long timestampNanos);
+    }
+
+    /**
+     * Touchpad directions, in the order of the press actions
+     */
+    public static final int DIRECTION_NORTH = 0;
+    public static final int DIRECTION_SOUTH = 1;
+    public static final int DIRECTION_EAST = 2;
+    public static final int DIRECTION_WEST = 3;
+    public static final int DIRECTION_CENTER = 4;
+
+    public static final long DEFAULT_LATENCY_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    public static final long DEFAULT_SCROLL_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    public static final long DEFAULT_ROTATE_REPEAT_GAP_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Maximum number of scroll ticks in the sliding window, older ticks are forgotten even when
+     * still inside the window
+     */
+    public static final int MAX_SCROLL_WINDOW_TICKS = 32;
+
+    private static final int NONE = -1;
+
+    /**
+     * Gesture state of one device
+     */
+    private static final class DeviceState {
+        /**
+         * Timestamps of the scroll ticks in the window, a ring buffer starting at
+         * {@link #scrollHead}
+         */
+        final long[] scrollTimes = new long[MAX_SCROLL_WINDOW_TICKS];
+        int scrollHead;
+        int scrollCount;
+        /**
+         * 1 when scrolling clockwise, -1 counterclockwise, 0 when not scrolling
+         */
+        int scrollDirection;
+
+        int rotateAction = NONE;
+        int rotateRepetitions;
+        long rotateTime;
+
+        /**
+         * Direction of the press being held back, or {@link #NONE}
+         */
+        int pressDirection = NONE;
+        int pressRepetitions;
+        long pressTime;
+    }
+
+    private final Listener listener;
+    private final long latencyBudgetNanos;
+    private final long scrollWindowNanos;
+    private final long rotateRepeatGapNanos;
+    private final DeviceState[] devices;
+
+    /**
+     * Number of events ignored because their device index was out of range
+     */
+    private long ignoredCount;
+
+    /**
+     * Creates a processor using the default windows.
+     *
+     * @param maxDevices number of devices (indexes 0 up to this) to track
+     */
+    public GestureStreamProcessor(Listener listener, int maxDevices) {
+        this(listener, maxDevices, DEFAULT_LATENCY_BUDGET_NANOS, DEFAULT_SCROLL_WINDOW_NANOS,
+                DEFAULT_ROTATE_REPEAT_GAP_NANOS);
+    }
+
+    /**
+     * @param maxDevices           number of devices (indexes 0 up to this) to track
+     * @param latencyBudgetNanos   longest a press is held back to detect a repeated press
+     * @param scrollWindowNanos    duration of the sliding window the scroll velocity is
+     *                             measured over
+     * @param rotateRepeatGapNanos longest time between two rotate actions to count as a
+     *                             repetition
+     */
+    public GestureStreamProcessor(Listener listener, int maxDevices, long latencyBudgetNanos,
+                                  long scrollWindowNanos, long rotateRepeatGapNanos) {
+        if (maxDevices < 1 || latencyBudgetNanos < 0 || scrollWindowNanos <= 0 || rotateRepeatGapNanos < 0) {
+            throw new IllegalArgumentException("invalid configuration");
+        }
+
+        this.listener = listener;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.scrollWindowNanos = scrollWindowNanos;
+        this.rotateRepeatGapNanos = rotateRepeatGapNanos;
+
+        devices = new DeviceState[maxDevices];
+        for (int i = 0; i < maxDevices; i++) {
+            devices[i] = new DeviceState();
+        }
+    }
+
+    /**
+     * @return number of events ignored because their device index was out of range
+     */
+    public long getIgnoredCount() {
+        return ignoredCount;
+    }
+
+    @Override
+    public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+        if (deviceIndex < 0 || deviceIndex >= devices.length) {
+            ignoredCount++;
+
+            return;
+        }
+
+        final DeviceState device = devices[deviceIndex];
+
+        // Report what expired before this event first, so gestures are reported in order
+        advance(deviceIndex, device, timestampNanos);
+
+        if (action >= Sdc1Codec.ACTION_TOUCHPAD_PRESS_NORTH && action <= Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER) {
+            onPress(deviceIndex, device, action - Sdc1Codec.ACTION_TOUCHPAD_PRESS_NORTH, timestampNanos);
+
+            return;
+        } // else: any other action ends a series of presses
+
+        flushPress(deviceIndex, device);
+
+        if (action == Sdc1Codec.ACTION_TOUCHPAD_SCROLL_CLOCKWISE) {
+            onScroll(deviceIndex, device, 1, timestampNanos);
+        } else if (action == Sdc1Codec.ACTION_TOUCHPAD_SCROLL_COUNTERCLOCKWISE) {
+            onScroll(deviceIndex, device, -1, timestampNanos);
+        } else if (action >= Sdc1Codec.ACTION_ROTATE_RIGHT_SIDE_UP_CLOCKWISE
+                && action <= Sdc1Codec.ACTION_ROTATE_UPSIDE_DOWN_COUNTERCLOCKWISE) {
+            onRotate(deviceIndex, device, action, timestampNanos);
+        } else if (action >= Sdc1Codec.ACTION_TOUCHPAD_LONG_PRESS_NORTH
+                && action <= Sdc1Codec.ACTION_TOUCHPAD_LONG_PRESS_CENTER) {
+            listener.onLongPress(deviceIndex, action - Sdc1Codec.ACTION_TOUCHPAD_LONG_PRESS_NORTH, timestampNanos);
+        } else {
+            listener.onAction(deviceIndex, action, timestampNanos);
+        }
+    }
+
+    /**
+     * Reports the held back presses whose latency budget has passed and the scrolling that
+     * stopped, of all devices.
+     *
+     * @param nowNanos current time, on the same clock as the event timestamps
+     */
+    public void advanceTo(long nowNanos) {
+        for (int i = 0; i < devices.length; i++) {
+            advance(i, devices[i], nowNanos);
+        }
+    }
+
+    private void advance(int deviceIndex, DeviceState device, long nowNanos) {
+        if (device.pressDirection != NONE && nowNanos - device.pressTime > latencyBudgetNanos) {
+            flushPress(deviceIndex, device);
+        }
+
+        if (device.scrollDirection != 0) {
+            expireScrollTicks(device, nowNanos);
+            if (device.scrollCount == 0) {
+                device.scrollDirection = 0;
+                listener.onScrollVelocity(deviceIndex, 0, nowNanos);
+            }
+        }
+    }
+
+    private void onPress(int deviceIndex, DeviceState device, int direction, long timestampNanos) {
+        if (device.pressDirection == direction) {
+            // Within the budget, otherwise advance() would have flushed it
+            device.pressRepetitions++;
+        } else {
+            flushPress(deviceIndex, device);
+            device.pressDirection = direction;
+            device.pressRepetitions = 1;
+        }
+        device.pressTime = timestampNanos;
+
+        if (latencyBudgetNanos == 0) {
+            flushPress(deviceIndex, device);
+        }
+    }
+
+    private void flushPress(int deviceIndex, DeviceState device) {
+        if (device.pressDirection == NONE) {
+            return;
+        }
+
+        final int direction = device.pressDirection;
+        device.pressDirection = NONE;
+        listener.onPress(deviceIndex, direction, device.pressRepetitions, device.pressTime);
+    }
+
+    private void onScroll(int deviceIndex, DeviceState device, int direction, long timestampNanos) {
+        if (device.scrollDirection != direction) {
+            // Changing direction starts a new window
+            device.scrollCount = 0;
+            device.scrollDirection = direction;
+        } else {
+            expireScrollTicks(device, timestampNanos);
+        }
+
+        // Add the tick, forgetting the oldest one if the window is full
+        final long[] times = device.scrollTimes;
+        if (device.scrollCount == MAX_SCROLL_WINDOW_TICKS) {
+            device.scrollHead = (device.scrollHead + 1) % MAX_SCROLL_WINDOW_TICKS;
+            device.scrollCount--;
+        }
+        times[(device.scrollHead + device.scrollCount) % MAX_SCROLL_WINDOW_TICKS] = timestampNanos;
+        device.scrollCount++;
+
+        // The rate of the ticks in the window, or one tick per window if it's the only one
+        final long span = timestampNanos - times[device.scrollHead];
+        final float ticksPerSecond = device.scrollCount < 2 || span <= 0
+                ? 1e9f / scrollWindowNanos
+                : (device.scrollCount - 1) * 1e9f / span;
+
+        listener.onScrollVelocity(deviceIndex, direction * ticksPerSecond, timestampNanos);
+    }
+
+    /**
+     * Removes the scroll ticks that fell out of the window.
+     */
+    private void expireScrollTicks(DeviceState device, long nowNanos) {
+        while (device.scrollCount > 0 && nowNanos - device.scrollTimes[device.scrollHead] > scrollWindowNanos) {
+            device.scrollHead = (device.scrollHead + 1) % MAX_SCROLL_WINDOW_TICKS;
+            device.scrollCount--;
+        }
+    }
+
+    private void onRotate(int deviceIndex, DeviceState device, int action, long timestampNanos) {
+        if (device.rotateAction == action && timestampNanos - device.rotateTime <= rotateRepeatGapNanos) {
+            device.rotateRepetitions++;
+        } else {
+            device.rotateAction = action;
+            device.rotateRepetitions = 1;
+        }
+        device.rotateTime = timestampNanos;
+
+        listener.onRotate(deviceIndex, action, device.rotateRepetitions, timestampNanos);
+    }
+}
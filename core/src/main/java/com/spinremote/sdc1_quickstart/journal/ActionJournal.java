@@ -0,0 +1,293 @@
+package com.spinremote.sdc1_quickstart.journal;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of actions, written to memory-mapped segment files of fixed-size binary
+ * records, so appending a record is a few stores into the page cache without a system call.
+ *
+ * Each segment starts with a header of {@link #HEADER_SIZE} bytes:
+ *
+ *      0   int     {@link #MAGIC}
+ *      4   int     {@link #VERSION}
+ *      8   int     {@link #RECORD_SIZE}
+ *      12  int     number of records the segment has room for
+ *
+ * followed by records of {@link #RECORD_SIZE} bytes, all little-endian:
+ *
+ *      0   long    timestamp (nanos, on the clock of the transport)
+ *      8   int     device index, see {@link Sdc1DeviceTable}
+ *      12  byte    action (uint8)
+ *      13  byte[2] reserved, 0
+ *      15  byte    {@link #RECORD_COMMITTED}, written last
+ *
+ * Segments are pre-sized and zero-filled, so a reader stops at the first record that is not
+ * committed. When a segment is full the journal rolls over to a new one, named after its
+ * sequence number; the oldest segments are deleted to keep the journal within its retention
+ * size. Every instance starts a new segment, so the journal of an earlier run is never
+ * overwritten.
+ *
+ * Not thread-safe: append from a single thread, e.g. through an {@link ActionJournalRecorder}
+ * so the Bluetooth callbacks never wait for the disk.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionJournal implements ActionEventHandler, Closeable {
+    private static final Logger LOGGER = Logger.getLogger("ActionJournal");
+
+    /**
+     * "SDCJ", first int of every segment
+     */
+    public static final int MAGIC = 0x5344434A;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    /**
+     * Value of the last byte of a record once it is completely written
+     */
+    public static final byte RECORD_COMMITTED = 1;
+    /**
+     * Records per segment by default, so a segment including its header is 1 MiB
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 65535;
+    /**
+     * Total size of the segments kept by default
+     */
+    public static final long DEFAULT_RETENTION_BYTES = 64L * 1024 * 1024;
+
+    static final int OFFSET_TIMESTAMP = 0;
+    static final int OFFSET_DEVICE_INDEX = 8;
+    static final int OFFSET_ACTION = 12;
+    static final int OFFSET_COMMIT = 15;
+
+    private static final String SEGMENT_PREFIX = "actions-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final File directory;
+    private final int segmentRecords;
+    /**
+     * Number of segments kept, including the one being written
+     */
+    private final int maxSegments;
+
+    /**
+     * Segment being written, null once closed
+     */
+    private MappedByteBuffer segment;
+    private long segmentSequence;
+    private int segmentRecordCount;
+
+    private long appendedCount;
+    private long failedCount;
+
+    /**
+     * Opens a journal with {@link #DEFAULT_SEGMENT_RECORDS} and {@link #DEFAULT_RETENTION_BYTES}.
+     */
+    public ActionJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS, DEFAULT_RETENTION_BYTES);
+    }
+
+    /**
+     * @param directory      directory of the segments, created if needed
+     * @param segmentRecords number of records per segment
+     * @param retentionBytes total size of the segments to keep, at least one segment is kept
+     */
+    public ActionJournal(File directory, int segmentRecords, long retentionBytes) throws IOException {
+        if (segmentRecords < 1 || segmentSize(segmentRecords) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentRecords out of range: " + segmentRecords);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, retentionBytes / segmentSize(segmentRecords)));
+
+        // Continue after the newest segment of an earlier run
+        final File[] segments = listSegments(directory);
+        segmentSequence = segments.length > 0 ? sequenceOf(segments[segments.length - 1]) + 1 : 0;
+        openSegment();
+    }
+
+    /**
+     * Appends a record, rolling over to a new segment first if the current one is full.
+     *
+     * @param deviceIndex    index of the SPIN remote SDC-1 in the {@link Sdc1DeviceTable}
+     * @param action         uint8 action
+     * @param timestampNanos time at which the action was received
+     */
+    public void append(int deviceIndex, int action, long timestampNanos) throws IOException {
+        if (segment == null) {
+            throw new IOException("Journal is closed");
+        }
+        if (segmentRecordCount == segmentRecords) {
+            rollOver();
+        }
+
+        final int offset = HEADER_SIZE + segmentRecordCount * RECORD_SIZE;
+        segment.putLong(offset + OFFSET_TIMESTAMP, timestampNanos);
+        segment.putInt(offset + OFFSET_DEVICE_INDEX, deviceIndex);
+        segment.put(offset + OFFSET_ACTION, (byte) action);
+        // Committed last, so a reader never sees a partially written record
+        segment.put(offset + OFFSET_COMMIT, RECORD_COMMITTED);
+
+        segmentRecordCount++;
+        appendedCount++;
+    }
+
+    /**
+     * Appends the event, counting it as failed instead of throwing if it could not be written.
+     */
+    @Override
+    public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+        try {
+            append(deviceIndex, action, timestampNanos);
+        } catch (IOException e) {
+            // Only log the first failure, the next ones are most likely the same
+            if (failedCount++ == 0) {
+                LOGGER.warning("Could not append to " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the records appended so far to the storage device.
+     */
+    public void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the journal, appending afterwards fails.
+     */
+    @Override
+    public void close() {
+        flush();
+        segment = null;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of records appended by this instance
+     */
+    public long getAppendedCount() {
+        return appendedCount;
+    }
+
+    /**
+     * @return number of events passed to {@link #onActionEvent(int, int, long)} that could not be
+     * appended
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the segment files in the directory, oldest first
+     */
+    public static File[] listSegments(File directory) {
+        final File[] segments = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return sequenceOf(file) >= 0;
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                final long sequenceA = sequenceOf(a);
+                final long sequenceB = sequenceOf(b);
+
+                return sequenceA < sequenceB ? -1 : (sequenceA == sequenceB ? 0 : 1);
+            }
+        });
+
+        return segments;
+    }
+
+    static long segmentSize(int segmentRecords) {
+        return HEADER_SIZE + (long) segmentRecords * RECORD_SIZE;
+    }
+
+    /**
+     * @return the sequence number of a segment file, -1 if it's not a segment
+     */
+    private static long sequenceOf(File file) {
+        final String name = file.getName();
+        if (!file.isFile() || !name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void rollOver() throws IOException {
+        segment.force();
+        segment = null;
+        segmentSequence++;
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        // Zero padded, so the names also sort in order
+        final File file = new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, segmentSequence, SEGMENT_SUFFIX));
+        final long size = segmentSize(segmentRecords);
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid after the file is closed
+            randomAccessFile.setLength(size);
+            segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putInt(12, segmentRecords);
+        segmentRecordCount = 0;
+
+        deleteExpiredSegments();
+    }
+
+    /**
+     * Deletes the oldest segments until at most {@link #maxSegments} are left.
+     */
+    private void deleteExpiredSegments() {
+        final File[] segments = listSegments(directory);
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (!segments[i].delete()) {
+                LOGGER.warning("Could not delete " + segments[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.spinremote.sdc1_quickstart.journal;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads the records of an {@link ActionJournal}, oldest first. The segments are memory-mapped
+ * and the fixed-size records are read in place, so reading allocates nothing per record.
+ *
+ * Records can be read as fast as possible with {@link #read(ActionEventHandler, int)}, or
+ * replayed into the action pipeline with {@link #replay(ActionEventHandler, double, long)} at
+ * their original pace, or faster.
+ *
+ * The segments are listed when the reader is opened: records appended to the newest of them
+ * later on are read as well, segments created later on are not. Segments that are deleted by the
+ * retention of the journal before they are read are skipped. Not thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionJournalReader implements Closeable {
+    /**
+     * Replayed records due within this time are waited for by parking instead of sleeping, which
+     * wakes up closer to their due time
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final File[] segments;
+    /**
+     * Index in {@link #segments} of the segment being read, {@code segments.length} at the end
+     */
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment;
+    private int segmentRecords;
+    /**
+     * Index of the next record in {@link #segment}
+     */
+    private int recordIndex;
+
+    /**
+     * Fields of the record read by {@link #next()}
+     */
+    private long timestampNanos;
+    private int deviceIndex;
+    private int action;
+
+    private long readCount;
+
+    public ActionJournalReader(File directory) {
+        segments = ActionJournal.listSegments(directory);
+    }
+
+    /**
+     * Passes the next records to the handler, with their original timestamps.
+     *
+     * @param handler    receives the records
+     * @param maxRecords maximum number of records to pass
+     * @return number of records passed, 0 if there are no more
+     * @throws IOException when a segment can't be read or is not a journal segment
+     */
+    public int read(ActionEventHandler handler, int maxRecords) throws IOException {
+        int count = 0;
+        while (count < maxRecords && next()) {
+            handler.onActionEvent(deviceIndex, action, timestampNanos);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Passes all remaining records to the handler, each at the time it is due: the time between
+     * two records is the time between their original timestamps divided by the speed. The
+     * handler gets the due times as timestamps, so time-based processing (e.g. of gestures)
+     * sees the replayed pace.
+     *
+     * @param handler              receives the records, on the calling thread
+     * @param speed                1 for the original pace, 10 for ten times faster, 0 for as
+     *                             fast as possible with the original timestamps
+     * @param startTimestampNanos  timestamp passed with the first record, e.g. the current time
+     *                             on the clock of the pipeline
+     * @return number of records passed
+     * @throws IOException          when a segment can't be read
+     * @throws InterruptedException when interrupted while waiting for the next record
+     */
+    public long replay(ActionEventHandler handler, double speed, long startTimestampNanos)
+            throws IOException, InterruptedException {
+        if (speed <= 0) {
+            long count = 0;
+            int batch;
+            while ((batch = read(handler, Integer.MAX_VALUE)) > 0) {
+                count += batch;
+            }
+
+            return count;
+        }
+
+        final long startNanos = System.nanoTime();
+        long firstTimestampNanos = 0;
+        long count = 0;
+
+        while (next()) {
+            if (count == 0) {
+                firstTimestampNanos = timestampNanos;
+            }
+
+            final long offsetNanos = (long) ((timestampNanos - firstTimestampNanos) / speed);
+            waitUntil(startNanos + offsetNanos);
+
+            handler.onActionEvent(deviceIndex, action, startTimestampNanos + offsetNanos);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return number of records read so far
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        segmentIndex = segments.length;
+    }
+
+    /**
+     * Reads the next committed record into the fields.
+     *
+     * @return whether there was one
+     */
+    private boolean next() throws IOException {
+        while (true) {
+            if (segment != null && recordIndex < segmentRecords) {
+                final int offset = ActionJournal.HEADER_SIZE + recordIndex * ActionJournal.RECORD_SIZE;
+                if (segment.get(offset + ActionJournal.OFFSET_COMMIT) == ActionJournal.RECORD_COMMITTED) {
+                    timestampNanos = segment.getLong(offset + ActionJournal.OFFSET_TIMESTAMP);
+                    deviceIndex = segment.getInt(offset + ActionJournal.OFFSET_DEVICE_INDEX);
+                    action = segment.get(offset + ActionJournal.OFFSET_ACTION) & 0xFF;
+                    recordIndex++;
+                    readCount++;
+
+                    return true;
+                } // else: not written (yet)
+
+                if (segmentIndex == segments.length - 1) {
+                    // The newest segment may still be appended to, read on from here next time
+                    return false;
+                } // else: an earlier run stopped before this segment was full
+            }
+
+            // Continue with the next segment, if any
+            if (segmentIndex >= segments.length - 1) {
+                return false;
+            }
+            segmentIndex++;
+            openSegment(segments[segmentIndex]);
+        }
+    }
+
+    private void openSegment(File file) throws IOException {
+        segment = null;
+        segmentRecords = 0;
+        recordIndex = 0;
+
+        final RandomAccessFile randomAccessFile;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            // Deleted by the retention of the journal in the meantime, so skip it
+            return;
+        }
+
+        final MappedByteBuffer mapped;
+        try {
+            mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapped.capacity() < ActionJournal.HEADER_SIZE
+                || mapped.getInt(0) != ActionJournal.MAGIC
+                || mapped.getInt(4) != ActionJournal.VERSION
+                || mapped.getInt(8) != ActionJournal.RECORD_SIZE) {
+            throw new IOException("Not a journal segment: " + file);
+        }
+
+        // Don't trust the header further than the file is long
+        segmentRecords = Math.min(mapped.getInt(12),
+                (mapped.capacity() - ActionJournal.HEADER_SIZE) / ActionJournal.RECORD_SIZE);
+        segment = mapped;
+    }
+
+    private static void waitUntil(long dueNanos) throws InterruptedException {
+        long remainingNanos;
+        while ((remainingNanos = dueNanos - System.nanoTime()) > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (remainingNanos > PARK_NANOS) {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos - PARK_NANOS);
+            } else {
+                LockSupport.parkNanos(remainingNanos);
+            }
+        }
+    }
+}
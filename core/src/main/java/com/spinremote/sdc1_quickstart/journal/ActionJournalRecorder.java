@@ -0,0 +1,105 @@
+package com.spinremote.sdc1_quickstart.journal;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventBus;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records all actions published on an {@link ActionEventBus} in an {@link ActionJournal}, on a
+ * thread of its own. The Bluetooth callbacks only publish on the bus, which never waits for the
+ * recorder, so journaling adds no latency to them; if the recorder falls behind by more than the
+ * capacity of the bus, the oldest actions are dropped and counted instead. While there are no
+ * actions, the thread is parked until the next one is published, so it never wakes up on a timer.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ActionJournalRecorder {
+    /**
+     * Maximum number of actions recorded per poll of the bus
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private final ActionEventBus actionEventBus;
+    private final ActionJournal journal;
+
+    private ActionEventBus.Subscriber subscriber;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param actionEventBus the bus to record the actions of
+     * @param journal        the journal to append to, closed by {@link #stop()}
+     */
+    public ActionJournalRecorder(ActionEventBus actionEventBus, ActionJournal journal) {
+        this.actionEventBus = actionEventBus;
+        this.journal = journal;
+    }
+
+    /**
+     * Starts recording the actions published from now on.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        running = true;
+        final Thread recorderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    if (subscriber.poll(journal, BATCH_SIZE) == 0 && subscriber.prepareToBlock() && running) {
+                        // Unparked by the next publish, or by stop()
+                        LockSupport.park(ActionJournalRecorder.this);
+                    }
+                }
+            }
+        }, "ActionJournalRecorder");
+        subscriber = actionEventBus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST, new Runnable() {
+            @Override
+            public void run() {
+                LockSupport.unpark(recorderThread);
+            }
+        });
+        thread = recorderThread;
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records the actions that are still on the bus, stops the thread and closes the journal.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+
+        // The thread is gone, so the rest can be recorded from here
+        while (subscriber.poll(journal, BATCH_SIZE) > 0) {
+            // Record until the bus is drained
+        }
+        subscriber.close();
+        journal.close();
+    }
+
+    public ActionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return number of actions not recorded because the recorder fell behind
+     */
+    public long getDroppedCount() {
+        final ActionEventBus.Subscriber subscriber;
+        synchronized (this) {
+            subscriber = this.subscriber;
+        }
+
+        return subscriber == null ? 0 : subscriber.getDroppedCount();
+    }
+}
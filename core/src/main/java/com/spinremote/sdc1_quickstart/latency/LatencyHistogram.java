@@ -0,0 +1,151 @@
+package com.spinremote.sdc1_quickstart.latency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in a fixed amount of memory, with microsecond resolution and a relative
+ * error of at most 1/16th (6.25%) from 16 microseconds up to about 12 days.
+ *
+ * Buckets are log-linear: values below 16 microseconds each have their own bucket, every next
+ * power of two range is split into 16 equal buckets. Recording is lock-free and does not
+ * allocate, so it can be done from any thread, e.g. the Bluetooth binder threads. Reading while
+ * recording is allowed, the result is then a close approximation.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Largest value (in microseconds) with a bucket of its own, larger values are clamped
+     */
+    private static final long MAX_VALUE_MICROS = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Records a latency, negative latencies count as 0.
+     */
+    public void record(long latencyNanos) {
+        final long nanos = Math.max(0, latencyNanos);
+        final long micros = Math.min(MAX_VALUE_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        counts.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Records that the measured step failed, so there is no latency to record.
+     */
+    public void recordFailure() {
+        failureCount.incrementAndGet();
+    }
+
+    /**
+     * @return number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return highest recorded latency, exact, 0 if none
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return mean recorded latency (microsecond resolution), 0 if none
+     */
+    public long getMeanNanos() {
+        final long count = this.count.get();
+
+        return count == 0 ? 0 : TimeUnit.MICROSECONDS.toNanos(sumMicros.get() / count);
+    }
+
+    /**
+     * @param percentile 0 - 100, e.g. 99 for the 99th percentile
+     * @return the latency the percentile of the recorded latencies is at or below (the upper
+     * bound of its bucket, but never above the maximum), 0 if none
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("invalid percentile " + percentile);
+        }
+
+        final long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        // The rank of the value we're looking for, at least the first one
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(getMaxNanos(), TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i)));
+            }
+        }
+
+        // Only reachable when recording concurrently
+        return getMaxNanos();
+    }
+
+    /**
+     * Clears all recorded latencies and failures.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxNanos.set(0);
+        failureCount.set(0);
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        // The top SUB_BUCKET_BITS + 1 bits select the bucket
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (micros >>> shift) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return highest value (in microseconds) in the bucket
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
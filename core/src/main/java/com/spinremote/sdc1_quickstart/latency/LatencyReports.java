@@ -0,0 +1,43 @@
+package com.spinremote.sdc1_quickstart.latency;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the latency tables (e.g. of a {@link Sdc1LatencyRecorder}) to files, so they can be
+ * collected from test phones and compared.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class LatencyReports {
+    /**
+     * A table of latencies, written as text
+     */
+    public interface Table {
+        void dump(Writer writer) throws IOException;
+    }
+
+    /**
+     * Writes the table to a file, after a header line (e.g. the phone model and firmware
+     * version), replacing the file if it exists.
+     *
+     * @param header first line of the file, none if null
+     */
+    public static void dumpToFile(Table table, File file, String header) throws IOException {
+        final Writer writer = new FileWriter(file);
+        try {
+            if (header != null) {
+                writer.write(header);
+                writer.write('\n');
+            }
+            table.dump(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private LatencyReports() {
+    }
+}
@@ -0,0 +1,130 @@
+package com.spinremote.sdc1_quickstart.latency;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Records how long each step from finding a SPIN remote SDC-1 to showing its actions takes, in a
+ * {@link LatencyHistogram} per step:
+ *
+ *      {@link #STEP_SCAN_TO_CONNECT}     scan result to connectGatt()
+ *      {@link #STEP_CONNECT}             connectGatt() to connected
+ *      {@link #STEP_DISCOVER_SERVICES}   connected to services discovered
+ *      {@link #STEP_LED_WRITE}           LED color write queued to written
+ *      {@link #STEP_CCCD_WRITE}          action notification descriptor write queued to written
+ *      {@link #STEP_FIRST_ACTION}        connectGatt() to the first action notification
+ *      {@link #STEP_ACTION_DELIVERY}     action notification to rendered on the screen
+ *      {@link #STEP_CONNECT_TO_READY}    connectGatt() to ready, i.e. the first action deliverable
+ *
+ * All timestamps must come from the same monotonic clock (SystemClock.elapsedRealtimeNanos() on
+ * Android, which is also the clock of the scan result timestamps). Recording is lock-free, so
+ * this can be shared by all connections and the UI.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1LatencyRecorder implements LatencyReports.Table {
+    public static final int STEP_SCAN_TO_CONNECT = 0;
+    public static final int STEP_CONNECT = 1;
+    public static final int STEP_DISCOVER_SERVICES = 2;
+    public static final int STEP_LED_WRITE = 3;
+    public static final int STEP_CCCD_WRITE = 4;
+    public static final int STEP_FIRST_ACTION = 5;
+    public static final int STEP_ACTION_DELIVERY = 6;
+    public static final int STEP_CONNECT_TO_READY = 7;
+    public static final int STEP_COUNT = 8;
+
+    private static final String[] STEP_NAMES = {
+            "scan_to_connect",
+            "connect",
+            "discover_services",
+            "led_write",
+            "cccd_write",
+            "first_action",
+            "action_delivery",
+            "connect_to_ready"
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STEP_COUNT];
+
+    public Sdc1LatencyRecorder() {
+        for (int i = 0; i < STEP_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return short name of the step, as used in {@link #dump(Writer)}
+     */
+    public static String stepName(int step) {
+        return STEP_NAMES[step];
+    }
+
+    /**
+     * Records a completed step.
+     *
+     * @param step       one of the STEP_ constants of this class
+     * @param startNanos monotonic time the step started
+     * @param endNanos   monotonic time the step completed
+     */
+    public void record(int step, long startNanos, long endNanos) {
+        histograms[step].record(endNanos - startNanos);
+    }
+
+    /**
+     * Records a failed step.
+     *
+     * @param step one of the STEP_ constants of this class
+     */
+    public void recordFailure(int step) {
+        histograms[step].recordFailure();
+    }
+
+    /**
+     * @param step one of the STEP_ constants of this class
+     */
+    public LatencyHistogram getHistogram(int step) {
+        return histograms[step];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes a table with a line per step: name, count, failures, mean, p50, p90, p99 and max,
+     * all latencies in milliseconds.
+     */
+    @Override
+    public void dump(Writer writer) throws IOException {
+        writer.write("step count failures mean_ms p50_ms p90_ms p99_ms max_ms\n");
+        for (int step = 0; step < STEP_COUNT; step++) {
+            final LatencyHistogram histogram = histograms[step];
+            writer.write(String.format(
+                    Locale.US,
+                    "%s %d %d %.3f %.3f %.3f %.3f %.3f\n",
+                    STEP_NAMES[step],
+                    histogram.getCount(),
+                    histogram.getFailureCount(),
+                    histogram.getMeanNanos() / 1e6,
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(90) / 1e6,
+                    histogram.getPercentileNanos(99) / 1e6,
+                    histogram.getMaxNanos() / 1e6
+            ));
+        }
+    }
+
+    /**
+     * Writes the {@link #dump(Writer)} table to a file, see
+     * {@link LatencyReports#dumpToFile(LatencyReports.Table, File, String)}.
+     *
+     * @param header first line of the file, none if null
+     */
+    public void dumpToFile(File file, String header) throws IOException {
+        LatencyReports.dumpToFile(this, file, header);
+    }
+}
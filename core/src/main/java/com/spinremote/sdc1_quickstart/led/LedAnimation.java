@@ -0,0 +1,19 @@
+package com.spinremote.sdc1_quickstart.led;
+
+/**
+ * The LED color of a SPIN remote SDC-1 as a function of time, played by a {@link LedAnimator}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public interface LedAnimation {
+    /**
+     * @return duration of the animation, after which the LED override is cancelled
+     */
+    long getDurationNanos();
+
+    /**
+     * @param elapsedNanos time since the start of the animation, from 0 to the duration
+     * @return the color at that time (0xRRGGBB)
+     */
+    int colorAt(long elapsedNanos);
+}
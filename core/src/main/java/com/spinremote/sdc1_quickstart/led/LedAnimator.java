@@ -0,0 +1,273 @@
+package com.spinremote.sdc1_quickstart.led;
+
+import com.spinremote.sdc1_quickstart.connection.Sdc1Connection;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays {@link LedAnimation}s on the LED of a SPIN remote SDC-1 with the set LED color command
+ * (0x09), at the frame rate the link can keep up with.
+ *
+ * At most one LED write is in flight at any time. When it completes, the next frame is written
+ * one frame interval after the previous one started; the frame interval is the average time a
+ * write takes to complete (but at least the minimum frame interval), so the frame rate follows
+ * the measured write completion rate of the link. Frames that would have been shown while a
+ * write was in flight are dropped instead of queued, so the animation never falls behind and
+ * never holds up other commands by more than a single write. Frames with the same color as the
+ * previous one are not written at all.
+ *
+ * When the animation ends, or is stopped, the LED override is cancelled (0x07) so the LED shows
+ * the color of the active profile again.
+ *
+ * Use {@link #attach(GattTransport, Sdc1Connection)} to animate the LED of a connection. All
+ * methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class LedAnimator {
+    /**
+     * Writes the frames, e.g. to a {@link Sdc1Connection}
+     */
+    public interface Output {
+        /**
+         * Starts writing a color, {@link LedAnimator#onWriteCompleted()} must be called once it
+         * is written.
+         *
+         * @param color 0xRRGGBB
+         * @return whether the write was started
+         */
+        boolean writeLedColor(int color);
+
+        /**
+         * Cancels the LED override (0x07).
+         */
+        void cancelLedOverride();
+    }
+
+    /**
+     * Minimum time between two frames by default, i.e. at most 50 frames per second
+     */
+    public static final long DEFAULT_MIN_FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Weight of the newest write duration in {@link #averageWriteNanos}
+     */
+    private static final double WRITE_NANOS_WEIGHT = 0.25;
+
+    private final GattTransport transport;
+    private final Output output;
+    private final long minFrameIntervalNanos;
+
+    /**
+     * Animation being played and the time it started, null if none
+     */
+    private LedAnimation animation;
+    private long startNanos;
+    /**
+     * Color of the last frame written, -1 if none
+     */
+    private int lastColor = -1;
+
+    private boolean writeInFlight;
+    private long writeStartNanos;
+    /**
+     * Exponential moving average of the time (nanos) from starting a write to its completion, 0
+     * until the first write completed
+     */
+    private long averageWriteNanos;
+
+    private long writtenFrameCount;
+    private long droppedFrameCount;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * Creates an animator for the LED of a connection, which must be {@link Sdc1Connection#STATE_READY}
+     * to play. Replaces the {@link Sdc1Connection.CommandListener} of the connection.
+     */
+    public static LedAnimator attach(GattTransport transport, final Sdc1Connection connection) {
+        final LedAnimator animator = new LedAnimator(transport, new Output() {
+            @Override
+            public boolean writeLedColor(int color) {
+                return connection.setLedColor((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF);
+            }
+
+            @Override
+            public void cancelLedOverride() {
+                connection.cancelLedOverride();
+            }
+        });
+
+        connection.setCommandListener(new Sdc1Connection.CommandListener() {
+            @Override
+            public void onCommandWritten(Sdc1Connection connection, int commandId) {
+                if (commandId == Sdc1Codec.COMMAND_SET_LED_COLOR) {
+                    animator.onWriteCompleted();
+                }
+            }
+        });
+
+        return animator;
+    }
+
+    public LedAnimator(GattTransport transport, Output output) {
+        this(transport, output, DEFAULT_MIN_FRAME_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param transport             clock and scheduler of the frames
+     * @param output                writes the frames
+     * @param minFrameIntervalNanos minimum time between two frames
+     */
+    public LedAnimator(GattTransport transport, Output output, long minFrameIntervalNanos) {
+        this.transport = transport;
+        this.output = output;
+        this.minFrameIntervalNanos = minFrameIntervalNanos;
+    }
+
+    /**
+     * Plays an animation from the start, replacing the one being played.
+     */
+    public synchronized void play(LedAnimation animation) {
+        this.animation = animation;
+        startNanos = transport.nowNanos();
+        lastColor = -1;
+
+        // If a write is in flight, its completion schedules the first frame
+        if (!writeInFlight) {
+            scheduleTick(0);
+        }
+    }
+
+    /**
+     * Stops the animation being played, if any, and cancels the LED override.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (animation == null) {
+                return;
+            }
+
+            animation = null;
+            transport.removeCallbacks(tick);
+        }
+
+        output.cancelLedOverride();
+    }
+
+    /**
+     * Must be called when the last color passed to {@link Output#writeLedColor(int)} is written.
+     */
+    public synchronized void onWriteCompleted() {
+        if (!writeInFlight) {
+            return;
+        }
+        writeInFlight = false;
+
+        final long nowNanos = transport.nowNanos();
+        final long writeNanos = nowNanos - writeStartNanos;
+        averageWriteNanos = averageWriteNanos == 0
+                ? writeNanos
+                : averageWriteNanos + (long) (WRITE_NANOS_WEIGHT * (writeNanos - averageWriteNanos));
+
+        if (animation == null) {
+            return;
+        }
+
+        // The frames the animation would have shown at the maximum frame rate while the write was
+        // in flight are skipped
+        droppedFrameCount += Math.max(0, writeNanos / minFrameIntervalNanos - 1);
+
+        scheduleTick(Math.max(0, writeStartNanos + getFrameIntervalNanos() - nowNanos));
+    }
+
+    public synchronized boolean isPlaying() {
+        return animation != null;
+    }
+
+    /**
+     * @return current time between two frames: the average write completion time, but at least
+     * the minimum frame interval
+     */
+    public synchronized long getFrameIntervalNanos() {
+        return Math.max(minFrameIntervalNanos, averageWriteNanos);
+    }
+
+    /**
+     * @return average time from starting a write to its completion, 0 if none completed yet
+     */
+    public synchronized long getAverageWriteNanos() {
+        return averageWriteNanos;
+    }
+
+    /**
+     * @return number of frames written
+     */
+    public synchronized long getWrittenFrameCount() {
+        return writtenFrameCount;
+    }
+
+    /**
+     * @return number of frames skipped because the previous write had not completed in time
+     */
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    private void tick() {
+        final int color;
+        synchronized (this) {
+            if (animation == null || writeInFlight) {
+                return;
+            }
+
+            final long nowNanos = transport.nowNanos();
+            final long elapsedNanos = nowNanos - startNanos;
+            if (elapsedNanos >= animation.getDurationNanos()) {
+                // Done, cancel the override below
+                animation = null;
+                color = -1;
+            } else {
+                color = animation.colorAt(elapsedNanos);
+                if (color == lastColor) {
+                    // Nothing to write, check again after a frame
+                    scheduleTick(getFrameIntervalNanos());
+
+                    return;
+                }
+
+                lastColor = color;
+                writeInFlight = true;
+                writeStartNanos = nowNanos;
+                writtenFrameCount++;
+            }
+        }
+
+        // Write without holding the lock, the completion may arrive on another thread right away
+        if (color == -1) {
+            output.cancelLedOverride();
+        } else if (!output.writeLedColor(color)) {
+            // The output is gone (e.g. disconnected), so there is nothing left to animate
+            synchronized (this) {
+                writeInFlight = false;
+                animation = null;
+            }
+        }
+    }
+
+    /**
+     * Schedules the next frame. Must be called while holding the lock.
+     */
+    private void scheduleTick(long delayNanos) {
+        transport.removeCallbacks(tick);
+        // Rounded up, so the frame is never computed before it's due
+        transport.postDelayed(tick, (delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
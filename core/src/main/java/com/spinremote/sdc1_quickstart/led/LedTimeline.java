@@ -0,0 +1,140 @@
+package com.spinremote.sdc1_quickstart.led;
+
+import java.util.Arrays;
+
+/**
+ * {@link LedAnimation} made of a sequence of steps, each holding a color or fading linearly from
+ * one color to another, optionally repeated:
+ *
+ *      new LedTimeline()
+ *              .fade(0x000000, 0xFF0000, 250 * MS)
+ *              .hold(0xFF0000, 500 * MS)
+ *              .fade(0xFF0000, 0x000000, 250 * MS)
+ *              .repeat(3)
+ *
+ * with MS being a millisecond in nanos.
+ *
+ * Build the timeline before playing it, it must not be changed while playing.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class LedTimeline implements LedAnimation {
+    private int stepCount;
+    private int[] fromColors = new int[4];
+    private int[] toColors = new int[4];
+    /**
+     * Time (nanos) at which each step ends, relative to the start of the timeline
+     */
+    private long[] endNanos = new long[4];
+    private int repeatCount = 1;
+
+    /**
+     * Adds a step showing a color.
+     */
+    public LedTimeline hold(int color, long durationNanos) {
+        return fade(color, color, durationNanos);
+    }
+
+    /**
+     * Adds a step fading linearly from one color to another.
+     *
+     * @param fromColor color at the start of the step (0xRRGGBB)
+     * @param toColor   color at the end of the step (0xRRGGBB)
+     */
+    public LedTimeline fade(int fromColor, int toColor, long durationNanos) {
+        if (durationNanos <= 0) {
+            throw new IllegalArgumentException("durationNanos must be positive: " + durationNanos);
+        }
+
+        if (stepCount == endNanos.length) {
+            fromColors = Arrays.copyOf(fromColors, stepCount * 2);
+            toColors = Arrays.copyOf(toColors, stepCount * 2);
+            endNanos = Arrays.copyOf(endNanos, stepCount * 2);
+        }
+
+        fromColors[stepCount] = color(fromColor);
+        toColors[stepCount] = color(toColor);
+        endNanos[stepCount] = (stepCount > 0 ? endNanos[stepCount - 1] : 0) + durationNanos;
+        stepCount++;
+
+        return this;
+    }
+
+    /**
+     * Adds pulses of a color: each fades in from off and back out again.
+     *
+     * @param periodNanos duration of a single pulse
+     * @param count       number of pulses
+     */
+    public LedTimeline pulse(int color, long periodNanos, int count) {
+        for (int i = 0; i < count; i++) {
+            fade(0x000000, color, periodNanos / 2);
+            fade(color, 0x000000, periodNanos - periodNanos / 2);
+        }
+
+        return this;
+    }
+
+    /**
+     * @param repeatCount number of times the whole timeline is played, 1 by default
+     */
+    public LedTimeline repeat(int repeatCount) {
+        if (repeatCount < 1) {
+            throw new IllegalArgumentException("repeatCount must be positive: " + repeatCount);
+        }
+        this.repeatCount = repeatCount;
+
+        return this;
+    }
+
+    @Override
+    public long getDurationNanos() {
+        return stepCount > 0 ? endNanos[stepCount - 1] * repeatCount : 0;
+    }
+
+    @Override
+    public int colorAt(long elapsedNanos) {
+        if (stepCount == 0) {
+            return 0;
+        }
+
+        final long cycleNanos = endNanos[stepCount - 1];
+        if (elapsedNanos >= getDurationNanos()) {
+            // Ended, keep showing the last color
+            return toColors[stepCount - 1];
+        }
+        final long nanos = Math.max(0, elapsedNanos) % cycleNanos;
+
+        // Timelines are short, so a linear search is fast enough
+        int step = 0;
+        while (endNanos[step] <= nanos) {
+            step++;
+        }
+
+        final long startNanos = step > 0 ? endNanos[step - 1] : 0;
+        return interpolate(fromColors[step], toColors[step], nanos - startNanos, endNanos[step] - startNanos);
+    }
+
+    /**
+     * @return the color between from (position 0) and to (position length), per component
+     */
+    static int interpolate(int from, int to, long position, long length) {
+        if (from == to) {
+            return from;
+        }
+
+        int color = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            final int fromComponent = (from >> shift) & 0xFF;
+            final int toComponent = (to >> shift) & 0xFF;
+            final int component = fromComponent + (int) ((toComponent - fromComponent) * position / length);
+            color |= component << shift;
+        }
+
+        return color;
+    }
+
+    private static int color(int color) {
+        return color & 0xFFFFFF;
+    }
+}
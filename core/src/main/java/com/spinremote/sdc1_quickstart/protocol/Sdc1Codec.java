@@ -0,0 +1,242 @@
+package com.spinremote.sdc1_quickstart.protocol;
+
+/**
+ * Encoder and decoder for the values of the Command and Action Characteristics of a SPIN remote
+ * SDC-1, as defined in the SPIN remote Bluetooth Smart Services specification (v1.0).
+ *
+ * The static methods encode into caller-provided arrays and decode into primitives, so they never
+ * allocate. An instance of this class additionally owns one exact-size frame per command, which
+ * can be handed directly to {@code BluetoothGattCharacteristic#setValue(byte[])} (that method
+ * keeps a reference to the array instead of copying it). An instance is meant to be used by a
+ * single connection on a single thread; the frame returned for a command is only valid until the
+ * next call for that same command.
+ *
+ * This class has no Android dependencies, so it can be used and tested on any JVM.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1Codec {
+    /**
+     * Command Id: cancel the LED override, the SDC-1 returns to the LED color of its active profile
+     */
+    public static final int COMMAND_CANCEL_LED_OVERRIDE = 0x07;
+    /**
+     * Command Id: force (or stop forcing) the action notification
+     */
+    public static final int COMMAND_FORCE_ACTION_NOTIFICATION = 0x08;
+    /**
+     * Command Id: override the LED color
+     */
+    public static final int COMMAND_SET_LED_COLOR = 0x09;
+
+    /**
+     * Length of a complete cancel LED override command (Command Id only)
+     */
+    public static final int CANCEL_LED_OVERRIDE_LENGTH = 1;
+    /**
+     * Length of a complete force action notification command (Command Id + force flag)
+     */
+    public static final int FORCE_ACTION_NOTIFICATION_LENGTH = 2;
+    /**
+     * Length of a complete set LED color command (Command Id + red, green and blue)
+     */
+    public static final int SET_LED_COLOR_LENGTH = 4;
+    /**
+     * Maximum length of any command: a uint8 Command Id followed by at most uint8[19] of data
+     */
+    public static final int MAX_COMMAND_LENGTH = 20;
+
+    // Actions as defined by the Action Characteristic (uint8), the index in the action_descriptions
+    // string-array resource equals the action
+    public static final int ACTION_ROTATE_RIGHT_SIDE_UP_CLOCKWISE = 0;
+    public static final int ACTION_ROTATE_RIGHT_SIDE_UP_COUNTERCLOCKWISE = 1;
+    public static final int ACTION_ROTATE_SIDEWAYS_CLOCKWISE = 2;
+    public static final int ACTION_ROTATE_SIDEWAYS_COUNTERCLOCKWISE = 3;
+    public static final int ACTION_ROTATE_UPSIDE_DOWN_CLOCKWISE = 4;
+    public static final int ACTION_ROTATE_UPSIDE_DOWN_COUNTERCLOCKWISE = 5;
+    public static final int ACTION_TOUCHPAD_SWIPE_UP = 6;
+    public static final int ACTION_TOUCHPAD_SWIPE_DOWN = 7;
+    public static final int ACTION_TOUCHPAD_SWIPE_LEFT = 8;
+    public static final int ACTION_TOUCHPAD_SWIPE_RIGHT = 9;
+    public static final int ACTION_TOUCHPAD_PRESS_NORTH = 10;
+    public static final int ACTION_TOUCHPAD_PRESS_SOUTH = 11;
+    public static final int ACTION_TOUCHPAD_PRESS_EAST = 12;
+    public static final int ACTION_TOUCHPAD_PRESS_WEST = 13;
+    public static final int ACTION_TOUCHPAD_PRESS_CENTER = 14;
+    public static final int ACTION_TOUCHPAD_LONG_PRESS_NORTH = 15;
+    public static final int ACTION_TOUCHPAD_LONG_PRESS_SOUTH = 16;
+    public static final int ACTION_TOUCHPAD_LONG_PRESS_EAST = 17;
+    public static final int ACTION_TOUCHPAD_LONG_PRESS_WEST = 18;
+    public static final int ACTION_TOUCHPAD_LONG_PRESS_CENTER = 19;
+    public static final int ACTION_TOUCHPAD_SCROLL_CLOCKWISE = 20;
+    public static final int ACTION_TOUCHPAD_SCROLL_COUNTERCLOCKWISE = 21;
+    public static final int ACTION_SPIN_WAKE_UP = 24;
+
+    /**
+     * Number of possible action values (the action is a uint8)
+     */
+    public static final int ACTION_COUNT = 256;
+    /**
+     * Returned by {@link #decodeAction(byte[])} when the notification does not contain an action
+     */
+    public static final int ACTION_NONE = -1;
+
+    /**
+     * Frame for {@link #COMMAND_CANCEL_LED_OVERRIDE}, never changes
+     */
+    private final byte[] cancelLedOverrideFrame = new byte[CANCEL_LED_OVERRIDE_LENGTH];
+    /**
+     * Frames for {@link #COMMAND_FORCE_ACTION_NOTIFICATION}, one for each value of the force flag
+     * so neither ever changes
+     */
+    private final byte[] forceActionNotificationFrame = new byte[FORCE_ACTION_NOTIFICATION_LENGTH];
+    private final byte[] stopForceActionNotificationFrame = new byte[FORCE_ACTION_NOTIFICATION_LENGTH];
+    /**
+     * Frame for {@link #COMMAND_SET_LED_COLOR}, rewritten on every call to
+     * {@link #setLedColor(int, int, int)}
+     */
+    private final byte[] setLedColorFrame = new byte[SET_LED_COLOR_LENGTH];
+
+    public Sdc1Codec() {
+        encodeCancelLedOverride(cancelLedOverrideFrame, 0);
+        encodeForceActionNotification(forceActionNotificationFrame, 0, true);
+        encodeForceActionNotification(stopForceActionNotificationFrame, 0, false);
+    }
+
+    /**
+     * @return the frame for the cancel LED override command (0x07)
+     */
+    public byte[] cancelLedOverride() {
+        return cancelLedOverrideFrame;
+    }
+
+    /**
+     * @param force whether the action notification should be forced
+     * @return the frame for the force action notification command (0x08)
+     */
+    public byte[] forceActionNotification(boolean force) {
+        return force ? forceActionNotificationFrame : stopForceActionNotificationFrame;
+    }
+
+    /**
+     * Encodes the set LED color command into the frame owned by this codec. The frame is
+     * overwritten by the next call, so it must have been written to the SDC-1 before that.
+     *
+     * @param red   red color component (0 - 255)
+     * @param green green color component (0 - 255)
+     * @param blue  blue color component (0 - 255)
+     * @return the frame for the set LED color command (0x09)
+     */
+    public byte[] setLedColor(int red, int green, int blue) {
+        encodeSetLedColor(setLedColorFrame, 0, red, green, blue);
+        return setLedColorFrame;
+    }
+
+    /**
+     * Encodes the cancel LED override command.
+     *
+     * @param destination array to encode into
+     * @param offset      offset in the array to start at
+     * @return the number of bytes written
+     */
+    public static int encodeCancelLedOverride(byte[] destination, int offset) {
+        destination[offset] = (byte) COMMAND_CANCEL_LED_OVERRIDE;
+
+        return CANCEL_LED_OVERRIDE_LENGTH;
+    }
+
+    /**
+     * Encodes the force action notification command.
+     *
+     * @param destination array to encode into
+     * @param offset      offset in the array to start at
+     * @param force       false (0) or true (1)
+     * @return the number of bytes written
+     */
+    public static int encodeForceActionNotification(byte[] destination, int offset, boolean force) {
+        destination[offset] = (byte) COMMAND_FORCE_ACTION_NOTIFICATION;
+        destination[offset + 1] = (byte) (force ? 0x01 : 0x00);
+
+        return FORCE_ACTION_NOTIFICATION_LENGTH;
+    }
+
+    /**
+     * Encodes the set LED color command. Color components are masked to a uint8.
+     *
+     * @param destination array to encode into
+     * @param offset      offset in the array to start at
+     * @param red         red color component (0 - 255)
+     * @param green       green color component (0 - 255)
+     * @param blue        blue color component (0 - 255)
+     * @return the number of bytes written
+     */
+    public static int encodeSetLedColor(byte[] destination, int offset, int red, int green, int blue) {
+        destination[offset] = (byte) COMMAND_SET_LED_COLOR;
+        destination[offset + 1] = (byte) red;
+        destination[offset + 2] = (byte) green;
+        destination[offset + 3] = (byte) blue;
+
+        return SET_LED_COLOR_LENGTH;
+    }
+
+    /**
+     * Encodes the set LED color command from a packed 0xRRGGBB color.
+     *
+     * @see #encodeSetLedColor(byte[], int, int, int, int)
+     */
+    public static int encodeSetLedColor(byte[] destination, int offset, int rgb) {
+        return encodeSetLedColor(destination, offset, rgb >>> 16, rgb >>> 8, rgb);
+    }
+
+    /**
+     * @param commandId a Command Id
+     * @return the length of the complete command, or 0 if the Command Id is reserved
+     */
+    public static int commandLength(int commandId) {
+        switch (commandId) {
+            case COMMAND_CANCEL_LED_OVERRIDE:
+                return CANCEL_LED_OVERRIDE_LENGTH;
+            case COMMAND_FORCE_ACTION_NOTIFICATION:
+                return FORCE_ACTION_NOTIFICATION_LENGTH;
+            case COMMAND_SET_LED_COLOR:
+                return SET_LED_COLOR_LENGTH;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param command value of the Command Characteristic (nullable)
+     * @return the Command Id of the command, or -1 if there is none
+     */
+    public static int decodeCommandId(byte[] command) {
+        if (command == null || command.length == 0) {
+            return -1;
+        }
+
+        return command[0] & 0xFF;
+    }
+
+    /**
+     * Decodes the value of an Action Characteristic notification.
+     *
+     * @param value value of the Action Characteristic (nullable)
+     * @return the action (uint8, byte0), or {@link #ACTION_NONE} if the value is empty
+     */
+    public static int decodeAction(byte[] value) {
+        if (value == null || value.length == 0) {
+            return ACTION_NONE;
+        }
+
+        return value[0] & 0xFF;
+    }
+
+    /**
+     * @param action an action
+     * @return whether the action is one of the ACTION_ constants of this class
+     */
+    public static boolean isKnownAction(int action) {
+        return (action >= ACTION_ROTATE_RIGHT_SIDE_UP_CLOCKWISE && action <= ACTION_TOUCHPAD_SCROLL_COUNTERCLOCKWISE)
+                || action == ACTION_SPIN_WAKE_UP;
+    }
+}
@@ -0,0 +1,53 @@
+package com.spinremote.sdc1_quickstart.protocol;
+
+import java.util.UUID;
+
+/**
+ * UUIDs of the SPIN remote SDC-1 as defined in the SPIN remote Bluetooth Smart Services
+ * specification (v1.0), and the standard Bluetooth UUIDs we need to use them.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class Sdc1Uuids {
+    /**
+     * UUID advertised by a SPIN remote SDC-1, used to find it when scanning
+     */
+    public static final UUID DISCOVERY_UUID = UUID.fromString("9DFACA9D-7801-22A0-9540-F0BB65E824FC");
+    /**
+     * UUID of the SPIN service, used to get the Bluetooth Service so we can get the
+     * Characteristics (Command and Action Characteristics)
+     */
+    public static final UUID SPIN_SERVICE_UUID = UUID.fromString("5E5A10D3-6EC7-17AF-D743-3CF1679C1CC7");
+    /**
+     * UUID of the Command characteristic so we can force the action notifications
+     */
+    public static final UUID COMMAND_CHARACTERISTIC_UUID = UUID.fromString("92E92B18-FA20-D486-5E43-099387C61A71");
+    /**
+     * UUID of the Action characteristic so we can turn on action notifications
+     */
+    public static final UUID ACTION_CHARACTERISTIC_UUID = UUID.fromString("182BEC1F-51A4-458E-4B48-C431EA701A3B");
+    /**
+     * UUID we need to get the descriptor to turn on the action notifications
+     */
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    /**
+     * UUIDs of the standard Device Information Service and the characteristics of it we read, all
+     * UTF-8 strings that don't change while connected
+     */
+    public static final UUID DEVICE_INFORMATION_SERVICE_UUID = UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb");
+    public static final UUID MANUFACTURER_NAME_CHARACTERISTIC_UUID = UUID.fromString("00002a29-0000-1000-8000-00805f9b34fb");
+    public static final UUID MODEL_NUMBER_CHARACTERISTIC_UUID = UUID.fromString("00002a24-0000-1000-8000-00805f9b34fb");
+    public static final UUID SERIAL_NUMBER_CHARACTERISTIC_UUID = UUID.fromString("00002a25-0000-1000-8000-00805f9b34fb");
+    public static final UUID FIRMWARE_REVISION_CHARACTERISTIC_UUID = UUID.fromString("00002a26-0000-1000-8000-00805f9b34fb");
+    public static final UUID HARDWARE_REVISION_CHARACTERISTIC_UUID = UUID.fromString("00002a27-0000-1000-8000-00805f9b34fb");
+    /**
+     * UUIDs of the standard Battery Service and its Battery Level characteristic, a uint8 percentage
+     * that can be notified
+     */
+    public static final UUID BATTERY_SERVICE_UUID = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    public static final UUID BATTERY_LEVEL_CHARACTERISTIC_UUID = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+
+    private Sdc1Uuids() {
+    }
+}
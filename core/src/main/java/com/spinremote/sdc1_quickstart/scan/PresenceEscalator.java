@@ -0,0 +1,240 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.connection.Sdc1Connection;
+import com.spinremote.sdc1_quickstart.connection.Sdc1ConnectionManager;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.logging.Logger;
+
+/**
+ * Runs a {@link PresenceMonitor} while no SPIN remote SDC-1 is around, and a
+ * {@link Sdc1ConnectionManager} (scanning at full speed and connecting) only while one is:
+ *
+ *      monitoring --> remote arrives --> connecting --> manager idle --> monitoring
+ *
+ * The manager is idle once it has no connection and no scheduled reconnect left, e.g. after the
+ * remote went out of range and the direct reconnects to it failed, or when it could not connect
+ * to the remote that arrived within the {@link #DEFAULT_ESCALATION_TIMEOUT_MILLIS}. The presence
+ * of the remotes is then cleared, so the next remote in range arrives (and escalates) again.
+ *
+ * Both share the {@link GattTransport}, which can only run a single scan, so only one of them
+ * runs at a time. The manager passes its connection state changes to its own listener, which
+ * must pass them on to {@link #onConnectionStateChanged(String, int)}. All methods are
+ * thread-safe; switching runs on a thread of the transport. The monitor and the manager are
+ * started and stopped without holding the lock of the escalator: stopping the manager closes its
+ * connections, whose state changes come back through {@link #onConnectionStateChanged(String, int)}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class PresenceEscalator implements PresenceMonitor.Listener {
+    private static final Logger LOGGER = Logger.getLogger("PresenceEscalator");
+
+    /**
+     * Time the manager gets to connect after escalating, before going back to monitoring if it
+     * is still idle
+     */
+    public static final long DEFAULT_ESCALATION_TIMEOUT_MILLIS = 30000;
+
+    private final GattTransport transport;
+    private final Sdc1ConnectionManager connectionManager;
+    private final PresenceMonitor presenceMonitor;
+
+    private long escalationTimeoutMillis = DEFAULT_ESCALATION_TIMEOUT_MILLIS;
+
+    /**
+     * Held while switching between the monitor and the manager, so switches happen one at a time.
+     * Only {@link #started} and {@link #escalated} change while holding it, and the lock of the
+     * escalator is never held while taking it.
+     */
+    private final Object switchLock = new Object();
+    private boolean started;
+    /**
+     * Whether the connection manager runs instead of the presence monitor
+     */
+    private boolean escalated;
+    private long escalationCount;
+
+    private final Runnable escalateTask = new Runnable() {
+        @Override
+        public void run() {
+            escalate();
+        }
+    };
+
+    /**
+     * Goes back to monitoring if the manager is idle
+     */
+    private final Runnable checkIdleTask = new Runnable() {
+        @Override
+        public void run() {
+            checkIdle();
+        }
+    };
+
+    /**
+     * @param transport           shared by the monitor and the manager
+     * @param knownDeviceRegistry the remotes to monitor
+     * @param connectionManager   the manager to escalate to, not started
+     */
+    public PresenceEscalator(GattTransport transport, KnownDeviceRegistry knownDeviceRegistry,
+                             Sdc1ConnectionManager connectionManager) {
+        this.transport = transport;
+        this.connectionManager = connectionManager;
+        presenceMonitor = new PresenceMonitor(transport, knownDeviceRegistry, this);
+    }
+
+    /**
+     * @return the monitor, to configure before {@link #start()}
+     */
+    public PresenceMonitor getPresenceMonitor() {
+        return presenceMonitor;
+    }
+
+    /**
+     * @param escalationTimeoutMillis time the manager gets to connect after escalating,
+     *                                {@link #DEFAULT_ESCALATION_TIMEOUT_MILLIS} if not set
+     */
+    public synchronized void setEscalationTimeoutMillis(long escalationTimeoutMillis) {
+        if (escalationTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("escalationTimeoutMillis <= 0");
+        }
+        this.escalationTimeoutMillis = escalationTimeoutMillis;
+    }
+
+    /**
+     * Starts monitoring, until a remote arrives.
+     */
+    public void start() {
+        synchronized (switchLock) {
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+
+            presenceMonitor.start();
+        }
+    }
+
+    /**
+     * Stops monitoring, or the connection manager if escalated.
+     */
+    public void stop() {
+        synchronized (switchLock) {
+            final boolean wasEscalated;
+            synchronized (this) {
+                if (!started) {
+                    return;
+                }
+                started = false;
+                wasEscalated = escalated;
+                escalated = false;
+
+                transport.removeCallbacks(escalateTask);
+                transport.removeCallbacks(checkIdleTask);
+            }
+
+            presenceMonitor.stop();
+            if (wasEscalated) {
+                connectionManager.stop();
+            }
+        }
+    }
+
+    /**
+     * @return whether the connection manager runs instead of the presence monitor
+     */
+    public synchronized boolean isEscalated() {
+        return escalated;
+    }
+
+    /**
+     * @return number of times a remote arriving started the connection manager
+     */
+    public synchronized long getEscalationCount() {
+        return escalationCount;
+    }
+
+    /**
+     * Must be passed the connection state changes of the connection manager, to go back to
+     * monitoring once it has no connections left.
+     */
+    public void onConnectionStateChanged(String address, int state) {
+        if (state != Sdc1Connection.STATE_FAILED && state != Sdc1Connection.STATE_CLOSED) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!escalated) {
+                return;
+            }
+
+            // Check once the manager is done handling the change, e.g. scheduled a reconnect
+            transport.removeCallbacks(checkIdleTask);
+            transport.postDelayed(checkIdleTask, 0);
+        }
+    }
+
+    @Override
+    public void onArrived(String address, int rssi) {
+        LOGGER.info(address + " arrived (" + rssi + " dBm)");
+        synchronized (this) {
+            if (started && !escalated) {
+                transport.removeCallbacks(escalateTask);
+                transport.postDelayed(escalateTask, 0);
+            }
+        }
+    }
+
+    @Override
+    public void onDeparted(String address) {
+        // Only monitored while no remote is connected, so there's nothing to disconnect
+        LOGGER.info(address + " departed");
+    }
+
+    private void escalate() {
+        synchronized (switchLock) {
+            synchronized (this) {
+                if (!started || escalated) {
+                    return;
+                }
+                escalated = true;
+                escalationCount++;
+
+                // Waits for the switch lock, so runs once the manager is started
+                transport.postDelayed(checkIdleTask, escalationTimeoutMillis);
+            }
+
+            // The transport can only run a single scan, so stop monitoring first
+            presenceMonitor.stop();
+            connectionManager.start();
+        }
+    }
+
+    private void checkIdle() {
+        synchronized (switchLock) {
+            // Only changed while holding the switch lock, so they stay as read
+            synchronized (this) {
+                if (!started || !escalated) {
+                    return;
+                }
+            }
+
+            if (connectionManager.isIdle()) {
+                LOGGER.info("No remote connected, back to monitoring");
+                connectionManager.stop();
+                presenceMonitor.clearPresence();
+                // Before monitoring, so the next arrival escalates again
+                synchronized (this) {
+                    escalated = false;
+                }
+                presenceMonitor.start();
+            } else if (connectionManager.getReadyCount() == 0) {
+                // Still trying to connect, give up once it's idle
+                transport.postDelayed(checkIdleTask, escalationTimeoutMillis);
+            } // else: connected, the next connection that ends checks again
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of which SPIN remote SDC-1s are in range while the app is idle, waking up as little
+ * as possible. Instead of scanning continuously, it runs a short batch scan window once per
+ * period: the Bluetooth controller holds the results back and reports them together, so the app
+ * processor wakes up about once per report delay during a window, and not at all in between.
+ *
+ * Every tracked remote is either present or absent, with hysteresis so a remote at the edge of
+ * the range does not flap:
+ *
+ *      - it arrives as soon as it is seen with an RSSI of at least the arrival RSSI
+ *      - a window only counts as seen with an RSSI of at least the (lower) departure RSSI
+ *      - it departs after not being seen for a number of consecutive windows
+ *
+ * The remotes tracked are the known ones of the {@link KnownDeviceRegistry}; while no remote is
+ * known yet, every SDC-1 found is tracked (up to {@link KnownDeviceRegistry#MAX_DEVICES}). An
+ * arrival is the moment to escalate to a full speed scan and connect, e.g. by stopping the
+ * monitor and starting a {@link com.spinremote.sdc1_quickstart.connection.Sdc1ConnectionManager};
+ * a remote waking up starts advertising again, so that is an arrival as well.
+ *
+ * The monitor uses its {@link GattTransport} for scanning and scheduling, so it must not scan for
+ * anything else while the monitor runs. Configure it before {@link #start()}. All methods are
+ * thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class PresenceMonitor {
+    private static final Logger LOGGER = Logger.getLogger("PresenceMonitor");
+
+    /**
+     * Notified about arrivals and departures, from the threads of the transport. Never called
+     * while holding a lock of the monitor.
+     */
+    public interface Listener {
+        /**
+         * @param rssi RSSI of the advertisement the remote arrived with, in dBm
+         */
+        void onArrived(String address, int rssi);
+
+        void onDeparted(String address);
+    }
+
+    public static final long DEFAULT_WINDOW_MILLIS = 10000;
+    public static final long DEFAULT_PERIOD_MILLIS = 60000;
+    public static final long DEFAULT_REPORT_DELAY_MILLIS = 5000;
+    public static final int DEFAULT_ARRIVAL_RSSI = -85;
+    public static final int DEFAULT_DEPARTURE_RSSI = -95;
+    public static final int DEFAULT_DEPARTURE_WINDOWS = 3;
+    /**
+     * Time the results flushed at the end of a window get to arrive before scanning stops
+     */
+    static final long FLUSH_MILLIS = 200;
+
+    /**
+     * Presence of a tracked remote
+     */
+    private static final class Presence {
+        boolean present;
+        boolean seenInWindow;
+        int missedWindows;
+    }
+
+    private final GattTransport transport;
+    private final KnownDeviceRegistry knownDeviceRegistry;
+    private final Listener listener;
+
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+    private long periodMillis = DEFAULT_PERIOD_MILLIS;
+    private long reportDelayMillis = DEFAULT_REPORT_DELAY_MILLIS;
+    private int arrivalRssi = DEFAULT_ARRIVAL_RSSI;
+    private int departureRssi = DEFAULT_DEPARTURE_RSSI;
+    private int departureWindows = DEFAULT_DEPARTURE_WINDOWS;
+
+    /**
+     * Presence of the tracked remotes, by address
+     */
+    private final HashMap<String, Presence> presences = new HashMap<>();
+
+    private boolean started;
+    private boolean scanning;
+    private long windowCount;
+
+    private final GattTransport.ScanListener scanListener = new GattTransport.ScanListener() {
+        @Override
+        public void onScanResult(String address, int rssi, long timestampNanos) {
+            onSighting(address, rssi);
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            LOGGER.warning("Scan failed: " + errorCode);
+        }
+    };
+
+    private final Runnable startWindowTask = new Runnable() {
+        @Override
+        public void run() {
+            startWindow();
+        }
+    };
+
+    private final Runnable flushWindowTask = new Runnable() {
+        @Override
+        public void run() {
+            flushWindow();
+        }
+    };
+
+    private final Runnable endWindowTask = new Runnable() {
+        @Override
+        public void run() {
+            endWindow();
+        }
+    };
+
+    /**
+     * @param transport           used to scan for the remotes
+     * @param knownDeviceRegistry the remotes to track
+     * @param listener            notified about arrivals and departures
+     */
+    public PresenceMonitor(GattTransport transport, KnownDeviceRegistry knownDeviceRegistry, Listener listener) {
+        this.transport = transport;
+        this.knownDeviceRegistry = knownDeviceRegistry;
+        this.listener = listener;
+    }
+
+    /**
+     * @param windowMillis      duration of each scan window, {@link #DEFAULT_WINDOW_MILLIS} if not
+     *                          set
+     * @param periodMillis      time from the start of a window to the start of the next,
+     *                          {@link #DEFAULT_PERIOD_MILLIS} if not set
+     * @param reportDelayMillis maximum time a scan result is held back during a window,
+     *                          {@link #DEFAULT_REPORT_DELAY_MILLIS} if not set
+     */
+    public synchronized void setDutyCycle(long windowMillis, long periodMillis, long reportDelayMillis) {
+        if (windowMillis <= 0 || reportDelayMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis and reportDelayMillis must be > 0");
+        }
+        if (periodMillis < windowMillis + FLUSH_MILLIS) {
+            throw new IllegalArgumentException("periodMillis < windowMillis + " + FLUSH_MILLIS);
+        }
+
+        this.windowMillis = windowMillis;
+        this.periodMillis = periodMillis;
+        this.reportDelayMillis = reportDelayMillis;
+    }
+
+    /**
+     * @param arrivalRssi      minimum RSSI for an absent remote to arrive,
+     *                         {@link #DEFAULT_ARRIVAL_RSSI} if not set
+     * @param departureRssi    minimum RSSI for a present remote to count as seen, at most the
+     *                         arrival RSSI, {@link #DEFAULT_DEPARTURE_RSSI} if not set
+     * @param departureWindows number of consecutive windows without seeing a present remote
+     *                         after which it departs, {@link #DEFAULT_DEPARTURE_WINDOWS} if not set
+     */
+    public synchronized void setHysteresis(int arrivalRssi, int departureRssi, int departureWindows) {
+        if (departureRssi > arrivalRssi) {
+            throw new IllegalArgumentException("departureRssi > arrivalRssi");
+        }
+        if (departureWindows < 1) {
+            throw new IllegalArgumentException("departureWindows < 1");
+        }
+
+        this.arrivalRssi = arrivalRssi;
+        this.departureRssi = departureRssi;
+        this.departureWindows = departureWindows;
+    }
+
+    /**
+     * Starts monitoring, with a scan window right away.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        transport.postDelayed(startWindowTask, 0);
+    }
+
+    /**
+     * Stops monitoring. The presence of the remotes is kept, so a remote present when stopped
+     * does not arrive again when restarted (until it has departed).
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+
+        transport.removeCallbacks(startWindowTask);
+        transport.removeCallbacks(flushWindowTask);
+        transport.removeCallbacks(endWindowTask);
+        if (scanning) {
+            transport.stopScan();
+            scanning = false;
+        }
+    }
+
+    /**
+     * Forgets the presence of all remotes, so the ones in range arrive again, e.g. once the app
+     * lost its connections to them while the monitor was stopped.
+     */
+    public synchronized void clearPresence() {
+        presences.clear();
+    }
+
+    /**
+     * @return whether the remote is present, false if not tracked
+     */
+    public synchronized boolean isPresent(String address) {
+        final Presence presence = presences.get(address);
+
+        return presence != null && presence.present;
+    }
+
+    /**
+     * @return number of scan windows that have ended
+     */
+    public synchronized long getWindowCount() {
+        return windowCount;
+    }
+
+    private void startWindow() {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+
+            // Fails if e.g. Bluetooth is disabled, the window then counts as nothing seen
+            scanning = transport.startBatchScan(scanListener, reportDelayMillis);
+            transport.postDelayed(flushWindowTask, windowMillis);
+        }
+    }
+
+    /**
+     * Collects the results still held back, they are reported before the window ends.
+     */
+    private void flushWindow() {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+        }
+
+        transport.flushScanResults();
+        synchronized (this) {
+            if (started) {
+                transport.postDelayed(endWindowTask, FLUSH_MILLIS);
+            }
+        }
+    }
+
+    private void endWindow() {
+        final ArrayList<String> departed = new ArrayList<>();
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+
+            if (scanning) {
+                transport.stopScan();
+                scanning = false;
+            }
+            windowCount++;
+
+            for (Map.Entry<String, Presence> entry : presences.entrySet()) {
+                final Presence presence = entry.getValue();
+                presence.missedWindows = presence.seenInWindow ? 0 : presence.missedWindows + 1;
+                presence.seenInWindow = false;
+
+                if (presence.present && presence.missedWindows >= departureWindows) {
+                    presence.present = false;
+                    departed.add(entry.getKey());
+                }
+            }
+
+            transport.postDelayed(startWindowTask, periodMillis - windowMillis - FLUSH_MILLIS);
+        }
+
+        for (String address : departed) {
+            listener.onDeparted(address);
+        }
+    }
+
+    private void onSighting(String address, int rssi) {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+
+            Presence presence = presences.get(address);
+            if (presence == null) {
+                if (!isTracked(address)) {
+                    return;
+                }
+
+                presence = new Presence();
+                presences.put(address, presence);
+            }
+
+            if (rssi >= departureRssi) {
+                presence.seenInWindow = true;
+            }
+            if (presence.present || rssi < arrivalRssi) {
+                return;
+            }
+            presence.present = true;
+            presence.missedWindows = 0;
+        }
+
+        listener.onArrived(address, rssi);
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private boolean isTracked(String address) {
+        if (knownDeviceRegistry.isKnown(address)) {
+            return true;
+        }
+
+        return knownDeviceRegistry.getAddresses().isEmpty() && presences.size() < KnownDeviceRegistry.MAX_DEVICES;
+    }
+}
@@ -0,0 +1,155 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import java.util.Locale;
+
+/**
+ * Keeps, per scan mode, how long it took from starting a scan to finding the first SPIN remote
+ * SDC-1 and to being connected to it. Times are passed in as monotonic nanoseconds (e.g.
+ * {@code SystemClock.elapsedRealtimeNanos()}) so this class has no Android dependencies.
+ *
+ * A measurement starts with {@link #onScanStarted(int, long)}; {@link #onDeviceFound(long)} and
+ * {@link #onConnected(long)} are only recorded once per measurement. All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ScanLatencyStats {
+    /**
+     * Scan modes range from SCAN_MODE_OPPORTUNISTIC (-1) to SCAN_MODE_LOW_LATENCY (2)
+     */
+    private static final int MIN_SCAN_MODE = -1;
+    private static final int MODE_COUNT = 4;
+    private static final String[] MODE_NAMES = {"opportunistic", "low_power", "balanced", "low_latency"};
+
+    private static final int FOUND = 0;
+    private static final int CONNECTED = 1;
+
+    private final long[][] count = new long[2][MODE_COUNT];
+    private final long[][] totalNanos = new long[2][MODE_COUNT];
+    private final long[][] minNanos = new long[2][MODE_COUNT];
+    private final long[][] maxNanos = new long[2][MODE_COUNT];
+
+    /**
+     * Index of the scan mode of the current measurement, -1 if none
+     */
+    private int currentMode = -1;
+    private long scanStartedNanos;
+    private boolean found;
+
+    /**
+     * Starts a new measurement, unless one is already running (e.g. scanning was restarted before
+     * the connection was made).
+     *
+     * @param scanMode one of the {@code ScanSettings.SCAN_MODE_*} constants
+     * @param nowNanos monotonic time in nanoseconds
+     */
+    public synchronized void onScanStarted(int scanMode, long nowNanos) {
+        if (currentMode != -1) {
+            return;
+        }
+
+        currentMode = scanMode - MIN_SCAN_MODE;
+        scanStartedNanos = nowNanos;
+        found = false;
+    }
+
+    /**
+     * Records the time to the first found SDC-1 of the current measurement.
+     */
+    public synchronized void onDeviceFound(long nowNanos) {
+        if (currentMode != -1 && !found) {
+            found = true;
+            record(FOUND, nowNanos - scanStartedNanos);
+        }
+    }
+
+    /**
+     * Records the time to the connection of the current measurement and ends it.
+     */
+    public synchronized void onConnected(long nowNanos) {
+        if (currentMode != -1) {
+            record(CONNECTED, nowNanos - scanStartedNanos);
+            currentMode = -1;
+        }
+    }
+
+    /**
+     * Ends the current measurement without recording it, e.g. when scanning is stopped because the
+     * Activity is no longer visible.
+     */
+    public synchronized void cancel() {
+        currentMode = -1;
+    }
+
+    /**
+     * @return number of recorded scan-to-connect measurements for the scan mode
+     */
+    public synchronized long getConnectedCount(int scanMode) {
+        return count[CONNECTED][scanMode - MIN_SCAN_MODE];
+    }
+
+    /**
+     * @return mean scan-to-connect time in nanoseconds for the scan mode, 0 if none recorded
+     */
+    public synchronized long getMeanConnectedNanos(int scanMode) {
+        final int mode = scanMode - MIN_SCAN_MODE;
+
+        return count[CONNECTED][mode] == 0 ? 0 : totalNanos[CONNECTED][mode] / count[CONNECTED][mode];
+    }
+
+    /**
+     * @return mean scan-to-first-SDC-1 time in nanoseconds for the scan mode, 0 if none recorded
+     */
+    public synchronized long getMeanFoundNanos(int scanMode) {
+        final int mode = scanMode - MIN_SCAN_MODE;
+
+        return count[FOUND][mode] == 0 ? 0 : totalNanos[FOUND][mode] / count[FOUND][mode];
+    }
+
+    private void record(int kind, long nanos) {
+        if (count[kind][currentMode] == 0 || nanos < minNanos[kind][currentMode]) {
+            minNanos[kind][currentMode] = nanos;
+        }
+        if (nanos > maxNanos[kind][currentMode]) {
+            maxNanos[kind][currentMode] = nanos;
+        }
+        count[kind][currentMode]++;
+        totalNanos[kind][currentMode] += nanos;
+    }
+
+    /**
+     * @return one line per scan mode with measurements, times in milliseconds
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            if (count[FOUND][mode] == 0 && count[CONNECTED][mode] == 0) {
+                continue;
+            }
+
+            builder.append(String.format(Locale.US,
+                    "%s: found n=%d mean=%.1f min=%.1f max=%.1f, connected n=%d mean=%.1f min=%.1f max=%.1f ms%n",
+                    MODE_NAMES[mode],
+                    count[FOUND][mode], mean(FOUND, mode), minNanos[FOUND][mode] / 1e6, maxNanos[FOUND][mode] / 1e6,
+                    count[CONNECTED][mode], mean(CONNECTED, mode), minNanos[CONNECTED][mode] / 1e6, maxNanos[CONNECTED][mode] / 1e6
+            ));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @param scanMode one of the {@code ScanSettings.SCAN_MODE_*} constants
+     * @return a short name of the scan mode, e.g. for logging
+     */
+    public static String scanModeName(int scanMode) {
+        final int mode = scanMode - MIN_SCAN_MODE;
+
+        return mode >= 0 && mode < MODE_COUNT ? MODE_NAMES[mode] : "unknown";
+    }
+
+    private double mean(int kind, int mode) {
+        return count[kind][mode] == 0 ? 0 : totalNanos[kind][mode] / 1e6 / count[kind][mode];
+    }
+}
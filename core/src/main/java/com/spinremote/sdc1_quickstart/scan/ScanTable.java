@@ -0,0 +1,259 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Keeps one entry per SPIN remote SDC-1 found while scanning, however often it advertises: its
+ * exponentially smoothed RSSI, the number of advertisements and the smoothed interval between
+ * them. The raw RSSI of single advertisements easily jumps by 10 dBm, the smoothed one is stable
+ * enough to show and to compare remotes by.
+ *
+ * The table holds at most a fixed number of remotes; when full, the remote that has not been seen
+ * for the longest time is evicted. An advertisement only updates the fixed-size arrays of its
+ * entry (found by comparing the addresses of at most capacity entries), without allocating, so
+ * the work per advertisement is bounded by the number of remotes and not by how often they
+ * advertise.
+ *
+ * Times are passed in as monotonic nanoseconds, e.g. the timestamps of the scan results. All
+ * methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class ScanTable {
+    /**
+     * Returned by {@link #getSmoothedRssi(String)} for a remote that is not in the table
+     */
+    public static final int NO_RSSI = Integer.MIN_VALUE;
+    /**
+     * Weight of a new RSSI sample (and advertising interval) in the smoothed value
+     */
+    public static final double DEFAULT_SMOOTHING = 0.25;
+
+    private final double smoothing;
+
+    private final String[] addresses;
+    private final double[] smoothedRssi;
+    /**
+     * Smoothed RSSI rounded to whole dBm, as last returned as changed by
+     * {@link #onAdvertisement(String, int, long)}
+     */
+    private final int[] roundedRssi;
+    private final long[] advertisementCounts;
+    private final long[] firstSeenNanos;
+    private final long[] lastSeenNanos;
+    /**
+     * Smoothed interval between the advertisements, 0 until the second one
+     */
+    private final double[] intervalNanos;
+
+    private int size;
+    private long evictedCount;
+
+    /**
+     * @param capacity  maximum number of remotes kept
+     * @param smoothing weight (0 - 1] of a new RSSI sample in the smoothed RSSI, e.g.
+     *                  {@link #DEFAULT_SMOOTHING}; 1 to not smooth
+     */
+    public ScanTable(int capacity, double smoothing) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        if (!(smoothing > 0 && smoothing <= 1)) {
+            throw new IllegalArgumentException("smoothing out of range: " + smoothing);
+        }
+
+        this.smoothing = smoothing;
+        addresses = new String[capacity];
+        smoothedRssi = new double[capacity];
+        roundedRssi = new int[capacity];
+        advertisementCounts = new long[capacity];
+        firstSeenNanos = new long[capacity];
+        lastSeenNanos = new long[capacity];
+        intervalNanos = new double[capacity];
+    }
+
+    /**
+     * Records an advertisement.
+     *
+     * @return whether the remote is new or its smoothed RSSI (rounded to whole dBm) changed, i.e.
+     * whether there is anything new to show
+     */
+    public synchronized boolean onAdvertisement(String address, int rssi, long timestampNanos) {
+        int index = indexOf(address);
+        if (index == -1) {
+            index = size < addresses.length ? size++ : evict();
+
+            addresses[index] = address;
+            smoothedRssi[index] = rssi;
+            roundedRssi[index] = rssi;
+            advertisementCounts[index] = 1;
+            firstSeenNanos[index] = timestampNanos;
+            lastSeenNanos[index] = timestampNanos;
+            intervalNanos[index] = 0;
+
+            return true;
+        }
+
+        // Scan results may be delivered out of order, only measure the intervals going forward
+        final long interval = timestampNanos - lastSeenNanos[index];
+        if (interval > 0) {
+            intervalNanos[index] = intervalNanos[index] == 0
+                    ? interval
+                    : intervalNanos[index] + smoothing * (interval - intervalNanos[index]);
+            lastSeenNanos[index] = timestampNanos;
+        }
+        advertisementCounts[index]++;
+        smoothedRssi[index] += smoothing * (rssi - smoothedRssi[index]);
+
+        final int rounded = (int) Math.round(smoothedRssi[index]);
+        if (rounded == roundedRssi[index]) {
+            return false;
+        }
+        roundedRssi[index] = rounded;
+
+        return true;
+    }
+
+    /**
+     * @return the smoothed RSSI of the remote rounded to whole dBm, {@link #NO_RSSI} if not in
+     * the table
+     */
+    public synchronized int getSmoothedRssi(String address) {
+        final int index = indexOf(address);
+
+        return index == -1 ? NO_RSSI : roundedRssi[index];
+    }
+
+    /**
+     * @return number of advertisements of the remote, 0 if not in the table
+     */
+    public synchronized long getAdvertisementCount(String address) {
+        final int index = indexOf(address);
+
+        return index == -1 ? 0 : advertisementCounts[index];
+    }
+
+    /**
+     * @return the smoothed interval between the advertisements of the remote in nanoseconds, 0 if
+     * not in the table or seen only once
+     */
+    public synchronized long getAdvertisingIntervalNanos(String address) {
+        final int index = indexOf(address);
+
+        return index == -1 ? 0 : (long) intervalNanos[index];
+    }
+
+    /**
+     * @return time of the first advertisement of the remote, 0 if not in the table
+     */
+    public synchronized long getFirstSeenNanos(String address) {
+        final int index = indexOf(address);
+
+        return index == -1 ? 0 : firstSeenNanos[index];
+    }
+
+    /**
+     * @return time of the latest advertisement of the remote, 0 if not in the table
+     */
+    public synchronized long getLastSeenNanos(String address) {
+        final int index = indexOf(address);
+
+        return index == -1 ? 0 : lastSeenNanos[index];
+    }
+
+    /**
+     * @param seenSinceNanos only remotes that advertised at or after this time are returned
+     * @return the addresses of the remotes, strongest (highest smoothed RSSI) first; remotes
+     * with the same smoothed RSSI by the number of advertisements, most first
+     */
+    public synchronized String[] getCandidates(long seenSinceNanos) {
+        final Integer[] indexes = new Integer[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (lastSeenNanos[i] - seenSinceNanos >= 0) {
+                indexes[count++] = i;
+            }
+        }
+
+        Arrays.sort(indexes, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                final int byRssi = Double.compare(smoothedRssi[b], smoothedRssi[a]);
+
+                return byRssi != 0 ? byRssi : Long.compare(advertisementCounts[b], advertisementCounts[a]);
+            }
+        });
+
+        final String[] candidates = new String[count];
+        for (int i = 0; i < count; i++) {
+            candidates[i] = addresses[indexes[i]];
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @return number of remotes in the table
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of remotes evicted to make room for new ones
+     */
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Removes all remotes, e.g. when scanning stops, so stale RSSIs are not compared to new ones.
+     */
+    public synchronized void clear() {
+        Arrays.fill(addresses, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return one line per remote
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < size; i++) {
+            builder.append(String.format(Locale.US, "%s: rssi=%d dBm, advertisements=%d, interval=%.1f ms%n",
+                    addresses[i], roundedRssi[i], advertisementCounts[i], intervalNanos[i] / 1e6
+            ));
+        }
+
+        return builder.toString();
+    }
+
+    private int indexOf(String address) {
+        for (int i = 0; i < size; i++) {
+            if (addresses[i].equals(address)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the index of the remote seen least recently, to be reused
+     */
+    private int evict() {
+        int oldest = 0;
+        for (int i = 1; i < size; i++) {
+            if (lastSeenNanos[i] - lastSeenNanos[oldest] < 0) {
+                oldest = i;
+            }
+        }
+        evictedCount++;
+
+        return oldest;
+    }
+}
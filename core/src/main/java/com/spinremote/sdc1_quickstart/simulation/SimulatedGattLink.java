@@ -0,0 +1,357 @@
+package com.spinremote.sdc1_quickstart.simulation;
+
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.UUID;
+
+/**
+ * {@link GattLink} to a {@link SimulatedSdc1Peer}, made by a {@link SimulatedGattTransport}.
+ *
+ * Like a {@code BluetoothGatt}, it refuses to start an operation while another one is
+ * outstanding (forever if its callback is lost), and only passes on notifications of
+ * characteristics it enabled them for.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+final class SimulatedGattLink implements GattLink {
+    private final SimulatedGattTransport transport;
+    private final String address;
+    /**
+     * The peer to connect to, null if there is none with the address
+     */
+    private final SimulatedSdc1Peer peer;
+    private final GattLink.Callback callback;
+
+    private boolean connected;
+    private boolean discovered;
+    private boolean closed;
+    /**
+     * Whether an operation is outstanding
+     */
+    private boolean busy;
+    /**
+     * Characteristics the notifications are enabled for locally
+     */
+    private final HashSet<UUID> notifyingCharacteristics = new HashSet<>();
+    /**
+     * Current connection priority and the time (nanos) the connection events started
+     */
+    private int connectionPriority = CONNECTION_PRIORITY_BALANCED;
+    private long connectedNanos;
+    /**
+     * Values notified but not delivered yet and their characteristics, in order
+     */
+    private final ArrayDeque<Byte> pendingNotifications = new ArrayDeque<>();
+    private final ArrayDeque<UUID> pendingCharacteristics = new ArrayDeque<>();
+
+    /**
+     * Value passed to {@link Callback#onCharacteristicChanged(GattLink, UUID, byte[])}, only used
+     * on the simulation thread
+     */
+    private final byte[] notificationValue = new byte[1];
+    private final Runnable deliverNotification = new Runnable() {
+        @Override
+        public void run() {
+            final UUID characteristic;
+            synchronized (SimulatedGattLink.this) {
+                if (!connected || pendingNotifications.isEmpty()) {
+                    return;
+                }
+                notificationValue[0] = pendingNotifications.poll();
+                final UUID pending = pendingCharacteristics.poll();
+                characteristic = notifyingCharacteristics.contains(pending) ? pending : null;
+            }
+
+            if (characteristic != null) {
+                callback.onCharacteristicChanged(SimulatedGattLink.this, characteristic, notificationValue);
+            }
+        }
+    };
+
+    SimulatedGattLink(SimulatedGattTransport transport, String address, SimulatedSdc1Peer peer, Callback callback) {
+        this.transport = transport;
+        this.address = address;
+        this.peer = peer;
+        this.callback = callback;
+    }
+
+    /**
+     * Connects, or fails to, after the latency.
+     */
+    void connect(final boolean succeed, long latencyMicros) {
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final boolean success;
+                synchronized (SimulatedGattLink.this) {
+                    if (closed) {
+                        return;
+                    }
+                    connected = succeed && peer.onConnected(SimulatedGattLink.this);
+                    connectedNanos = System.nanoTime();
+                    success = connected;
+                }
+
+                callback.onConnectionStateChange(SimulatedGattLink.this,
+                        success ? STATUS_SUCCESS : STATUS_FAILURE, success);
+            }
+        }, latencyMicros);
+    }
+
+    /**
+     * Notifies a one byte value, if notifications of the characteristic are enabled locally.
+     *
+     * @return whether the notification was sent
+     */
+    boolean notify(UUID characteristic, byte value) {
+        synchronized (this) {
+            if (!connected || !notifyingCharacteristics.contains(characteristic)) {
+                return false;
+            }
+
+            // Every delivery takes the oldest pending value, so notifications are delivered in
+            // order whatever their latency
+            pendingNotifications.add(value);
+            pendingCharacteristics.add(characteristic);
+        }
+
+        transport.schedule(deliverNotification, nextEventDelayMicros(false));
+
+        return true;
+    }
+
+    /**
+     * Drops the connection after the latency, like the supervision timeout of a remote that went
+     * out of range.
+     */
+    void drop() {
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedGattLink.this) {
+                    if (!connected) {
+                        return;
+                    }
+                    connected = false;
+                    busy = false;
+                }
+
+                peer.onDisconnected(SimulatedGattLink.this);
+                callback.onConnectionStateChange(SimulatedGattLink.this, STATUS_FAILURE, false);
+            }
+        }, transport.nextLatencyMicros());
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public synchronized boolean discoverServices() {
+        if (!connected || busy) {
+            return false;
+        }
+        busy = true;
+        if (transport.nextCallbackLost()) {
+            // Stays busy
+            return true;
+        }
+
+        final boolean fail = transport.nextOperationFails();
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedGattLink.this) {
+                    if (!connected) {
+                        return;
+                    }
+                    busy = false;
+                    discovered = !fail;
+                }
+
+                callback.onServicesDiscovered(SimulatedGattLink.this, fail ? STATUS_FAILURE : STATUS_SUCCESS);
+            }
+        }, nextEventDelayMicros(true));
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean hasService(UUID service) {
+        return discovered && peer.hasService(service);
+    }
+
+    @Override
+    public synchronized boolean hasCharacteristic(UUID characteristic) {
+        return discovered && peer.hasCharacteristic(characteristic);
+    }
+
+    @Override
+    public synchronized boolean hasDescriptor(UUID characteristic, UUID descriptor) {
+        return discovered && peer.hasDescriptor(characteristic, descriptor);
+    }
+
+    @Override
+    public synchronized boolean writeCharacteristic(final UUID characteristic, final byte[] value) {
+        if (!discovered || busy || !peer.hasCharacteristic(characteristic)) {
+            return false;
+        }
+        busy = true;
+        if (transport.nextCallbackLost()) {
+            // Stays busy
+            return true;
+        }
+
+        // The value may be reused by the caller as soon as we return, the peer gets what was sent
+        final byte[] written = value.clone();
+        final boolean fail = transport.nextOperationFails();
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedGattLink.this) {
+                    if (!connected) {
+                        return;
+                    }
+                    busy = false;
+                }
+
+                // Like a BluetoothGattCharacteristic, report the array the write was started with,
+                // so a callback decoding it after starting the next write would see that one's value
+                final boolean success = !fail && peer.write(characteristic, written);
+                callback.onCharacteristicWrite(SimulatedGattLink.this, characteristic, value,
+                        success ? STATUS_SUCCESS : STATUS_FAILURE);
+            }
+        }, nextEventDelayMicros(true));
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean readCharacteristic(final UUID characteristic) {
+        if (!discovered || busy || !peer.hasCharacteristic(characteristic)) {
+            return false;
+        }
+        busy = true;
+        if (transport.nextCallbackLost()) {
+            // Stays busy
+            return true;
+        }
+
+        final boolean fail = transport.nextOperationFails();
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedGattLink.this) {
+                    if (!connected) {
+                        return;
+                    }
+                    busy = false;
+                }
+
+                final byte[] value = fail ? null : peer.read(characteristic);
+                callback.onCharacteristicRead(SimulatedGattLink.this, characteristic, value,
+                        value != null ? STATUS_SUCCESS : STATUS_FAILURE);
+            }
+        }, nextEventDelayMicros(true));
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setCharacteristicNotification(UUID characteristic, boolean enable) {
+        if (!discovered || !peer.hasCharacteristic(characteristic)) {
+            return false;
+        }
+
+        if (enable) {
+            notifyingCharacteristics.add(characteristic);
+        } else {
+            notifyingCharacteristics.remove(characteristic);
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean writeDescriptor(final UUID characteristic, final UUID descriptor, byte[] value) {
+        if (!discovered || busy || !peer.hasDescriptor(characteristic, descriptor)) {
+            return false;
+        }
+        busy = true;
+        if (transport.nextCallbackLost()) {
+            // Stays busy
+            return true;
+        }
+
+        final byte[] written = value.clone();
+        final boolean fail = transport.nextOperationFails();
+        transport.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedGattLink.this) {
+                    if (!connected) {
+                        return;
+                    }
+                    busy = false;
+                }
+
+                final boolean success = !fail && peer.writeDescriptor(characteristic, descriptor, written);
+                callback.onDescriptorWrite(SimulatedGattLink.this, characteristic, descriptor,
+                        success ? STATUS_SUCCESS : STATUS_FAILURE);
+            }
+        }, nextEventDelayMicros(true));
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean requestConnectionPriority(int connectionPriority) {
+        if (!connected
+                || connectionPriority < CONNECTION_PRIORITY_BALANCED
+                || connectionPriority > CONNECTION_PRIORITY_LOW_POWER) {
+            return false;
+        }
+
+        this.connectionPriority = connectionPriority;
+
+        return true;
+    }
+
+    /**
+     * @param response whether a response is needed, which is sent one connection event later
+     * @return the time until the simulated radio delivers a packet sent now
+     */
+    private synchronized long nextEventDelayMicros(boolean response) {
+        long delayMicros = transport.nextLatencyMicros();
+
+        // Wait for the next connection event, if they are simulated
+        final long intervalMicros = transport.getConnectionIntervalMicros(connectionPriority);
+        if (intervalMicros > 0) {
+            final long sinceConnectedMicros = (System.nanoTime() - connectedNanos) / 1000 + delayMicros;
+            delayMicros += (intervalMicros - sinceConnectedMicros % intervalMicros) % intervalMicros;
+            if (response) {
+                delayMicros += intervalMicros;
+            }
+        }
+
+        return delayMicros;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connected = false;
+        }
+
+        if (peer != null) {
+            peer.onDisconnected(this);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.spinremote.sdc1_quickstart.simulation;
+
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GattTransport} connecting to {@link SimulatedSdc1Peer}s instead of real SPIN remote
+ * SDC-1s, so the scan, connect and notify pipeline can be run and load-tested on the JVM.
+ *
+ * All callbacks, scan results and delayed tasks run on a single simulation thread, like the
+ * Bluetooth binder thread they stand in for. Every operation completes after the configured
+ * latency (plus a random jitter) and fails with the configured probability, or never calls back
+ * at all (leaving the link stuck, as a lost response does on Android); notifications of a link
+ * are always delivered in order. The clock is {@link System#nanoTime()}.
+ *
+ * Configure the transport before using it and {@link #shutdown()} it when done. All methods are
+ * thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class SimulatedGattTransport implements GattTransport {
+    /**
+     * Scan mode reported by {@link #getScanMode()}, equal to
+     * {@code ScanSettings.SCAN_MODE_LOW_LATENCY}
+     */
+    public static final int SCAN_MODE = 2;
+
+    private final ScheduledExecutorService executor;
+    private final Random random;
+
+    /**
+     * Scan result held back by a batch scan
+     */
+    private static final class BatchedResult {
+        final String address;
+        final int rssi;
+        final long timestampNanos;
+
+        BatchedResult(String address, int rssi, long timestampNanos) {
+            this.address = address;
+            this.rssi = rssi;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
+    /**
+     * A post of a task by {@link #postDelayed(Runnable, long)}, forgotten once it runs
+     */
+    private final class DelayedTask implements Runnable {
+        final Runnable task;
+        /**
+         * Set while holding the lock of the transport, before the task can run
+         */
+        ScheduledFuture<?> future;
+
+        DelayedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (SimulatedGattTransport.this) {
+                final ArrayList<DelayedTask> posted = delayedTasks.get(task);
+                if (posted != null && posted.remove(this) && posted.isEmpty()) {
+                    delayedTasks.remove(task);
+                }
+            }
+            task.run();
+        }
+    }
+
+    private final HashMap<String, SimulatedSdc1Peer> peers = new HashMap<>();
+    /**
+     * Posts by {@link #postDelayed(Runnable, long)} that have not run yet, by task
+     */
+    private final HashMap<Runnable, ArrayList<DelayedTask>> delayedTasks = new HashMap<>();
+
+    private long latencyMicros = 1000;
+    private long jitterMicros;
+    private long connectLatencyMicros = 5000;
+    private long advertisingIntervalMicros = 20000;
+    private double connectFailureRate;
+    private double operationFailureRate;
+    private double lostCallbackRate;
+    /**
+     * Connection interval per connection priority (index), 0 to not simulate connection events
+     */
+    private final long[] connectionIntervalMicros = new long[3];
+
+    /**
+     * Listener and task of the current scan, null if not scanning
+     */
+    private ScanListener scanListener;
+    private ScheduledFuture<?> scanTask;
+    /**
+     * Task reporting the batched results of the current batch scan, null if not batching
+     */
+    private ScheduledFuture<?> batchTask;
+    /**
+     * Results held back by the current batch scan
+     */
+    private final ArrayList<BatchedResult> batchedResults = new ArrayList<>();
+    /**
+     * Number of times scan results were reported, one per result or batch
+     */
+    private long scanReportCount;
+
+    /**
+     * @param seed seed of the random latencies and failures, so a run can be repeated
+     */
+    public SimulatedGattTransport(long seed) {
+        random = new Random(seed);
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "SimulatedGattTransport");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a simulated SPIN remote SDC-1, advertising until it is connected.
+     */
+    public synchronized SimulatedSdc1Peer addPeer(String address, int rssi) {
+        final SimulatedSdc1Peer peer = new SimulatedSdc1Peer(this, address, rssi);
+        peers.put(address, peer);
+
+        return peer;
+    }
+
+    /**
+     * @param latencyMicros latency of every operation and notification, 1 ms by default
+     * @param jitterMicros  maximum random latency added, 0 by default
+     */
+    public synchronized void setLatency(long latencyMicros, long jitterMicros) {
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+    }
+
+    /**
+     * @param connectLatencyMicros time to connect (or fail to), 5 ms by default
+     */
+    public synchronized void setConnectLatency(long connectLatencyMicros) {
+        this.connectLatencyMicros = connectLatencyMicros;
+    }
+
+    /**
+     * @param advertisingIntervalMicros interval between the scan results of a peer, 20 ms by
+     *                                  default
+     */
+    public synchronized void setAdvertisingInterval(long advertisingIntervalMicros) {
+        this.advertisingIntervalMicros = advertisingIntervalMicros;
+    }
+
+    /**
+     * @param connectFailureRate   probability (0 - 1) that connecting fails, 0 by default
+     * @param operationFailureRate probability (0 - 1) that an operation (discovery, read or
+     *                             write) fails, 0 by default
+     */
+    public synchronized void setFailureRates(double connectFailureRate, double operationFailureRate) {
+        this.connectFailureRate = connectFailureRate;
+        this.operationFailureRate = operationFailureRate;
+    }
+
+    /**
+     * @param lostCallbackRate probability (0 - 1) that an operation (discovery, read or write)
+     *                         never calls back, 0 by default
+     */
+    public synchronized void setLostCallbackRate(double lostCallbackRate) {
+        this.lostCallbackRate = lostCallbackRate;
+    }
+
+    /**
+     * Simulates the connection events of the links: notifications are only sent at a connection
+     * event, and an operation completes at the event after the one it was sent at. Not simulated
+     * by default.
+     *
+     * @param highMicros     connection interval with {@code CONNECTION_PRIORITY_HIGH}
+     * @param balancedMicros connection interval with {@code CONNECTION_PRIORITY_BALANCED}, the
+     *                       priority a link starts with
+     * @param lowPowerMicros connection interval with {@code CONNECTION_PRIORITY_LOW_POWER}
+     */
+    public synchronized void setConnectionIntervals(long highMicros, long balancedMicros, long lowPowerMicros) {
+        connectionIntervalMicros[GattLink.CONNECTION_PRIORITY_HIGH] = highMicros;
+        connectionIntervalMicros[GattLink.CONNECTION_PRIORITY_BALANCED] = balancedMicros;
+        connectionIntervalMicros[GattLink.CONNECTION_PRIORITY_LOW_POWER] = lowPowerMicros;
+    }
+
+    /**
+     * Stops the simulation thread, pending callbacks are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return number of times scan results were reported to a listener: once per result, or once
+     * per batch of a batch scan
+     */
+    public synchronized long getScanReportCount() {
+        return scanReportCount;
+    }
+
+    @Override
+    public synchronized boolean startScan(ScanListener listener) {
+        stopScan();
+
+        scanListener = listener;
+        scanTask = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                advertise();
+            }
+        }, 0, advertisingIntervalMicros, TimeUnit.MICROSECONDS);
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean startBatchScan(ScanListener listener, long reportDelayMillis) {
+        startScan(listener);
+        batchTask = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                flushScanResults();
+            }
+        }, reportDelayMillis, reportDelayMillis, TimeUnit.MILLISECONDS);
+
+        return true;
+    }
+
+    @Override
+    public void flushScanResults() {
+        final ScanListener listener;
+        final BatchedResult[] results;
+        synchronized (this) {
+            listener = scanListener;
+            if (listener == null || batchedResults.isEmpty()) {
+                return;
+            }
+
+            results = batchedResults.toArray(new BatchedResult[batchedResults.size()]);
+            batchedResults.clear();
+            scanReportCount++;
+        }
+
+        for (BatchedResult result : results) {
+            listener.onScanResult(result.address, result.rssi, result.timestampNanos);
+        }
+    }
+
+    @Override
+    public synchronized void stopScan() {
+        if (scanTask != null) {
+            scanTask.cancel(false);
+            scanTask = null;
+        }
+        if (batchTask != null) {
+            batchTask.cancel(false);
+            batchTask = null;
+        }
+        batchedResults.clear();
+        scanListener = null;
+    }
+
+    @Override
+    public int getScanMode() {
+        return SCAN_MODE;
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+        final SimulatedSdc1Peer peer;
+        final boolean fail;
+        final long latencyMicros;
+        synchronized (this) {
+            peer = peers.get(address);
+            fail = random.nextDouble() < connectFailureRate;
+            latencyMicros = connectLatencyMicros;
+        }
+
+        final SimulatedGattLink link = new SimulatedGattLink(this, address, peer, callback);
+        link.connect(peer != null && !fail, latencyMicros);
+
+        return link;
+    }
+
+    @Override
+    public long nowNanos() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMillis) {
+        // Like a Handler, the same task may be posted more than once
+        ArrayList<DelayedTask> posted = delayedTasks.get(task);
+        if (posted == null) {
+            posted = new ArrayList<>(1);
+            delayedTasks.put(task, posted);
+        }
+
+        final DelayedTask delayedTask = new DelayedTask(task);
+        posted.add(delayedTask);
+        delayedTask.future = executor.schedule(delayedTask, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable task) {
+        // Cancels all posts of the task, like a Handler
+        final ArrayList<DelayedTask> posted = delayedTasks.remove(task);
+        if (posted != null) {
+            for (DelayedTask delayedTask : posted) {
+                delayedTask.future.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "simulated";
+    }
+
+    /**
+     * Runs the task on the simulation thread after a delay.
+     */
+    void schedule(Runnable task, long delayMicros) {
+        executor.schedule(task, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @return the latency of the next operation, including jitter
+     */
+    synchronized long nextLatencyMicros() {
+        return latencyMicros + (jitterMicros > 0 ? (long) (random.nextDouble() * jitterMicros) : 0);
+    }
+
+    /**
+     * @return the connection interval of a connection priority, 0 if connection events are not
+     * simulated
+     */
+    synchronized long getConnectionIntervalMicros(int connectionPriority) {
+        return connectionIntervalMicros[connectionPriority];
+    }
+
+    /**
+     * @return whether the next operation fails
+     */
+    synchronized boolean nextOperationFails() {
+        return random.nextDouble() < operationFailureRate;
+    }
+
+    /**
+     * @return whether the callback of the next operation is lost
+     */
+    synchronized boolean nextCallbackLost() {
+        return lostCallbackRate > 0 && random.nextDouble() < lostCallbackRate;
+    }
+
+    /**
+     * Reports a scan result for every peer in range that is not connected, on the simulation thread, or
+     * holds them back while batching.
+     */
+    private void advertise() {
+        final ScanListener listener;
+        final ArrayList<SimulatedSdc1Peer> advertising = new ArrayList<>();
+        synchronized (this) {
+            listener = scanListener;
+            for (SimulatedSdc1Peer peer : peers.values()) {
+                if (!peer.isConnected() && peer.isInRange()) {
+                    advertising.add(peer);
+                }
+            }
+
+            if (listener != null && batchTask != null) {
+                for (SimulatedSdc1Peer peer : advertising) {
+                    batchedResults.add(new BatchedResult(peer.getAddress(), peer.getRssi(), nowNanos()));
+                }
+
+                return;
+            }
+            if (listener != null) {
+                scanReportCount += advertising.size();
+            }
+        }
+
+        if (listener == null) {
+            return;
+        }
+        for (SimulatedSdc1Peer peer : advertising) {
+            listener.onScanResult(peer.getAddress(), peer.getRssi(), nowNanos());
+        }
+    }
+}
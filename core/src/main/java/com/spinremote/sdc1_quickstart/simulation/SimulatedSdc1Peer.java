@@ -0,0 +1,373 @@
+package com.spinremote.sdc1_quickstart.simulation;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated SPIN remote SDC-1, implementing the SPIN Service of the SPIN remote Bluetooth Smart
+ * Services specification (v1.0): the Command Characteristic, the Action Characteristic and its
+ * client characteristic configuration descriptor. It also has the standard Device Information
+ * Service (fixed strings) and Battery Service (a battery level that can be notified).
+ *
+ * Commands behave as on the real remote:
+ *      - 0x07 cancels the LED override, so the LED shows the color of the active profile again
+ *      - 0x08 sets whether actions are sent as notifications (0x01) or not (0x00)
+ *      - 0x09 overrides the LED color (red, green, blue)
+ * A command that is too short, has an unknown Command Id or an invalid force flag fails the write.
+ *
+ * An action is only notified when notifications are enabled in the descriptor and forced with
+ * 0x08; otherwise it's counted as suppressed. Actions can be sent one by one with
+ * {@link #performAction(int)}, or replayed at a fixed rate with
+ * {@link #replayActions(int[], int, long)} as a load generator.
+ *
+ * A remote taken out of range with {@link #setInRange(boolean)} stops advertising, drops its
+ * connection and can't be connected to until back in range.
+ *
+ * Created by {@link SimulatedGattTransport#addPeer(String, int)}. All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public final class SimulatedSdc1Peer {
+    /**
+     * LED color shown when not overridden, i.e. the color of the active profile
+     */
+    public static final int PROFILE_LED_COLOR = 0x0000FF;
+    /**
+     * Values of the Device Information Service, the serial number is the address without colons
+     */
+    public static final String MANUFACTURER_NAME = "SPIN remote B.V.";
+    public static final String MODEL_NUMBER = "SDC-1";
+    public static final String FIRMWARE_REVISION = "1.0";
+    public static final String HARDWARE_REVISION = "1.0";
+
+    private final SimulatedGattTransport transport;
+    private final String address;
+    private volatile int rssi;
+    private volatile boolean inRange = true;
+
+    /**
+     * Link currently connected to this peer, null if none
+     */
+    private SimulatedGattLink link;
+    private boolean notificationsEnabled;
+    private boolean actionNotificationForced;
+    private boolean ledOverridden;
+    private int ledColor = PROFILE_LED_COLOR;
+    private int lastAction;
+    private int batteryLevel = 100;
+    private boolean batteryNotificationsEnabled;
+
+    private final AtomicLong notifiedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong commandCount = new AtomicLong();
+    private final AtomicLong readCount = new AtomicLong();
+
+    SimulatedSdc1Peer(SimulatedGattTransport transport, String address, int rssi) {
+        this.transport = transport;
+        this.address = address;
+        this.rssi = rssi;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * @param rssi RSSI of the next scan results, e.g. to simulate the remote moving away
+     */
+    public void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
+
+    public boolean isInRange() {
+        return inRange;
+    }
+
+    /**
+     * @param inRange whether the remote is in range, e.g. false to simulate the user walking away
+     *                with the phone
+     */
+    public void setInRange(boolean inRange) {
+        final SimulatedGattLink link;
+        synchronized (this) {
+            this.inRange = inRange;
+            link = inRange ? null : this.link;
+        }
+
+        if (link != null) {
+            link.drop();
+        }
+    }
+
+    public synchronized boolean isConnected() {
+        return link != null;
+    }
+
+    /**
+     * @return the color the LED shows (0xRRGGBB)
+     */
+    public synchronized int getLedColor() {
+        return ledColor;
+    }
+
+    public synchronized boolean isLedOverridden() {
+        return ledOverridden;
+    }
+
+    public synchronized boolean isActionNotificationForced() {
+        return actionNotificationForced;
+    }
+
+    public synchronized boolean isNotificationsEnabled() {
+        return notificationsEnabled;
+    }
+
+    /**
+     * @return number of actions sent as a notification
+     */
+    public long getNotifiedCount() {
+        return notifiedCount.get();
+    }
+
+    /**
+     * @return number of actions not sent because notifications were not enabled or forced
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * @return number of commands written successfully
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * @return number of characteristics read successfully
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public synchronized int getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    /**
+     * Sets the battery level, notifying it if the notification is enabled.
+     *
+     * @param batteryLevel battery level in percent (0 - 100)
+     */
+    public void setBatteryLevel(int batteryLevel) {
+        final SimulatedGattLink link;
+        synchronized (this) {
+            this.batteryLevel = batteryLevel;
+            link = batteryNotificationsEnabled ? this.link : null;
+        }
+
+        if (link != null) {
+            link.notify(Sdc1Uuids.BATTERY_LEVEL_CHARACTERISTIC_UUID, (byte) batteryLevel);
+        }
+    }
+
+    /**
+     * Performs an action, notifying it if the notification is enabled and forced.
+     *
+     * @param action uint8 action
+     */
+    public void performAction(int action) {
+        final SimulatedGattLink link;
+        synchronized (this) {
+            lastAction = action & 0xFF;
+            link = notificationsEnabled && actionNotificationForced ? this.link : null;
+        }
+
+        if (link != null && link.notify(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID, (byte) action)) {
+            notifiedCount.incrementAndGet();
+        } else {
+            suppressedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Performs the actions in order, repeatedly, at a fixed rate on the simulation thread.
+     *
+     * @param actions        the actions to perform
+     * @param count          total number of actions to perform
+     * @param intervalMicros time between two actions
+     */
+    public void replayActions(final int[] actions, final int count, final long intervalMicros) {
+        transport.schedule(new Runnable() {
+            private int performed;
+            private final long startNanos = System.nanoTime();
+
+            @Override
+            public void run() {
+                // Catch up on the actions that are due, so the rate holds even if we run late
+                final long due = Math.min(count, (System.nanoTime() - startNanos) / (intervalMicros * 1000) + 1);
+                while (performed < due) {
+                    performAction(actions[performed % actions.length]);
+                    performed++;
+                }
+
+                if (performed < count) {
+                    final long nextMicros = (performed * intervalMicros) - (System.nanoTime() - startNanos) / 1000;
+                    transport.schedule(this, Math.max(0, nextMicros));
+                }
+            }
+        }, 0);
+    }
+
+    synchronized boolean onConnected(SimulatedGattLink link) {
+        if (this.link != null || !inRange) {
+            return false;
+        }
+
+        this.link = link;
+
+        return true;
+    }
+
+    /**
+     * Resets the connection state, like the real remote does when disconnected.
+     */
+    synchronized void onDisconnected(SimulatedGattLink link) {
+        if (this.link != link) {
+            return;
+        }
+
+        this.link = null;
+        notificationsEnabled = false;
+        batteryNotificationsEnabled = false;
+        actionNotificationForced = false;
+        ledOverridden = false;
+        ledColor = PROFILE_LED_COLOR;
+    }
+
+    boolean hasService(UUID service) {
+        return Sdc1Uuids.SPIN_SERVICE_UUID.equals(service)
+                || Sdc1Uuids.DEVICE_INFORMATION_SERVICE_UUID.equals(service)
+                || Sdc1Uuids.BATTERY_SERVICE_UUID.equals(service);
+    }
+
+    boolean hasCharacteristic(UUID characteristic) {
+        return Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID.equals(characteristic)
+                || Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)
+                || Sdc1Uuids.BATTERY_LEVEL_CHARACTERISTIC_UUID.equals(characteristic)
+                || getDeviceInformation(characteristic) != null;
+    }
+
+    boolean hasDescriptor(UUID characteristic, UUID descriptor) {
+        return (Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)
+                || Sdc1Uuids.BATTERY_LEVEL_CHARACTERISTIC_UUID.equals(characteristic))
+                && Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID.equals(descriptor);
+    }
+
+    /**
+     * @return whether the write succeeded
+     */
+    synchronized boolean write(UUID characteristic, byte[] value) {
+        if (!Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID.equals(characteristic)) {
+            // The Action Characteristic can't be written
+            return false;
+        }
+
+        final int commandId = Sdc1Codec.decodeCommandId(value);
+        if (commandId == -1 || value.length != Sdc1Codec.commandLength(commandId)) {
+            return false;
+        }
+
+        switch (commandId) {
+            case Sdc1Codec.COMMAND_CANCEL_LED_OVERRIDE:
+                ledOverridden = false;
+                ledColor = PROFILE_LED_COLOR;
+                break;
+
+            case Sdc1Codec.COMMAND_FORCE_ACTION_NOTIFICATION:
+                if (value[1] != 0 && value[1] != 1) {
+                    return false;
+                }
+                actionNotificationForced = value[1] == 1;
+                break;
+
+            case Sdc1Codec.COMMAND_SET_LED_COLOR:
+                ledOverridden = true;
+                ledColor = (value[1] & 0xFF) << 16 | (value[2] & 0xFF) << 8 | (value[3] & 0xFF);
+                break;
+
+            default:
+                return false;
+        }
+
+        commandCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * @return the value read, null if the characteristic can't be read
+     */
+    synchronized byte[] read(UUID characteristic) {
+        final byte[] value;
+        if (Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)) {
+            value = new byte[]{(byte) lastAction};
+        } else if (Sdc1Uuids.BATTERY_LEVEL_CHARACTERISTIC_UUID.equals(characteristic)) {
+            value = new byte[]{(byte) batteryLevel};
+        } else {
+            final String deviceInformation = getDeviceInformation(characteristic);
+            if (deviceInformation == null) {
+                return null;
+            }
+            value = deviceInformation.getBytes(Charset.forName("UTF-8"));
+        }
+        readCount.incrementAndGet();
+
+        return value;
+    }
+
+    /**
+     * @return the value of a Device Information Service characteristic, null if not one
+     */
+    private String getDeviceInformation(UUID characteristic) {
+        if (Sdc1Uuids.MANUFACTURER_NAME_CHARACTERISTIC_UUID.equals(characteristic)) {
+            return MANUFACTURER_NAME;
+        } else if (Sdc1Uuids.MODEL_NUMBER_CHARACTERISTIC_UUID.equals(characteristic)) {
+            return MODEL_NUMBER;
+        } else if (Sdc1Uuids.SERIAL_NUMBER_CHARACTERISTIC_UUID.equals(characteristic)) {
+            return address.replace(":", "");
+        } else if (Sdc1Uuids.FIRMWARE_REVISION_CHARACTERISTIC_UUID.equals(characteristic)) {
+            return FIRMWARE_REVISION;
+        } else if (Sdc1Uuids.HARDWARE_REVISION_CHARACTERISTIC_UUID.equals(characteristic)) {
+            return HARDWARE_REVISION;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return whether the write succeeded
+     */
+    synchronized boolean writeDescriptor(UUID characteristic, UUID descriptor, byte[] value) {
+        if (!hasDescriptor(characteristic, descriptor) || value.length != 2) {
+            return false;
+        }
+
+        // Bit 0 enables notifications
+        if (Sdc1Uuids.ACTION_CHARACTERISTIC_UUID.equals(characteristic)) {
+            notificationsEnabled = (value[0] & 0x01) != 0;
+        } else {
+            batteryNotificationsEnabled = (value[0] & 0x01) != 0;
+        }
+
+        return true;
+    }
+}
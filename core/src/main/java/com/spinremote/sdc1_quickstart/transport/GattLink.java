@@ -0,0 +1,128 @@
+package com.spinremote.sdc1_quickstart.transport;
+
+import java.util.UUID;
+
+/**
+ * A GATT client connection to a single remote device, as made by a {@link GattTransport}. This is
+ * the part of {@code BluetoothGatt} the connection logic needs, with characteristics and
+ * descriptors identified by UUID (unique within the services we use), so the same logic runs
+ * against a real remote on Android or a simulated one on the JVM.
+ *
+ * Like {@code BluetoothGatt}, only one read or write may be outstanding at a time; the methods
+ * starting one return false if the operation could not be started. The results are reported to
+ * the {@link Callback}.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public interface GattLink {
+    /**
+     * Status of a successful operation, equal to {@code BluetoothGatt.GATT_SUCCESS}
+     */
+    int STATUS_SUCCESS = 0;
+    /**
+     * Status of a failed operation, equal to {@code BluetoothGatt.GATT_FAILURE}
+     */
+    int STATUS_FAILURE = 0x101;
+
+    /**
+     * Connection priorities of {@link #requestConnectionPriority(int)}, equal to the
+     * CONNECTION_PRIORITY_ constants of {@code BluetoothGatt}
+     */
+    int CONNECTION_PRIORITY_BALANCED = 0;
+    int CONNECTION_PRIORITY_HIGH = 1;
+    int CONNECTION_PRIORITY_LOW_POWER = 2;
+
+    /**
+     * Notified about the connection and the results of the operations, one callback at a time,
+     * on a thread of the transport (a Bluetooth binder thread on Android). Values passed are only
+     * valid during the callback.
+     */
+    interface Callback {
+        /**
+         * @param connected whether the link is now connected, false when it failed to connect or
+         *                  disconnected
+         */
+        void onConnectionStateChange(GattLink link, int status, boolean connected);
+
+        void onServicesDiscovered(GattLink link, int status);
+
+        /**
+         * @param value the array the write was started with (like
+         *              {@code BluetoothGattCharacteristic.getValue()}), so it must be decoded
+         *              before a next write is started: that may reuse the array
+         */
+        void onCharacteristicWrite(GattLink link, UUID characteristic, byte[] value, int status);
+
+        void onCharacteristicRead(GattLink link, UUID characteristic, byte[] value, int status);
+
+        void onDescriptorWrite(GattLink link, UUID characteristic, UUID descriptor, int status);
+
+        void onCharacteristicChanged(GattLink link, UUID characteristic, byte[] value);
+    }
+
+    /**
+     * @return the address of the remote device
+     */
+    String getAddress();
+
+    /**
+     * Starts discovering the services of the remote device.
+     *
+     * @return whether discovery was started
+     */
+    boolean discoverServices();
+
+    /**
+     * @return whether the service was discovered
+     */
+    boolean hasService(UUID service);
+
+    /**
+     * @return whether the characteristic was discovered
+     */
+    boolean hasCharacteristic(UUID characteristic);
+
+    /**
+     * @return whether the descriptor of the characteristic was discovered
+     */
+    boolean hasDescriptor(UUID characteristic, UUID descriptor);
+
+    /**
+     * @return whether the write was started
+     */
+    boolean writeCharacteristic(UUID characteristic, byte[] value);
+
+    /**
+     * @return whether the read was started
+     */
+    boolean readCharacteristic(UUID characteristic);
+
+    /**
+     * Enables or disables receiving notifications of the characteristic locally, the client
+     * characteristic configuration descriptor still has to be written to enable them remotely.
+     *
+     * @return whether it succeeded
+     */
+    boolean setCharacteristicNotification(UUID characteristic, boolean enable);
+
+    /**
+     * @return whether the write was started
+     */
+    boolean writeDescriptor(UUID characteristic, UUID descriptor, byte[] value);
+
+    /**
+     * Requests new connection parameters: a shorter connection interval for
+     * {@link #CONNECTION_PRIORITY_HIGH} (lower latency), a longer one for
+     * {@link #CONNECTION_PRIORITY_LOW_POWER} (less power). The remote may take a few connection
+     * events to apply them.
+     *
+     * @param connectionPriority one of the CONNECTION_PRIORITY_ constants
+     * @return whether the request was sent
+     */
+    boolean requestConnectionPriority(int connectionPriority);
+
+    /**
+     * Disconnects and releases the link, no more callbacks follow.
+     */
+    void close();
+}
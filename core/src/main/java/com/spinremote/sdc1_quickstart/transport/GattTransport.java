@@ -0,0 +1,82 @@
+package com.spinremote.sdc1_quickstart.transport;
+
+/**
+ * Finds and connects to remote devices: Bluetooth on Android, or a simulation on the JVM. Also
+ * provides the clock and the delayed tasks, so the connection logic has no dependencies on
+ * Android and simulated time stays consistent.
+ *
+ * All methods are thread-safe.
+ *
+ * Copyright © 2017 SPIN remote B.V. All rights reserved.
+ */
+public interface GattTransport {
+    /**
+     * Notified about the remote devices found while scanning, on a thread of the transport (the
+     * thread of the delayed tasks on Android)
+     */
+    interface ScanListener {
+        /**
+         * @param timestampNanos time of the advertisement, on the clock of {@link #nowNanos()}
+         */
+        void onScanResult(String address, int rssi, long timestampNanos);
+
+        void onScanFailed(int errorCode);
+    }
+
+    /**
+     * Starts scanning for SPIN remote SDC-1s, replacing a previous scan.
+     *
+     * @return whether scanning was started, false if e.g. Bluetooth is disabled
+     */
+    boolean startScan(ScanListener listener);
+
+    /**
+     * Starts a low power scan for SPIN remote SDC-1s, replacing a previous scan. The results are
+     * batched (by the Bluetooth controller, where supported) and reported together at most once
+     * per report delay, so the app is not woken up for every advertisement.
+     *
+     * @param reportDelayMillis maximum time a result is held back
+     * @return whether scanning was started, false if e.g. Bluetooth is disabled
+     */
+    boolean startBatchScan(ScanListener listener, long reportDelayMillis);
+
+    /**
+     * Reports the results batched so far by the current batch scan right away, e.g. before
+     * stopping it. The results may still be reported asynchronously.
+     */
+    void flushScanResults();
+
+    void stopScan();
+
+    /**
+     * @return the scan mode of the scans, one of the SCAN_MODE_ constants of
+     * {@code android.bluetooth.le.ScanSettings}, for statistics
+     */
+    int getScanMode();
+
+    /**
+     * Starts connecting to a remote device.
+     *
+     * @param address     address of the remote device, e.g. as found by scanning
+     * @param autoConnect whether to wait for the remote to become available instead of timing out
+     * @param callback    notified about the connection and its operations
+     * @return the link, or null if connecting could not be started
+     */
+    GattLink connect(String address, boolean autoConnect, GattLink.Callback callback);
+
+    /**
+     * @return the current time of a monotonic clock, in nanoseconds
+     */
+    long nowNanos();
+
+    /**
+     * Runs the task after a delay, on the transport's looper thread (the session thread in the
+     * app) on Android.
+     */
+    void postDelayed(Runnable task, long delayMillis);
+
+    /**
+     * Removes the task if it has not run yet.
+     */
+    void removeCallbacks(Runnable task);
+}
@@ -0,0 +1,247 @@
+package com.spinremote.sdc1_quickstart.bridge;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventBus;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.simulation.Await;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ActionBridge}, with clients connected over the loopback address.
+ */
+public class ActionBridgeTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+    private static final String ADDRESS = "F0:00:00:00:00:01";
+
+    private final ActionEventBus bus = new ActionEventBus(1 << 14);
+    private final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+    private ActionBridge bridge;
+
+    @After
+    public void tearDown() throws Exception {
+        if (bridge != null) {
+            bridge.stop();
+        }
+    }
+
+    @Test
+    public void clients_receiveAllActionsInOrder() throws Exception {
+        start(ActionBridge.DEFAULT_CLIENT_BUFFER_FRAMES);
+        final Socket first = connect(0);
+        final Socket second = connect(0);
+        awaitClientCount(2);
+
+        final int count = 1000;
+        final FrameReader firstReader = new FrameReader(first, count + 1);
+        final FrameReader secondReader = new FrameReader(second, count + 1);
+        final int deviceIndex = deviceTable.indexOf(ADDRESS);
+        publish(deviceIndex, count);
+
+        for (FrameReader reader : new FrameReader[]{firstReader, secondReader}) {
+            final ByteBuffer frames = reader.await();
+            assertEquals(BridgeFrame.TYPE_DEVICE, BridgeFrame.getType(frames, 0));
+            assertEquals(deviceIndex, BridgeFrame.getDeviceIndex(frames, 0));
+            assertEquals(ADDRESS, BridgeFrame.getAddress(frames, 0));
+
+            for (int i = 0; i < count; i++) {
+                final int offset = (i + 1) * BridgeFrame.SIZE;
+                assertEquals(BridgeFrame.TYPE_ACTION, BridgeFrame.getType(frames, offset));
+                assertEquals(deviceIndex, BridgeFrame.getDeviceIndex(frames, offset));
+                assertEquals(i & 0xFF, BridgeFrame.getAction(frames, offset));
+                assertEquals(i, BridgeFrame.getSequence(frames, offset));
+                assertEquals(1000L * i, BridgeFrame.getTimestampNanos(frames, offset));
+            }
+        }
+
+        // Counted once the write returned, which may be after the readers got the frames
+        awaitSentFrameCount(count + 1);
+        for (ActionBridge.ClientStats stats : bridge.getClientStats()) {
+            assertEquals(count + 1, stats.getSentFrameCount());
+            assertEquals(0, stats.getDroppedFrameCount());
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void slowClient_dropsWithoutDelayingOthers() throws Exception {
+        start(1024);
+        // Never reads, so its buffers fill up
+        final Socket slow = connect(1024);
+        awaitClientCount(1);
+        final Socket fast = connect(0);
+        awaitClientCount(2);
+
+        final int count = 20000;
+        final FrameReader fastReader = new FrameReader(fast, count + 1);
+        publish(deviceTable.indexOf(ADDRESS), count);
+
+        final ByteBuffer frames = fastReader.await();
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, BridgeFrame.getSequence(frames, (i + 1) * BridgeFrame.SIZE));
+        }
+
+        final ActionBridge.ClientStats slowStats = bridge.getClientStats().get(0);
+        final ActionBridge.ClientStats fastStats = bridge.getClientStats().get(1);
+        assertTrue(slowStats.toString(), slowStats.getDroppedFrameCount() > 0);
+        assertTrue(slowStats.toString(), slowStats.getSentFrameCount() < count);
+        assertEquals(0, fastStats.getDroppedFrameCount());
+        assertEquals(0, bridge.getBusDroppedCount());
+
+        // Once the slow client catches up, every frame is either sent or dropped, even the ones
+        // its small buffers split across writes
+        final Thread drain = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (slow.getInputStream().read(new byte[1000]) >= 0) {
+                        // Discard
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        Await.awaitTrue("Timed out waiting for every frame to be sent or dropped", new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                final ActionBridge.ClientStats stats = bridge.getClientStats().get(0);
+
+                return stats.getSentFrameCount() + stats.getDroppedFrameCount() == count + 1;
+            }
+        });
+        slow.close();
+        fast.close();
+    }
+
+    @Test
+    public void closedClient_isRemoved() throws Exception {
+        start(ActionBridge.DEFAULT_CLIENT_BUFFER_FRAMES);
+        final Socket first = connect(0);
+        final Socket second = connect(0);
+        awaitClientCount(2);
+
+        first.close();
+        awaitClientCount(1);
+
+        // The remaining client still gets the actions
+        final FrameReader reader = new FrameReader(second, 2);
+        bus.publish(deviceTable.indexOf(ADDRESS), 3, 42);
+        final ByteBuffer frames = reader.await();
+        assertEquals(3, BridgeFrame.getAction(frames, BridgeFrame.SIZE));
+
+        bridge.stop();
+        assertEquals(-1, second.getInputStream().read());
+        assertEquals(-1, bridge.getLocalPort());
+        bridge = null;
+        second.close();
+    }
+
+    private void start(int clientBufferFrames) throws IOException {
+        bridge = new ActionBridge(bus, deviceTable, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                clientBufferFrames
+        );
+        bridge.start();
+    }
+
+    /**
+     * @param receiveBufferSize receive buffer size of the socket, 0 for the default
+     */
+    private Socket connect(int receiveBufferSize) throws IOException {
+        final Socket socket = new Socket();
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), bridge.getLocalPort()));
+
+        return socket;
+    }
+
+    /**
+     * Publishes actions 0, 1, 2... in bursts of 64, as a burst of remotes would.
+     */
+    private void publish(int deviceIndex, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            bus.publish(deviceIndex, i & 0xFF, 1000L * i);
+            if (i % 64 == 63) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private void awaitClientCount(final int count) throws InterruptedException {
+        Await.awaitTrue("Timed out waiting for " + count + " clients", new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return bridge.getClientCount() == count;
+            }
+        });
+    }
+
+    /**
+     * Waits until every client was sent the number of frames.
+     */
+    private void awaitSentFrameCount(final long count) throws InterruptedException {
+        Await.awaitTrue("Timed out waiting for " + count + " sent frames", new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                boolean sent = true;
+                for (ActionBridge.ClientStats stats : bridge.getClientStats()) {
+                    sent &= stats.getSentFrameCount() >= count;
+                }
+
+                return sent;
+            }
+        });
+    }
+
+    /**
+     * Reads a number of frames from a socket on a thread of its own.
+     */
+    private static final class FrameReader extends Thread {
+        private final Socket socket;
+        private final byte[] frames;
+        private volatile Exception failure;
+
+        FrameReader(Socket socket, int frameCount) {
+            this.socket = socket;
+            frames = new byte[frameCount * BridgeFrame.SIZE];
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                new DataInputStream(socket.getInputStream()).readFully(frames);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        ByteBuffer await() throws Exception {
+            join(TIMEOUT_MILLIS);
+            if (isAlive()) {
+                fail("Timed out reading frames");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            return ByteBuffer.wrap(frames);
+        }
+    }
+}
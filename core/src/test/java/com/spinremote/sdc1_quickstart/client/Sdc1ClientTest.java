@@ -0,0 +1,188 @@
+package com.spinremote.sdc1_quickstart.client;
+
+import com.spinremote.sdc1_quickstart.simulation.Await;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link Sdc1Client}, against a {@link SimulatedGattTransport}.
+ */
+public class Sdc1ClientTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private final SimulatedGattTransport transport = new SimulatedGattTransport(42);
+    private final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:01", -50);
+    private final RecordingListener listener = new RecordingListener();
+    private final Sdc1Client client = new Sdc1Client(transport, peer.getAddress(), listener);
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        transport.shutdown();
+    }
+
+    @Test
+    public void connectAndSetUp_reachesReady() throws Exception {
+        client.connectAndSetUp(false).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertTrue(client.isConnected());
+        assertTrue(peer.isNotificationsEnabled());
+        assertTrue(peer.isActionNotificationForced());
+
+        peer.performAction(14);
+        awaitActions(1);
+        assertEquals(14, (int) listener.getActions().get(0));
+
+        // The LED color is set after forcing the action notification, before later operations
+        client.cancelLedOverride().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(3, peer.getCommandCount());
+        assertFalse(peer.isLedOverridden());
+        assertEquals(0, client.getTimeoutCount());
+        assertEquals(0, client.getLedColorFailureCount());
+    }
+
+    @Test
+    public void lostCallback_timesOutAndRecovers() throws Exception {
+        client.setTimeouts(1000, 100);
+        client.connect(false).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        transport.setLostCallbackRate(1);
+        final long startNanos = System.nanoTime();
+        final Sdc1Future<Void> discover = client.discover();
+        final Sdc1Future<Void> queued = client.enableActions();
+        try {
+            discover.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Not timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(2));
+
+        // The stuck link is closed, failing the operations queued behind it
+        try {
+            queued.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Not failed");
+        } catch (ExecutionException e) {
+            assertEquals(Sdc1ClientException.REASON_DISCONNECTED, ((Sdc1ClientException) e.getCause()).getReason());
+        }
+        assertFalse(client.isConnected());
+        assertEquals(1, client.getRecoveryCount());
+        // The listener is notified once the operations have failed
+        awaitDisconnected(1);
+
+        transport.setLostCallbackRate(0);
+        client.connectAndSetUp(false).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(peer.isActionNotificationForced());
+    }
+
+    @Test
+    public void cancelledOperation_isNotSent() throws Exception {
+        client.connect(false).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.discover().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final Sdc1Future<Void> first = client.setLedColor(0x00, 0xFF, 0x00);
+        final Sdc1Future<Void> second = client.setLedColor(0x00, 0x00, 0xFF);
+        assertTrue(second.cancel(false));
+        first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.forceActionNotification(true).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(0x00FF00, peer.getLedColor());
+        try {
+            second.get();
+            fail("Not cancelled");
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void then_propagatesFailureAndCancellation() throws Exception {
+        // Not connected, so the chain fails at the first step and the rest is skipped
+        final boolean[] continued = {false};
+        final Sdc1Future<Void> chain = client.discover().then(new Sdc1Future.Continuation<Void, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Void value) {
+                continued[0] = true;
+
+                return Sdc1Future.completed(null);
+            }
+        });
+        assertTrue(chain.isDone());
+        assertFalse(continued[0]);
+        assertTrue(chain.getFailure() instanceof Sdc1ClientException);
+
+        // Cancelling the chain cancels the step in progress
+        final Sdc1Future<Void> step = new Sdc1Future<>();
+        final Sdc1Future<Void> cancelled = Sdc1Future.completed(1).then(new Sdc1Future.Continuation<Integer, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Integer value) {
+                return step;
+            }
+        });
+        assertTrue(cancelled.cancel(false));
+        assertTrue(step.isCancelled());
+
+        // A continuation returning no step fails the chain
+        final Sdc1Future<Void> broken = Sdc1Future.completed(1).then(new Sdc1Future.Continuation<Integer, Void>() {
+            @Override
+            public Sdc1Future<Void> then(Integer value) {
+                return null;
+            }
+        });
+        assertTrue(broken.isDone());
+        assertTrue(broken.getFailure() instanceof NullPointerException);
+    }
+
+    private void awaitDisconnected(final int count) throws Exception {
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return listener.getDisconnectedCount() >= count;
+            }
+        });
+        assertEquals(count, listener.getDisconnectedCount());
+    }
+
+    private void awaitActions(final int count) throws Exception {
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return listener.getActions().size() >= count;
+            }
+        });
+    }
+
+    private static final class RecordingListener implements Sdc1Client.Listener {
+        private final ArrayList<Integer> actions = new ArrayList<>();
+        private int disconnectedCount;
+
+        @Override
+        public synchronized void onAction(Sdc1Client client, int action, long timestampNanos) {
+            actions.add(action);
+        }
+
+        @Override
+        public synchronized void onDisconnected(Sdc1Client client, Exception cause) {
+            disconnectedCount++;
+        }
+
+        synchronized ArrayList<Integer> getActions() {
+            return new ArrayList<>(actions);
+        }
+
+        synchronized int getDisconnectedCount() {
+            return disconnectedCount;
+        }
+    }
+}
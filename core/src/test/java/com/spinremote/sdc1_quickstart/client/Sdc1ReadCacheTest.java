@@ -0,0 +1,111 @@
+package com.spinremote.sdc1_quickstart.client;
+
+import com.spinremote.sdc1_quickstart.simulation.Await;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link Sdc1ReadCache}, against a {@link SimulatedGattTransport}.
+ */
+public class Sdc1ReadCacheTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private final SimulatedGattTransport transport = new SimulatedGattTransport(42);
+    private final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:01", -50);
+    private final Sdc1Client client = new Sdc1Client(transport, peer.getAddress(), new Sdc1Client.Listener() {
+        @Override
+        public void onAction(Sdc1Client client, int action, long timestampNanos) {
+        }
+
+        @Override
+        public void onDisconnected(Sdc1Client client, Exception cause) {
+        }
+    });
+    private final Sdc1ReadCache cache = new Sdc1ReadCache(client);
+
+    @Before
+    public void setUp() throws Exception {
+        client.setNotificationListener(cache);
+        client.connect(false).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.discover().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        transport.shutdown();
+    }
+
+    @Test
+    public void concurrentGets_shareOneRead() throws Exception {
+        final Sdc1Future<String> first = cache.get(Sdc1ReadCache.FIRMWARE_REVISION);
+        final Sdc1Future<String> second = cache.get(Sdc1ReadCache.FIRMWARE_REVISION);
+        final Sdc1Future<String> third = cache.get(Sdc1ReadCache.FIRMWARE_REVISION);
+        // Cancelling one get does not cancel the read the others wait for
+        third.cancel(false);
+
+        assertEquals(SimulatedSdc1Peer.FIRMWARE_REVISION, first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(SimulatedSdc1Peer.FIRMWARE_REVISION, second.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, peer.getReadCount());
+        assertEquals(2, cache.getSharedCount());
+
+        // Never changes while connected, so never read again
+        final Sdc1Future<String> cached = cache.get(Sdc1ReadCache.FIRMWARE_REVISION);
+        assertTrue(cached.isDone());
+        assertEquals(SimulatedSdc1Peer.FIRMWARE_REVISION, cached.get());
+        assertEquals(1, cache.getHitCount());
+
+        assertEquals("F00000000001", cache.get(Sdc1ReadCache.SERIAL_NUMBER).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(2, cache.getReadCount());
+    }
+
+    @Test
+    public void notifications_replaceTheCachedValue() throws Exception {
+        cache.subscribe(Sdc1ReadCache.BATTERY_LEVEL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(Integer.valueOf(100), cache.get(Sdc1ReadCache.BATTERY_LEVEL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        peer.setBatteryLevel(42);
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return cache.getNotifiedCount() > 0;
+            }
+        });
+        assertEquals(Integer.valueOf(42), cache.get(Sdc1ReadCache.BATTERY_LEVEL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, peer.getReadCount());
+
+        // Expired values are read again
+        final Sdc1ReadCache.Field<Integer> expiring = new Sdc1ReadCache.Field<>("battery_level",
+                Sdc1ReadCache.BATTERY_LEVEL.getCharacteristic(), 0, Sdc1ReadCache.UINT8
+        );
+        final Sdc1ReadCache uncached = new Sdc1ReadCache(client);
+        uncached.get(expiring).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        uncached.get(expiring).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(3, peer.getReadCount());
+    }
+
+    @Test
+    public void unknownCharacteristic_fails() throws Exception {
+        final Sdc1ReadCache.Field<String> missing = new Sdc1ReadCache.Field<>("missing",
+                UUID.fromString("00002a00-0000-1000-8000-00805f9b34fb"), Long.MAX_VALUE, Sdc1ReadCache.UTF8_STRING
+        );
+
+        final Sdc1Future<String> future = cache.get(missing);
+        try {
+            future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Not failed");
+        } catch (ExecutionException e) {
+            assertEquals(Sdc1ClientException.REASON_NOT_STARTED, ((Sdc1ClientException) e.getCause()).getReason());
+        }
+    }
+}
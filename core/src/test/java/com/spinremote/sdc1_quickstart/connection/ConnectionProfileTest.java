@@ -0,0 +1,154 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ConnectionProfileSwitcher} and {@link ConnectionProfileStats}.
+ */
+public class ConnectionProfileTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private SimulatedGattTransport transport;
+    private SimulatedSdc1Peer peer;
+    private ConnectionProfileStats stats;
+    private Sdc1Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        transport = new SimulatedGattTransport(15);
+        peer = transport.addPeer("F0:00:00:00:00:01", -40);
+        transport.setLatency(500, 0);
+        transport.setConnectionIntervals(15000, 45000, 112500);
+
+        stats = new ConnectionProfileStats();
+        connection = new Sdc1Connection(transport, peer.getAddress(), new Sdc1LatencyRecorder(), stats,
+                new Sdc1Connection.Callback() {
+                    @Override
+                    public void onStateChanged(Sdc1Connection connection, int state) {
+                    }
+
+                    @Override
+                    public void onAction(Sdc1Connection connection, int action, long timestampNanos) {
+                    }
+                }
+        );
+        connection.setProfileTimeouts(1000, 2000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+        transport.shutdown();
+    }
+
+    @Test
+    public void profile_followsActivityAndIntervalsAreEstimated() throws Exception {
+        assertEquals(ConnectionProfile.BALANCED, connection.getProfile());
+        connection.connect(false);
+        await(ConnectionProfile.INTERACTIVE);
+        awaitReady();
+
+        // Writes only count once the switch has settled
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(ConnectionProfileSwitcher.CONNECTION_UPDATE_NANOS));
+        writeLedColors(400);
+        assertEquals(ConnectionProfile.INTERACTIVE, connection.getProfile());
+
+        await(ConnectionProfile.BALANCED);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(ConnectionProfileSwitcher.CONNECTION_UPDATE_NANOS));
+        writeLedColors(400);
+
+        await(ConnectionProfile.IDLE);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(ConnectionProfileSwitcher.CONNECTION_UPDATE_NANOS));
+        writeLedColors(800);
+
+        // An action makes the connection interactive again
+        peer.performAction(Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP);
+        await(ConnectionProfile.INTERACTIVE);
+        assertEquals(1, stats.getActionCount(ConnectionProfile.IDLE));
+
+        // A write takes one to two connection intervals, depending on when it is started relative
+        // to the connection events, so the estimates are ordered like the intervals
+        final long interactive = stats.getEstimatedConnectionIntervalNanos(ConnectionProfile.INTERACTIVE);
+        final long balanced = stats.getEstimatedConnectionIntervalNanos(ConnectionProfile.BALANCED);
+        final long idle = stats.getEstimatedConnectionIntervalNanos(ConnectionProfile.IDLE);
+        assertEstimate(15 * MS, interactive);
+        assertEstimate(45 * MS, balanced);
+        assertEstimate(112500000, idle);
+        assertTrue(interactive < balanced && balanced < idle);
+        assertEquals(stats.getEstimatedConnectionIntervalNanos(ConnectionProfile.INTERACTIVE) / 2,
+                stats.getEstimatedNotificationLatencyNanos(ConnectionProfile.INTERACTIVE));
+
+        assertEquals(2, stats.getSwitchCount(ConnectionProfile.INTERACTIVE));
+        assertEquals(1, stats.getSwitchCount(ConnectionProfile.BALANCED));
+        assertEquals(1, stats.getSwitchCount(ConnectionProfile.IDLE));
+        assertTrue(stats.getTimeNanos(ConnectionProfile.INTERACTIVE) >= 1000 * MS);
+        assertTrue(stats.getTimeNanos(ConnectionProfile.BALANCED) >= 1000 * MS);
+
+        final StringWriter writer = new StringWriter();
+        stats.dump(writer);
+        assertEquals(4, writer.toString().split("\n").length);
+    }
+
+    @Test
+    public void fixedProfile_staysUntilReleased() throws Exception {
+        connection.setFixedProfile(ConnectionProfile.IDLE);
+        connection.connect(false);
+        awaitReady();
+        assertEquals(ConnectionProfile.IDLE, connection.getProfile());
+
+        // Actions don't switch a fixed profile
+        peer.performAction(Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP);
+        Thread.sleep(300);
+        assertEquals(ConnectionProfile.IDLE, connection.getProfile());
+        assertEquals(0, stats.getSwitchCount(ConnectionProfile.INTERACTIVE));
+
+        connection.setFixedProfile(null);
+        peer.performAction(Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP);
+        await(ConnectionProfile.INTERACTIVE);
+    }
+
+    private void writeLedColors(long durationMillis) throws Exception {
+        final long end = System.nanoTime() + durationMillis * MS;
+        for (int color = 0; System.nanoTime() < end; color++) {
+            assertTrue(connection.setLedColor(color & 0xFF, 0, 0));
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitReady() throws Exception {
+        final long deadline = System.nanoTime() + 5000 * MS;
+        while (connection.getState() != Sdc1Connection.STATE_READY) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void await(ConnectionProfile profile) throws Exception {
+        final long deadline = System.nanoTime() + 5000 * MS;
+        while (connection.getProfile() != profile) {
+            assertTrue("Still " + connection.getProfile(), System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Asserts an estimate is within one and two connection intervals, with the resolution of the
+     * histogram and some scheduling delay on top.
+     */
+    private static void assertEstimate(long intervalNanos, long estimatedNanos) {
+        assertTrue(estimatedNanos + " not within 1 - 2 intervals of " + intervalNanos,
+                estimatedNanos >= intervalNanos * 15 / 16 && estimatedNanos <= 2 * intervalNanos * 17 / 16 + 5 * MS);
+    }
+}
@@ -0,0 +1,42 @@
+package com.spinremote.sdc1_quickstart.connection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ReconnectBackoff}.
+ */
+public class ReconnectBackoffTest {
+    @Test
+    public void delay_doublesWithinJitterBounds() throws Exception {
+        final ReconnectBackoff backoff = new ReconnectBackoff(100, 10000, new Random(42));
+
+        for (int i = 0; i < 1000; i++) {
+            assertInRange(backoff.getDelayMillis(1), 50, 100);
+            assertInRange(backoff.getDelayMillis(2), 100, 200);
+            assertInRange(backoff.getDelayMillis(4), 400, 800);
+        }
+    }
+
+    @Test
+    public void delay_isCappedAtMaximum() throws Exception {
+        final ReconnectBackoff backoff = new ReconnectBackoff(100, 1000, new Random(42));
+
+        for (int i = 0; i < 1000; i++) {
+            assertInRange(backoff.getDelayMillis(10), 500, 1000);
+            assertInRange(backoff.getDelayMillis(Integer.MAX_VALUE), 500, 1000);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumBelowBase_isRejected() throws Exception {
+        new ReconnectBackoff(1000, 100, new Random());
+    }
+
+    private static void assertInRange(long value, long min, long max) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
@@ -0,0 +1,136 @@
+package com.spinremote.sdc1_quickstart.dispatch;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+import com.spinremote.sdc1_quickstart.event.Sdc1DeviceTable;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ActionMapping} and {@link ActionDispatcher}.
+ */
+public class ActionDispatcherTest {
+    private static final String REMOTE_A = "F0:00:00:00:00:01";
+    private static final String REMOTE_B = "F0:00:00:00:00:02";
+
+    @Test
+    public void mostSpecificMapping_wins() throws Exception {
+        final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+        final int a = deviceTable.indexOf(REMOTE_A);
+        final int b = deviceTable.indexOf(REMOTE_B);
+        final CountingHandler any = new CountingHandler();
+        final CountingHandler profile = new CountingHandler();
+        final CountingHandler device = new CountingHandler();
+        final CountingHandler profileAndDevice = new CountingHandler();
+
+        // Added from most to least specific, the order does not matter
+        final ActionMapping mapping = new ActionMapping()
+                .map("media", REMOTE_A, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, profileAndDevice)
+                .mapForDevice(REMOTE_A, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, device)
+                .mapForProfile("media", Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, profile)
+                .map(Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, any)
+                .map(Sdc1Codec.ACTION_TOUCHPAD_SWIPE_DOWN, any);
+
+        ActionDispatchTable table = mapping.compile(deviceTable, null);
+        assertSame(device, table.getHandler(a, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP));
+        assertSame(any, table.getHandler(b, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP));
+        assertSame(any, table.getHandler(a, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_DOWN));
+
+        table = mapping.compile(deviceTable, "media");
+        assertSame(profileAndDevice, table.getHandler(a, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP));
+        assertSame(profile, table.getHandler(b, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP));
+        // A remote seen after compiling gets the mappings of any remote
+        assertSame(profile, table.getHandler(deviceTable.indexOf("F0:00:00:00:00:03"), Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP));
+        assertNull(table.getHandler(a, Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER));
+    }
+
+    @Test
+    public void unmappedAndUnknownActions_areCounted() throws Exception {
+        final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+        final ActionDispatcher dispatcher = new ActionDispatcher(deviceTable);
+        final CountingHandler handler = new CountingHandler();
+        dispatcher.setMapping(new ActionMapping().map(Sdc1Codec.ACTION_SPIN_WAKE_UP, handler));
+
+        final int device = deviceTable.indexOf(REMOTE_A);
+        dispatcher.onActionEvent(device, Sdc1Codec.ACTION_SPIN_WAKE_UP, 1);
+        dispatcher.onActionEvent(device, Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER, 2);
+        dispatcher.onActionEvent(device, 22, 3);
+        dispatcher.onActionEvent(device, 255, 4);
+        dispatcher.onActionEvent(device, 255, 5);
+
+        assertEquals(1, handler.count.get());
+        assertEquals(1, dispatcher.getUnmappedCount(Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER));
+        assertEquals(1, dispatcher.getUnmappedCount(22));
+        assertEquals(2, dispatcher.getUnmappedCount(255));
+        assertEquals(3, dispatcher.getUnknownCount());
+    }
+
+    @Test
+    public void failingHandler_isCounted() throws Exception {
+        final ActionDispatcher dispatcher = new ActionDispatcher(new Sdc1DeviceTable());
+        dispatcher.setMapping(new ActionMapping().map(0, new ActionEventHandler() {
+            @Override
+            public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+                throw new IllegalStateException("test");
+            }
+        }));
+
+        dispatcher.onActionEvent(0, 0, 1);
+        dispatcher.onActionEvent(0, 0, 2);
+        assertEquals(2, dispatcher.getFailedCount());
+    }
+
+    @Test
+    public void swappingWhileDispatching_handlesEveryActionOnce() throws Exception {
+        final Sdc1DeviceTable deviceTable = new Sdc1DeviceTable();
+        final ActionDispatcher dispatcher = new ActionDispatcher(deviceTable);
+        final CountingHandler first = new CountingHandler();
+        final CountingHandler second = new CountingHandler();
+        final ActionMapping firstMapping = new ActionMapping();
+        final ActionMapping secondMapping = new ActionMapping();
+        for (int action = 0; action < Sdc1Codec.ACTION_COUNT; action++) {
+            firstMapping.map(action, first);
+            secondMapping.map(action, second);
+        }
+        dispatcher.setMapping(firstMapping);
+
+        final int events = 2000000;
+        final Thread dispatching = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < events; i++) {
+                    dispatcher.onActionEvent(0, i & 0xFF, i);
+                }
+            }
+        });
+        dispatching.start();
+
+        int swaps = 0;
+        while (dispatching.isAlive()) {
+            dispatcher.setMapping(swaps++ % 2 == 0 ? secondMapping : firstMapping);
+        }
+        dispatching.join();
+
+        assertTrue(swaps > 1);
+        assertEquals(events, first.count.get() + second.count.get());
+        assertEquals(0, dispatcher.getUnmappedCount(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void actionOutOfRange_isRejected() throws Exception {
+        new ActionMapping().map(Sdc1Codec.ACTION_COUNT, new CountingHandler());
+    }
+
+    private static final class CountingHandler implements ActionEventHandler {
+        final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            count.incrementAndGet();
+        }
+    }
+}
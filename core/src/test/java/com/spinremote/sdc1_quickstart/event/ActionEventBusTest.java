@@ -0,0 +1,144 @@
+package com.spinremote.sdc1_quickstart.event;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ActionEventBus}.
+ */
+public class ActionEventBusTest {
+    /**
+     * Records the events it receives
+     */
+    private static final class RecordingHandler implements ActionEventHandler {
+        final int[] deviceIndexes = new int[64];
+        final int[] actions = new int[64];
+        final long[] timestamps = new long[64];
+        int count;
+
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            deviceIndexes[count] = deviceIndex;
+            actions[count] = action;
+            timestamps[count] = timestampNanos;
+            count++;
+        }
+    }
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() throws Exception {
+        assertEquals(1, new ActionEventBus(1).getCapacity());
+        assertEquals(8, new ActionEventBus(5).getCapacity());
+        assertEquals(16, new ActionEventBus(16).getCapacity());
+    }
+
+    @Test
+    public void poll_deliversToEverySubscriberInOrder() throws Exception {
+        final ActionEventBus bus = new ActionEventBus(8);
+        final ActionEventBus.Subscriber first = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST);
+        final ActionEventBus.Subscriber second = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST);
+
+        bus.publish(0, 5, 100);
+        bus.publish(3, 255, 200);
+
+        final RecordingHandler handler = new RecordingHandler();
+        assertEquals(2, first.poll(handler, 10));
+        assertEquals(0, first.poll(handler, 10));
+        assertEquals(0, handler.deviceIndexes[0]);
+        assertEquals(5, handler.actions[0]);
+        assertEquals(100, handler.timestamps[0]);
+        assertEquals(3, handler.deviceIndexes[1]);
+        assertEquals(255, handler.actions[1]);
+        assertEquals(200, handler.timestamps[1]);
+
+        // The second subscriber still has both events
+        assertEquals(2, second.getLag());
+        assertEquals(1, second.poll(new RecordingHandler(), 1));
+        assertEquals(1, second.getLag());
+    }
+
+    @Test
+    public void slowSubscriber_dropsOldestAndCountsThem() throws Exception {
+        final ActionEventBus bus = new ActionEventBus(4);
+        final ActionEventBus.Subscriber subscriber = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 10; i++) {
+            bus.publish(0, i, i);
+        }
+        assertEquals(10, subscriber.getLag());
+
+        final RecordingHandler handler = new RecordingHandler();
+        assertEquals(4, subscriber.poll(handler, 10));
+        assertEquals(6, subscriber.getDroppedCount());
+        assertEquals(0, subscriber.getLag());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, handler.actions[i]);
+        }
+    }
+
+    @Test
+    public void blockingSubscriber_delaysPublisherAtMostTheTimeout() throws Exception {
+        final ActionEventBus bus = new ActionEventBus(2, TimeUnit.MILLISECONDS.toNanos(1));
+        final ActionEventBus.Subscriber subscriber = bus.subscribe(ActionEventBus.OverflowPolicy.BLOCK);
+
+        bus.publish(0, 1, 1);
+        bus.publish(0, 2, 2);
+        assertEquals(0, bus.getBlockTimeoutCount());
+
+        // The subscriber never reads, so the publisher gives up waiting and overwrites
+        bus.publish(0, 3, 3);
+        assertEquals(1, bus.getBlockTimeoutCount());
+
+        final RecordingHandler handler = new RecordingHandler();
+        assertEquals(2, subscriber.poll(handler, 10));
+        assertEquals(1, subscriber.getDroppedCount());
+        assertEquals(2, handler.actions[0]);
+        assertEquals(3, handler.actions[1]);
+
+        // Once closed, the subscriber no longer holds up the publisher
+        subscriber.close();
+        for (int i = 0; i < 4; i++) {
+            bus.publish(0, i, i);
+        }
+        assertEquals(1, bus.getBlockTimeoutCount());
+    }
+
+    @Test
+    public void prepareToBlock_wakesUpOnTheNextPublishOnly() throws Exception {
+        final ActionEventBus bus = new ActionEventBus(8);
+        final int[] wakeUpCount = new int[1];
+        final ActionEventBus.Subscriber subscriber = bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        wakeUpCount[0]++;
+                    }
+                }
+        );
+
+        // Not about to block, so publishing does not wake up the subscriber
+        bus.publish(0, 1, 1);
+        assertEquals(0, wakeUpCount[0]);
+
+        // An event is waiting, so the subscriber must poll instead of blocking
+        assertFalse(subscriber.prepareToBlock());
+        bus.publish(0, 2, 2);
+        assertEquals(0, wakeUpCount[0]);
+
+        assertEquals(2, subscriber.poll(new RecordingHandler(), 10));
+        assertTrue(subscriber.prepareToBlock());
+        bus.publish(0, 3, 3);
+        bus.publish(0, 4, 4);
+        assertEquals(1, wakeUpCount[0]);
+
+        try {
+            bus.subscribe(ActionEventBus.OverflowPolicy.DROP_OLDEST).prepareToBlock();
+            fail("Not thrown");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
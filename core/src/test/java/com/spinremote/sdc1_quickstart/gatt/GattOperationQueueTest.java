@@ -0,0 +1,195 @@
+package com.spinremote.sdc1_quickstart.gatt;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Uuids;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link GattOperationQueue}.
+ */
+public class GattOperationQueueTest {
+    private static final UUID COMMAND = Sdc1Uuids.COMMAND_CHARACTERISTIC_UUID;
+
+    @Test
+    public void operations_areStartedOneAtATime() throws Exception {
+        final RecordingLink link = new RecordingLink();
+        final GattOperationQueue queue = new GattOperationQueue(link, null);
+
+        queue.writeDescriptor(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID, Sdc1Uuids.CLIENT_CHARACTERISTIC_CONFIG_UUID,
+                new byte[]{0x01, 0x00});
+        queue.writeCommand(COMMAND, forceActionNotification(true));
+        assertEquals(1, link.started.size());
+        assertEquals(1, queue.getPendingCount());
+
+        queue.onOperationCompleted();
+        assertEquals(2, link.started.size());
+        assertEquals(Sdc1Codec.COMMAND_FORCE_ACTION_NOTIFICATION, link.started.get(1)[0]);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void pendingLedCommands_areCoalesced() throws Exception {
+        final RecordingLink link = new RecordingLink();
+        final GattOperationQueue queue = new GattOperationQueue(link, null);
+
+        // The first command is started, the next ones wait and only the newest color is kept
+        final byte[] frame = new byte[Sdc1Codec.SET_LED_COLOR_LENGTH];
+        queue.writeCommand(COMMAND, setLedColor(frame, 1));
+        queue.writeCommand(COMMAND, setLedColor(frame, 2));
+        queue.writeCommand(COMMAND, cancelLedOverride());
+        queue.writeCommand(COMMAND, setLedColor(frame, 3));
+        assertEquals(2, queue.getPendingCount());
+        assertEquals(1, queue.getCoalescedCount());
+
+        queue.onOperationCompleted();
+        queue.onOperationCompleted();
+        queue.onOperationCompleted();
+        assertEquals(3, link.started.size());
+        assertEquals(1, link.started.get(0)[1]);
+        assertEquals(Sdc1Codec.COMMAND_CANCEL_LED_OVERRIDE, link.started.get(1)[0]);
+        assertEquals(3, link.started.get(2)[1]);
+    }
+
+    @Test
+    public void refusedOperation_isReportedAndSkipped() throws Exception {
+        final RecordingLink link = new RecordingLink();
+        link.refuse = 1;
+        final ArrayList<UUID> failed = new ArrayList<>();
+        final GattOperationQueue[] queue = new GattOperationQueue[1];
+        queue[0] = new GattOperationQueue(link, new GattOperationQueue.Callback() {
+            @Override
+            public void onOperationFailed(GattLink link, int type, UUID characteristic) {
+                // Never called while holding the lock of the queue, so it may e.g. close the
+                // connection from here
+                assertFalse(Thread.holdsLock(queue[0]));
+                assertEquals(GattOperationQueue.TYPE_READ_CHARACTERISTIC, type);
+                failed.add(characteristic);
+            }
+        });
+
+        queue[0].readCharacteristic(Sdc1Uuids.ACTION_CHARACTERISTIC_UUID);
+        queue[0].writeCommand(COMMAND, cancelLedOverride());
+
+        assertEquals(1, failed.size());
+        assertEquals(1, link.started.size());
+        assertEquals(Sdc1Codec.COMMAND_CANCEL_LED_OVERRIDE, link.started.get(0)[0]);
+    }
+
+    @Test
+    public void closedQueue_startsNothing() throws Exception {
+        final RecordingLink link = new RecordingLink();
+        final GattOperationQueue queue = new GattOperationQueue(link, null);
+
+        queue.writeCommand(COMMAND, cancelLedOverride());
+        queue.writeCommand(COMMAND, forceActionNotification(false));
+        queue.close();
+        queue.writeCommand(COMMAND, forceActionNotification(true));
+        queue.onOperationCompleted();
+
+        assertEquals(1, link.started.size());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    private static byte[] cancelLedOverride() {
+        final byte[] command = new byte[Sdc1Codec.CANCEL_LED_OVERRIDE_LENGTH];
+        Sdc1Codec.encodeCancelLedOverride(command, 0);
+
+        return command;
+    }
+
+    private static byte[] forceActionNotification(boolean force) {
+        final byte[] command = new byte[Sdc1Codec.FORCE_ACTION_NOTIFICATION_LENGTH];
+        Sdc1Codec.encodeForceActionNotification(command, 0, force);
+
+        return command;
+    }
+
+    /**
+     * Encodes into the same frame every time, like a caller reusing its frame
+     */
+    private static byte[] setLedColor(byte[] frame, int red) {
+        Sdc1Codec.encodeSetLedColor(frame, 0, red, 0, 0);
+
+        return frame;
+    }
+
+    /**
+     * Link recording the values of the operations started, refusing the first few
+     */
+    private static final class RecordingLink implements GattLink {
+        final ArrayList<byte[]> started = new ArrayList<>();
+        int refuse;
+
+        private boolean start(byte[] value) {
+            if (refuse > 0) {
+                refuse--;
+
+                return false;
+            }
+            started.add(value == null ? null : value.clone());
+
+            return true;
+        }
+
+        @Override
+        public String getAddress() {
+            return "00:00:00:00:00:01";
+        }
+
+        @Override
+        public boolean discoverServices() {
+            return true;
+        }
+
+        @Override
+        public boolean hasService(UUID service) {
+            return true;
+        }
+
+        @Override
+        public boolean hasCharacteristic(UUID characteristic) {
+            return true;
+        }
+
+        @Override
+        public boolean hasDescriptor(UUID characteristic, UUID descriptor) {
+            return true;
+        }
+
+        @Override
+        public boolean writeCharacteristic(UUID characteristic, byte[] value) {
+            return start(value);
+        }
+
+        @Override
+        public boolean readCharacteristic(UUID characteristic) {
+            return start(null);
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(UUID characteristic, boolean enable) {
+            return true;
+        }
+
+        @Override
+        public boolean writeDescriptor(UUID characteristic, UUID descriptor, byte[] value) {
+            return start(value);
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int connectionPriority) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.spinremote.sdc1_quickstart.gesture;
+
+import com.spinremote.sdc1_quickstart.protocol.Sdc1Codec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link GestureStreamProcessor}.
+ */
+public class GestureStreamProcessorTest {
+    private static final long MS = 1000000;
+
+    /**
+     * Records the gestures as readable strings
+     */
+    private final List<String> gestures = new ArrayList<>();
+    private final List<Float> velocities = new ArrayList<>();
+
+    private final GestureStreamProcessor.Listener listener = new GestureStreamProcessor.Listener() {
+        @Override
+        public void onScrollVelocity(int deviceIndex, float ticksPerSecond, long timestampNanos) {
+            velocities.add(ticksPerSecond);
+        }
+
+        @Override
+        public void onRotate(int deviceIndex, int action, int repetitions, long timestampNanos) {
+            gestures.add("rotate " + deviceIndex + " " + action + " x" + repetitions);
+        }
+
+        @Override
+        public void onPress(int deviceIndex, int direction, int repetitions, long timestampNanos) {
+            gestures.add("press " + deviceIndex + " " + direction + " x" + repetitions);
+        }
+
+        @Override
+        public void onLongPress(int deviceIndex, int direction, long timestampNanos) {
+            gestures.add("long " + deviceIndex + " " + direction);
+        }
+
+        @Override
+        public void onAction(int deviceIndex, int action, long timestampNanos) {
+            gestures.add("action " + deviceIndex + " " + action);
+        }
+    };
+
+    private GestureStreamProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+        processor = new GestureStreamProcessor(listener, 2, 200 * MS, 500 * MS, 1000 * MS);
+    }
+
+    @Test
+    public void repeatedPress_isHeldBackUntilBudgetPassed() throws Exception {
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER, 0);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER, 150 * MS);
+        processor.advanceTo(300 * MS);
+        assertTrue(gestures.isEmpty());
+
+        processor.advanceTo(351 * MS);
+        assertEquals("press 0 " + GestureStreamProcessor.DIRECTION_CENTER + " x2", gestures.get(0));
+
+        // Too late to be a repetition
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_NORTH, 1000 * MS);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_NORTH, 1300 * MS);
+        processor.advanceTo(2000 * MS);
+        assertEquals("press 0 " + GestureStreamProcessor.DIRECTION_NORTH + " x1", gestures.get(1));
+        assertEquals("press 0 " + GestureStreamProcessor.DIRECTION_NORTH + " x1", gestures.get(2));
+        assertEquals(3, gestures.size());
+    }
+
+    @Test
+    public void otherAction_flushesPressInOrder() throws Exception {
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_EAST, 0);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_LONG_PRESS_WEST, 10 * MS);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, 20 * MS);
+
+        assertEquals("press 0 " + GestureStreamProcessor.DIRECTION_EAST + " x1", gestures.get(0));
+        assertEquals("long 0 " + GestureStreamProcessor.DIRECTION_WEST, gestures.get(1));
+        assertEquals("action 0 " + Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, gestures.get(2));
+    }
+
+    @Test
+    public void zeroLatencyBudget_reportsPressesAtOnce() throws Exception {
+        processor = new GestureStreamProcessor(listener, 1, 0, 500 * MS, 1000 * MS);
+
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_SOUTH, 0);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_PRESS_SOUTH, 0);
+
+        assertEquals(2, gestures.size());
+        assertEquals("press 0 " + GestureStreamProcessor.DIRECTION_SOUTH + " x1", gestures.get(1));
+    }
+
+    @Test
+    public void rotate_countsRepetitionsPerDevice() throws Exception {
+        processor.onActionEvent(0, Sdc1Codec.ACTION_ROTATE_SIDEWAYS_CLOCKWISE, 0);
+        processor.onActionEvent(1, Sdc1Codec.ACTION_ROTATE_SIDEWAYS_CLOCKWISE, 100 * MS);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_ROTATE_SIDEWAYS_CLOCKWISE, 900 * MS);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_ROTATE_SIDEWAYS_CLOCKWISE, 3000 * MS);
+
+        final int action = Sdc1Codec.ACTION_ROTATE_SIDEWAYS_CLOCKWISE;
+        assertEquals("rotate 0 " + action + " x1", gestures.get(0));
+        assertEquals("rotate 1 " + action + " x1", gestures.get(1));
+        assertEquals("rotate 0 " + action + " x2", gestures.get(2));
+        assertEquals("rotate 0 " + action + " x1", gestures.get(3));
+    }
+
+    @Test
+    public void scroll_velocityFollowsTickRateAndStops() throws Exception {
+        // 10 ticks per second clockwise
+        for (int i = 0; i < 5; i++) {
+            processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_SCROLL_CLOCKWISE, i * 100 * MS);
+        }
+        assertEquals(10f, velocities.get(velocities.size() - 1), 0.01f);
+
+        // Reversing starts a new window
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_SCROLL_COUNTERCLOCKWISE, 450 * MS);
+        processor.onActionEvent(0, Sdc1Codec.ACTION_TOUCHPAD_SCROLL_COUNTERCLOCKWISE, 500 * MS);
+        assertEquals(-20f, velocities.get(velocities.size() - 1), 0.01f);
+
+        // Nothing in the window anymore
+        processor.advanceTo(1001 * MS);
+        assertEquals(0f, velocities.get(velocities.size() - 1), 0f);
+        final int count = velocities.size();
+        processor.advanceTo(2000 * MS);
+        assertEquals(count, velocities.size());
+    }
+
+    @Test
+    public void outOfRangeDevice_isIgnored() throws Exception {
+        processor.onActionEvent(2, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, 0);
+        processor.onActionEvent(-1, Sdc1Codec.ACTION_TOUCHPAD_SWIPE_UP, 0);
+
+        assertTrue(gestures.isEmpty());
+        assertEquals(2, processor.getIgnoredCount());
+    }
+}
@@ -0,0 +1,143 @@
+package com.spinremote.sdc1_quickstart.journal;
+
+import com.spinremote.sdc1_quickstart.event.ActionEventBus;
+import com.spinremote.sdc1_quickstart.event.ActionEventHandler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ActionJournal}, {@link ActionJournalReader} and
+ * {@link ActionJournalRecorder}.
+ */
+public class ActionJournalTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void records_areReadBackInOrderAcrossSegments() throws Exception {
+        final File directory = folder.newFolder();
+        final ActionJournal journal = new ActionJournal(directory, 10, Long.MAX_VALUE);
+        for (int i = 0; i < 25; i++) {
+            journal.append(i % 3, i, i * MS);
+        }
+        journal.close();
+
+        assertEquals(3, ActionJournal.listSegments(directory).length);
+        final Recorded recorded = readAll(directory);
+        assertEquals(25, recorded.actions.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, (int) recorded.actions.get(i));
+            assertEquals(i % 3, (int) recorded.deviceIndexes.get(i));
+            assertEquals(i * MS, (long) recorded.timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void oldestSegments_areDeletedBeyondRetention() throws Exception {
+        final File directory = folder.newFolder();
+        final ActionJournal journal = new ActionJournal(directory, 10, 2 * ActionJournal.segmentSize(10));
+        for (int i = 0; i < 50; i++) {
+            journal.append(0, i, i);
+        }
+        journal.close();
+
+        assertEquals(2, ActionJournal.listSegments(directory).length);
+        final Recorded recorded = readAll(directory);
+        assertEquals(20, recorded.actions.size());
+        assertEquals(30, (int) recorded.actions.get(0));
+    }
+
+    @Test
+    public void laterRuns_appendNewSegments() throws Exception {
+        final File directory = folder.newFolder();
+        ActionJournal journal = new ActionJournal(directory, 10, Long.MAX_VALUE);
+        journal.append(0, 1, 1);
+        journal.close();
+        journal = new ActionJournal(directory, 10, Long.MAX_VALUE);
+        journal.append(0, 2, 2);
+        journal.append(0, 0xFF, 3);
+
+        // The reader skips the rest of the segment of the first run, and reads the segment that
+        // is still being written
+        final Recorded recorded = readAll(directory);
+        assertEquals(3, recorded.actions.size());
+        assertEquals(1, (int) recorded.actions.get(0));
+        assertEquals(0xFF, (int) recorded.actions.get(2));
+        journal.close();
+    }
+
+    @Test
+    public void replay_isPacedBySpeed() throws Exception {
+        final File directory = folder.newFolder();
+        final ActionJournal journal = new ActionJournal(directory);
+        for (int i = 0; i < 5; i++) {
+            journal.append(0, i, 1000 * MS + i * 100 * MS);
+        }
+        journal.close();
+
+        // 400 ms of actions replayed 10 times faster, rebased to start at 7 ms
+        final Recorded recorded = new Recorded();
+        final ActionJournalReader reader = new ActionJournalReader(directory);
+        final long startNanos = System.nanoTime();
+        assertEquals(5, reader.replay(recorded, 10, 7 * MS));
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertTrue(elapsedNanos >= 40 * MS);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(7 * MS + i * 10 * MS, (long) recorded.timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void recorder_journalsTheBus() throws Exception {
+        final File directory = folder.newFolder();
+        final ActionEventBus bus = new ActionEventBus(64);
+        final ActionJournalRecorder recorder = new ActionJournalRecorder(bus, new ActionJournal(directory));
+        recorder.start();
+        for (int i = 0; i < 1000; i++) {
+            bus.publish(i & 1, i & 0xFF, i);
+            if ((i & 31) == 0) {
+                Thread.sleep(1);
+            }
+        }
+        recorder.stop();
+
+        final Recorded recorded = readAll(directory);
+        assertEquals(1000 - recorder.getDroppedCount(), recorded.actions.size());
+        assertEquals(recorded.actions.size(), recorder.getJournal().getAppendedCount());
+    }
+
+    private static Recorded readAll(File directory) throws Exception {
+        final Recorded recorded = new Recorded();
+        final ActionJournalReader reader = new ActionJournalReader(directory);
+        while (reader.read(recorded, 7) > 0) {
+            // Read in small batches, to also cover resuming
+        }
+        reader.close();
+
+        return recorded;
+    }
+
+    private static final class Recorded implements ActionEventHandler {
+        final ArrayList<Integer> deviceIndexes = new ArrayList<>();
+        final ArrayList<Integer> actions = new ArrayList<>();
+        final ArrayList<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void onActionEvent(int deviceIndex, int action, long timestampNanos) {
+            deviceIndexes.add(deviceIndex);
+            actions.add(action);
+            timestamps.add(timestampNanos);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.spinremote.sdc1_quickstart.latency;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link LatencyHistogram} and {@link Sdc1LatencyRecorder}.
+ */
+public class LatencyHistogramTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void empty_reportsZero() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentiles_areWithinRelativeError() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * MS);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000 * MS, histogram.getMaxNanos());
+        assertEquals(500.5 * MS, histogram.getMeanNanos(), 0.001 * MS);
+        assertWithin(500 * MS, histogram.getPercentileNanos(50));
+        assertWithin(900 * MS, histogram.getPercentileNanos(90));
+        assertWithin(990 * MS, histogram.getPercentileNanos(99));
+        assertEquals(1000 * MS, histogram.getPercentileNanos(100));
+        assertWithin(MS, histogram.getPercentileNanos(0));
+    }
+
+    @Test
+    public void smallAndHugeValues_areClampedNotLost() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3000);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(1));
+        assertEquals(3000, histogram.getPercentileNanos(60));
+        assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void recorder_dumpsEveryStep() throws Exception {
+        final Sdc1LatencyRecorder recorder = new Sdc1LatencyRecorder();
+        recorder.record(Sdc1LatencyRecorder.STEP_CONNECT, 1000 * MS, 1250 * MS);
+        recorder.recordFailure(Sdc1LatencyRecorder.STEP_CCCD_WRITE);
+
+        assertEquals(1, recorder.getHistogram(Sdc1LatencyRecorder.STEP_CONNECT).getCount());
+        assertEquals(1, recorder.getHistogram(Sdc1LatencyRecorder.STEP_CCCD_WRITE).getFailureCount());
+
+        final StringWriter writer = new StringWriter();
+        recorder.dump(writer);
+        final String[] lines = writer.toString().split("\n");
+        assertEquals(Sdc1LatencyRecorder.STEP_COUNT + 1, lines.length);
+        assertEquals("connect 1 0 250.000 250.000 250.000 250.000 250.000",
+                lines[1 + Sdc1LatencyRecorder.STEP_CONNECT]);
+        assertTrue(lines[1 + Sdc1LatencyRecorder.STEP_CCCD_WRITE].startsWith("cccd_write 0 1 "));
+
+        recorder.reset();
+        assertEquals(0, recorder.getHistogram(Sdc1LatencyRecorder.STEP_CONNECT).getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 1/16th of " + expected, Math.abs(actual - expected) <= expected / 16);
+    }
+}
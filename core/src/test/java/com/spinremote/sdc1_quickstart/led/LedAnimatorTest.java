@@ -0,0 +1,235 @@
+package com.spinremote.sdc1_quickstart.led;
+
+import com.spinremote.sdc1_quickstart.connection.Sdc1Connection;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+import com.spinremote.sdc1_quickstart.transport.GattLink;
+import com.spinremote.sdc1_quickstart.transport.GattTransport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link LedTimeline} and {@link LedAnimator}.
+ */
+public class LedAnimatorTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void timeline_fadesHoldsAndRepeats() throws Exception {
+        final LedTimeline timeline = new LedTimeline()
+                .fade(0x000000, 0xFF8000, 100 * MS)
+                .hold(0x00FF00, 100 * MS)
+                .repeat(2);
+
+        assertEquals(400 * MS, timeline.getDurationNanos());
+        assertEquals(0x000000, timeline.colorAt(0));
+        assertEquals(0x7F4000, timeline.colorAt(50 * MS));
+        assertEquals(0x00FF00, timeline.colorAt(150 * MS));
+        assertEquals(0x7F4000, timeline.colorAt(250 * MS));
+        assertEquals(0x00FF00, timeline.colorAt(400 * MS));
+    }
+
+    @Test
+    public void timeline_pulsesFromOff() throws Exception {
+        final LedTimeline timeline = new LedTimeline().pulse(0x0000FF, 100 * MS, 3);
+
+        assertEquals(300 * MS, timeline.getDurationNanos());
+        assertEquals(0x0000FF, timeline.colorAt(150 * MS));
+        assertEquals(0x000000, timeline.colorAt(200 * MS));
+    }
+
+    @Test
+    public void frameRate_followsWriteCompletionRate() throws Exception {
+        final ManualTransport transport = new ManualTransport();
+        final RecordingOutput output = new RecordingOutput(transport);
+        final LedAnimator animator = new LedAnimator(transport, output, 10 * MS);
+
+        // Every write takes 50 ms, so only one in five frames of the minimum interval is written
+        animator.play(new LedTimeline().fade(0x000000, 0xFF0000, 1000 * MS));
+        while (animator.isPlaying() || output.inFlight) {
+            transport.advance(MS);
+            if (output.inFlight && transport.nowNanos - output.writeStartNanos >= 50 * MS) {
+                output.inFlight = false;
+                animator.onWriteCompleted();
+            }
+        }
+
+        assertEquals(50 * MS, animator.getFrameIntervalNanos());
+        assertEquals(20, animator.getWrittenFrameCount(), 1);
+        assertEquals(4 * animator.getWrittenFrameCount(), animator.getDroppedFrameCount(), 4);
+        assertEquals(animator.getWrittenFrameCount(), output.colors.size());
+        assertEquals(1, output.cancelCount);
+
+        // The colors go up in steps, without queued intermediate frames
+        for (int i = 1; i < output.colors.size(); i++) {
+            assertTrue(output.colors.get(i) > output.colors.get(i - 1));
+        }
+    }
+
+    @Test
+    public void stop_cancelsTheOverride() throws Exception {
+        final ManualTransport transport = new ManualTransport();
+        final RecordingOutput output = new RecordingOutput(transport);
+        final LedAnimator animator = new LedAnimator(transport, output);
+
+        animator.play(new LedTimeline().hold(0x00FF00, 1000 * MS));
+        transport.advance(MS);
+        assertEquals(1, output.colors.size());
+
+        animator.stop();
+        animator.onWriteCompleted();
+        transport.advance(100 * MS);
+        assertFalse(animator.isPlaying());
+        assertEquals(1, output.colors.size());
+        assertEquals(1, output.cancelCount);
+    }
+
+    @Test
+    public void simulatedRemote_showsProfileColorAfterwards() throws Exception {
+        final SimulatedGattTransport transport = new SimulatedGattTransport(7);
+        try {
+            final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:01", -40);
+            transport.setLatency(2000, 1000);
+            final Sdc1Connection connection = new Sdc1Connection(transport, peer.getAddress(),
+                    new Sdc1LatencyRecorder(), new Sdc1Connection.Callback() {
+                        @Override
+                        public void onStateChanged(Sdc1Connection connection, int state) {
+                        }
+
+                        @Override
+                        public void onAction(Sdc1Connection connection, int action, long timestampNanos) {
+                        }
+                    });
+            connection.connect(false);
+            awaitTrue(connection, Sdc1Connection.STATE_READY);
+
+            final LedAnimator animator = LedAnimator.attach(transport, connection);
+            animator.play(new LedTimeline().pulse(0xFFFFFF, 100 * MS, 2));
+            final long deadline = System.nanoTime() + 5000 * MS;
+            while (animator.isPlaying() || peer.isLedOverridden()) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(5);
+            }
+
+            assertTrue(animator.getWrittenFrameCount() > 2);
+            assertTrue(animator.getAverageWriteNanos() >= 2 * MS);
+            assertEquals(SimulatedSdc1Peer.PROFILE_LED_COLOR, peer.getLedColor());
+            connection.close();
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    private static void awaitTrue(Sdc1Connection connection, int state) throws Exception {
+        final long deadline = System.nanoTime() + 5000 * MS;
+        while (connection.getState() != state) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Output recording the colors written, completed by the test
+     */
+    private static final class RecordingOutput implements LedAnimator.Output {
+        final ArrayList<Integer> colors = new ArrayList<>();
+        private final ManualTransport transport;
+        boolean inFlight;
+        long writeStartNanos;
+        int cancelCount;
+
+        RecordingOutput(ManualTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public boolean writeLedColor(int color) {
+            assertFalse("Write started while another is in flight", inFlight);
+            colors.add(color);
+            inFlight = true;
+            writeStartNanos = transport.nowNanos;
+
+            return true;
+        }
+
+        @Override
+        public void cancelLedOverride() {
+            cancelCount++;
+        }
+    }
+
+    /**
+     * Transport with a clock that only moves when advanced, running the tasks that are due
+     */
+    private static final class ManualTransport implements GattTransport {
+        long nowNanos;
+        private final ArrayList<Runnable> tasks = new ArrayList<>();
+        private final ArrayList<Long> dueNanos = new ArrayList<>();
+
+        void advance(long nanos) {
+            nowNanos += nanos;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueNanos.get(i) <= nowNanos) {
+                    final Runnable task = tasks.remove(i);
+                    dueNanos.remove(i);
+                    task.run();
+                    i = -1;
+                }
+            }
+        }
+
+        @Override
+        public boolean startScan(ScanListener listener) {
+            return false;
+        }
+
+        @Override
+        public boolean startBatchScan(ScanListener listener, long reportDelayMillis) {
+            return false;
+        }
+
+        @Override
+        public void flushScanResults() {
+        }
+
+        @Override
+        public void stopScan() {
+        }
+
+        @Override
+        public int getScanMode() {
+            return 0;
+        }
+
+        @Override
+        public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+            return null;
+        }
+
+        @Override
+        public long nowNanos() {
+            return nowNanos;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            tasks.add(task);
+            dueNanos.add(nowNanos + delayMillis * MS);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            final int index = tasks.indexOf(task);
+            if (index != -1) {
+                tasks.remove(index);
+                dueNanos.remove(index);
+            }
+        }
+    }
+}
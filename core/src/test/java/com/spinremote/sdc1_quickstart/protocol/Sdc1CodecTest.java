@@ -0,0 +1,64 @@
+package com.spinremote.sdc1_quickstart.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link Sdc1Codec}, values taken from the SPIN remote Bluetooth Smart Services
+ * specification.
+ */
+public class Sdc1CodecTest {
+    @Test
+    public void setLedColor_isEncodedAsSpecified() throws Exception {
+        final Sdc1Codec codec = new Sdc1Codec();
+
+        assertArrayEquals(new byte[]{0x09, (byte) 0xFF, 0x00, 0x00}, codec.setLedColor(0xFF, 0x00, 0x00));
+        assertArrayEquals(new byte[]{0x09, 0x01, 0x02, 0x03}, codec.setLedColor(1, 2, 3));
+    }
+
+    @Test
+    public void frames_areReused() throws Exception {
+        final Sdc1Codec codec = new Sdc1Codec();
+
+        assertSame(codec.setLedColor(1, 2, 3), codec.setLedColor(4, 5, 6));
+        assertSame(codec.cancelLedOverride(), codec.cancelLedOverride());
+        assertSame(codec.forceActionNotification(true), codec.forceActionNotification(true));
+    }
+
+    @Test
+    public void otherCommands_areEncodedAsSpecified() throws Exception {
+        final Sdc1Codec codec = new Sdc1Codec();
+
+        assertArrayEquals(new byte[]{0x07}, codec.cancelLedOverride());
+        assertArrayEquals(new byte[]{0x08, 0x01}, codec.forceActionNotification(true));
+        assertArrayEquals(new byte[]{0x08, 0x00}, codec.forceActionNotification(false));
+    }
+
+    @Test
+    public void encodeSetLedColor_atOffsetFromPackedColor() throws Exception {
+        final byte[] destination = new byte[Sdc1Codec.MAX_COMMAND_LENGTH];
+
+        assertEquals(Sdc1Codec.SET_LED_COLOR_LENGTH, Sdc1Codec.encodeSetLedColor(destination, 2, 0x112233));
+        assertEquals(0x09, destination[2]);
+        assertEquals(0x11, destination[3]);
+        assertEquals(0x22, destination[4]);
+        assertEquals(0x33, destination[5]);
+    }
+
+    @Test
+    public void decodeAction_isUnsigned() throws Exception {
+        assertEquals(Sdc1Codec.ACTION_TOUCHPAD_PRESS_CENTER, Sdc1Codec.decodeAction(new byte[]{14}));
+        assertEquals(255, Sdc1Codec.decodeAction(new byte[]{(byte) 0xFF}));
+        assertEquals(Sdc1Codec.ACTION_NONE, Sdc1Codec.decodeAction(new byte[0]));
+        assertEquals(Sdc1Codec.ACTION_NONE, Sdc1Codec.decodeAction(null));
+    }
+
+    @Test
+    public void commandLength_coversAllCommands() throws Exception {
+        assertEquals(1, Sdc1Codec.commandLength(Sdc1Codec.COMMAND_CANCEL_LED_OVERRIDE));
+        assertEquals(2, Sdc1Codec.commandLength(Sdc1Codec.COMMAND_FORCE_ACTION_NOTIFICATION));
+        assertEquals(4, Sdc1Codec.commandLength(Sdc1Codec.COMMAND_SET_LED_COLOR));
+        assertEquals(0, Sdc1Codec.commandLength(0));
+    }
+}
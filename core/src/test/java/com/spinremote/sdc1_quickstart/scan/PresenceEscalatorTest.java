@@ -0,0 +1,105 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.connection.Sdc1ConnectionManager;
+import com.spinremote.sdc1_quickstart.simulation.Await;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link PresenceEscalator}, against a {@link SimulatedGattTransport}.
+ */
+public class PresenceEscalatorTest {
+    private final SimulatedGattTransport transport = new SimulatedGattTransport(42);
+    private final KnownDeviceRegistry knownDeviceRegistry = new KnownDeviceRegistry(new KnownDeviceRegistry.MemoryStore());
+    private PresenceEscalator escalator;
+    private final Sdc1ConnectionManager manager = new Sdc1ConnectionManager(transport, knownDeviceRegistry,
+            new Sdc1ConnectionManager.Listener() {
+                @Override
+                public void onDeviceFound(String address, int rssi) {
+                }
+
+                @Override
+                public void onConnectionStateChanged(String address, int state) {
+                    escalator.onConnectionStateChanged(address, state);
+                }
+
+                @Override
+                public void onAction(String address, int action, long timestampNanos) {
+                }
+            }
+    );
+
+    @After
+    public void tearDown() throws Exception {
+        escalator.stop();
+        transport.shutdown();
+    }
+
+    @Test
+    public void departedRemote_returnsToMonitoring() throws Exception {
+        final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:01", -60);
+        knownDeviceRegistry.remember(peer.getAddress());
+        escalator = new PresenceEscalator(transport, knownDeviceRegistry, manager);
+        escalator.getPresenceMonitor().setDutyCycle(100, 400, 50);
+        escalator.start();
+
+        // Arrives, so the manager connects to it
+        awaitReadyCount(1);
+        assertTrue(escalator.isEscalated());
+        assertEquals(1, escalator.getEscalationCount());
+
+        // Goes out of range: once the direct reconnects failed, back to monitoring
+        peer.setInRange(false);
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return !escalator.isEscalated();
+            }
+        });
+        assertTrue(manager.isIdle());
+        assertFalse(escalator.getPresenceMonitor().isPresent(peer.getAddress()));
+
+        // Back in range: arrives and connects again
+        peer.setInRange(true);
+        awaitReadyCount(1);
+        assertTrue(escalator.isEscalated());
+        assertEquals(2, escalator.getEscalationCount());
+
+        // Known, so connected directly both times: no scan to connect latency
+        assertEquals(0, manager.getScanLatencyStats().getConnectedCount(transport.getScanMode()));
+    }
+
+    @Test
+    public void unreachableRemote_returnsToMonitoring() throws Exception {
+        // Arrives while no remote is known, but can't be connected to
+        transport.addPeer("F0:00:00:00:00:02", -60);
+        transport.setFailureRates(1, 0);
+        escalator = new PresenceEscalator(transport, knownDeviceRegistry, manager);
+        escalator.getPresenceMonitor().setDutyCycle(100, 10000, 50);
+        escalator.start();
+
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return escalator.getEscalationCount() > 0 && !escalator.isEscalated();
+            }
+        });
+        assertEquals(0, manager.getReadyCount());
+        assertTrue(manager.isIdle());
+    }
+
+    private void awaitReadyCount(final int count) throws Exception {
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return manager.getReadyCount() == count;
+            }
+        });
+    }
+}
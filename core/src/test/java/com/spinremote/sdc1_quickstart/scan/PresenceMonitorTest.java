@@ -0,0 +1,123 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.simulation.Await;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedGattTransport;
+import com.spinremote.sdc1_quickstart.simulation.SimulatedSdc1Peer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link PresenceMonitor}, against a {@link SimulatedGattTransport}.
+ */
+public class PresenceMonitorTest {
+
+    private final SimulatedGattTransport transport = new SimulatedGattTransport(42);
+    private final KnownDeviceRegistry knownDeviceRegistry = new KnownDeviceRegistry(new KnownDeviceRegistry.MemoryStore());
+    private final RecordingListener listener = new RecordingListener();
+    private final PresenceMonitor monitor = new PresenceMonitor(transport, knownDeviceRegistry, listener);
+
+    @After
+    public void tearDown() throws Exception {
+        monitor.stop();
+        transport.shutdown();
+    }
+
+    @Test
+    public void knownRemote_arrivesAndDepartsWithHysteresis() throws Exception {
+        transport.setAdvertisingInterval(10000);
+        final SimulatedSdc1Peer known = transport.addPeer("F0:00:00:00:00:01", -60);
+        final SimulatedSdc1Peer unknown = transport.addPeer("F0:00:00:00:00:02", -40);
+        knownDeviceRegistry.remember(known.getAddress());
+
+        monitor.setDutyCycle(100, 400, 50);
+        monitor.setHysteresis(-85, -95, 2);
+        monitor.start();
+
+        awaitEvents(1);
+        assertTrue(monitor.isPresent(known.getAddress()));
+        assertFalse(monitor.isPresent(unknown.getAddress()));
+
+        // Weak, but above the departure RSSI: stays present
+        known.setRssi(-90);
+        awaitWindows(3);
+        assertTrue(monitor.isPresent(known.getAddress()));
+
+        // Below the departure RSSI: departs after two windows
+        known.setRssi(-100);
+        awaitEvents(2);
+        assertFalse(monitor.isPresent(known.getAddress()));
+
+        // Only arrives again above the arrival RSSI
+        known.setRssi(-90);
+        awaitWindows(2);
+        assertFalse(monitor.isPresent(known.getAddress()));
+        known.setRssi(-70);
+        awaitEvents(3);
+
+        assertEquals("+F0:00:00:00:00:01", listener.getEvents().get(0));
+        assertEquals("-F0:00:00:00:00:01", listener.getEvents().get(1));
+        assertEquals("+F0:00:00:00:00:01", listener.getEvents().get(2));
+
+        // Batched: the listener is woken up once per report delay (and flush) of a window, not for
+        // each of the 2 * 30 advertisements
+        final long maxReportsPerWindow = (100 + PresenceMonitor.FLUSH_MILLIS) / 50 + 2;
+        assertTrue(transport.getScanReportCount() <= maxReportsPerWindow * (monitor.getWindowCount() + 1));
+    }
+
+    @Test
+    public void anyRemote_isTrackedWhileNoneIsKnown() throws Exception {
+        final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:03", -60);
+
+        monitor.setDutyCycle(100, 400, 50);
+        monitor.start();
+
+        awaitEvents(1);
+        assertTrue(monitor.isPresent(peer.getAddress()));
+    }
+
+    private void awaitEvents(final int count) throws Exception {
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return listener.getEvents().size() >= count;
+            }
+        });
+    }
+
+    private void awaitWindows(int count) throws Exception {
+        final long windowCount = monitor.getWindowCount() + count;
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return monitor.getWindowCount() >= windowCount;
+            }
+        });
+    }
+
+    /**
+     * Listener collecting the arrivals (+address) and departures (-address)
+     */
+    private static final class RecordingListener implements PresenceMonitor.Listener {
+        private final ArrayList<String> events = new ArrayList<>();
+
+        @Override
+        public synchronized void onArrived(String address, int rssi) {
+            events.add("+" + address);
+        }
+
+        @Override
+        public synchronized void onDeparted(String address) {
+            events.add("-" + address);
+        }
+
+        synchronized ArrayList<String> getEvents() {
+            return new ArrayList<>(events);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ScanLatencyStats}.
+ */
+public class ScanLatencyStatsTest {
+    private static final int LOW_LATENCY = 2;
+    private static final int BALANCED = 1;
+
+    @Test
+    public void measurements_areKeptPerScanMode() throws Exception {
+        final ScanLatencyStats stats = new ScanLatencyStats();
+
+        stats.onScanStarted(LOW_LATENCY, 1000);
+        stats.onDeviceFound(1100);
+        stats.onConnected(1500);
+
+        stats.onScanStarted(BALANCED, 2000);
+        stats.onDeviceFound(2600);
+        stats.onConnected(3000);
+
+        assertEquals(1, stats.getConnectedCount(LOW_LATENCY));
+        assertEquals(500, stats.getMeanConnectedNanos(LOW_LATENCY));
+        assertEquals(100, stats.getMeanFoundNanos(LOW_LATENCY));
+        assertEquals(1000, stats.getMeanConnectedNanos(BALANCED));
+        assertEquals(600, stats.getMeanFoundNanos(BALANCED));
+    }
+
+    @Test
+    public void restartedScan_keepsMeasuringFromFirstStart() throws Exception {
+        final ScanLatencyStats stats = new ScanLatencyStats();
+
+        stats.onScanStarted(LOW_LATENCY, 1000);
+        stats.onScanStarted(LOW_LATENCY, 1200);
+        stats.onDeviceFound(1300);
+        stats.onDeviceFound(1400);
+        stats.onConnected(1600);
+
+        assertEquals(300, stats.getMeanFoundNanos(LOW_LATENCY));
+        assertEquals(600, stats.getMeanConnectedNanos(LOW_LATENCY));
+    }
+
+    @Test
+    public void cancel_dropsMeasurement() throws Exception {
+        final ScanLatencyStats stats = new ScanLatencyStats();
+
+        stats.onScanStarted(LOW_LATENCY, 1000);
+        stats.cancel();
+        stats.onConnected(5000);
+
+        assertEquals(0, stats.getConnectedCount(LOW_LATENCY));
+    }
+}
@@ -0,0 +1,72 @@
+package com.spinremote.sdc1_quickstart.scan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ScanTable}.
+ */
+public class ScanTableTest {
+    private static final String REMOTE_A = "F0:00:00:00:00:01";
+    private static final String REMOTE_B = "F0:00:00:00:00:02";
+    private static final String REMOTE_C = "F0:00:00:00:00:03";
+    private static final long INTERVAL_NANOS = 20000000;
+
+    @Test
+    public void advertisements_areDeduplicatedAndSmoothed() throws Exception {
+        final ScanTable table = new ScanTable(4, 0.25);
+
+        assertTrue(table.onAdvertisement(REMOTE_A, -60, 0));
+        // A single outlier only moves the smoothed RSSI by a quarter
+        assertTrue(table.onAdvertisement(REMOTE_A, -80, INTERVAL_NANOS));
+        assertEquals(-65, table.getSmoothedRssi(REMOTE_A));
+        for (int i = 2; i < 100; i++) {
+            table.onAdvertisement(REMOTE_A, -70, i * INTERVAL_NANOS);
+        }
+        // Unchanged once settled
+        assertFalse(table.onAdvertisement(REMOTE_A, -70, 100 * INTERVAL_NANOS));
+
+        assertEquals(1, table.size());
+        assertEquals(-70, table.getSmoothedRssi(REMOTE_A));
+        assertEquals(101, table.getAdvertisementCount(REMOTE_A));
+        assertEquals(INTERVAL_NANOS, table.getAdvertisingIntervalNanos(REMOTE_A));
+        assertEquals(0, table.getFirstSeenNanos(REMOTE_A));
+        assertEquals(100 * INTERVAL_NANOS, table.getLastSeenNanos(REMOTE_A));
+        assertEquals(ScanTable.NO_RSSI, table.getSmoothedRssi(REMOTE_B));
+    }
+
+    @Test
+    public void candidates_areStrongestFirst() throws Exception {
+        final ScanTable table = new ScanTable(4, 0.25);
+
+        table.onAdvertisement(REMOTE_A, -50, 1000);
+        table.onAdvertisement(REMOTE_B, -80, 2000);
+        table.onAdvertisement(REMOTE_C, -40, 3000);
+        table.onAdvertisement(REMOTE_C, -90, 4000);
+        table.onAdvertisement(REMOTE_B, -60, 5000);
+
+        assertArrayEquals(new String[]{REMOTE_C, REMOTE_B}, table.getCandidates(2000));
+        assertArrayEquals(new String[]{REMOTE_A, REMOTE_C, REMOTE_B}, table.getCandidates(0));
+    }
+
+    @Test
+    public void fullTable_evictsLeastRecentlySeen() throws Exception {
+        final ScanTable table = new ScanTable(2, 0.25);
+
+        table.onAdvertisement(REMOTE_A, -50, 1000);
+        table.onAdvertisement(REMOTE_B, -50, 2000);
+        table.onAdvertisement(REMOTE_A, -50, 3000);
+        table.onAdvertisement(REMOTE_C, -50, 4000);
+
+        assertEquals(2, table.size());
+        assertEquals(1, table.getEvictedCount());
+        assertEquals(ScanTable.NO_RSSI, table.getSmoothedRssi(REMOTE_B));
+        assertEquals(2, table.getAdvertisementCount(REMOTE_A));
+        assertEquals(1, table.getAdvertisementCount(REMOTE_C));
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.getCandidates(0).length);
+    }
+}
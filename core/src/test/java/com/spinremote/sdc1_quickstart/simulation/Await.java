@@ -0,0 +1,40 @@
+package com.spinremote.sdc1_quickstart.simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Waits in local unit tests for what the threads of a {@link SimulatedGattTransport} (or any other
+ * thread) do, failing the test if it takes too long.
+ */
+public final class Await {
+    public static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    public interface Condition {
+        boolean isTrue();
+    }
+
+    /**
+     * Waits until the condition is true, failing after {@link #TIMEOUT_MILLIS}.
+     */
+    public static void awaitTrue(Condition condition) throws InterruptedException {
+        awaitTrue("Timed out", condition);
+    }
+
+    /**
+     * Waits until the condition is true, failing with the message after {@link #TIMEOUT_MILLIS}.
+     */
+    public static void awaitTrue(String message, Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private Await() {
+    }
+}
@@ -0,0 +1,260 @@
+package com.spinremote.sdc1_quickstart.simulation;
+
+import com.spinremote.sdc1_quickstart.connection.KnownDeviceRegistry;
+import com.spinremote.sdc1_quickstart.connection.Sdc1Connection;
+import com.spinremote.sdc1_quickstart.connection.Sdc1ConnectionManager;
+import com.spinremote.sdc1_quickstart.connection.SetupPlan;
+import com.spinremote.sdc1_quickstart.latency.Sdc1LatencyRecorder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test running {@link Sdc1ConnectionManager} against {@link SimulatedGattTransport}.
+ */
+public class SimulatedPipelineTest {
+    private static final int PEER_COUNT = 4;
+    private static final int ACTION_COUNT = 500;
+    private static final int[] ACTIONS = {0, 1, 6, 7, 10, 14, 19, 20, 21};
+
+    private final SimulatedGattTransport transport = new SimulatedGattTransport(42);
+    private final RecordingListener listener = new RecordingListener();
+    private final KnownDeviceRegistry knownDeviceRegistry = new KnownDeviceRegistry(new KnownDeviceRegistry.MemoryStore());
+    private final Sdc1ConnectionManager manager = new Sdc1ConnectionManager(transport, knownDeviceRegistry, listener);
+
+    @After
+    public void tearDown() throws Exception {
+        manager.stop();
+        transport.shutdown();
+    }
+
+    @Test
+    public void allActions_areDeliveredInOrderPerRemote() throws Exception {
+        transport.setLatency(200, 800);
+        final SimulatedSdc1Peer[] peers = addPeers();
+
+        startAndAwaitReady();
+        for (SimulatedSdc1Peer peer : peers) {
+            assertTrue(peer.isNotificationsEnabled());
+            assertTrue(peer.isActionNotificationForced());
+        }
+
+        // The LED color is only set once ready
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                for (SimulatedSdc1Peer peer : peers) {
+                    if (peer.getLedColor() != 0xFF0000) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        });
+
+        replayAndAwait(peers);
+        for (SimulatedSdc1Peer peer : peers) {
+            assertEquals(ACTION_COUNT, peer.getNotifiedCount());
+            assertEquals(0, peer.getSuppressedCount());
+
+            final ArrayList<Integer> received = listener.getActions(peer.getAddress());
+            for (int i = 0; i < ACTION_COUNT; i++) {
+                assertEquals(ACTIONS[i % ACTIONS.length], (int) received.get(i));
+            }
+        }
+
+        final Sdc1LatencyRecorder recorder = manager.getLatencyRecorder();
+        assertEquals(PEER_COUNT, recorder.getHistogram(Sdc1LatencyRecorder.STEP_FIRST_ACTION).getCount());
+        assertEquals(PEER_COUNT, recorder.getHistogram(Sdc1LatencyRecorder.STEP_CONNECT_TO_READY).getCount());
+        assertEquals(PEER_COUNT * ACTION_COUNT, manager.getActionEventBus().getPublishedCount());
+
+        // Closing the connection returns the LED to the color of the active profile
+        manager.stop();
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                for (SimulatedSdc1Peer peer : peers) {
+                    if (peer.isConnected()) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        });
+        for (SimulatedSdc1Peer peer : peers) {
+            assertFalse(peer.isLedOverridden());
+            assertEquals(SimulatedSdc1Peer.PROFILE_LED_COLOR, peer.getLedColor());
+        }
+    }
+
+    @Test
+    public void failingConnections_recover() throws Exception {
+        transport.setFailureRates(0.5, 0.1);
+        final SimulatedSdc1Peer[] peers = addPeers();
+
+        startAndAwaitReady();
+        replayAndAwait(peers);
+
+        assertTrue(listener.getFailedCount() > 0);
+    }
+
+    @Test
+    public void lostCallbacks_recoverToReady() throws Exception {
+        // Without the watchdog, a connection would stay stuck setting up
+        transport.setLostCallbackRate(0.05);
+        final SimulatedSdc1Peer[] peers = addPeers();
+
+        startAndAwaitReady();
+        replayAndAwait(peers);
+    }
+
+    @Test
+    public void setupPlan_skipsOptionalSteps() throws Exception {
+        final SimulatedSdc1Peer peer = transport.addPeer("F0:00:00:00:00:20", -50);
+        manager.setSetupPlan(new SetupPlan(SetupPlan.NO_LED_COLOR, true, false));
+
+        manager.start();
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return manager.getReadyCount() == 1;
+            }
+        });
+
+        // Ready after the descriptor write, without writing a single command
+        assertTrue(peer.isNotificationsEnabled());
+        assertFalse(peer.isActionNotificationForced());
+        assertFalse(peer.isLedOverridden());
+        assertEquals(0, peer.getCommandCount());
+        assertEquals(1, manager.getLatencyRecorder().getHistogram(Sdc1LatencyRecorder.STEP_CONNECT_TO_READY).getCount());
+        assertEquals(0, manager.getLatencyRecorder().getHistogram(Sdc1LatencyRecorder.STEP_LED_WRITE).getCount());
+    }
+
+    @Test
+    public void strongestRemote_isConnected() throws Exception {
+        // Both advertise at the same time, without a selection window either could be connected
+        final SimulatedSdc1Peer weaker = transport.addPeer("F0:00:00:00:00:10", -85);
+        final SimulatedSdc1Peer stronger = transport.addPeer("F0:00:00:00:00:11", -45);
+
+        manager.start();
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return manager.getReadyCount() == 1;
+            }
+        });
+
+        assertTrue(stronger.isConnected());
+        assertFalse(weaker.isConnected());
+        assertEquals(-45, manager.getScanTable().getSmoothedRssi(stronger.getAddress()));
+        assertTrue(manager.getScanTable().getAdvertisementCount(weaker.getAddress()) > 1);
+        assertEquals(1, manager.getScanLatencyStats().getConnectedCount(transport.getScanMode()));
+    }
+
+    @Test
+    public void absentKnownRemote_doesNotBlockScanning() throws Exception {
+        // Known from before but gone, while another remote is around
+        knownDeviceRegistry.remember("F0:00:00:00:00:30");
+        final SimulatedSdc1Peer present = transport.addPeer("F0:00:00:00:00:31", -50);
+
+        manager.start();
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return manager.getReadyCount() == 1;
+            }
+        });
+
+        // Found by scanning before the direct reconnects to the absent remote ran out
+        assertTrue(present.isConnected());
+        assertEquals(1, manager.getScanLatencyStats().getConnectedCount(transport.getScanMode()));
+        assertTrue(listener.getFailedCount() < Sdc1ConnectionManager.MAX_DIRECT_RECONNECTS);
+    }
+
+    private SimulatedSdc1Peer[] addPeers() {
+        final SimulatedSdc1Peer[] peers = new SimulatedSdc1Peer[PEER_COUNT];
+        for (int i = 0; i < PEER_COUNT; i++) {
+            peers[i] = transport.addPeer(String.format("F0:00:00:00:00:%02X", i), -40 - i);
+        }
+
+        return peers;
+    }
+
+    private void startAndAwaitReady() throws Exception {
+        manager.setTargetConnectionCount(PEER_COUNT);
+        manager.setMaxConcurrentConnects(2);
+        manager.start();
+
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                return manager.getReadyCount() == PEER_COUNT;
+            }
+        });
+    }
+
+    private void replayAndAwait(final SimulatedSdc1Peer[] peers) throws Exception {
+        for (SimulatedSdc1Peer peer : peers) {
+            peer.replayActions(ACTIONS, ACTION_COUNT, 100);
+        }
+
+        Await.awaitTrue(new Await.Condition() {
+            @Override
+            public boolean isTrue() {
+                for (SimulatedSdc1Peer peer : peers) {
+                    if (listener.getActions(peer.getAddress()).size() < ACTION_COUNT) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Listener collecting the actions by address
+     */
+    private static final class RecordingListener implements Sdc1ConnectionManager.Listener {
+        private final HashMap<String, ArrayList<Integer>> actions = new HashMap<>();
+        private int failedCount;
+
+        @Override
+        public void onDeviceFound(String address, int rssi) {
+        }
+
+        @Override
+        public synchronized void onConnectionStateChanged(String address, int state) {
+            if (state == Sdc1Connection.STATE_FAILED) {
+                failedCount++;
+            }
+        }
+
+        @Override
+        public synchronized void onAction(String address, int action, long timestampNanos) {
+            ArrayList<Integer> received = actions.get(address);
+            if (received == null) {
+                received = new ArrayList<>();
+                actions.put(address, received);
+            }
+            received.add(action);
+        }
+
+        synchronized ArrayList<Integer> getActions(String address) {
+            final ArrayList<Integer> received = actions.get(address);
+
+            return received == null ? new ArrayList<Integer>() : new ArrayList<>(received);
+        }
+
+        synchronized int getFailedCount() {
+            return failedCount;
+        }
+    }
+}